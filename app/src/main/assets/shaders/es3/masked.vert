@@ -0,0 +1,23 @@
+#version 300 es
+
+// Per-frame camera matrices, shared by all programs (see CameraUniforms.java)
+layout(std140) uniform CameraMatrices {
+    mat4 u_View;
+    mat4 u_Projection;
+};
+
+uniform mat4 u_Model;
+// face texture coordinate transform: scale (xy) and offset (zw)
+uniform vec4 u_TexCoordWarp;
+
+in vec4 a_Position;
+in vec2 a_TexCoord;
+
+out vec2 v_TexCoord;
+out vec2 v_FaceTexCoord;
+
+void main() {
+    v_TexCoord = a_TexCoord;
+    v_FaceTexCoord = a_TexCoord * u_TexCoordWarp.xy + u_TexCoordWarp.zw;
+    gl_Position = u_Projection * (u_View * (u_Model * a_Position));
+}
@@ -0,0 +1,31 @@
+#version 300 es
+
+// Per-frame camera matrices, shared by all programs (see CameraUniforms.java)
+layout(std140) uniform CameraMatrices {
+    mat4 u_View;
+    mat4 u_Projection;
+};
+
+uniform mat4 u_Model;
+
+in vec4 a_Position;
+in vec3 a_Normal;
+in vec2 a_TexCoord;
+
+// USE_NORMALS: lighting, see object.frag. Without it, the normal is unused and stripped.
+#ifdef USE_NORMALS
+out vec3 v_ViewPosition;
+out vec3 v_ViewNormal;
+#endif
+out vec2 v_TexCoord;
+
+void main() {
+    mat4 modelView = u_View * u_Model;
+    vec4 viewPosition = modelView * a_Position;
+#ifdef USE_NORMALS
+    v_ViewPosition = viewPosition.xyz;
+    v_ViewNormal = normalize((modelView * vec4(a_Normal, 0.0)).xyz);
+#endif
+    v_TexCoord = a_TexCoord;
+    gl_Position = u_Projection * viewPosition;
+}
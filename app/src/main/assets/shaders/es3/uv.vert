@@ -0,0 +1,19 @@
+#version 300 es
+
+// Per-frame camera matrices, shared by all programs (see CameraUniforms.java)
+layout(std140) uniform CameraMatrices {
+    mat4 u_View;
+    mat4 u_Projection;
+};
+
+uniform mat4 u_Model;
+
+in vec4 a_Position;
+in vec2 a_TexCoord;
+
+out vec2 v_TexCoord;
+
+void main() {
+    v_TexCoord = a_TexCoord;
+    gl_Position = u_Projection * (u_View * (u_Model * a_Position));
+}
@@ -0,0 +1,13 @@
+// Output of the filter fragment shaders. In the REDUCED_RESOLUTION variant, the filter is drawn
+// to an offscreen target without blending and upsampled to the screen, see FilterUpsampler.java:
+// the color is premultiplied and the alpha is offset by one step so that the texels the face
+// covers can be told from the empty ones around it.
+#ifdef REDUCED_RESOLUTION
+vec4 filterOutput(vec4 color) {
+    return vec4(color.rgb * color.a, (1.0 + 254.0 * color.a) / 255.0);
+}
+#else
+vec4 filterOutput(vec4 color) {
+    return color;
+}
+#endif
@@ -0,0 +1,10 @@
+precision mediump float;
+
+varying vec2 v_TexCoord;
+varying vec4 v_Color;
+// glyph atlas, white glyphs on a transparent background
+uniform sampler2D u_Texture;
+
+void main() {
+    gl_FragColor = vec4(v_Color.rgb, v_Color.a * texture2D(u_Texture, v_TexCoord).a);
+}
@@ -0,0 +1,16 @@
+// Performance HUD, see PerformanceHud.java. Positions are in pixels from the top left.
+uniform vec2 u_ScreenSize;
+
+attribute vec2 a_Position;
+attribute vec2 a_TexCoord;
+attribute vec4 a_Color;
+
+varying vec2 v_TexCoord;
+varying vec4 v_Color;
+
+void main() {
+    v_TexCoord = a_TexCoord;
+    v_Color = a_Color;
+    vec2 ndc = a_Position / u_ScreenSize * 2.0 - 1.0;
+    gl_Position = vec4(ndc.x, -ndc.y, 0.0, 1.0);
+}
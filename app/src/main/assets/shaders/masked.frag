@@ -0,0 +1,35 @@
+precision mediump float;
+
+varying vec2 v_TexCoord;
+varying vec2 v_FaceTexCoord;
+uniform sampler2D u_Texture;
+// alpha mask baked from the analytic filter shaders, see FaceMasks.java
+uniform sampler2D u_Mask;
+
+#include "shaders/filteroutput.glsl"
+
+#ifdef ATLAS_WARP
+// Non-uniform face atlas layout as ramps per segment, u in x and v in y (see AtlasWarp.java).
+// All zeros is the uniform layout.
+uniform vec2 u_AtlasWarpStart[7];
+uniform vec2 u_AtlasWarpWidth[7];
+uniform vec2 u_AtlasWarpSlopeDelta[7];
+
+vec2 atlasCoord(vec2 uv) {
+    vec2 coord = uv;
+    for (int i = 0; i < 7; i++) {
+        coord += u_AtlasWarpSlopeDelta[i] * clamp(uv - u_AtlasWarpStart[i], vec2(0.0), u_AtlasWarpWidth[i]);
+    }
+    return coord;
+}
+#else
+vec2 atlasCoord(vec2 uv) {
+    return uv;
+}
+#endif
+
+void main() {
+    vec4 color = texture2D(u_Texture, atlasCoord(v_FaceTexCoord));
+    color.a *= texture2D(u_Mask, v_TexCoord).a;
+    gl_FragColor = filterOutput(color);
+}
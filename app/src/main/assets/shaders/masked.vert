@@ -0,0 +1,15 @@
+uniform mat4 u_ModelViewProjection;
+// face texture coordinate transform: scale (xy) and offset (zw)
+uniform vec4 u_TexCoordWarp;
+
+attribute vec4 a_Position;
+attribute vec2 a_TexCoord;
+
+varying vec2 v_TexCoord;
+varying vec2 v_FaceTexCoord;
+
+void main() {
+    v_TexCoord = a_TexCoord;
+    v_FaceTexCoord = a_TexCoord * u_TexCoordWarp.xy + u_TexCoordWarp.zw;
+    gl_Position = u_ModelViewProjection * a_Position;
+}
@@ -17,10 +17,14 @@ precision mediump float;
 
 uniform sampler2D u_Texture;
 
+#ifdef USE_NORMALS
 varying vec3 v_ViewPosition;
 varying vec3 v_ViewNormal;
+#endif
 varying vec2 v_TexCoord;
 
+#include "shaders/filteroutput.glsl"
+
 void main() {
     // We support approximate sRGB gamma.
     const float kGamma = 0.4545454;
@@ -37,13 +41,16 @@ void main() {
     const float materialSpecular = 0.1;
     const float materialSpecularPower = 6.0;
 
+    // Flip the y-texture coordinate to address the texture from top-left.
+    vec4 objectColor = texture2D(u_Texture, vec2(v_TexCoord.x, 1.0 - v_TexCoord.y));
+
+#ifndef USE_NORMALS
+    gl_FragColor = filterOutput(objectColor);
+#else
     // Normalize varying parameters, because they are linearly interpolated in the vertex shader.
     vec3 viewFragmentDirection = normalize(v_ViewPosition);
     vec3 viewNormal = normalize(v_ViewNormal);
 
-    // Flip the y-texture coordinate to address the texture from top-left.
-    vec4 objectColor = texture2D(u_Texture, vec2(v_TexCoord.x, 1.0 - v_TexCoord.y));
-
     // Apply inverse SRGB gamma to the texture before making lighting calculations.
     objectColor.rgb = pow(objectColor.rgb, vec3(kInverseGamma));
 
@@ -65,6 +72,6 @@ void main() {
     //color.rgb = pow(color, vec3(kGamma));
     // Apply average pixel intensity and color shift
     //color *= colorShift * (averagePixelIntensity / kMiddleGrayGamma);
-    gl_FragColor.rgb = color;
-    gl_FragColor.a = objectColor.a;
+    gl_FragColor = filterOutput(vec4(color, objectColor.a));
+#endif
 }
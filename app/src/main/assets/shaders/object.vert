@@ -20,13 +20,18 @@ attribute vec4 a_Position;
 attribute vec3 a_Normal;
 attribute vec2 a_TexCoord;
 
+// USE_NORMALS: lighting, see object.frag. Without it, the normal is unused and stripped.
+#ifdef USE_NORMALS
 varying vec3 v_ViewPosition;
 varying vec3 v_ViewNormal;
+#endif
 varying vec2 v_TexCoord;
 
 void main() {
+#ifdef USE_NORMALS
     v_ViewPosition = (u_ModelView * a_Position).xyz;
     v_ViewNormal = normalize((u_ModelView * vec4(a_Normal, 0.0)).xyz);
+#endif
     v_TexCoord = a_TexCoord;
     gl_Position = u_ModelViewProjection * a_Position;
 }
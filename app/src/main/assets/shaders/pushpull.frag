@@ -0,0 +1,64 @@
+// Push-pull hole filling of a scattered face texture, whose alpha is 1 where a camera pixel was
+// scattered (the coverage) and less elsewhere, see FaceAtlasPushPull.java. Every level of the
+// pyramid has the same convention.
+//
+// push (default): one texel of the next coarser level from the 2x2 texels of u_Source, the mean
+//   color of the covered ones and alpha 1 if there is any.
+// PULL: bilinear upsampling of the filled coarser level u_Source, blended with
+//   (1 - dst alpha, dst alpha) into the holes of the finer level.
+// RESOLVE: the filled face texture: u_Atlas where covered, otherwise the upsampled filled level
+//   u_Source, with the alpha of its coverage, but always below 1, so that a filled texel is never
+//   taken as covered by the next fill.
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+precision highp float;
+#else
+precision mediump float;
+#endif
+
+#define COVERED(t) step(254.5 / 255.0, t.a)
+
+varying vec2 v_TexCoord;
+uniform sampler2D u_Source;
+
+#ifdef PULL
+
+void main() {
+    gl_FragColor = vec4(texture2D(u_Source, v_TexCoord).rgb, 1.0);
+}
+
+#else
+#ifdef RESOLVE
+
+uniform sampler2D u_Atlas;
+
+void main() {
+    vec4 atlas = texture2D(u_Atlas, v_TexCoord);
+    vec4 filled = texture2D(u_Source, v_TexCoord);
+    gl_FragColor = mix(vec4(filled.rgb, min(filled.a, 254.0 / 255.0)), atlas, COVERED(atlas));
+}
+
+#else
+
+uniform vec2 u_SourceSize;
+
+void main() {
+    // center of the lower left child texel, the others are one texel up and right (clamped to
+    // the edge if the source size is odd)
+    vec2 texel = 1.0 / u_SourceSize;
+    vec2 uv = ((gl_FragCoord.xy - 0.5) * 2.0 + 0.5) * texel;
+    vec4 t00 = texture2D(u_Source, uv);
+    vec4 t10 = texture2D(u_Source, uv + vec2(texel.x, 0.0));
+    vec4 t01 = texture2D(u_Source, uv + vec2(0.0, texel.y));
+    vec4 t11 = texture2D(u_Source, uv + texel);
+    vec4 weights = vec4(COVERED(t00), COVERED(t10), COVERED(t01), COVERED(t11));
+    float covered = dot(weights, vec4(1.0));
+    if (covered == 0.0) {
+        gl_FragColor = vec4(0.0);
+    } else {
+        vec3 sum = t00.rgb * weights.x + t10.rgb * weights.y + t01.rgb * weights.z + t11.rgb * weights.w;
+        gl_FragColor = vec4(sum / covered, 1.0);
+    }
+}
+
+#endif
+#endif
@@ -12,11 +12,18 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+// CAMERA_TEXTURE_2D: the camera image is in a regular 2D texture, see BackgroundRenderer
+#ifndef CAMERA_TEXTURE_2D
 #extension GL_OES_EGL_image_external : require
+#endif
 
 precision mediump float;
 varying vec2 v_TexCoord;
+#ifdef CAMERA_TEXTURE_2D
+uniform sampler2D sTexture;
+#else
 uniform samplerExternalOES sTexture;
+#endif
 
 
 void main() {
@@ -3,6 +3,8 @@ precision mediump float;
 varying vec2 v_TexCoord;
 uniform sampler2D u_Texture;
 
+#include "shaders/filteroutput.glsl"
+
 void main() {
-    gl_FragColor = texture2D(u_Texture, v_TexCoord);
+    gl_FragColor = filterOutput(texture2D(u_Texture, v_TexCoord));
 }
@@ -0,0 +1,35 @@
+// Bilinear upsampling of the reduced resolution filter target (see filteroutput.glsl) that only
+// uses the texels the face covers, so the empty surroundings do not bleed into the face, and
+// puts the silhouette where half of the neighborhood is covered. Premultiplied alpha output.
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+precision highp float;
+#else
+precision mediump float;
+#endif
+
+varying vec2 v_TexCoord;
+uniform sampler2D u_Texture;
+uniform vec2 u_TextureSize;
+
+void main() {
+    vec2 texel = 1.0 / u_TextureSize;
+    vec2 pos = v_TexCoord * u_TextureSize - 0.5;
+    vec2 base = floor(pos);
+    vec2 f = pos - base;
+    // texel centers, where the linear filtering of the texture has no effect
+    vec2 uv = (base + 0.5) * texel;
+    vec4 t00 = texture2D(u_Texture, uv);
+    vec4 t10 = texture2D(u_Texture, uv + vec2(texel.x, 0.0));
+    vec4 t01 = texture2D(u_Texture, uv + vec2(0.0, texel.y));
+    vec4 t11 = texture2D(u_Texture, uv + texel);
+
+    vec4 weights = vec4((1.0 - f.x) * (1.0 - f.y), f.x * (1.0 - f.y), (1.0 - f.x) * f.y, f.x * f.y);
+    weights *= step(0.5 / 255.0, vec4(t00.a, t10.a, t01.a, t11.a));
+    float coverage = dot(weights, vec4(1.0));
+    if (coverage == 0.0) discard;
+
+    vec4 sum = t00 * weights.x + t10 * weights.y + t01 * weights.z + t11 * weights.w;
+    float alpha = max(sum.a / coverage * 255.0 - 1.0, 0.0) / 254.0;
+    float edge = smoothstep(0.25, 0.75, coverage);
+    gl_FragColor = vec4(sum.rgb / coverage, alpha) * edge;
+}
@@ -2,7 +2,8 @@ precision mediump float;
 
 varying vec2 v_TexCoord;
 
+#include "shaders/filteroutput.glsl"
+
 void main() {
-    gl_FragColor.rgb = vec3(v_TexCoord, 0.0);
-    gl_FragColor.a = 1.0;
+    gl_FragColor = filterOutput(vec4(v_TexCoord, 0.0, 1.0));
 }
@@ -0,0 +1,9 @@
+precision mediump float;
+
+varying vec2 v_TexCoord;
+
+// The UV image read back for the face texture (see FaceTextureScatter.java): texture coordinates
+// in red and green, zero alpha marks the pixels covered by the face. Drawn without blending.
+void main() {
+    gl_FragColor = vec4(v_TexCoord, 0.0, 0.0);
+}
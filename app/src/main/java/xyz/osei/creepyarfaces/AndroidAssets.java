@@ -0,0 +1,48 @@
+package xyz.osei.creepyarfaces;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** {@link Assets} of the APK's assets directory */
+final class AndroidAssets implements Assets {
+    private final AssetManager assets;
+
+    AndroidAssets(Context context) {
+        assets = context.getAssets();
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        return assets.open(name);
+    }
+
+    @Override
+    public ByteBuffer decodeImage(String name, int[] size) throws IOException {
+        Bitmap bitmap;
+        try (InputStream in = open(name)) {
+            bitmap = BitmapFactory.decodeStream(in);
+        }
+        if (bitmap == null) throw new IOException("cannot decode " + name);
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            final Bitmap converted = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            bitmap.recycle();
+            bitmap = converted;
+        }
+        // ARGB_8888 is stored as RGBA bytes
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(bitmap.getByteCount())
+                .order(ByteOrder.nativeOrder());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.rewind();
+        size[0] = bitmap.getWidth();
+        size[1] = bitmap.getHeight();
+        bitmap.recycle();
+        return pixels;
+    }
+}
@@ -0,0 +1,44 @@
+package xyz.osei.creepyarfaces;
+
+import com.google.ar.core.AugmentedFace;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/** {@link FaceMesh} of ARCore's augmented faces */
+final class ArCoreFaces implements FaceMesh<AugmentedFace> {
+    @Override
+    public FloatBuffer getVertices(AugmentedFace face) {
+        return face.getMeshVertices();
+    }
+
+    @Override
+    public FloatBuffer getTextureCoordinates(AugmentedFace face) {
+        return face.getMeshTextureCoordinates();
+    }
+
+    @Override
+    public FloatBuffer getNormals(AugmentedFace face) {
+        return face.getMeshNormals();
+    }
+
+    @Override
+    public ShortBuffer getTriangleIndices(AugmentedFace face) {
+        return face.getMeshTriangleIndices();
+    }
+
+    @Override
+    public void getPoseMatrix(AugmentedFace face, float[] matrix) {
+        face.getCenterPose().toMatrix(matrix, 0);
+    }
+
+    @Override
+    public void getTranslation(AugmentedFace face, float[] translation) {
+        face.getCenterPose().getTranslation(translation, 0);
+    }
+
+    @Override
+    public void getRotation(AugmentedFace face, float[] quaternion) {
+        face.getCenterPose().getRotationQuaternion(quaternion, 0);
+    }
+}
@@ -0,0 +1,70 @@
+package xyz.osei.creepyarfaces;
+
+import android.media.Image;
+
+import com.google.ar.core.Coordinates2d;
+import com.google.ar.core.Frame;
+import com.google.ar.core.exceptions.NotYetAvailableException;
+
+import java.nio.FloatBuffer;
+
+/** {@link CameraFrame} of the current ARCore frame, see {@link #set} */
+final class ArCoreFrame implements CameraFrame {
+    private Frame frame;
+    private Image image;
+
+    /** Wraps the frame of the latest Session.update() */
+    ArCoreFrame set(Frame frame) {
+        this.frame = frame;
+        return this;
+    }
+
+    @Override
+    public long getTimestamp() {
+        return frame.getTimestamp();
+    }
+
+    @Override
+    public boolean hasDisplayGeometryChanged() {
+        return frame.hasDisplayGeometryChanged();
+    }
+
+    @Override
+    public void transformToTexture(FloatBuffer ndc, FloatBuffer texCoords) {
+        frame.transformCoordinates2d(
+                Coordinates2d.OPENGL_NORMALIZED_DEVICE_COORDINATES, ndc,
+                Coordinates2d.TEXTURE_NORMALIZED, texCoords);
+    }
+
+    @Override
+    public void transformToImagePixels(FloatBuffer ndc, FloatBuffer imagePixels) {
+        frame.transformCoordinates2d(
+                Coordinates2d.OPENGL_NORMALIZED_DEVICE_COORDINATES, ndc,
+                Coordinates2d.IMAGE_PIXELS, imagePixels);
+    }
+
+    @Override
+    public boolean acquireCameraImage(YuvPlanes planes) {
+        try {
+            image = frame.acquireCameraImage();
+        } catch (NotYetAvailableException e) {
+            return false;
+        }
+        final Image.Plane[] imagePlanes = image.getPlanes();
+        planes.set(
+                imagePlanes[0].getBuffer(), imagePlanes[1].getBuffer(), imagePlanes[2].getBuffer(),
+                imagePlanes[0].getRowStride(),
+                imagePlanes[1].getRowStride(),
+                imagePlanes[1].getPixelStride(),
+                image.getWidth(), image.getHeight());
+        return true;
+    }
+
+    @Override
+    public void releaseCameraImage() {
+        if (image != null) {
+            image.close();
+            image = null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package xyz.osei.creepyarfaces;
+
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+
+import com.google.ar.core.CameraConfig;
+import com.google.ar.core.CameraConfigFilter;
+import com.google.ar.core.Session;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Selects the camera config of the session with {@link CameraConfigSelector}. The selection is
+ * stored per device model, so later launches only list the configs with the stored frame rate
+ * and take the stored one, instead of listing and evaluating all supported configs again.
+ */
+class CameraConfigChooser {
+    private static final String TAG = CameraConfigChooser.class.getSimpleName();
+
+    private static final String PREFERENCE_PREFIX = "cameraConfig.";
+
+    private final SharedPreferences preferences;
+    private final CameraConfigSelector selector;
+
+    CameraConfigChooser(SharedPreferences preferences, CameraConfigSelector selector) {
+        this.preferences = preferences;
+        this.selector = selector;
+    }
+
+    private static CameraConfigSelector.Candidate toCandidate(CameraConfig config) {
+        final Size texture = config.getTextureSize();
+        final Size image = config.getImageSize();
+        final Range<Integer> fps = config.getFpsRange();
+        return new CameraConfigSelector.Candidate(
+                texture.getWidth(), texture.getHeight(),
+                image.getWidth(), image.getHeight(),
+                fps.getLower(), fps.getUpper());
+    }
+
+    /**
+     * Sets the camera config of the session. Must be called before the session is resumed.
+     */
+    public void apply(Session session) {
+        final long start = System.nanoTime();
+        final String preferenceKey = PREFERENCE_PREFIX + Build.MODEL + "." + selector.getFloorKey();
+        final String stored = preferences.getString(preferenceKey, null);
+        if (stored != null && applyStored(session, stored, start)) return;
+
+        // first launch, or the supported configs changed, e.g., with an ARCore update
+        final List<CameraConfig> configs = session.getSupportedCameraConfigs(new CameraConfigFilter(session));
+        final List<CameraConfigSelector.Candidate> candidates = new ArrayList<>(configs.size());
+        for (CameraConfig config : configs) candidates.add(toCandidate(config));
+
+        final int index = selector.select(candidates);
+        if (index < 0) {
+            Log.w(TAG, "no camera configs, using the default");
+            return;
+        }
+        preferences.edit().putString(preferenceKey, candidates.get(index).getKey()).apply();
+        if (!selector.meetsFloor(candidates.get(index))) {
+            Log.w(TAG, "no camera config meets the quality floor " + selector.getFloorKey());
+        }
+
+        session.setCameraConfig(configs.get(index));
+        Log.i(TAG, String.format("camera config %s (selected, %d configs, %.1f ms)",
+                candidates.get(index), candidates.size(), (System.nanoTime() - start) * 1e-6));
+    }
+
+    /**
+     * Sets the stored config, looking it up only among the configs with its frame rate
+     *
+     * @return false if the session does not support it
+     */
+    private boolean applyStored(Session session, String stored, long start) {
+        final CameraConfigSelector.Candidate candidate = CameraConfigSelector.Candidate.fromKey(stored);
+        if (candidate == null) return false;
+
+        final CameraConfigFilter filter = new CameraConfigFilter(session)
+                .setTargetFps(EnumSet.of(candidate.maxFps >= 60
+                        ? CameraConfig.TargetFps.TARGET_FPS_60
+                        : CameraConfig.TargetFps.TARGET_FPS_30));
+        final List<CameraConfig> configs = session.getSupportedCameraConfigs(filter);
+        final List<CameraConfigSelector.Candidate> candidates = new ArrayList<>(configs.size());
+        for (CameraConfig config : configs) candidates.add(toCandidate(config));
+        final int index = CameraConfigSelector.find(candidates, stored);
+        if (index < 0) return false;
+
+        session.setCameraConfig(configs.get(index));
+        Log.i(TAG, String.format("camera config %s (stored for %s, %d configs, %.1f ms)",
+                candidates.get(index), Build.MODEL, candidates.size(), (System.nanoTime() - start) * 1e-6));
+        return true;
+    }
+}
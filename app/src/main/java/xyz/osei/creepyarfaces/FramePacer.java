@@ -0,0 +1,103 @@
+package xyz.osei.creepyarfaces;
+
+import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Requests rendering in sync with the display vsync instead of letting Session.update() throttle
+ * the render thread to the camera frame rate. Used with Config.UpdateMode.LATEST_CAMERA_IMAGE,
+ * where consecutive frames may carry the same camera image. Also measures the latency from camera
+ * capture to submitting the rendered frame for display.
+ */
+class FramePacer implements Choreographer.FrameCallback {
+    // Camera timestamps further than this from the current time are not on a known clock
+    private static final long MAX_PLAUSIBLE_LATENCY_NANOS = 1000L * 1000 * 1000;
+
+    private final GLSurfaceView surfaceView;
+    private boolean running = false;
+    // set on the GL thread, read on the UI thread
+    private volatile int frameInterval = 1;
+    private long vsyncCount;
+
+    // accessed on the GL thread only
+    private long lastCameraTimestamp = -1;
+    private long duplicateFrameCount;
+    private double lastLatencyMillis;
+    private final RollingStats latencyMillis = new RollingStats(100);
+
+    FramePacer(GLSurfaceView view) {
+        surfaceView = view;
+    }
+
+    /** Call on the UI thread, e.g., in Activity.onResume */
+    public void start() {
+        if (running) return;
+        running = true;
+        surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /** Call on the UI thread, e.g., in Activity.onPause */
+    public void stop() {
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) return;
+        if (vsyncCount++ % frameInterval == 0) surfaceView.requestRender();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Renders only on every given vsync, e.g., 4 for 15 fps on a 60 Hz display while idle.
+     * Takes effect on the next vsync.
+     */
+    public void setFrameInterval(int vsyncs) {
+        if (vsyncs < 1) throw new IllegalArgumentException("frame interval must be at least 1");
+        frameInterval = vsyncs;
+    }
+
+    /**
+     * Call on the GL thread after Session.update()
+     *
+     * @return true if the frame has a new camera image, false if it is the same as in the
+     *  previous frame
+     */
+    public boolean onCameraFrame(long cameraTimestampNanos) {
+        final boolean isNew = cameraTimestampNanos != lastCameraTimestamp;
+        if (!isNew) duplicateFrameCount++;
+        lastCameraTimestamp = cameraTimestampNanos;
+        return isNew;
+    }
+
+    /**
+     * Call on the GL thread when the frame is done, just before it is submitted for display
+     */
+    public void onFrameRendered(boolean newCameraImage) {
+        if (!newCameraImage || lastCameraTimestamp <= 0) return;
+        // The time base of the camera timestamps is not specified. Try the two likely ones.
+        long latency = SystemClock.elapsedRealtimeNanos() - lastCameraTimestamp;
+        if (latency < 0 || latency > MAX_PLAUSIBLE_LATENCY_NANOS) {
+            latency = System.nanoTime() - lastCameraTimestamp;
+        }
+        if (latency < 0 || latency > MAX_PLAUSIBLE_LATENCY_NANOS) return;
+        lastLatencyMillis = latency * 1e-6;
+        latencyMillis.add(lastLatencyMillis);
+    }
+
+    public long getDuplicateFrameCount() {
+        return duplicateFrameCount;
+    }
+
+    /** Camera-to-display latency of the latest frame with a new camera image */
+    public double getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    public RollingStats getLatencyMillis() {
+        return latencyMillis;
+    }
+}
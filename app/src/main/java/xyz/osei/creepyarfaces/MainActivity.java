@@ -18,9 +18,12 @@
 
 package xyz.osei.creepyarfaces;
 
+import android.app.ActivityManager;
+import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.os.Environment;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
@@ -31,15 +34,19 @@ import com.google.ar.core.AugmentedFace;
 import com.google.ar.core.Camera;
 import com.google.ar.core.Config;
 import com.google.ar.core.Frame;
+import com.google.ar.core.Pose;
 import com.google.ar.core.Session;
+import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.core.exceptions.UnavailableDeviceNotCompatibleException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
 import com.google.ar.core.exceptions.UnavailableUserDeclinedInstallationException;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 
@@ -54,6 +61,37 @@ import javax.microedition.khronos.opengles.GL10;
 public class MainActivity extends AppCompatActivity implements GLSurfaceView.Renderer {
   private static final String TAG = MainActivity.class.getSimpleName();
 
+  private static final int STATS_LOG_INTERVAL_FRAMES = 300;
+
+  // Render on vsync with UpdateMode.LATEST_CAMERA_IMAGE instead of blocking on the camera
+  private static final boolean LOW_LATENCY_PACING = true;
+  // Build the face texture from the CPU camera image instead of GPU readback
+  private static final boolean CPU_IMAGE_FACE_MAPPING = false;
+  // Scatter the face texture in a compute shader instead of reading back the camera and UV
+  // images (OpenGL ES 3.1 only, not with CPU_IMAGE_FACE_MAPPING), see ComputeFaceScatter
+  private static final boolean GPU_COMPUTE_SCATTER = false;
+  // Fill the holes of the scattered face textures with a push-pull pass instead of hiding them
+  // with mipmaps, see FaceAtlasPushPull
+  private static final boolean PUSH_PULL_HOLE_FILLING = true;
+  // Face atlas layout with more texels around the eyes, nose and mouth (OpenGL ES 3.0 only,
+  // the atlas sizes are not powers of two)
+  private static final AtlasWarp FACE_ATLAS_WARP = AtlasWarp.withFocusRegions(
+      0.35f, new float[] { 0.2f, 0.8f }, new float[] { 0.3f, 0.85f });
+  // Resolution of the filter pass relative to the screen, 1 to draw it directly to the screen,
+  // see FilterUpsampler
+  private static final float FILTER_RESOLUTION_SCALE = 1f;
+  // Without a tracked face for this long, only the camera image is drawn, at a lower rate (with
+  // LOW_LATENCY_PACING), and the face mapping buffers are released
+  private static final long IDLE_AFTER_MS = 5000;
+  private static final int IDLE_FRAME_INTERVAL = 4;
+  // Face mappings per frame, the other faces that need one wait for the following frames
+  private static final int MAX_MAPPED_FACES_PER_FRAME = 1;
+
+  // Quality floor for the camera config: the cheapest config that meets it is used
+  private static final int CAMERA_MIN_TEXTURE_SHORT_SIDE = 480;
+  private static final int CAMERA_MIN_IMAGE_SHORT_SIDE = 480;
+  private static final int CAMERA_MIN_FPS = 30;
+
   // Rendering. The Renderers are created here, and initialized when the GL surface is created.
   private GLSurfaceView surfaceView;
 
@@ -62,37 +100,163 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
   private Session session;
   private DisplayRotationHelper displayRotationHelper;
 
-  private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer();
-  private final FaceGeometry faceGeometry = new FaceGeometry();
-  private final FaceMapper faceMapper = new FaceMapper(faceGeometry);
+  private final Gl gl = new AndroidGl();
+  // Loads the shaders from the assets, created in onCreate
+  private ShaderUtil shaders;
+  private final ArCoreFaces faceMesh = new ArCoreFaces();
+  private final ArCoreFrame cameraFrame = new ArCoreFrame();
+  private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer(gl);
+  private final FaceGeometry faceGeometry = new FaceGeometry(gl);
+  private final FaceMapper<AugmentedFace> faceMapper = new FaceMapper<>(gl, faceGeometry, faceMesh);
+  private final FilterUpsampler filterUpsampler = FILTER_RESOLUTION_SCALE < 1
+      ? new FilterUpsampler(gl, FILTER_RESOLUTION_SCALE, STATS_LOG_INTERVAL_FRAMES) : null;
+  private final FramePipeline<AugmentedFace> pipeline = new FramePipeline<>(
+      gl, backgroundRenderer, faceGeometry, faceMesh, faceMapper, CPU_IMAGE_FACE_MAPPING,
+      filterUpsampler, STATS_LOG_INTERVAL_FRAMES);
 
   private final List<FaceRenderer> rendererList = new ArrayList<>();
   private int rendererIndex;
 
+  // OpenGL ES 3.0 backend, null if running on OpenGL ES 2.0
+  private CameraUniforms cameraUniforms;
+  private final float[] projmtx = new float[16];
+  private final float[] viewmtx = new float[16];
+  private int surfaceWidth, surfaceHeight;
+
+  // Saves the filtered view, see takeSnapshot
+  private SnapshotCapture snapshotCapture;
+  // Frame time graph and counters, toggled by tapping the view
+  private PerformanceHud hud;
+  // Where the startup timeline is written, see StartupTrace
+  private File startupTimelineDir;
+
+  // Adaptive quality: the face mapping quality is lowered when the rendering work does not fit
+  // in the frame time budget of the target frame rate.
+  private static final double TARGET_FPS = 30;
+  private static final int QUALITY_WINDOW_FRAMES = 30;
+  private static final List<QualityLevel> QUALITY_LEVELS = Arrays.asList(
+      new QualityLevel(256, 1.0f, 1),
+      new QualityLevel(256, 0.75f, 1),
+      new QualityLevel(128, 0.5f, 1),
+      new QualityLevel(128, 0.5f, 2),
+      new QualityLevel(128, 0.35f, 3));
+  private final AdaptiveQualityController qualityController =
+      new AdaptiveQualityController(QUALITY_LEVELS, TARGET_FPS, QUALITY_WINDOW_FRAMES, Clock.SYSTEM);
+  private long frameCounter, cameraFrameCounter;
+  private FramePacer framePacer;
+  private final IdleMonitor idleMonitor = new IdleMonitor(IDLE_AFTER_MS, Clock.SYSTEM);
+  private long releasedRenderTargetBytes;
+
+  // Only tracked faces are drawn, see FaceScheduler
+  private final FaceScheduler<AugmentedFace> faceScheduler =
+      new FaceScheduler<>(MAX_MAPPED_FACES_PER_FRAME);
+  private final FaceScheduler.FaceInfo<AugmentedFace> faceInfo =
+      new FaceScheduler.FaceInfo<AugmentedFace>() {
+        @Override
+        public boolean isTracking(AugmentedFace face) {
+          return face.getTrackingState() == TrackingState.TRACKING;
+        }
+
+        @Override
+        public float getProjectedArea(AugmentedFace face) {
+          // the faces are about the same size, so the area goes with the inverse squared depth
+          final Pose pose = face.getCenterPose();
+          final float depth = -(viewmtx[2] * pose.tx() + viewmtx[6] * pose.ty()
+              + viewmtx[10] * pose.tz() + viewmtx[14]);
+          if (depth <= 0) return 0;
+          return projmtx[0] * projmtx[5] / (depth * depth);
+        }
+      };
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
+    final StartupTimeline.Phase onCreatePhase = StartupTrace.begin("Activity.onCreate");
     super.onCreate(savedInstanceState);
     setContentView(R.layout.activity_main);
     surfaceView = findViewById(R.id.surfaceview);
     displayRotationHelper = new DisplayRotationHelper(/*context=*/ this);
+    shaders = new ShaderUtil(gl, new AndroidAssets(this), StartupTrace.TRACER);
 
     // Set up renderer.
     surfaceView.setPreserveEGLContextOnPause(true);
-    surfaceView.setEGLContextClientVersion(2);
-    surfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0); // Alpha used for plane blending.
+    final boolean useGles3 = supportsGles3();
+    Log.i(TAG, "using OpenGL ES " + (useGles3 ? "3.0" : "2.0") + " backend");
+    if (useGles3) cameraUniforms = new CameraUniforms(gl);
+    if (GPU_COMPUTE_SCATTER && !CPU_IMAGE_FACE_MAPPING && supportsGles31()) {
+      faceMapper.setComputeScatter(new ComputeFaceScatter(gl));
+    }
+    if (PUSH_PULL_HOLE_FILLING) faceMapper.setHoleFilling(new FaceAtlasPushPull(gl));
+    surfaceView.setEGLContextClientVersion(useGles3 ? 3 : 2);
+    // Alpha used for plane blending and for marking the face in the UV pass. The stencil buffer
+    // limits the background restore after the UV pass to the face, see FramePipeline.
+    surfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 8);
     surfaceView.setRenderer(this);
     surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+    if (LOW_LATENCY_PACING) framePacer = new FramePacer(surfaceView);
     surfaceView.setWillNotDraw(false);
+    hud = new PerformanceHud(gl, pipeline, faceMapper, TARGET_FPS);
+    surfaceView.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View view) {
+        hud.setEnabled(!hud.isEnabled());
+      }
+    });
 
     installRequested = false;
 
-    rendererList.add(new FaceRenderer4Eyes(faceGeometry));
-    rendererList.add(new FaceRendererUpsideDown(faceGeometry));
-    rendererList.add(new FaceRendererLargeNose(faceGeometry));
-    rendererList.add(new FaceRendererUnshadedTexture(faceGeometry, "textures/grid.png"));
-    rendererList.add(new FaceRendererShadedTexture(faceGeometry, "textures/white.png"));
-    //rendererList.add(new FaceRendererUV(faceGeometry));
+    for (String name : FaceRenderer.FILTER_NAMES) {
+      rendererList.add(FaceRenderer.create(gl, faceGeometry, name));
+    }
+    //rendererList.add(FaceRenderer.create(gl, faceGeometry, "uv"));
     rendererIndex = 0;
+    if (filterUpsampler != null) {
+      for (FaceRenderer renderer : rendererList) renderer.setReducedResolution(true);
+    }
+
+    if (cameraUniforms != null) {
+      faceMapper.setCameraUniforms(cameraUniforms);
+      for (FaceRenderer renderer : rendererList) renderer.setCameraUniforms(cameraUniforms);
+      faceMapper.setAtlasWarp(FACE_ATLAS_WARP);
+      for (FaceRenderer renderer : rendererList) renderer.setAtlasWarp(FACE_ATLAS_WARP);
+    }
+
+    snapshotCapture = new SnapshotCapture(gl,
+        getExternalFilesDir(Environment.DIRECTORY_PICTURES), Bitmap.CompressFormat.JPEG, useGles3,
+        new SnapshotCapture.Listener() {
+          @Override
+          public void onSnapshotSaved(final File file) {
+            runOnUiThread(new Runnable() {
+              @Override
+              public void run() {
+                Toast.makeText(MainActivity.this, "Saved " + file.getName(), Toast.LENGTH_SHORT).show();
+              }
+            });
+          }
+
+          @Override
+          public void onSnapshotFailed(IOException e) {
+            runOnUiThread(new Runnable() {
+              @Override
+              public void run() {
+                Toast.makeText(MainActivity.this, "Failed to save the snapshot", Toast.LENGTH_SHORT).show();
+              }
+            });
+          }
+        });
+    startupTimelineDir = getExternalFilesDir(null);
+    StartupTrace.end(onCreatePhase);
+  }
+
+  private boolean supportsGles3() {
+    ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+    return activityManager != null
+        && activityManager.getDeviceConfigurationInfo().reqGlEsVersion >= 0x30000;
+  }
+
+  private boolean supportsGles31() {
+    ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+    return activityManager != null
+        && activityManager.getDeviceConfigurationInfo().reqGlEsVersion >= 0x30001;
   }
 
   @Override
@@ -119,10 +283,20 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
         }
 
         // Create the session.
+        StartupTimeline.Phase phase = StartupTrace.begin("Session.create");
         session = new Session(/* context= */ this, EnumSet.of(Session.Feature.FRONT_CAMERA));
+        StartupTrace.end(phase);
+        phase = StartupTrace.begin("Session.configure");
         Config config = new Config(session);
         config.setAugmentedFaceMode(Config.AugmentedFaceMode.MESH3D);
+        if (LOW_LATENCY_PACING) config.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
         session.configure(config);
+        new CameraConfigChooser(
+            getPreferences(MODE_PRIVATE),
+            new CameraConfigSelector(
+                CAMERA_MIN_TEXTURE_SHORT_SIDE, CAMERA_MIN_IMAGE_SHORT_SIDE, CAMERA_MIN_FPS))
+            .apply(session);
+        StartupTrace.end(phase);
 
       } catch (UnavailableArcoreNotInstalledException
           | UnavailableUserDeclinedInstallationException e) {
@@ -149,6 +323,7 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
     }
 
     // Note that order matters - see the note in onPause(), the reverse applies here.
+    final StartupTimeline.Phase resumePhase = StartupTrace.begin("Session.resume");
     try {
       session.resume();
     } catch (CameraNotAvailableException e) {
@@ -159,10 +334,13 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
       //messageSnackbarHelper.showError(this, "Camera not available. Please restart the app.");
       session = null;
       return;
+    } finally {
+      StartupTrace.end(resumePhase);
     }
 
     surfaceView.onResume();
     displayRotationHelper.onResume();
+    if (framePacer != null) framePacer.start();
   }
 
   @Override
@@ -173,11 +351,19 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
       // to query the session. If Session is paused before GLSurfaceView, GLSurfaceView may
       // still call session.update() and get a SessionPausedException.
       displayRotationHelper.onPause();
+      if (framePacer != null) framePacer.stop();
       surfaceView.onPause();
       session.pause();
     }
   }
 
+  @Override
+  protected void onDestroy() {
+    faceMapper.release();
+    snapshotCapture.release();
+    super.onDestroy();
+  }
+
   @Override
   public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] results) {
     if (!CameraPermissionHelper.hasCameraPermission(this)) {
@@ -202,16 +388,44 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
     GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
 
     // Prepare the rendering objects. This involves reading shaders, so may throw an IOException.
+    shaders.clearCompiledShaders();
+    final StartupTimeline.Phase surfacePhase = StartupTrace.begin("onSurfaceCreated");
     try {
       // Create the texture and pass it to ARCore session to be filled during update().
-      backgroundRenderer.createOnGlThread(/*context=*/ this);
+      StartupTimeline.Phase phase = StartupTrace.begin("BackgroundRenderer.createOnGlThread");
+      backgroundRenderer.createOnGlThread(shaders);
+      StartupTrace.end(phase);
 
+      phase = StartupTrace.begin("FaceGeometry.createOnGlThread");
       faceGeometry.createOnGlThread();
-      faceMapper.createOnGlThread(this);
-      for (FaceRenderer renderer : rendererList) renderer.createOnGlThread(this);
-
+      if (cameraUniforms != null) cameraUniforms.createOnGlThread();
+      StartupTrace.end(phase);
+      phase = StartupTrace.begin("FaceMapper.createOnGlThread");
+      faceMapper.createOnGlThread(shaders);
+      StartupTrace.end(phase);
+      for (FaceRenderer renderer : rendererList) {
+        phase = StartupTrace.begin(renderer.getClass().getSimpleName() + ".createOnGlThread");
+        renderer.createOnGlThread(shaders);
+        StartupTrace.end(phase);
+      }
+      phase = StartupTrace.begin("overlays.createOnGlThread");
+      if (filterUpsampler != null) filterUpsampler.createOnGlThread(shaders);
+      snapshotCapture.createOnGlThread();
+      hud.createOnGlThread(shaders);
+      StartupTrace.end(phase);
+
+      final ShaderPreprocessor preprocessor = shaders.getPreprocessor();
+      Log.i(TAG, String.format(
+          "shaders: %d variants, %d compiled (%d reused), preprocessing %.1f ms "
+              + "(%d files read, %d cache hits, %d unused attributes stripped), compiling %.1f ms",
+          preprocessor.getVariantCount(), shaders.getCompileCount(), shaders.getCompileReuseCount(),
+          preprocessor.getNanos() * 1e-6, preprocessor.getLoadCount(),
+          preprocessor.getIncludeCacheHits(), preprocessor.getStrippedAttributeCount(),
+          shaders.getCompileNanos() * 1e-6));
     } catch (IOException e) {
       Log.e(TAG, "Failed to read an asset file", e);
+    } finally {
+      StartupTrace.end(surfacePhase);
     }
   }
 
@@ -219,13 +433,16 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
   public void onSurfaceChanged(GL10 gl, int width, int height) {
     displayRotationHelper.onSurfaceChanged(width, height);
     GLES20.glViewport(0, 0, width, height);
+    surfaceWidth = width;
+    surfaceHeight = height;
     faceMapper.setDimensions(width, height);
+    pipeline.onSurfaceChanged(width, height);
   }
 
   @Override
   public void onDrawFrame(GL10 gl) {
     // Clear screen to notify driver it should not load any pixels from previous frame.
-    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_STENCIL_BUFFER_BIT);
 
     if (session == null) {
       return;
@@ -239,34 +456,49 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
 
       // Obtain the current frame from ARSession. When the configuration is set to
       // UpdateMode.BLOCKING (it is by default), this will throttle the rendering to the
-      // camera framerate.
+      // camera framerate. With LATEST_CAMERA_IMAGE, rendering is paced by FramePacer and
+      // the frame may have the same camera image as the previous one.
       Frame frame = session.update();
       Camera camera = frame.getCamera();
-
-      // If frame is ready, render camera preview image to the GL surface.
-      backgroundRenderer.draw(frame);
+      qualityController.onFrameStart();
+      frameCounter++;
+      final boolean newCameraImage =
+          framePacer == null || framePacer.onCameraFrame(frame.getTimestamp());
+      final QualityLevel quality = qualityController.getLevel();
+      // Face mapping is pointless without a new camera image
+      final boolean updateFaceMapping = newCameraImage
+          && cameraFrameCounter++ % quality.mappingInterval == 0;
 
       // Get projection matrix.
-      float[] projmtx = new float[16];
       camera.getProjectionMatrix(projmtx, 0, 0.1f, 100.0f);
 
-      // Get camera matrix and draw.
-      float[] viewmtx = new float[16];
+      // Get camera matrix.
       camera.getViewMatrix(viewmtx, 0);
 
-      for (AugmentedFace face : session.getAllTrackables(AugmentedFace.class)) {
-        faceGeometry.setToAugmentedFace(face);
-        FaceRenderer renderer = rendererList.get(rendererIndex);
+      if (cameraUniforms != null) cameraUniforms.update(viewmtx, projmtx);
 
-        if (renderer.needsFaceMapper()) {
-          faceMapper.updateModelMatrix(face.getCenterPose());
-          faceMapper.draw(viewmtx, projmtx);
-          backgroundRenderer.draw(frame);
-        }
+      faceScheduler.update(session.getAllTrackables(AugmentedFace.class), faceInfo);
+      final boolean wasIdle = idleMonitor.isIdle();
+      final boolean idle = idleMonitor.update(!faceScheduler.getTrackedFaces().isEmpty());
+      if (idle != wasIdle) onIdleChanged(idle);
 
-        renderer.updateModelMatrix(face.getCenterPose());
-        renderer.draw(viewmtx, projmtx, faceMapper.getFaceTextureId());
+      if (idle) {
+        pipeline.renderIdle(cameraFrame.set(frame));
+      } else {
+        // Draw the passes the current filter needs, see FramePipeline
+        pipeline.render(cameraFrame.set(frame), faceScheduler,
+            rendererList.get(rendererIndex), viewmtx, projmtx, updateFaceMapping);
       }
+      if (!StartupTrace.hasMark(StartupTrace.FIRST_FILTERED_FRAME)) markStartupFrame(idle);
+      snapshotCapture.onFrameRendered(surfaceWidth, surfaceHeight);
+      // after the snapshot readback, so that snapshots do not include the HUD
+      hud.draw(surfaceWidth, surfaceHeight);
+
+      if (framePacer != null) framePacer.onFrameRendered(newCameraImage);
+      // idle frames and frames that repeat the camera image skip most of the work: they would
+      // make the quality controller think there is room for more
+      if (!idle && newCameraImage && qualityController.onFrameEnd()) applyQualityLevel();
+      if (frameCounter % STATS_LOG_INTERVAL_FRAMES == 0) logStats();
 
     } catch (Throwable t) {
       // Avoid crashing the application due to unhandled exceptions.
@@ -274,7 +506,136 @@ public class MainActivity extends AppCompatActivity implements GLSurfaceView.Ren
     }
   }
 
+  /** Startup timeline marks of the first camera frame and the first frame with a face filter */
+  private void markStartupFrame(boolean idle) {
+    StartupTrace.mark(StartupTrace.FIRST_DRAW_FRAME, startupTimelineDir);
+    if (!idle && !faceScheduler.getTrackedFaces().isEmpty()) {
+      StartupTrace.mark(StartupTrace.FIRST_FILTERED_FRAME, startupTimelineDir);
+    }
+  }
+
+  private void onIdleChanged(boolean idle) {
+    if (idle) {
+      final long before = faceMapper.getReleasedBytes();
+      faceMapper.releaseTransientBuffers();
+      final long renderTargetBytes = pipeline.releaseRenderTargets();
+      releasedRenderTargetBytes += renderTargetBytes;
+      // the worker thread releases its copies later, they are in the totals of logStats
+      final long released = faceMapper.getReleasedBytes() - before + renderTargetBytes;
+      Log.i(TAG, String.format("idle: no face for %d ms, released %.1f MB", IDLE_AFTER_MS,
+          released / 1e6));
+    } else {
+      Log.i(TAG, "face found, leaving idle mode");
+    }
+    if (framePacer != null) framePacer.setFrameInterval(idle ? IDLE_FRAME_INTERVAL : 1);
+  }
+
+  private void applyQualityLevel() {
+    final QualityLevel quality = qualityController.getLevel();
+    Log.i(TAG, String.format("quality level %d (avg. frame time %.1f ms, budget %.1f ms): %s",
+        qualityController.getLevelIndex(),
+        qualityController.getAverageFrameMillisAtLastChange(),
+        qualityController.getBudgetMillis(),
+        quality));
+    faceMapper.setAtlasSize(quality.atlasSize);
+    faceMapper.setCaptureScale(quality.captureScale);
+  }
+
+  private void logStats() {
+    final RollingStats filterDrawMicros = pipeline.getFilterDrawMicros();
+    Log.i(TAG, String.format("face texture refresh: skip rate %.0f%%, avg. interval %.0f ms",
+        faceMapper.getRefreshSkipRate() * 100, faceMapper.getAverageRefreshIntervalMillis()));
+    final FaceAtlasCache<AugmentedFace, FaceAtlas> atlases = faceMapper.getAtlasCache();
+    Log.i(TAG, String.format(
+        "face textures: %d faces, %d pooled, %.1f / %.1f MB, %d hits, %d misses (%d from pool), %d expired, %d evicted",
+        atlases.getFaceCount(), atlases.getPooledCount(),
+        atlases.getMemoryBytes() / 1e6, atlases.getBudgetBytes() / 1e6,
+        atlases.getHitCount(), atlases.getMissCount(), atlases.getPoolReuseCount(),
+        atlases.getExpiredCount(), atlases.getEvictionCount()));
+    if (faceMapper.isComputeScatter()) {
+      Log.i(TAG, "face texture scatter: compute shader, no readback");
+    }
+    final FaceAtlasPushPull holeFilling = faceMapper.getHoleFilling();
+    if (holeFilling != null) {
+      Log.i(TAG, String.format("face texture hole filling: %d fills, %d draws, %.1f kB pyramids",
+          holeFilling.getFillCount(), holeFilling.getDrawCount(),
+          holeFilling.getAllocatedBytes() / 1e3));
+    }
+    final RollingStats handoff = faceMapper.getHandoffLatencyMillis();
+    Log.i(TAG, String.format(
+        "face texture worker: handoff avg. %.1f ms, max %.1f ms, %d stale frames, %d dropped jobs",
+        handoff.getMean(), handoff.getMax(),
+        faceMapper.getStaleFrameCount(), faceMapper.getDroppedJobCount()));
+    final int atlasSize = faceMapper.getAtlasSize(), uniformSize = faceMapper.getUniformAtlasSize();
+    Log.i(TAG, String.format(
+        "face texture uploads: %dx%d (%.0f%% of the texels of a uniform %dx%d), %.1f MB total",
+        atlasSize, atlasSize, 100.0 * atlasSize * atlasSize / (uniformSize * uniformSize),
+        uniformSize, uniformSize, faceMapper.getUploadBytes() / 1e6));
+    final long restores = pipeline.getMaskedRestoreCount() + pipeline.getFullRestoreCount();
+    if (restores > 0) {
+      // the full screen restore draws every pixel, the masked one only the faces
+      final double maskedFraction = pipeline.getMaskedRestoreCount() / (double) restores;
+      if (faceMapper.isComputeScatter()) {
+        // the coverage is measured on the read-back UV images, which the compute scatter skips
+        Log.i(TAG, String.format(
+            "background restore: %.0f%% stencil-masked, face coverage not measured with the compute scatter",
+            maskedFraction * 100));
+      } else {
+        final double coverage = faceMapper.getFaceCoverage().getMean();
+        Log.i(TAG, String.format(
+            "background restore: %.0f%% stencil-masked, faces cover %.1f%% of the screen, "
+                + "fill rate %.0f%% of full-screen restores",
+            maskedFraction * 100, coverage * 100,
+            ((1 - maskedFraction) + maskedFraction * coverage) * 100));
+      }
+    }
+    if (filterUpsampler != null) {
+      // the filter shader runs on about the same share of the bounding boxes at any resolution
+      final double pixels = filterUpsampler.getBoundsPixels().getMean();
+      final double scale = filterUpsampler.getScale();
+      Log.i(TAG, String.format(
+          "filter at %.0f%% resolution: faces in %.0fk pixels per frame, filter shaded on up to "
+              + "%.0fk fragments instead of %.0fk (%.0f%%), upsampled on %.0fk",
+          scale * 100, pixels * 1e-3, pixels * scale * scale * 1e-3, pixels * 1e-3,
+          scale * scale * 100, pixels * 1e-3));
+    }
+    Log.i(TAG, String.format("filter draw CPU time (OpenGL ES %s): avg. %.1f us, max %.1f us",
+        cameraUniforms != null ? "3.0" : "2.0",
+        filterDrawMicros.getMean(), filterDrawMicros.getMax()));
+    final FaceRenderer renderer = rendererList.get(rendererIndex);
+    Log.i(TAG, String.format("filter %s: %d of %d triangles drawn per face",
+        renderer.getClass().getSimpleName(), renderer.getDrawnTriangleCount(),
+        faceGeometry.getTriangleCount(FaceGeometry.ALL_TRIANGLES)));
+    final RollingStats snapshotMicros = snapshotCapture.getRenderThreadMicros();
+    if (snapshotMicros.getCount() > 0) {
+      Log.i(TAG, String.format("snapshot readback on the render thread: avg. %.0f us, max %.0f us",
+          snapshotMicros.getMean(), snapshotMicros.getMax()));
+    }
+    Log.i(TAG, String.format(
+        "faces: %d mapped, %d deferred (budget %d per frame), %d not tracked in %d frames",
+        faceScheduler.getTotalProcessed(), faceScheduler.getTotalDeferred(),
+        faceScheduler.getMaxMappedFaces(), faceScheduler.getTotalSkipped(), frameCounter));
+    if (idleMonitor.getIdleCount() > 0) {
+      Log.i(TAG, String.format(
+          "idle: %.1f s in total, %d times, %.1f MB released",
+          idleMonitor.getIdleNanos() * 1e-9, idleMonitor.getIdleCount(),
+          (releasedRenderTargetBytes + faceMapper.getReleasedBytes()) / 1e6));
+    }
+    if (framePacer != null) {
+      final RollingStats latency = framePacer.getLatencyMillis();
+      Log.i(TAG, String.format(
+          "camera-to-display latency: avg. %.1f ms, max %.1f ms, %d duplicate camera frames",
+          latency.getMean(), latency.getMax(), framePacer.getDuplicateFrameCount()));
+    }
+  }
+
   public void nextFilter(View view) {
     rendererIndex = (rendererIndex + 1) % rendererList.size();
   }
+
+  public void takeSnapshot(View view) {
+    if (!snapshotCapture.request()) {
+      Toast.makeText(this, "Still saving the previous snapshots", Toast.LENGTH_SHORT).show();
+    }
+  }
 }
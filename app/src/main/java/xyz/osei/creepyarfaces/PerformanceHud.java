@@ -0,0 +1,305 @@
+package xyz.osei.creepyarfaces;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * On-screen frame time graph and counters: frame time, the CPU time of each pass of
+ * {@link FramePipeline}, the face texture readback bandwidth and the cost of the HUD itself.
+ * Everything is one triangle list in a dynamic vertex buffer, textured with a glyph atlas that
+ * is rendered from the monospace system font at startup, and drawn with a single draw call.
+ * Nothing is allocated per frame.
+ */
+class PerformanceHud {
+    private static final String TAG = PerformanceHud.class.getSimpleName();
+
+    private static final String VERTEX_SHADER_NAME = "shaders/hud.vert";
+    private static final String FRAGMENT_SHADER_NAME = "shaders/hud.frag";
+
+    // Glyph atlas: printable ASCII and the solid cell, see HudMesh
+    private static final int ATLAS_COLUMNS = 16;
+    private static final int ATLAS_ROWS = 6;
+    private static final int CELL_WIDTH = 16;
+    private static final int CELL_HEIGHT = 28;
+    private static final int MAX_QUADS = 640;
+
+    private static final int GRAPH_FRAMES = 120;
+    private static final float GRAPH_HEIGHT_PX = 80;
+    private static final float MARGIN_PX = 12;
+    // the HUD was designed at this width and is scaled up on larger screens
+    private static final float REFERENCE_WIDTH_PX = 720;
+
+    private final Gl gl;
+    private final FramePipeline<?> pipeline;
+    private final FaceMapper<?> faceMapper;
+    private final float budgetMillis;
+
+    private volatile boolean enabled;
+
+    private final HudMesh mesh = new HudMesh(MAX_QUADS, ATLAS_COLUMNS, ATLAS_ROWS);
+    private final FloatBuffer vertexData = ByteBuffer
+            .allocateDirect(mesh.getVertices().length * 4)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    private final StringBuilder line = new StringBuilder();
+
+    // frame-to-frame interval of the last frames for the graph, a ring buffer
+    private final float[] frameMillis = new float[GRAPH_FRAMES];
+    private int graphIndex;
+    private final RollingStats frameIntervalMillis = new RollingStats(30);
+    private final RollingStats hudMicros = new RollingStats(30);
+    private long lastDrawNanos;
+    private long lastReadbackBytes, lastReadbackNanos;
+    private double readbackMegabytesPerSecond;
+    private int previousVertexCount;
+
+    private int program;
+    private int positionAttribute, texCoordAttribute, colorAttribute;
+    private int screenSizeUniform, textureUniform;
+    private int vertexBuffer, atlasTexture;
+
+    /**
+     * @param targetFps the frame time budget is shown in the graph
+     */
+    PerformanceHud(Gl gl, FramePipeline<?> pipeline, FaceMapper<?> faceMapper, double targetFps) {
+        this.gl = gl;
+        this.pipeline = pipeline;
+        this.faceMapper = faceMapper;
+        this.budgetMillis = (float) (1000 / targetFps);
+    }
+
+    /** Can be called from any thread */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void createOnGlThread(ShaderUtil shaders) throws IOException {
+        final int vertexShader = shaders.loadGLShader(TAG, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+        final int fragmentShader = shaders.loadGLShader(TAG, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+
+        program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        GLES20.glUseProgram(program);
+        ShaderUtil.checkGLError(gl, TAG, "Program creation");
+
+        positionAttribute = GLES20.glGetAttribLocation(program, "a_Position");
+        texCoordAttribute = GLES20.glGetAttribLocation(program, "a_TexCoord");
+        colorAttribute = GLES20.glGetAttribLocation(program, "a_Color");
+        screenSizeUniform = GLES20.glGetUniformLocation(program, "u_ScreenSize");
+        textureUniform = GLES20.glGetUniformLocation(program, "u_Texture");
+
+        final int[] names = new int[1];
+        GLES20.glGenBuffers(1, names, 0);
+        vertexBuffer = names[0];
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffer);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexData.capacity() * 4, null, GLES20.GL_DYNAMIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        GLES20.glGenTextures(1, names, 0);
+        atlasTexture = names[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTexture);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        final Bitmap atlas = createGlyphAtlas();
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, atlas, 0);
+        atlas.recycle();
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        ShaderUtil.checkGLError(gl, TAG, "createOnGlThread");
+    }
+
+    private static Bitmap createGlyphAtlas() {
+        final Bitmap bitmap = Bitmap.createBitmap(
+                ATLAS_COLUMNS * CELL_WIDTH, ATLAS_ROWS * CELL_HEIGHT, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.WHITE);
+        paint.setTypeface(Typeface.MONOSPACE);
+        paint.setTextSize(CELL_HEIGHT * 0.8f);
+
+        final int cells = ATLAS_COLUMNS * ATLAS_ROWS;
+        for (int cell = 0; cell < cells; cell++) {
+            final float x = (cell % ATLAS_COLUMNS) * CELL_WIDTH;
+            final float y = (cell / ATLAS_COLUMNS) * CELL_HEIGHT;
+            if (cell == cells - 1) {
+                canvas.drawRect(x, y, x + CELL_WIDTH, y + CELL_HEIGHT, paint);
+            } else {
+                final String glyph = String.valueOf(HudMesh.getChar(cell));
+                canvas.drawText(glyph, x + (CELL_WIDTH - paint.measureText(glyph)) / 2,
+                        y + CELL_HEIGHT * 0.78f, paint);
+            }
+        }
+        return bitmap;
+    }
+
+    /** Call on the GL thread after the frame is drawn, draws the HUD if it is enabled */
+    public void draw(int width, int height) {
+        final long start = System.nanoTime();
+        if (lastDrawNanos != 0) {
+            final float interval = (start - lastDrawNanos) * 1e-6f;
+            frameMillis[graphIndex] = interval;
+            graphIndex = (graphIndex + 1) % GRAPH_FRAMES;
+            frameIntervalMillis.add(interval);
+        }
+        lastDrawNanos = start;
+        updateReadbackBandwidth(start);
+        if (!enabled) return;
+
+        buildMesh(width);
+        previousVertexCount = mesh.getVertexCount();
+        vertexData.clear();
+        vertexData.put(mesh.getVertices(), 0, mesh.getFloatCount());
+        vertexData.flip();
+
+        GLES20.glUseProgram(program);
+        GLES20.glUniform2f(screenSizeUniform, width, height);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTexture);
+        GLES20.glUniform1i(textureUniform, 0);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffer);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, mesh.getFloatCount() * 4, vertexData);
+        final int stride = HudMesh.FLOATS_PER_VERTEX * 4;
+        GLES20.glVertexAttribPointer(positionAttribute, 2, GLES20.GL_FLOAT, false, stride, 0);
+        GLES20.glVertexAttribPointer(texCoordAttribute, 2, GLES20.GL_FLOAT, false, stride, 2 * 4);
+        GLES20.glVertexAttribPointer(colorAttribute, 4, GLES20.GL_FLOAT, false, stride, 4 * 4);
+        GLES20.glEnableVertexAttribArray(positionAttribute);
+        GLES20.glEnableVertexAttribArray(texCoordAttribute);
+        GLES20.glEnableVertexAttribArray(colorAttribute);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, mesh.getVertexCount());
+
+        GLES20.glDisable(GLES20.GL_BLEND);
+        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        GLES20.glDisableVertexAttribArray(positionAttribute);
+        GLES20.glDisableVertexAttribArray(texCoordAttribute);
+        GLES20.glDisableVertexAttribArray(colorAttribute);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        ShaderUtil.checkGLError(gl, TAG, "draw");
+
+        // CPU time, including the vertex upload and issuing the draw call
+        hudMicros.add((System.nanoTime() - start) * 1e-3);
+    }
+
+    private void updateReadbackBandwidth(long now) {
+        // averaged over about a second
+        if (now - lastReadbackNanos < 1000000000L) return;
+        final long bytes = faceMapper.getReadbackBytes();
+        if (lastReadbackNanos != 0) {
+            readbackMegabytesPerSecond = (bytes - lastReadbackBytes) * 1e3 / (now - lastReadbackNanos);
+        }
+        lastReadbackBytes = bytes;
+        lastReadbackNanos = now;
+    }
+
+    private void buildMesh(int width) {
+        final float scale = Math.max(1, width / REFERENCE_WIDTH_PX);
+        final float charWidth = CELL_WIDTH * 0.8f * scale, charHeight = CELL_HEIGHT * 0.8f * scale;
+        final float lineHeight = charHeight * 1.1f;
+        final float graphHeight = GRAPH_HEIGHT_PX * scale;
+        final float x0 = MARGIN_PX * scale, y0 = MARGIN_PX * scale * 4;
+        final List<FramePipeline.TimedPass> passes = pipeline.getTimedPasses();
+        final int lineCount = 4 + passes.size();
+        final float panelWidth = charWidth * 30;
+        final float textTop = y0 + graphHeight + lineHeight * 0.5f;
+
+        mesh.clear();
+        mesh.addRect(x0 - charWidth * 0.5f, y0 - charWidth * 0.5f,
+                x0 + panelWidth, textTop + lineCount * lineHeight, 0, 0, 0, 0.5f);
+        addGraph(x0, y0, panelWidth - charWidth, graphHeight);
+
+        float y = textTop;
+        final double meanInterval = frameIntervalMillis.getMean();
+        line.setLength(0);
+        line.append("FPS ");
+        HudMesh.appendFixed(line, meanInterval > 0 ? 1000 / meanInterval : 0, 1);
+        line.append("  frame ");
+        HudMesh.appendFixed(line, meanInterval, 1);
+        line.append(" ms, max ");
+        HudMesh.appendFixed(line, frameIntervalMillis.getMax(), 1);
+        addLine(x0, y, charWidth, charHeight);
+        y += lineHeight;
+
+        for (int i = 0; i < passes.size(); i++) {
+            final FramePipeline.TimedPass pass = passes.get(i);
+            line.setLength(0);
+            line.append(pass.getName());
+            while (line.length() < 17) line.append(' ');
+            HudMesh.appendFixed(line, pass.getMicros().getMean() * 1e-3, 2);
+            line.append(" ms");
+            addLine(x0, y, charWidth, charHeight);
+            y += lineHeight;
+        }
+
+        line.setLength(0);
+        line.append("filter draw CPU   ");
+        HudMesh.appendFixed(line, pipeline.getFilterDrawMicros().getMean() * 1e-3, 2);
+        line.append(" ms");
+        addLine(x0, y, charWidth, charHeight);
+        y += lineHeight;
+
+        line.setLength(0);
+        line.append("readback ");
+        HudMesh.appendFixed(line, readbackMegabytesPerSecond, 1);
+        line.append(" MB/s");
+        addLine(x0, y, charWidth, charHeight);
+        y += lineHeight;
+
+        line.setLength(0);
+        line.append("HUD ");
+        HudMesh.appendFixed(line, hudMicros.getMean() * 1e-3, 2);
+        line.append(" ms CPU, 1 draw, ");
+        // of the previous frame, the quads of this line are not known yet
+        line.append(previousVertexCount / 6);
+        line.append(" quads");
+        addLine(x0, y, charWidth, charHeight);
+    }
+
+    private void addLine(float x, float y, float charWidth, float charHeight) {
+        mesh.addText(line, x, y, charWidth, charHeight, 1, 1, 1, 1);
+    }
+
+    /** Frame time bars, oldest on the left, and a line at the frame time budget */
+    private void addGraph(float x, float y, float width, float height) {
+        final float maxMillis = budgetMillis * 2;
+        final float barWidth = width / GRAPH_FRAMES;
+        for (int i = 0; i < GRAPH_FRAMES; i++) {
+            final float millis = frameMillis[(graphIndex + i) % GRAPH_FRAMES];
+            final float barHeight = Math.min(millis / maxMillis, 1) * height;
+            final float left = x + i * barWidth;
+            if (millis > budgetMillis * 1.5f) {
+                mesh.addRect(left, y + height - barHeight, left + barWidth, y + height, 1, 0.2f, 0.2f, 0.9f);
+            } else if (millis > budgetMillis * 1.1f) {
+                mesh.addRect(left, y + height - barHeight, left + barWidth, y + height, 1, 0.8f, 0.2f, 0.9f);
+            } else {
+                mesh.addRect(left, y + height - barHeight, left + barWidth, y + height, 0.2f, 1, 0.3f, 0.9f);
+            }
+        }
+        final float budgetY = y + height * (1 - budgetMillis / maxMillis);
+        mesh.addRect(x, budgetY - 1, x + width, budgetY + 1, 1, 1, 1, 0.6f);
+    }
+}
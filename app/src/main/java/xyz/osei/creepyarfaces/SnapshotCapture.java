@@ -0,0 +1,291 @@
+package xyz.osei.creepyarfaces;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves the composed frame to an image file without stalling the render thread. On OpenGL ES
+ * 3.0, the frame is read into a pixel buffer object and mapped a few frames later, once its
+ * fence has signaled. On OpenGL ES 2.0, there is no asynchronous readback and glReadPixels
+ * waits for the frame to finish. The pixels are handed to an encoder thread that streams the
+ * image to the file. At most {@link #MAX_PENDING} snapshots are in progress, further requests
+ * are refused.
+ */
+class SnapshotCapture {
+    private static final String TAG = SnapshotCapture.class.getSimpleName();
+
+    private static final int MAX_PENDING = 2;
+    private static final int JPEG_QUALITY = 95;
+
+    interface Listener {
+        /** Called on the encoder thread */
+        void onSnapshotSaved(File file);
+
+        /** Called on the encoder thread */
+        void onSnapshotFailed(IOException e);
+    }
+
+    private static final class Snapshot {
+        ByteBuffer pixels;
+        int width, height;
+    }
+
+    // An ES 3.0 readback in progress
+    private static final class PendingReadback {
+        final int pixelBuffer;
+        long fence;
+        int width, height;
+
+        PendingReadback(int pixelBuffer) {
+            this.pixelBuffer = pixelBuffer;
+        }
+    }
+
+    private final Gl gl;
+    private final File directory;
+    private final Bitmap.CompressFormat format;
+    private final Listener listener;
+    private final boolean es3;
+
+    // snapshots requested and not yet saved, bounded by MAX_PENDING
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // requests for which the render thread has not started a readback
+    private final AtomicInteger requestedCount = new AtomicInteger();
+
+    private final BufferPool pixelPool = new BufferPool(MAX_PENDING);
+    private final LinkedBlockingQueue<Snapshot> encodeQueue = new LinkedBlockingQueue<>();
+    private final Thread encoderThread;
+
+    // owned by the render thread
+    private final List<PendingReadback> readbacks = new ArrayList<>();
+    private final List<PendingReadback> freeReadbacks = new ArrayList<>();
+    private final RollingStats renderThreadMicros = new RollingStats(20);
+
+    // owned by the encoder thread
+    private Bitmap bitmap;
+    private byte[] rowBytes, flipRowBytes;
+
+    /**
+     * @param es3 read back through pixel buffer objects, requires an OpenGL ES 3.0 context
+     */
+    SnapshotCapture(Gl gl, File directory, Bitmap.CompressFormat format, boolean es3,
+            Listener listener) {
+        this.gl = gl;
+        this.directory = directory;
+        this.format = format;
+        this.es3 = es3;
+        this.listener = listener;
+        encoderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encodeLoop();
+            }
+        }, "SnapshotEncoder");
+        encoderThread.setDaemon(true);
+        encoderThread.start();
+    }
+
+    /**
+     * Requests a snapshot of the next rendered frame. Can be called from any thread.
+     *
+     * @return false if too many snapshots are already in progress
+     */
+    public boolean request() {
+        if (pendingCount.incrementAndGet() > MAX_PENDING) {
+            pendingCount.decrementAndGet();
+            return false;
+        }
+        requestedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Call on the GL thread when the GL context is (re)created. Readbacks of the previous
+     * context are dropped.
+     */
+    public void createOnGlThread() {
+        pendingCount.addAndGet(-readbacks.size());
+        readbacks.clear();
+        freeReadbacks.clear();
+    }
+
+    /**
+     * Call on the GL thread after the frame is drawn. Finishes readbacks whose frames the GPU
+     * has completed and starts a readback of this frame if a snapshot was requested.
+     */
+    public void onFrameRendered(int width, int height) {
+        if (readbacks.isEmpty() && requestedCount.get() == 0) return;
+        final long start = System.nanoTime();
+
+        if (es3) finishReadbacks();
+        if (requestedCount.get() > 0) {
+            requestedCount.decrementAndGet();
+            if (es3) startReadback(width, height);
+            else readPixels(width, height);
+        }
+
+        renderThreadMicros.add((System.nanoTime() - start) * 1e-3);
+        ShaderUtil.checkGLError(gl, TAG, "onFrameRendered");
+    }
+
+    private void startReadback(int width, int height) {
+        final PendingReadback readback;
+        if (freeReadbacks.isEmpty()) {
+            final int[] buffers = new int[1];
+            GLES20.glGenBuffers(1, buffers, 0);
+            readback = new PendingReadback(buffers[0]);
+        } else {
+            readback = freeReadbacks.remove(freeReadbacks.size() - 1);
+        }
+        readback.width = width;
+        readback.height = height;
+
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, readback.pixelBuffer);
+        GLES20.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, width * height * 4, null, GLES30.GL_STREAM_READ);
+        // returns immediately, the copy happens when the GPU gets to it
+        GLES30.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        readback.fence = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        readbacks.add(readback);
+    }
+
+    private void finishReadbacks() {
+        for (int i = 0; i < readbacks.size(); i++) {
+            final PendingReadback readback = readbacks.get(i);
+            // zero timeout: only checks the fence
+            final int status = GLES30.glClientWaitSync(readback.fence, 0, 0);
+            if (status != GLES30.GL_ALREADY_SIGNALED && status != GLES30.GL_CONDITION_SATISFIED) continue;
+            GLES30.glDeleteSync(readback.fence);
+
+            readbacks.remove(i--);
+            freeReadbacks.add(readback);
+
+            final int bytes = readback.width * readback.height * 4;
+            GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, readback.pixelBuffer);
+            final ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(
+                    GLES30.GL_PIXEL_PACK_BUFFER, 0, bytes, GLES30.GL_MAP_READ_BIT);
+            if (mapped == null) {
+                Log.e(TAG, "glMapBufferRange failed");
+                GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            // never null: there are as many pooled buffers as pending snapshots
+            final ByteBuffer pixels = pixelPool.acquire(bytes);
+            pixels.put(mapped);
+            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+            GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+
+            submit(pixels, readback.width, readback.height);
+        }
+    }
+
+    private void readPixels(int width, int height) {
+        final ByteBuffer pixels = pixelPool.acquire(width * height * 4);
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+        submit(pixels, width, height);
+    }
+
+    private void submit(ByteBuffer pixels, int width, int height) {
+        final Snapshot snapshot = new Snapshot();
+        snapshot.pixels = pixels;
+        snapshot.width = width;
+        snapshot.height = height;
+        encodeQueue.add(snapshot);
+    }
+
+    private void encodeLoop() {
+        while (true) {
+            final Snapshot snapshot;
+            try {
+                snapshot = encodeQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                final File file = encode(snapshot);
+                listener.onSnapshotSaved(file);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to save a snapshot", e);
+                listener.onSnapshotFailed(e);
+            } finally {
+                pixelPool.release(snapshot.pixels);
+                pendingCount.decrementAndGet();
+            }
+        }
+    }
+
+    private File encode(Snapshot snapshot) throws IOException {
+        final int width = snapshot.width, height = snapshot.height;
+        flipRows(snapshot.pixels, width, height);
+        if (format == Bitmap.CompressFormat.PNG) makeOpaque(snapshot.pixels);
+
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            if (bitmap != null) bitmap.recycle();
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        snapshot.pixels.rewind();
+        // ARGB_8888 is stored as RGBA bytes
+        bitmap.copyPixelsFromBuffer(snapshot.pixels);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        final String name = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US).format(new Date());
+        final File file = new File(directory, "snapshot-" + name
+                + (format == Bitmap.CompressFormat.PNG ? ".png" : ".jpg"));
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            if (!bitmap.compress(format, JPEG_QUALITY, out)) throw new IOException("encoding failed");
+        }
+        return file;
+    }
+
+    /** glReadPixels returns the bottom row first, images start from the top */
+    private void flipRows(ByteBuffer pixels, int width, int height) {
+        final int rowLength = width * 4;
+        if (rowBytes == null || rowBytes.length != rowLength) {
+            rowBytes = new byte[rowLength];
+            flipRowBytes = new byte[rowLength];
+        }
+        for (int top = 0, bottom = height - 1; top < bottom; top++, bottom--) {
+            pixels.position(top * rowLength);
+            pixels.get(rowBytes);
+            pixels.position(bottom * rowLength);
+            pixels.get(flipRowBytes);
+            pixels.position(bottom * rowLength);
+            pixels.put(rowBytes);
+            pixels.position(top * rowLength);
+            pixels.put(flipRowBytes);
+        }
+    }
+
+    /** The filters blend into the alpha channel of the surface too */
+    private static void makeOpaque(ByteBuffer pixels) {
+        for (int i = 3; i < pixels.limit(); i += 4) pixels.put(i, (byte) 255);
+    }
+
+    /** Time the render thread spends on snapshots per frame with snapshot work */
+    public RollingStats getRenderThreadMicros() {
+        return renderThreadMicros;
+    }
+
+    public void release() {
+        encoderThread.interrupt();
+    }
+}
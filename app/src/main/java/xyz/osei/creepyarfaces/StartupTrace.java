@@ -0,0 +1,89 @@
+package xyz.osei.creepyarfaces;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Startup phases as {@link Trace} sections, visible in systrace / Perfetto, and in a
+ * {@link StartupTimeline} from the process start, which is written to a file for the startup
+ * benchmark (StartupBenchmark in the headless module). The marks are of the first frames of the
+ * process, so a cold start is only measured if the process was not running.
+ */
+final class StartupTrace {
+  private static final String TAG = StartupTrace.class.getSimpleName();
+
+  static final String FIRST_DRAW_FRAME = "firstDrawFrame";
+  static final String FIRST_FILTERED_FRAME = "firstFilteredFrame";
+  static final String TIMELINE_FILE_NAME = "startup-timeline.tsv";
+
+  private static final StartupTimeline timeline = new StartupTimeline(
+      Process.getStartElapsedRealtime() * 1000000L,
+      new Clock() {
+        @Override
+        public long nanoTime() {
+          return SystemClock.elapsedRealtimeNanos();
+        }
+      });
+
+  /** The phases of {@link #begin} and {@link #end}, for the classes of the core module */
+  static final StartupTimeline.Tracer TRACER = new StartupTimeline.Tracer() {
+    @Override
+    public StartupTimeline.Phase begin(String name) {
+      return StartupTrace.begin(name);
+    }
+
+    @Override
+    public void end(StartupTimeline.Phase phase) {
+      StartupTrace.end(phase);
+    }
+  };
+
+  private StartupTrace() {}
+
+  /** Starts a phase, which must be ended on the same thread with {@link #end} */
+  static StartupTimeline.Phase begin(String name) {
+    // section names are limited to 127 characters
+    Trace.beginSection(name.length() > 127 ? name.substring(0, 127) : name);
+    return timeline.begin(name);
+  }
+
+  static void end(StartupTimeline.Phase phase) {
+    timeline.end(phase);
+    Trace.endSection();
+  }
+
+  /**
+   * Records the first occurrence of an instant, and writes the timeline so far to the file, so
+   * that the file always has the latest mark.
+   */
+  static void mark(String name, File directory) {
+    if (timeline.hasMark(name)) return;
+    timeline.mark(name);
+    Log.i(TAG, String.format("%s at %.1f ms from process start", name,
+        timeline.getMarkNanos(name) * 1e-6));
+    if (directory != null) write(new File(directory, TIMELINE_FILE_NAME));
+  }
+
+  static boolean hasMark(String name) {
+    return timeline.hasMark(name);
+  }
+
+  private static void write(File file) {
+    // renamed when complete, so that a reader polling the file never sees a partial timeline
+    final File temporary = new File(file.getPath() + ".tmp");
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8")) {
+      timeline.write(out);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write " + file, e);
+      return;
+    }
+    if (!temporary.renameTo(file)) Log.w(TAG, "Failed to write " + file);
+  }
+}
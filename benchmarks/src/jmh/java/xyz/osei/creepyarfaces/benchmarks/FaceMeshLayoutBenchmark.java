@@ -0,0 +1,40 @@
+package xyz.osei.creepyarfaces.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import xyz.osei.creepyarfaces.FaceMeshLayout;
+
+/**
+ * Vertex attribute upload preparation done in FaceGeometry.setToFace for every face
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FaceMeshLayoutBenchmark {
+    private FloatBuffer vertices, texCoords, normals;
+    private FaceMeshLayout layout;
+
+    @Setup
+    public void setUp() {
+        final int n = SyntheticFrames.FACE_MESH_VERTICES;
+        vertices = SyntheticFrames.floats(n * 3);
+        texCoords = SyntheticFrames.floats(n * 2);
+        normals = SyntheticFrames.floats(n * 3);
+        layout = new FaceMeshLayout();
+    }
+
+    @Benchmark
+    public FloatBuffer pack() {
+        layout.pack(vertices, texCoords, normals);
+        return layout.getStagingBuffer();
+    }
+}
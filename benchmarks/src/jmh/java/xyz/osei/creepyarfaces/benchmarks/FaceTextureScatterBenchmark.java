@@ -0,0 +1,50 @@
+package xyz.osei.creepyarfaces.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import xyz.osei.creepyarfaces.FaceTextureScatter;
+
+/**
+ * The UV image -> face atlas scatter done in FaceMapper.updateFaceTexture on every frame
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FaceTextureScatterBenchmark {
+    @Param({"720x1280", "1080x1920", "1440x2960"})
+    public String screenSize;
+
+    // fraction of the screen covered by the face mesh
+    @Param({"0.05", "0.2", "0.5"})
+    public double faceCoverage;
+
+    private int width, height;
+    private byte[] uvBytes, videoBytes, faceBytes;
+    private FaceTextureScatter scatter;
+
+    @Setup
+    public void setUp() {
+        final String[] dims = screenSize.split("x");
+        width = Integer.parseInt(dims[0]);
+        height = Integer.parseInt(dims[1]);
+        uvBytes = SyntheticFrames.uvImage(width, height, faceCoverage);
+        videoBytes = SyntheticFrames.videoImage(width, height);
+        scatter = new FaceTextureScatter(256, 256);
+        faceBytes = new byte[scatter.getFaceWidth() * scatter.getFaceHeight() * 4];
+    }
+
+    @Benchmark
+    public byte[] scatter() {
+        scatter.scatter(uvBytes, videoBytes, width, height, faceBytes);
+        return faceBytes;
+    }
+}
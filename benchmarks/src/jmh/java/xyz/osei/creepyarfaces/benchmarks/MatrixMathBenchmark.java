@@ -0,0 +1,32 @@
+package xyz.osei.creepyarfaces.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import xyz.osei.creepyarfaces.MatrixMath;
+
+/**
+ * Per-frame model-view-projection composition done in FaceRenderer.draw and FaceMapper.draw
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MatrixMathBenchmark {
+    private final float[] view = SyntheticFrames.matrix(1);
+    private final float[] projection = SyntheticFrames.matrix(2);
+    private final float[] model = SyntheticFrames.matrix(3);
+    private final float[] modelView = new float[16];
+    private final float[] modelViewProjection = new float[16];
+
+    @Benchmark
+    public float[] composeModelViewProjection() {
+        MatrixMath.composeModelViewProjection(view, projection, model, modelView, modelViewProjection);
+        return modelViewProjection;
+    }
+}
@@ -0,0 +1,72 @@
+package xyz.osei.creepyarfaces.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Generates synthetic inputs resembling what the app sees on the device
+ */
+final class SyntheticFrames {
+    // Number of vertices in the ARCore Augmented Faces mesh
+    static final int FACE_MESH_VERTICES = 468;
+
+    // GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1.0f) as bytes
+    private static final byte CLEAR_COLOR = (byte)(0.1f * 255);
+
+    private SyntheticFrames() {}
+
+    /**
+     * An RGBA UV image with an elliptical "face" covering the given fraction of the screen
+     */
+    static byte[] uvImage(int width, int height, double coverage) {
+        final byte[] uv = new byte[width * height * 4];
+        final double aspect = 1.5; // face height / width
+        final double rx = Math.sqrt(coverage * width * height / (Math.PI * aspect));
+        final double ry = rx * aspect;
+        final double cx = width * 0.5, cy = height * 0.5;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int idx = (y * width + x) * 4;
+                final double dx = (x - cx) / rx, dy = (y - cy) / ry;
+                if (dx * dx + dy * dy <= 1.0) {
+                    uv[idx] = (byte)(int)((dx * 0.5 + 0.5) * 255);
+                    uv[idx + 1] = (byte)(int)((dy * 0.5 + 0.5) * 255);
+                    uv[idx + 2] = 0;
+                    uv[idx + 3] = 0;
+                } else {
+                    uv[idx] = CLEAR_COLOR;
+                    uv[idx + 1] = CLEAR_COLOR;
+                    uv[idx + 2] = CLEAR_COLOR;
+                    uv[idx + 3] = (byte)255;
+                }
+            }
+        }
+        return uv;
+    }
+
+    static byte[] videoImage(int width, int height) {
+        final byte[] video = new byte[width * height * 4];
+        new Random(1234).nextBytes(video);
+        return video;
+    }
+
+    static FloatBuffer floats(int count) {
+        final FloatBuffer buf = ByteBuffer.allocateDirect(count * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        final Random random = new Random(count);
+        for (int i = 0; i < count; i++) buf.put(random.nextFloat());
+        buf.rewind();
+        return buf;
+    }
+
+    static float[] matrix(long seed) {
+        final float[] m = new float[16];
+        final Random random = new Random(seed);
+        for (int i = 0; i < m.length; i++) m[i] = random.nextFloat() * 2 - 1;
+        return m;
+    }
+}
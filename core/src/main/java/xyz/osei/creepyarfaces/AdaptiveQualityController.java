@@ -0,0 +1,110 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steps between quality levels to keep the per-frame work within a frame time budget.
+ * The frame time is the time between {@link #onFrameStart()} and {@link #onFrameEnd()}, i.e.,
+ * the time spent on rendering, not on waiting for the next camera frame. Frames that do not
+ * represent the load, e.g., ones that repeat the previous camera image, are left out by not
+ * calling {@link #onFrameEnd()} for them.
+ *
+ * The quality is lowered when the moving average exceeds the budget and raised only when it
+ * falls clearly below it. After each change, the window is restarted and further changes are
+ * suppressed for a cooldown period, which avoids oscillating between two levels. If the quality
+ * has to be lowered right after raising it, the cooldown before the next raise is doubled, so a
+ * level that is just over the budget is only retried every now and then.
+ */
+public final class AdaptiveQualityController {
+    // raise the quality only if the frame time is below this fraction of the budget
+    private static final double UPGRADE_HEADROOM = 0.6;
+    private static final long COOLDOWN_NANOS = 2000L * 1000 * 1000;
+    private static final long MAX_UPGRADE_COOLDOWN_NANOS = 60000L * 1000 * 1000;
+
+    private final List<QualityLevel> levels;
+    private final double budgetMillis;
+    private final RollingStats frameMillis;
+    private final Clock clock;
+
+    private int levelIndex = 0;
+    private long frameStartNanos = -1;
+    private long lastChangeNanos;
+    private double averageAtLastChange;
+    private long upgradeCooldownNanos = COOLDOWN_NANOS;
+    private boolean lastChangeWasUpgrade;
+
+    /**
+     * @param levels quality levels, from the highest to the lowest quality
+     * @param targetFps target frame rate that defines the frame time budget
+     * @param windowSize number of frames to average over
+     */
+    public AdaptiveQualityController(List<QualityLevel> levels, double targetFps, int windowSize, Clock clock) {
+        if (levels.isEmpty()) throw new IllegalArgumentException("no quality levels");
+        this.levels = new ArrayList<>(levels);
+        this.budgetMillis = 1000.0 / targetFps;
+        this.frameMillis = new RollingStats(windowSize);
+        this.clock = clock;
+        this.lastChangeNanos = clock.nanoTime();
+    }
+
+    public void onFrameStart() {
+        frameStartNanos = clock.nanoTime();
+    }
+
+    /**
+     * @return true if the quality level was changed
+     */
+    public boolean onFrameEnd() {
+        if (frameStartNanos < 0) return false;
+        final long now = clock.nanoTime();
+        frameMillis.add((now - frameStartNanos) * 1e-6);
+        frameStartNanos = -1;
+
+        if (!frameMillis.isFull()) return false;
+
+        final long sinceChange = now - lastChangeNanos;
+        final double average = frameMillis.getMean();
+        int newIndex = levelIndex;
+        if (average > budgetMillis && sinceChange >= COOLDOWN_NANOS) {
+            newIndex = Math.min(levelIndex + 1, levels.size() - 1);
+        } else if (average < budgetMillis * UPGRADE_HEADROOM && sinceChange >= upgradeCooldownNanos) {
+            newIndex = Math.max(levelIndex - 1, 0);
+        }
+        if (newIndex == levelIndex) return false;
+
+        final boolean upgrade = newIndex < levelIndex;
+        if (!upgrade) {
+            upgradeCooldownNanos = lastChangeWasUpgrade
+                    ? Math.min(2 * upgradeCooldownNanos, MAX_UPGRADE_COOLDOWN_NANOS)
+                    : COOLDOWN_NANOS;
+        }
+        lastChangeWasUpgrade = upgrade;
+        levelIndex = newIndex;
+        lastChangeNanos = now;
+        averageAtLastChange = average;
+        frameMillis.clear();
+        return true;
+    }
+
+    public QualityLevel getLevel() {
+        return levels.get(levelIndex);
+    }
+
+    public int getLevelIndex() {
+        return levelIndex;
+    }
+
+    public double getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    public double getAverageFrameMillis() {
+        return frameMillis.getMean();
+    }
+
+    /** Average frame time that triggered the latest quality level change */
+    public double getAverageFrameMillisAtLastChange() {
+        return averageAtLastChange;
+    }
+}
@@ -0,0 +1,21 @@
+package xyz.osei.creepyarfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The shaders and textures of the app's assets directory, which the headless module reads from
+ * its classpath
+ */
+public interface Assets {
+    InputStream open(String name) throws IOException;
+
+    /**
+     * Decodes an image asset to RGBA pixels, the first row at the top
+     *
+     * @param size receives the width and the height
+     * @return the pixels in a direct buffer
+     */
+    ByteBuffer decodeImage(String name, int[] size) throws IOException;
+}
@@ -0,0 +1,169 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.Arrays;
+
+/**
+ * Maps the canonical face texture coordinates to a face atlas whose texel density is higher in
+ * focus regions, e.g., the eyes and mouth, than elsewhere. The mapping is separable: a monotone
+ * piecewise linear function for u and another for v, each given by at most {@link #MAX_KNOTS}
+ * (canonical, atlas) knots. The scatter lookup tables, the CPU gather and the filter fragment
+ * shader (see masked.frag) all evaluate the same function per texel or pixel, so they agree.
+ */
+public final class AtlasWarp {
+    /** Knots per axis */
+    public static final int MAX_KNOTS = 8;
+    /** Linear segments per axis, must match masked.frag */
+    public static final int MAX_SEGMENTS = MAX_KNOTS - 1;
+
+    /** The canonical layout as is */
+    public static final AtlasWarp UNIFORM =
+            new AtlasWarp(new float[] { 0, 0, 1, 1 }, new float[] { 0, 0, 1, 1 });
+
+    // (canonical, atlas) pairs, padded to MAX_KNOTS with (1, 1)
+    private final float[] knotsU, knotsV;
+
+    private AtlasWarp(float[] knotsU, float[] knotsV) {
+        this.knotsU = pad(knotsU);
+        this.knotsV = pad(knotsV);
+    }
+
+    private static float[] pad(float[] knots) {
+        final float[] padded = Arrays.copyOf(knots, MAX_KNOTS * 2);
+        for (int i = knots.length; i < padded.length; i++) padded[i] = 1;
+        return padded;
+    }
+
+    /**
+     * A warp where the focus regions have the density 1 and the rest the given density, relative
+     * to each other, normalized so that the whole [0, 1] range maps to [0, 1]
+     *
+     * @param baseDensity density outside the focus regions, in (0, 1]
+     * @param focusU [start, end] pairs of the focus regions in u, sorted, non-overlapping
+     * @param focusV the same for v
+     */
+    public static AtlasWarp withFocusRegions(float baseDensity, float[] focusU, float[] focusV) {
+        return new AtlasWarp(knots(baseDensity, focusU), knots(baseDensity, focusV));
+    }
+
+    private static float[] knots(float baseDensity, float[] focus) {
+        if (focus.length % 2 != 0 || focus.length + 2 > MAX_KNOTS) {
+            throw new IllegalArgumentException(
+                    "at most " + (MAX_KNOTS - 2) / 2 + " focus regions per axis");
+        }
+        if (baseDensity <= 0 || baseDensity > 1) {
+            throw new IllegalArgumentException("base density must be in (0, 1]");
+        }
+        // boundaries 0, focus..., 1 and the density on the interval after each boundary
+        final float[] x = new float[focus.length + 2];
+        final float[] density = new float[x.length];
+        x[x.length - 1] = 1;
+        density[0] = baseDensity;
+        for (int i = 0; i < focus.length; i++) {
+            if (focus[i] < x[i] || focus[i] > 1) {
+                throw new IllegalArgumentException("unsorted focus regions");
+            }
+            x[i + 1] = focus[i];
+            density[i + 1] = i % 2 == 0 ? 1 : baseDensity;
+        }
+
+        float total = 0;
+        for (int i = 0; i + 1 < x.length; i++) total += (x[i + 1] - x[i]) * density[i];
+
+        final float[] knots = new float[x.length * 2];
+        float y = 0;
+        for (int i = 0; i < x.length; i++) {
+            knots[i * 2] = x[i];
+            knots[i * 2 + 1] = y;
+            if (i + 1 < x.length) y += (x[i + 1] - x[i]) * density[i] / total;
+        }
+        knots[knots.length - 1] = 1;
+        return knots;
+    }
+
+    // from = 0: canonical to atlas, from = 1: atlas to canonical
+    private static float map(float[] knots, int from, float x) {
+        final int to = 1 - from;
+        if (x <= knots[from]) return knots[to];
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            final float x0 = knots[i * 2 + from], x1 = knots[i * 2 + 2 + from];
+            if (x <= x1 && x1 > x0) {
+                final float y0 = knots[i * 2 + to], y1 = knots[i * 2 + 2 + to];
+                return y0 + (y1 - y0) * (x - x0) / (x1 - x0);
+            }
+        }
+        return knots[MAX_KNOTS * 2 - 2 + to];
+    }
+
+    /** Atlas u of the canonical u */
+    public float mapU(float u) {
+        return map(knotsU, 0, u);
+    }
+
+    /** Atlas v of the canonical v */
+    public float mapV(float v) {
+        return map(knotsV, 0, v);
+    }
+
+    /** Canonical u of the atlas u */
+    public float unmapU(float u) {
+        return map(knotsU, 1, u);
+    }
+
+    /** Canonical v of the atlas v */
+    public float unmapV(float v) {
+        return map(knotsV, 1, v);
+    }
+
+    /**
+     * The warp for the shader uniforms as a sum of clamped ramps per segment:
+     * atlas = canonical + sum(slopeDelta * clamp(canonical - start, 0, width)), which is the
+     * identity outside [0, 1] and when all uniforms are zero. Each array has
+     * {@link #MAX_SEGMENTS} (u, v) pairs.
+     */
+    public void getShaderSegments(float[] start, float[] width, float[] slopeDelta) {
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            putSegment(knotsU, i, start, width, slopeDelta, i * 2);
+            putSegment(knotsV, i, start, width, slopeDelta, i * 2 + 1);
+        }
+    }
+
+    private static void putSegment(float[] knots, int i,
+                                   float[] start, float[] width, float[] slopeDelta, int idx) {
+        final float dx = knots[i * 2 + 2] - knots[i * 2];
+        start[idx] = knots[i * 2];
+        width[idx] = dx;
+        slopeDelta[idx] = dx > 0 ? (knots[i * 2 + 3] - knots[i * 2 + 1]) / dx - 1 : 0;
+    }
+
+    private static float focusSlope(float[] knots) {
+        float max = 0;
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            final float dx = knots[i * 2 + 2] - knots[i * 2];
+            if (dx > 0) max = Math.max(max, (knots[i * 2 + 3] - knots[i * 2 + 1]) / dx);
+        }
+        return max;
+    }
+
+    /**
+     * Atlas texels per canonical unit in the focus regions for the given atlas size, the
+     * smaller of u and v. A uniform atlas of this size has the same detail there.
+     */
+    public float getFocusResolution(int atlasSize) {
+        return atlasSize * Math.min(focusSlope(knotsU), focusSlope(knotsV));
+    }
+
+    /**
+     * The smallest atlas size, rounded up to a multiple of 4, whose focus regions have at least
+     * the resolution of a uniform atlas of the given size
+     */
+    public int getAtlasSize(int uniformAtlasSize) {
+        final float slope = Math.min(focusSlope(knotsU), focusSlope(knotsV));
+        final int size = (int) Math.ceil(uniformAtlasSize / slope);
+        return Math.min(uniformAtlasSize, (size + 3) / 4 * 4);
+    }
+
+    @Override
+    public String toString() {
+        return "u knots " + Arrays.toString(knotsU) + ", v knots " + Arrays.toString(knotsV);
+    }
+}
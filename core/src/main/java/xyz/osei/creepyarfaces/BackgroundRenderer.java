@@ -16,13 +16,6 @@
  */
 package xyz.osei.creepyarfaces;
 
-import android.content.Context;
-import android.opengl.GLES11Ext;
-import android.opengl.GLES20;
-import android.opengl.GLSurfaceView;
-import android.support.annotation.NonNull;
-import com.google.ar.core.Coordinates2d;
-import com.google.ar.core.Frame;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -43,6 +36,10 @@ public class BackgroundRenderer {
   private static final int TEXCOORDS_PER_VERTEX = 2;
   private static final int FLOAT_SIZE = 4;
 
+  private final Gl gl;
+  // GL_TEXTURE_EXTERNAL_OES filled by ARCore, or GL_TEXTURE_2D, see setTexture2D
+  private int textureTarget = Gl.GL_TEXTURE_EXTERNAL_OES;
+
   private FloatBuffer quadCoords;
   private FloatBuffer quadTexCoords;
 
@@ -52,6 +49,18 @@ public class BackgroundRenderer {
   private int quadTexCoordParam;
   private int textureId = -1;
 
+  public BackgroundRenderer(Gl gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * Uses a regular 2D texture instead of the external texture given to ARCore, e.g., for a
+   * still camera image. Must be called before {@link #createOnGlThread(ShaderUtil)}.
+   */
+  public void setTexture2D(boolean texture2D) {
+    textureTarget = texture2D ? Gl.GL_TEXTURE_2D : Gl.GL_TEXTURE_EXTERNAL_OES;
+  }
+
   public int getTextureId() {
     return textureId;
   }
@@ -59,19 +68,18 @@ public class BackgroundRenderer {
   /**
    * Allocates and initializes OpenGL resources needed by the background renderer.
    *
-   * @param context Needed to access shader source.
+   * @param shaders Needed to load the shader source.
    */
-  public void createOnGlThread(Context context) throws IOException {
+  public void createOnGlThread(ShaderUtil shaders) throws IOException {
     // Generate the background texture.
     int[] textures = new int[1];
-    GLES20.glGenTextures(1, textures, 0);
+    gl.glGenTextures(1, textures, 0);
     textureId = textures[0];
-    int textureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-    GLES20.glBindTexture(textureTarget, textureId);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    gl.glBindTexture(textureTarget, textureId);
+    gl.glTexParameteri(textureTarget, Gl.GL_TEXTURE_WRAP_S, Gl.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(textureTarget, Gl.GL_TEXTURE_WRAP_T, Gl.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(textureTarget, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR);
+    gl.glTexParameteri(textureTarget, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
 
     int numVertices = 4;
     if (numVertices != QUAD_COORDS.length / COORDS_PER_VERTEX) {
@@ -89,41 +97,36 @@ public class BackgroundRenderer {
     bbTexCoordsTransformed.order(ByteOrder.nativeOrder());
     quadTexCoords = bbTexCoordsTransformed.asFloatBuffer();
 
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    int fragmentShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+    int vertexShader = shaders.loadGLShader(TAG, Gl.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+    int fragmentShader = textureTarget == Gl.GL_TEXTURE_2D
+        ? shaders.loadGLShader(
+            TAG, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME, false, "CAMERA_TEXTURE_2D")
+        : shaders.loadGLShader(TAG, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
 
-    quadProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(quadProgram, vertexShader);
-    GLES20.glAttachShader(quadProgram, fragmentShader);
-    GLES20.glLinkProgram(quadProgram);
-    GLES20.glUseProgram(quadProgram);
+    quadProgram = gl.glCreateProgram();
+    gl.glAttachShader(quadProgram, vertexShader);
+    gl.glAttachShader(quadProgram, fragmentShader);
+    gl.glLinkProgram(quadProgram);
+    gl.glUseProgram(quadProgram);
 
-    ShaderUtil.checkGLError(TAG, "Program creation");
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
 
-    quadPositionParam = GLES20.glGetAttribLocation(quadProgram, "a_Position");
-    quadTexCoordParam = GLES20.glGetAttribLocation(quadProgram, "a_TexCoord");
+    quadPositionParam = gl.glGetAttribLocation(quadProgram, "a_Position");
+    quadTexCoordParam = gl.glGetAttribLocation(quadProgram, "a_TexCoord");
 
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+    ShaderUtil.checkGLError(gl, TAG, "Program parameters");
   }
 
   /**
    * Draws the AR background image. The image will be drawn such that virtual content rendered with
-   * the matrices provided by {@link com.google.ar.core.Camera#getViewMatrix(float[], int)} and
-   * {@link com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)} will
-   * accurately follow static physical objects. This must be called <b>before</b> drawing virtual
-   * content.
+   * the view and projection matrices of the camera of the frame will accurately follow static
+   * physical objects. This must be called <b>before</b> drawing virtual content.
    */
-  public void draw(@NonNull Frame frame) {
+  public void draw(CameraFrame frame) {
     // If display rotation changed (also includes view size change), we need to re-query the uv
     // coordinates for the screen rect, as they may have changed as well.
     if (frame.hasDisplayGeometryChanged()) {
-      frame.transformCoordinates2d(
-          Coordinates2d.OPENGL_NORMALIZED_DEVICE_COORDINATES,
-          quadCoords,
-          Coordinates2d.TEXTURE_NORMALIZED,
-          quadTexCoords);
+      frame.transformToTexture(quadCoords, quadTexCoords);
     }
 
     if (frame.getTimestamp() == 0) {
@@ -145,37 +148,37 @@ public class BackgroundRenderer {
 
     // No need to test or write depth, the screen quad has arbitrary depth, and is expected
     // to be drawn first.
-    GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-    GLES20.glDepthMask(false);
+    gl.glDisable(Gl.GL_DEPTH_TEST);
+    gl.glDepthMask(false);
 
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+    gl.glBindTexture(textureTarget, textureId);
 
-    GLES20.glUseProgram(quadProgram);
+    gl.glUseProgram(quadProgram);
 
     // Set the vertex positions.
-    GLES20.glVertexAttribPointer(
-        quadPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadCoords);
+    gl.glVertexAttribPointer(
+        quadPositionParam, COORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, quadCoords);
 
     // Set the texture coordinates.
-    GLES20.glVertexAttribPointer(
-        quadTexCoordParam, TEXCOORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadTexCoords);
+    gl.glVertexAttribPointer(
+        quadTexCoordParam, TEXCOORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, quadTexCoords);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(quadPositionParam);
-    GLES20.glEnableVertexAttribArray(quadTexCoordParam);
+    gl.glEnableVertexAttribArray(quadPositionParam);
+    gl.glEnableVertexAttribArray(quadTexCoordParam);
 
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    gl.glDrawArrays(Gl.GL_TRIANGLE_STRIP, 0, 4);
 
     // Disable vertex arrays
-    GLES20.glDisableVertexAttribArray(quadPositionParam);
-    GLES20.glDisableVertexAttribArray(quadTexCoordParam);
+    gl.glDisableVertexAttribArray(quadPositionParam);
+    gl.glDisableVertexAttribArray(quadTexCoordParam);
 
     // Restore the depth state for further drawing.
-    GLES20.glDepthMask(true);
-    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+    gl.glDepthMask(true);
+    gl.glEnable(Gl.GL_DEPTH_TEST);
 
-    ShaderUtil.checkGLError(TAG, "BackgroundRendererDraw");
+    ShaderUtil.checkGLError(gl, TAG, "BackgroundRendererDraw");
   }
 
   private static final float[] QUAD_COORDS =
@@ -0,0 +1,71 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed number of reusable direct buffers shared between threads. Acquiring never blocks:
+ * when all buffers are in use, the caller gets null and should drop or refuse the work, which
+ * bounds the memory and the backlog of a producer that is faster than its consumer.
+ */
+public final class BufferPool {
+    private final int maxBuffers;
+    private final List<ByteBuffer> free = new ArrayList<>();
+    private int allocatedCount;
+    private int inUseCount;
+    private long allocatedBytes;
+
+    public BufferPool(int maxBuffers) {
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * Takes a buffer of at least the given capacity, cleared and limited to the requested size.
+     * Buffers that are too small are reallocated.
+     *
+     * @return the buffer or null if all buffers are in use
+     */
+    public synchronized ByteBuffer acquire(int bytes) {
+        ByteBuffer buffer = null;
+        if (!free.isEmpty()) {
+            buffer = free.remove(free.size() - 1);
+            if (buffer.capacity() < bytes) {
+                allocatedBytes -= buffer.capacity();
+                buffer = allocate(bytes);
+            }
+        } else if (allocatedCount < maxBuffers) {
+            buffer = allocate(bytes);
+            allocatedCount++;
+        }
+        if (buffer == null) return null;
+        inUseCount++;
+        buffer.clear();
+        buffer.limit(bytes);
+        return buffer;
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        allocatedBytes += bytes;
+        return ByteBuffer.allocateDirect(bytes);
+    }
+
+    /** Returns a buffer from {@link #acquire(int)} to the pool */
+    public synchronized void release(ByteBuffer buffer) {
+        inUseCount--;
+        free.add(buffer);
+    }
+
+    public synchronized int getInUseCount() {
+        return inUseCount;
+    }
+
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    /** Memory held by the pool, in use or not */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+}
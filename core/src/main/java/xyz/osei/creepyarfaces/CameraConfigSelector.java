@@ -0,0 +1,131 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the cheapest camera configuration that still meets a quality floor: the smallest GPU
+ * texture, then the smallest CPU image, then the lowest frame rate. The face filters only need
+ * a modest resolution, while the defaults on high-end phones can be much larger.
+ */
+public final class CameraConfigSelector {
+    /** The properties of a camera configuration that matter for the selection */
+    public static final class Candidate {
+        private static final Pattern KEY_PATTERN =
+                Pattern.compile("(\\d+)x(\\d+)/(\\d+)x(\\d+)/(\\d+)-(\\d+)");
+
+        public final int textureWidth, textureHeight;
+        public final int imageWidth, imageHeight;
+        public final int minFps, maxFps;
+
+        public Candidate(int textureWidth, int textureHeight, int imageWidth, int imageHeight,
+                         int minFps, int maxFps) {
+            this.textureWidth = textureWidth;
+            this.textureHeight = textureHeight;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.minFps = minFps;
+            this.maxFps = maxFps;
+        }
+
+        long getTexturePixels() {
+            return (long) textureWidth * textureHeight;
+        }
+
+        long getImagePixels() {
+            return (long) imageWidth * imageHeight;
+        }
+
+        /** Identifies the configuration across launches, see {@link #select} */
+        public String getKey() {
+            return String.format(Locale.ROOT, "%dx%d/%dx%d/%d-%d",
+                    textureWidth, textureHeight, imageWidth, imageHeight, minFps, maxFps);
+        }
+
+        /** The candidate of a {@link #getKey()}, null if the key is malformed */
+        public static Candidate fromKey(String key) {
+            final Matcher m = KEY_PATTERN.matcher(key);
+            if (!m.matches()) return null;
+            final int[] values = new int[6];
+            try {
+                for (int i = 0; i < values.length; i++) values[i] = Integer.parseInt(m.group(i + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return new Candidate(values[0], values[1], values[2], values[3], values[4], values[5]);
+        }
+
+        @Override
+        public String toString() {
+            return "texture " + textureWidth + "x" + textureHeight
+                    + ", image " + imageWidth + "x" + imageHeight
+                    + ", " + minFps + "-" + maxFps + " fps";
+        }
+    }
+
+    private final int minTextureShortSide;
+    private final int minImageShortSide;
+    private final int minFps;
+
+    /**
+     * @param minTextureShortSide smallest acceptable GPU texture size (shorter side, pixels)
+     * @param minImageShortSide smallest acceptable CPU image size (shorter side, pixels)
+     * @param minFps the maximum frame rate of the configuration must be at least this
+     */
+    public CameraConfigSelector(int minTextureShortSide, int minImageShortSide, int minFps) {
+        this.minTextureShortSide = minTextureShortSide;
+        this.minImageShortSide = minImageShortSide;
+        this.minFps = minFps;
+    }
+
+    public boolean meetsFloor(Candidate candidate) {
+        return Math.min(candidate.textureWidth, candidate.textureHeight) >= minTextureShortSide
+                && Math.min(candidate.imageWidth, candidate.imageHeight) >= minImageShortSide
+                && candidate.maxFps >= minFps;
+    }
+
+    /**
+     * @return the index of the selected candidate. If none meets the floor, the one with the
+     *  largest texture is selected. -1 if the list is empty.
+     */
+    public int select(List<Candidate> candidates) {
+        int best = -1;
+        for (int i = 0; i < candidates.size(); i++) {
+            final Candidate candidate = candidates.get(i);
+            if (!meetsFloor(candidate)) continue;
+            if (best < 0 || cheaper(candidate, candidates.get(best))) best = i;
+        }
+        if (best >= 0) return best;
+
+        for (int i = 0; i < candidates.size(); i++) {
+            if (best < 0 || candidates.get(i).getTexturePixels() > candidates.get(best).getTexturePixels()) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static boolean cheaper(Candidate a, Candidate b) {
+        if (a.getTexturePixels() != b.getTexturePixels()) return a.getTexturePixels() < b.getTexturePixels();
+        if (a.getImagePixels() != b.getImagePixels()) return a.getImagePixels() < b.getImagePixels();
+        return a.maxFps < b.maxFps;
+    }
+
+    /** Index of the candidate with the given key, -1 if not found */
+    public static int find(List<Candidate> candidates, String key) {
+        for (int i = 0; i < candidates.size(); i++) {
+            if (candidates.get(i).getKey().equals(key)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Identifies the quality floor, so that a persisted selection can be discarded when the
+     * floor changes
+     */
+    public String getFloorKey() {
+        return String.format(Locale.ROOT, "%d/%d/%d", minTextureShortSide, minImageShortSide, minFps);
+    }
+}
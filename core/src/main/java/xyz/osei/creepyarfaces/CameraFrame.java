@@ -0,0 +1,34 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A camera frame, e.g., ARCore's Frame. Its image is in the texture of
+ * {@link BackgroundRenderer} and possibly also on the CPU, see {@link CameraImageAtlasSource}.
+ */
+public interface CameraFrame {
+    /** Timestamp of the camera image, 0 if the camera has not produced one yet */
+    long getTimestamp();
+
+    /** True if the screen size or rotation changed, and so the texture coordinates of the screen */
+    boolean hasDisplayGeometryChanged();
+
+    /**
+     * Converts (x, y) normalized device coordinates of the screen to the normalized texture
+     * coordinates of the camera image
+     */
+    void transformToTexture(FloatBuffer ndc, FloatBuffer texCoords);
+
+    /** Converts (x, y) normalized device coordinates to pixels of the CPU camera image */
+    void transformToImagePixels(FloatBuffer ndc, FloatBuffer imagePixels);
+
+    /**
+     * Sets the planes to the CPU camera image of the frame. Call {@link #releaseCameraImage()}
+     * once done with them.
+     *
+     * @return false if the image is not available
+     */
+    boolean acquireCameraImage(YuvPlanes planes);
+
+    void releaseCameraImage();
+}
@@ -0,0 +1,109 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Builds the face texture from the CPU camera image (CameraFrame.acquireCameraImage) instead of
+ * rendering the camera background and reading it back with glReadPixels, which stalls the GPU.
+ * The mesh is projected to camera image coordinates and only the pixels needed for the atlas
+ * are converted from YUV to RGB.
+ *
+ * @param <F> face identity, see {@link FaceMesh}
+ */
+class CameraImageAtlasSource<F> {
+    private final RowParallel rowParallel =
+            new RowParallel(Runtime.getRuntime().availableProcessors());
+    private final YuvToRgbConverter converter = new YuvToRgbConverter(rowParallel);
+    private final YuvPlanes planes = new YuvPlanes();
+
+    private final FaceMesh<F> mesh;
+
+    private FaceAtlasGather gather;
+    private ByteBuffer atlasBuffer;
+
+    // per-vertex data, reallocated only if the mesh size changes
+    private float[] ndc, texCoords, imagePixels;
+    private short[] indices;
+    private FloatBuffer ndcBuffer, imagePixelBuffer;
+
+    CameraImageAtlasSource(FaceMesh<F> mesh) {
+        this.mesh = mesh;
+    }
+
+    /**
+     * Updates the face texture with the current camera image
+     *
+     * @param modelViewProjection model-view-projection matrix of the face
+     * @param atlasWarp layout of the atlas
+     * @param atlasBytes RGBA atlas of the face, the texels visible in the image are updated
+     * @return RGBA atlas pixels, or null if the camera image was not available
+     */
+    public ByteBuffer update(CameraFrame frame, F face, float[] modelViewProjection, int atlasSize,
+                             AtlasWarp atlasWarp, byte[] atlasBytes) {
+        if (gather == null || gather.getAtlasWidth() != atlasSize || gather.getWarp() != atlasWarp) {
+            gather = new FaceAtlasGather(atlasSize, atlasSize, atlasWarp);
+            atlasBuffer = ByteBuffer.allocateDirect(atlasSize * atlasSize * 4);
+        }
+
+        final FloatBuffer vertices = mesh.getVertices(face);
+        final FloatBuffer faceTexCoords = mesh.getTextureCoordinates(face);
+        final ShortBuffer faceIndices = mesh.getTriangleIndices(face);
+        final int vertexCount = vertices.limit() / 3;
+        allocateMeshArrays(vertexCount, faceIndices.limit());
+
+        MeshProjection.projectToNdc(modelViewProjection, vertices, ndc);
+        ndcBuffer.rewind();
+        ndcBuffer.put(ndc, 0, vertexCount * 2);
+        ndcBuffer.rewind();
+        imagePixelBuffer.rewind();
+        frame.transformToImagePixels(ndcBuffer, imagePixelBuffer);
+        imagePixelBuffer.rewind();
+        imagePixelBuffer.get(imagePixels, 0, vertexCount * 2);
+
+        faceTexCoords.rewind();
+        faceTexCoords.get(texCoords, 0, vertexCount * 2);
+        faceIndices.rewind();
+        faceIndices.get(indices, 0, faceIndices.limit());
+
+        gather.rasterize(texCoords, ndc, imagePixels, indices, faceIndices.limit());
+
+        if (!frame.acquireCameraImage(planes)) return null;
+        try {
+            converter.convert(planes, gather, atlasBytes);
+        } finally {
+            frame.releaseCameraImage();
+        }
+
+        atlasBuffer.rewind();
+        atlasBuffer.put(atlasBytes);
+        atlasBuffer.rewind();
+        return atlasBuffer;
+    }
+
+    private void allocateMeshArrays(int vertexCount, int indexCount) {
+        if (ndc == null || ndc.length != vertexCount * 2) {
+            ndc = new float[vertexCount * 2];
+            texCoords = new float[vertexCount * 2];
+            imagePixels = new float[vertexCount * 2];
+            ndcBuffer = ByteBuffer.allocateDirect(vertexCount * 2 * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            imagePixelBuffer = ByteBuffer.allocateDirect(vertexCount * 2 * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        if (indices == null || indices.length != indexCount) {
+            indices = new short[indexCount];
+        }
+    }
+
+    /** Bytes held by the atlas buffer, the rest of the buffers are per mesh vertex */
+    public int getBufferBytes() {
+        return atlasBuffer == null ? 0 : atlasBuffer.capacity();
+    }
+
+    public void release() {
+        rowParallel.shutdown();
+    }
+}
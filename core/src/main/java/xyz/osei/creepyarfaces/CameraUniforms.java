@@ -0,0 +1,62 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * OpenGL ES 3.0 uniform buffer holding the per-frame camera matrices. The buffer is updated
+ * once per frame and shared by all the programs that declare the CameraMatrices block.
+ */
+public class CameraUniforms {
+    private static final String TAG = CameraUniforms.class.getSimpleName();
+
+    public static final int BINDING_POINT = 0;
+    private static final String BLOCK_NAME = "CameraMatrices";
+
+    // std140 layout: mat4 u_View, mat4 u_Projection
+    private static final int FLOATS = 2 * 16;
+    private static final int BYTES = FLOATS * 4;
+
+    private final Gl gl;
+    private final int[] buffers = new int[1];
+    private final FloatBuffer data = ByteBuffer.allocateDirect(BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+
+    public CameraUniforms(Gl gl) {
+        this.gl = gl;
+    }
+
+    public void createOnGlThread() {
+        gl.glGenBuffers(1, buffers, 0);
+        gl.glBindBuffer(Gl.GL_UNIFORM_BUFFER, buffers[0]);
+        gl.glBufferData(Gl.GL_UNIFORM_BUFFER, BYTES, null, Gl.GL_DYNAMIC_DRAW);
+        gl.glBindBufferBase(Gl.GL_UNIFORM_BUFFER, BINDING_POINT, buffers[0]);
+        gl.glBindBuffer(Gl.GL_UNIFORM_BUFFER, 0);
+        ShaderUtil.checkGLError(gl, TAG, "createOnGlThread");
+    }
+
+    /**
+     * Connects the CameraMatrices block of the given program to this buffer
+     */
+    public void bindProgram(int program) {
+        final int blockIndex = gl.glGetUniformBlockIndex(program, BLOCK_NAME);
+        if (blockIndex == Gl.GL_INVALID_INDEX) {
+            throw new IllegalArgumentException("program has no uniform block " + BLOCK_NAME);
+        }
+        gl.glUniformBlockBinding(program, blockIndex, BINDING_POINT);
+        ShaderUtil.checkGLError(gl, TAG, "bindProgram");
+    }
+
+    public void update(float[] cameraView, float[] cameraPerspective) {
+        data.clear();
+        data.put(cameraView, 0, 16);
+        data.put(cameraPerspective, 0, 16);
+        data.rewind();
+
+        gl.glBindBuffer(Gl.GL_UNIFORM_BUFFER, buffers[0]);
+        gl.glBufferSubData(Gl.GL_UNIFORM_BUFFER, 0, BYTES, data);
+        gl.glBindBuffer(Gl.GL_UNIFORM_BUFFER, 0);
+    }
+}
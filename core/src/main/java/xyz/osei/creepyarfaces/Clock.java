@@ -0,0 +1,16 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * Monotonic time source. Injected so that time-dependent policies can be driven by a
+ * simulated clock.
+ */
+public interface Clock {
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    long nanoTime();
+}
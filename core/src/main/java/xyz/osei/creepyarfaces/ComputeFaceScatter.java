@@ -0,0 +1,248 @@
+package xyz.osei.creepyarfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * The face texture scatter in an OpenGL ES 3.1 compute shader (see scatter.comp) instead of
+ * reading the camera and UV images back and scattering them on the worker thread. The captured
+ * images are copied from the screen to textures and the shader writes to the face textures
+ * directly, so the frame has no readback and the face texture is up to date in the same frame.
+ * The face textures must be allocated with {@link #allocateAtlas(int, boolean)}, since images
+ * can only be bound from immutable textures.
+ */
+public class ComputeFaceScatter {
+    private static final String TAG = ComputeFaceScatter.class.getSimpleName();
+
+    private static final String SHADER_NAME = "shaders/es31/scatter.comp";
+    private static final int LOCAL_SIZE = 8;
+
+    private final Gl gl;
+
+    private int scatterProgram, scatterImageSize, scatterAtlasSize, scatterUv;
+    private int resolveProgram, resolveImageSize, resolveAtlasSize, resolveVideo;
+
+    // the captured images, as large as the screen
+    private int videoTexture, uvTexture, textureWidth, textureHeight;
+    private int winnersBuffer, winnersCapacity, lookupBuffer;
+    private int clearFramebuffer;
+    private final int[] lookup = new int[512];
+    private final IntBuffer lookupStaging = ByteBuffer.allocateDirect(lookup.length * 4)
+            .order(ByteOrder.nativeOrder())
+            .asIntBuffer();
+    // the scatter whose lookup tables are in lookupBuffer
+    private FaceTextureScatter lookupSource;
+
+    private boolean mipmaps = true;
+    private long dispatchCount;
+
+    public ComputeFaceScatter(Gl gl) {
+        this.gl = gl;
+    }
+
+    /**
+     * Regenerates the mipmaps of the face textures after each scatter (the default), or leaves
+     * them without mipmaps when the holes are filled otherwise
+     */
+    public void setMipmaps(boolean mipmaps) {
+        this.mipmaps = mipmaps;
+    }
+
+    public boolean isMipmaps() {
+        return mipmaps;
+    }
+
+    /** True if the current context can run the compute shader */
+    public boolean isSupported() {
+        final int[] version = new int[2];
+        gl.glGetIntegerv(Gl.GL_MAJOR_VERSION, version, 0);
+        gl.glGetIntegerv(Gl.GL_MINOR_VERSION, version, 1);
+        // GL_MAJOR_VERSION is an error in OpenGL ES 2.0 contexts
+        while (gl.glGetError() != Gl.GL_NO_ERROR) version[0] = 0;
+        return version[0] > 3 || (version[0] == 3 && version[1] >= 1);
+    }
+
+    public void createOnGlThread(ShaderUtil shaders) throws IOException {
+        scatterProgram = linkProgram(shaders.loadGLShader(
+                TAG, Gl.GL_COMPUTE_SHADER, SHADER_NAME, false));
+        scatterImageSize = gl.glGetUniformLocation(scatterProgram, "u_ImageSize");
+        scatterAtlasSize = gl.glGetUniformLocation(scatterProgram, "u_AtlasSize");
+        scatterUv = gl.glGetUniformLocation(scatterProgram, "u_Uv");
+
+        resolveProgram = linkProgram(shaders.loadGLShader(
+                TAG, Gl.GL_COMPUTE_SHADER, SHADER_NAME, false, "RESOLVE"));
+        resolveImageSize = gl.glGetUniformLocation(resolveProgram, "u_ImageSize");
+        resolveAtlasSize = gl.glGetUniformLocation(resolveProgram, "u_AtlasSize");
+        resolveVideo = gl.glGetUniformLocation(resolveProgram, "u_Video");
+
+        final int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        winnersBuffer = names[0];
+        lookupBuffer = names[1];
+        gl.glBindBuffer(Gl.GL_SHADER_STORAGE_BUFFER, lookupBuffer);
+        gl.glBufferData(Gl.GL_SHADER_STORAGE_BUFFER, lookup.length * 4, null, Gl.GL_DYNAMIC_DRAW);
+        gl.glBindBuffer(Gl.GL_SHADER_STORAGE_BUFFER, 0);
+
+        gl.glGenFramebuffers(1, names, 0);
+        clearFramebuffer = names[0];
+        ShaderUtil.checkGLError(gl, TAG, "createOnGlThread");
+    }
+
+    private int linkProgram(int computeShader) {
+        final int program = gl.glCreateProgram();
+        gl.glAttachShader(program, computeShader);
+        gl.glLinkProgram(program);
+        final int[] status = new int[1];
+        gl.glGetProgramiv(program, Gl.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            throw new RuntimeException("Error linking " + SHADER_NAME + ": "
+                    + gl.glGetProgramInfoLog(program));
+        }
+        return program;
+    }
+
+    /**
+     * A face texture the compute shader can write to, mipmapped unless the holes are filled by
+     * {@link FaceAtlasPushPull}, see {@link #setMipmaps(boolean)}
+     */
+    public int allocateAtlas(int size, boolean mipmapped) {
+        final int[] textures = new int[1];
+        gl.glGenTextures(1, textures, 0);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+        final int levels = mipmapped ? 32 - Integer.numberOfLeadingZeros(size) : 1;
+        gl.glTexStorage2D(Gl.GL_TEXTURE_2D, levels, Gl.GL_RGBA8, size, size);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        ShaderUtil.checkGLError(gl, TAG, "allocateAtlas");
+        return textures[0];
+    }
+
+    /**
+     * Clears a face texture from {@link #allocateAtlas(int, boolean)}, which cannot be respecified
+     */
+    public void clearAtlas(int texture) {
+        gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, clearFramebuffer);
+        gl.glFramebufferTexture2D(
+                Gl.GL_FRAMEBUFFER, Gl.GL_COLOR_ATTACHMENT0, Gl.GL_TEXTURE_2D, texture, 0);
+        final float[] clearColor = new float[4];
+        gl.glGetFloatv(Gl.GL_COLOR_CLEAR_VALUE, clearColor, 0);
+        gl.glClearColor(0, 0, 0, 0);
+        gl.glClear(Gl.GL_COLOR_BUFFER_BIT);
+        gl.glClearColor(clearColor[0], clearColor[1], clearColor[2], clearColor[3]);
+        gl.glFramebufferTexture2D(
+                Gl.GL_FRAMEBUFFER, Gl.GL_COLOR_ATTACHMENT0, Gl.GL_TEXTURE_2D, 0, 0);
+        gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, 0);
+
+        if (mipmaps) {
+            gl.glBindTexture(Gl.GL_TEXTURE_2D, texture);
+            gl.glGenerateMipmap(Gl.GL_TEXTURE_2D);
+            gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        }
+        ShaderUtil.checkGLError(gl, TAG, "clearAtlas");
+    }
+
+    /** Allocates the capture textures for the screen size */
+    public void setScreenSize(int width, int height) {
+        if (width == textureWidth && height == textureHeight) return;
+        if (videoTexture != 0) gl.glDeleteTextures(2, new int[] { videoTexture, uvTexture }, 0);
+        final int[] textures = new int[2];
+        gl.glGenTextures(2, textures, 0);
+        videoTexture = textures[0];
+        uvTexture = textures[1];
+        for (int texture : textures) {
+            gl.glBindTexture(Gl.GL_TEXTURE_2D, texture);
+            gl.glTexStorage2D(Gl.GL_TEXTURE_2D, 1, Gl.GL_RGBA8, width, height);
+            gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_NEAREST);
+            gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_NEAREST);
+        }
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        textureWidth = width;
+        textureHeight = height;
+        ShaderUtil.checkGLError(gl, TAG, "setScreenSize");
+    }
+
+    /** Copies the camera image drawn to the lower left corner of the screen */
+    public void captureCamera(int width, int height) {
+        copyScreen(videoTexture, width, height);
+    }
+
+    /**
+     * Copies the UV image of a face drawn over the camera image and scatters the camera image to
+     * the face texture with the same result as {@link FaceTextureScatter}
+     */
+    public void scatter(int width, int height, int atlasTexture, int atlasSize, AtlasWarp warp) {
+        copyScreen(uvTexture, width, height);
+        updateLookup(atlasSize, warp);
+
+        final int texels = atlasSize * atlasSize;
+        if (winnersCapacity < texels) {
+            gl.glBindBuffer(Gl.GL_SHADER_STORAGE_BUFFER, winnersBuffer);
+            // zero-initialized, the resolve pass resets the texels it used
+            gl.glBufferData(Gl.GL_SHADER_STORAGE_BUFFER, texels * 4,
+                    ByteBuffer.allocateDirect(texels * 4), Gl.GL_DYNAMIC_COPY);
+            gl.glBindBuffer(Gl.GL_SHADER_STORAGE_BUFFER, 0);
+            winnersCapacity = texels;
+        }
+        gl.glBindBufferBase(Gl.GL_SHADER_STORAGE_BUFFER, 0, winnersBuffer);
+        gl.glBindBufferBase(Gl.GL_SHADER_STORAGE_BUFFER, 1, lookupBuffer);
+
+        gl.glActiveTexture(Gl.GL_TEXTURE0);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, uvTexture);
+        gl.glUseProgram(scatterProgram);
+        gl.glUniform2i(scatterImageSize, width, height);
+        gl.glUniform1i(scatterAtlasSize, atlasSize);
+        gl.glUniform1i(scatterUv, 0);
+        gl.glDispatchCompute(groups(width), groups(height), 1);
+        gl.glMemoryBarrier(Gl.GL_SHADER_STORAGE_BARRIER_BIT);
+
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, videoTexture);
+        gl.glBindImageTexture(0, atlasTexture, 0, false, 0, Gl.GL_WRITE_ONLY, Gl.GL_RGBA8);
+        gl.glUseProgram(resolveProgram);
+        gl.glUniform2i(resolveImageSize, width, height);
+        gl.glUniform1i(resolveAtlasSize, atlasSize);
+        gl.glUniform1i(resolveVideo, 0);
+        gl.glDispatchCompute(groups(atlasSize), groups(atlasSize), 1);
+        gl.glMemoryBarrier(Gl.GL_SHADER_STORAGE_BARRIER_BIT
+                | Gl.GL_TEXTURE_FETCH_BARRIER_BIT | Gl.GL_TEXTURE_UPDATE_BARRIER_BIT);
+        dispatchCount += 2;
+
+        if (mipmaps) {
+            gl.glBindTexture(Gl.GL_TEXTURE_2D, atlasTexture);
+            gl.glGenerateMipmap(Gl.GL_TEXTURE_2D);
+        }
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        gl.glBindBufferBase(Gl.GL_SHADER_STORAGE_BUFFER, 0, 0);
+        gl.glBindBufferBase(Gl.GL_SHADER_STORAGE_BUFFER, 1, 0);
+        ShaderUtil.checkGLError(gl, TAG, "scatter");
+    }
+
+    private void copyScreen(int texture, int width, int height) {
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, texture);
+        gl.glCopyTexSubImage2D(Gl.GL_TEXTURE_2D, 0, 0, 0, 0, 0, width, height);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+    }
+
+    private void updateLookup(int atlasSize, AtlasWarp warp) {
+        if (lookupSource != null && lookupSource.getFaceWidth() == atlasSize
+                && lookupSource.getWarp() == warp) {
+            return;
+        }
+        lookupSource = new FaceTextureScatter(atlasSize, atlasSize, warp);
+        lookupSource.getLookupTables(lookup);
+        lookupStaging.clear();
+        lookupStaging.put(lookup).flip();
+        gl.glBindBuffer(Gl.GL_SHADER_STORAGE_BUFFER, lookupBuffer);
+        gl.glBufferSubData(Gl.GL_SHADER_STORAGE_BUFFER, 0, lookup.length * 4, lookupStaging);
+        gl.glBindBuffer(Gl.GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    private static int groups(int size) {
+        return (size + LOCAL_SIZE - 1) / LOCAL_SIZE;
+    }
+
+    /** Total compute dispatches */
+    public long getDispatchCount() {
+        return dispatchCount;
+    }
+}
@@ -0,0 +1,21 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * The face texture of one face and the state for updating it, see {@link FaceMapper}
+ */
+class FaceAtlas {
+    final int textureId;
+    final int size;
+    final FaceAtlasWorker.Target workerTarget = new FaceAtlasWorker.Target();
+    final FaceMotionGate motionGate;
+
+    long lastSubmittedSequence, uploadedSequence;
+    // accumulated atlas for the CPU camera image source, allocated on first use
+    byte[] cameraImagePixels;
+
+    FaceAtlas(int textureId, int size, FaceMotionGate motionGate) {
+        this.textureId = textureId;
+        this.size = size;
+        this.motionGate = motionGate;
+    }
+}
@@ -0,0 +1,245 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Face atlases keyed by face identity. A face that is not seen for a while keeps its atlas for a
+ * grace period, so a face that briefly loses tracking continues with its accumulated texture.
+ * After that, the atlas is returned to a pool from which new faces are served. The total size of
+ * the atlases and the pool is kept under a memory budget by freeing pooled atlases first and then
+ * the least recently used atlases of faces not seen in the current frame. Each frame, call
+ * {@link #beginFrame()}, look up the atlases of all faces in the frame with {@link #get}, and then
+ * call {@link #trim()}.
+ *
+ * @param <K> face identity
+ * @param <V> atlas resources, e.g., a texture and CPU buffers
+ */
+public final class FaceAtlasCache<K, V> {
+    /** Creates and destroys the atlas resources */
+    public interface Allocator<V> {
+        V allocate(int atlasSize);
+
+        /** Prepares a pooled atlas for a different face */
+        void reset(V atlas);
+
+        void free(V atlas);
+
+        /** Memory used by an atlas of the given size */
+        long getBytes(int atlasSize);
+    }
+
+    private static final class Entry<V> {
+        final V atlas;
+        final int atlasSize;
+        long lastUsedNanos;
+
+        Entry(V atlas, int atlasSize) {
+            this.atlas = atlas;
+            this.atlasSize = atlasSize;
+        }
+    }
+
+    private final Allocator<V> allocator;
+    private final long gracePeriodNanos;
+    private final Clock clock;
+    private long budgetBytes;
+
+    // least recently used first, moved to the end by get() only
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+    private final List<Entry<V>> pool = new ArrayList<>();
+    private final Collection<V> atlasView = new ArrayList<>();
+    private long frameStartNanos;
+    private long memoryBytes;
+
+    private long hitCount, missCount, poolReuseCount, expiredCount, evictionCount;
+
+    /**
+     * @param budgetBytes memory budget for the atlases, see {@link Allocator#getBytes(int)}
+     * @param gracePeriodMillis how long the atlas of a face that is not seen is kept
+     */
+    public FaceAtlasCache(Allocator<V> allocator, long budgetBytes, long gracePeriodMillis, Clock clock) {
+        this.allocator = allocator;
+        this.budgetBytes = budgetBytes;
+        this.gracePeriodNanos = gracePeriodMillis * 1000 * 1000;
+        this.clock = clock;
+    }
+
+    /**
+     * Call at the start of each frame. Returns the atlases of faces not seen within the grace
+     * period to the pool.
+     */
+    public void beginFrame() {
+        frameStartNanos = clock.nanoTime();
+        final Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            final Entry<V> entry = it.next();
+            if (frameStartNanos - entry.lastUsedNanos > gracePeriodNanos) {
+                it.remove();
+                allocator.reset(entry.atlas);
+                pool.add(entry);
+                expiredCount++;
+            }
+        }
+    }
+
+    /**
+     * The atlas of the given face, reusing a pooled atlas or allocating a new one if the face
+     * has no atlas of the requested size. Only frees pooled atlases to fit the budget, see
+     * {@link #trim()}.
+     */
+    public V get(K face, int atlasSize) {
+        Entry<V> entry = entries.get(face);
+        if (entry != null && entry.atlasSize == atlasSize) {
+            hitCount++;
+            // the most recently used last
+            entries.remove(face);
+            entries.put(face, entry);
+        } else {
+            missCount++;
+            if (entry != null) {
+                // the size changed: the old atlas is of no use to other faces either
+                entries.remove(face);
+                free(entry);
+            }
+            entry = takeFromPool(atlasSize);
+            if (entry == null) {
+                entry = new Entry<>(allocator.allocate(atlasSize), atlasSize);
+                memoryBytes += allocator.getBytes(atlasSize);
+            } else {
+                poolReuseCount++;
+            }
+            entries.put(face, entry);
+        }
+        entry.lastUsedNanos = clock.nanoTime();
+        trimPool();
+        return entry.atlas;
+    }
+
+    /**
+     * The atlas of the given face if it has one, without counting a hit or miss or changing the
+     * order of eviction
+     */
+    public V peek(K face) {
+        final Entry<V> entry = entries.get(face);
+        return entry == null ? null : entry.atlas;
+    }
+
+    private Entry<V> takeFromPool(int atlasSize) {
+        for (int i = pool.size() - 1; i >= 0; i--) {
+            if (pool.get(i).atlasSize == atlasSize) return pool.remove(i);
+        }
+        return null;
+    }
+
+    /**
+     * Frees pooled atlases and then the least recently used atlases of faces that have not been
+     * seen in the current frame, until the memory use fits the budget. Call after the faces of
+     * the frame were looked up: their atlases are never evicted, so the budget may be exceeded
+     * if there are many.
+     */
+    public void trim() {
+        trimPool();
+        final Iterator<Entry<V>> it = entries.values().iterator();
+        while (memoryBytes > budgetBytes && it.hasNext()) {
+            final Entry<V> entry = it.next();
+            // the rest were used more recently
+            if (entry.lastUsedNanos >= frameStartNanos) break;
+            it.remove();
+            free(entry);
+            evictionCount++;
+        }
+    }
+
+    private void trimPool() {
+        while (memoryBytes > budgetBytes && !pool.isEmpty()) {
+            free(pool.remove(0));
+            evictionCount++;
+        }
+    }
+
+    private void free(Entry<V> entry) {
+        allocator.free(entry.atlas);
+        memoryBytes -= allocator.getBytes(entry.atlasSize);
+    }
+
+    /**
+     * Frees the pooled atlases, e.g., when no faces are expected for a while
+     *
+     * @return the bytes freed
+     */
+    public long releasePool() {
+        final long before = memoryBytes;
+        for (Entry<V> entry : pool) free(entry);
+        pool.clear();
+        return before - memoryBytes;
+    }
+
+    /** Frees all atlases */
+    public void clear() {
+        for (Entry<V> entry : entries.values()) free(entry);
+        for (Entry<V> entry : pool) free(entry);
+        entries.clear();
+        pool.clear();
+    }
+
+    public void setBudgetBytes(long bytes) {
+        budgetBytes = bytes;
+        trim();
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * The atlases of the faces currently in the cache. The returned collection is reused by the
+     * next call.
+     */
+    public Collection<V> getAtlases() {
+        atlasView.clear();
+        for (Entry<V> entry : entries.values()) atlasView.add(entry.atlas);
+        return atlasView;
+    }
+
+    /** Memory used by the atlases of faces and the pool */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public int getFaceCount() {
+        return entries.size();
+    }
+
+    public int getPooledCount() {
+        return pool.size();
+    }
+
+    /** Lookups that found an atlas of the right size for the face */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /** Lookups that needed a new atlas (from the pool or newly allocated) */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /** Misses served from the pool instead of allocating */
+    public long getPoolReuseCount() {
+        return poolReuseCount;
+    }
+
+    /** Atlases returned to the pool after their face was not seen within the grace period */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /** Atlases freed to fit the memory budget */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+}
@@ -0,0 +1,119 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.Arrays;
+
+/**
+ * For each face atlas texel, finds the camera image position it shows by rasterizing the mesh
+ * triangles in texture coordinate space and interpolating the projected vertex positions.
+ * This is the inverse of {@link FaceTextureScatter}: every covered texel gets a value and no
+ * UV image needs to be rendered or read back. With an {@link AtlasWarp}, the triangles are
+ * interpolated at the canonical position of each texel, so the result matches the scatter.
+ */
+public final class FaceAtlasGather {
+    private final int atlasWidth, atlasHeight;
+    // camera image coordinates of each texel, negative if not covered
+    private final float[] sourceX, sourceY;
+    private final AtlasWarp warp;
+    // canonical texture coordinates of the texel centers, in texels of an unwarped atlas
+    private final float[] columnU, rowV;
+
+    public FaceAtlasGather(int atlasWidth, int atlasHeight) {
+        this(atlasWidth, atlasHeight, AtlasWarp.UNIFORM);
+    }
+
+    public FaceAtlasGather(int atlasWidth, int atlasHeight, AtlasWarp warp) {
+        this.atlasWidth = atlasWidth;
+        this.atlasHeight = atlasHeight;
+        this.warp = warp;
+        sourceX = new float[atlasWidth * atlasHeight];
+        sourceY = new float[atlasWidth * atlasHeight];
+        columnU = new float[atlasWidth];
+        rowV = new float[atlasHeight];
+        for (int x = 0; x < atlasWidth; x++) {
+            columnU[x] = warp.unmapU((x + 0.5f) / atlasWidth) * atlasWidth;
+        }
+        for (int y = 0; y < atlasHeight; y++) {
+            rowV[y] = warp.unmapV((y + 0.5f) / atlasHeight) * atlasHeight;
+        }
+    }
+
+    public int getAtlasWidth() {
+        return atlasWidth;
+    }
+
+    public int getAtlasHeight() {
+        return atlasHeight;
+    }
+
+    public AtlasWarp getWarp() {
+        return warp;
+    }
+
+    public float[] getSourceX() {
+        return sourceX;
+    }
+
+    public float[] getSourceY() {
+        return sourceY;
+    }
+
+    /**
+     * @param texCoords canonical uv pairs per vertex
+     * @param ndc projected xy pairs per vertex, used for back face culling like the GL
+     *            face mapping pass (which culls GL_FRONT, i.e., counter-clockwise triangles)
+     * @param imagePixels camera image xy pairs per vertex
+     * @param indices triangle list
+     * @param indexCount number of indices
+     * @return number of covered texels
+     */
+    public int rasterize(float[] texCoords, float[] ndc, float[] imagePixels, short[] indices, int indexCount) {
+        Arrays.fill(sourceX, -1f);
+        int covered = 0;
+        for (int t = 0; t + 2 < indexCount; t += 3) {
+            final int i0 = indices[t] & 0xffff, i1 = indices[t + 1] & 0xffff, i2 = indices[t + 2] & 0xffff;
+            final float ndcArea =
+                    (ndc[i1 * 2] - ndc[i0 * 2]) * (ndc[i2 * 2 + 1] - ndc[i0 * 2 + 1]) -
+                    (ndc[i2 * 2] - ndc[i0 * 2]) * (ndc[i1 * 2 + 1] - ndc[i0 * 2 + 1]);
+            if (ndcArea >= 0) continue;
+            covered += rasterizeTriangle(texCoords, imagePixels, i0, i1, i2);
+        }
+        return covered;
+    }
+
+    private int rasterizeTriangle(float[] uv, float[] img, int i0, int i1, int i2) {
+        final float x0 = uv[i0 * 2] * atlasWidth, y0 = uv[i0 * 2 + 1] * atlasHeight;
+        final float x1 = uv[i1 * 2] * atlasWidth, y1 = uv[i1 * 2 + 1] * atlasHeight;
+        final float x2 = uv[i2 * 2] * atlasWidth, y2 = uv[i2 * 2 + 1] * atlasHeight;
+        final float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+        if (area == 0) return 0;
+        final float invArea = 1f / area;
+
+        // the warp is monotone and separable: the bounding box maps to the warped bounding box
+        final float minU = Math.min(x0, Math.min(x1, x2)) / atlasWidth;
+        final float maxU = Math.max(x0, Math.max(x1, x2)) / atlasWidth;
+        final float minV = Math.min(y0, Math.min(y1, y2)) / atlasHeight;
+        final float maxV = Math.max(y0, Math.max(y1, y2)) / atlasHeight;
+        final int minX = Math.max(0, (int) Math.floor(warp.mapU(minU) * atlasWidth));
+        final int maxX = Math.min(atlasWidth - 1, (int) Math.ceil(warp.mapU(maxU) * atlasWidth));
+        final int minY = Math.max(0, (int) Math.floor(warp.mapV(minV) * atlasHeight));
+        final int maxY = Math.min(atlasHeight - 1, (int) Math.ceil(warp.mapV(maxV) * atlasHeight));
+
+        int covered = 0;
+        for (int y = minY; y <= maxY; y++) {
+            final float py = rowV[y];
+            for (int x = minX; x <= maxX; x++) {
+                final float px = columnU[x];
+                // barycentric coordinates
+                final float w1 = ((px - x0) * (y2 - y0) - (x2 - x0) * (py - y0)) * invArea;
+                final float w2 = ((x1 - x0) * (py - y0) - (px - x0) * (y1 - y0)) * invArea;
+                final float w0 = 1f - w1 - w2;
+                if (w0 < 0 || w1 < 0 || w2 < 0) continue;
+                final int idx = y * atlasWidth + x;
+                sourceX[idx] = w0 * img[i0 * 2] + w1 * img[i1 * 2] + w2 * img[i2 * 2];
+                sourceY[idx] = w0 * img[i0 * 2 + 1] + w1 * img[i1 * 2 + 1] + w2 * img[i2 * 2 + 1];
+                covered++;
+            }
+        }
+        return covered;
+    }
+}
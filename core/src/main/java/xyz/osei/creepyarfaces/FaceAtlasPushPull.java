@@ -0,0 +1,200 @@
+package xyz.osei.creepyarfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Fills the holes of a scattered face texture, i.e., the texels no screen pixel mapped to, on
+ * the GPU instead of hiding them by mipmapping. The covered texels (alpha 1) are averaged down a
+ * pyramid of pool textures, halving the size until one texel is left (push), and the filled
+ * coarser levels are upsampled into the holes of the finer ones (pull). The face texture keeps
+ * its covered texels and its holes get the color of the nearest covered ones, and an alpha that
+ * fades out with the coverage around them. Filled texels are never taken as covered by the next
+ * fill, so that a face texture that keeps its contents across frames (see ComputeFaceScatter)
+ * does not accumulate stale fills. See pushpull.frag.
+ *
+ * Each fill is about 2 log2(size) draws of at most a quarter of the face texture, one draw of
+ * the full size and a copy into the face texture, which must not be mipmapped.
+ */
+public class FaceAtlasPushPull {
+    private static final String TAG = FaceAtlasPushPull.class.getSimpleName();
+
+    private static final String VERTEX_SHADER_NAME = "shaders/pushpull.vert";
+    private static final String FRAGMENT_SHADER_NAME = "shaders/pushpull.frag";
+    private static final float[] QUAD_COORDS = { -1, -1, -1, +1, +1, -1, +1, +1 };
+    private static final int MAX_LEVELS = 16;
+
+    private final Gl gl;
+
+    private int pushProgram, pushPosition, pushSource, pushSourceSize;
+    private int pullProgram, pullPosition, pullSource;
+    private int resolveProgram, resolvePosition, resolveSource, resolveAtlas;
+    private final FloatBuffer quadCoords = ByteBuffer.allocateDirect(QUAD_COORDS.length * 4)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+
+    // the pyramid of the last face texture size, from the half size level up
+    private RenderTargetPool pool;
+    private final int[] levels = new int[MAX_LEVELS];
+    private final int[] levelSizes = new int[MAX_LEVELS];
+    private int levelCount, resolveTarget, pyramidSize;
+
+    private final int[] savedViewport = new int[4];
+    private final int[] savedFramebuffer = new int[1];
+    private long fillCount, drawCount;
+
+    public FaceAtlasPushPull(Gl gl) {
+        this.gl = gl;
+        pool = new RenderTargetPool(gl);
+        quadCoords.put(QUAD_COORDS).position(0);
+    }
+
+    public void createOnGlThread(ShaderUtil shaders) throws IOException {
+        final int vertexShader = shaders.loadGLShader(TAG, Gl.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+
+        pushProgram = linkProgram(vertexShader, shaders.loadGLShader(
+                TAG, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME, false));
+        pushPosition = gl.glGetAttribLocation(pushProgram, "a_Position");
+        pushSource = gl.glGetUniformLocation(pushProgram, "u_Source");
+        pushSourceSize = gl.glGetUniformLocation(pushProgram, "u_SourceSize");
+
+        pullProgram = linkProgram(vertexShader, shaders.loadGLShader(
+                TAG, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME, false, "PULL"));
+        pullPosition = gl.glGetAttribLocation(pullProgram, "a_Position");
+        pullSource = gl.glGetUniformLocation(pullProgram, "u_Source");
+
+        resolveProgram = linkProgram(vertexShader, shaders.loadGLShader(
+                TAG, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME, false, "RESOLVE"));
+        resolvePosition = gl.glGetAttribLocation(resolveProgram, "a_Position");
+        resolveSource = gl.glGetUniformLocation(resolveProgram, "u_Source");
+        resolveAtlas = gl.glGetUniformLocation(resolveProgram, "u_Atlas");
+
+        // the textures of the previous context are gone
+        pool = new RenderTargetPool(gl);
+        pyramidSize = 0;
+        ShaderUtil.checkGLError(gl, TAG, "createOnGlThread");
+    }
+
+    private int linkProgram(int vertexShader, int fragmentShader) {
+        final int program = gl.glCreateProgram();
+        gl.glAttachShader(program, vertexShader);
+        gl.glAttachShader(program, fragmentShader);
+        gl.glLinkProgram(program);
+        ShaderUtil.checkGLError(gl, TAG, "Program creation");
+        return program;
+    }
+
+    private void preparePyramid(int size) {
+        if (size == pyramidSize) return;
+        // all faces share the atlas size of the quality level: the old pyramid is not needed
+        pool.clear();
+        levelCount = 0;
+        for (int n = size; n > 1 && levelCount < MAX_LEVELS; ) {
+            n = (n + 1) / 2;
+            levels[levelCount] = pool.getTexture(new RenderGraph.TextureDesc(n, n, Gl.GL_RGBA));
+            levelSizes[levelCount++] = n;
+        }
+        resolveTarget = pool.getTexture(new RenderGraph.TextureDesc(size, size, Gl.GL_RGBA));
+        pyramidSize = size;
+    }
+
+    /**
+     * Fills the holes of the face texture, whose alpha must be 1 where it is covered. Keeps the
+     * framebuffer and the viewport.
+     */
+    public void fill(int atlasTexture, int size) {
+        if (size < 2) return;
+        preparePyramid(size);
+        gl.glGetIntegerv(Gl.GL_VIEWPORT, savedViewport, 0);
+        gl.glGetIntegerv(Gl.GL_FRAMEBUFFER_BINDING, savedFramebuffer, 0);
+        gl.glDisable(Gl.GL_BLEND);
+        gl.glActiveTexture(Gl.GL_TEXTURE0);
+
+        // push: the covered texels down to a single texel
+        gl.glUseProgram(pushProgram);
+        gl.glUniform1i(pushSource, 0);
+        int source = atlasTexture, sourceSize = size;
+        for (int i = 0; i < levelCount; i++) {
+            bindTarget(levels[i], levelSizes[i]);
+            gl.glBindTexture(Gl.GL_TEXTURE_2D, source);
+            gl.glUniform2f(pushSourceSize, sourceSize, sourceSize);
+            drawQuad(pushPosition);
+            source = levels[i];
+            sourceSize = levelSizes[i];
+        }
+
+        // pull: the filled coarser level into the holes of the finer one, keeping its alpha
+        gl.glUseProgram(pullProgram);
+        gl.glUniform1i(pullSource, 0);
+        gl.glEnable(Gl.GL_BLEND);
+        gl.glBlendFuncSeparate(Gl.GL_ONE_MINUS_DST_ALPHA, Gl.GL_DST_ALPHA,
+                Gl.GL_ZERO, Gl.GL_ONE);
+        for (int i = levelCount - 2; i >= 0; i--) {
+            bindTarget(levels[i], levelSizes[i]);
+            gl.glBindTexture(Gl.GL_TEXTURE_2D, levels[i + 1]);
+            drawQuad(pullPosition);
+        }
+        gl.glDisable(Gl.GL_BLEND);
+
+        // the face texture cannot be sampled while rendering into it: resolve into a pool
+        // texture and copy it back
+        bindTarget(resolveTarget, size);
+        gl.glUseProgram(resolveProgram);
+        gl.glActiveTexture(Gl.GL_TEXTURE1);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, atlasTexture);
+        gl.glUniform1i(resolveAtlas, 1);
+        gl.glActiveTexture(Gl.GL_TEXTURE0);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, levels[0]);
+        gl.glUniform1i(resolveSource, 0);
+        drawQuad(resolvePosition);
+        gl.glActiveTexture(Gl.GL_TEXTURE1);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        gl.glActiveTexture(Gl.GL_TEXTURE0);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, atlasTexture);
+        gl.glCopyTexSubImage2D(Gl.GL_TEXTURE_2D, 0, 0, 0, 0, 0, size, size);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+        gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, savedFramebuffer[0]);
+        gl.glViewport(savedViewport[0], savedViewport[1], savedViewport[2], savedViewport[3]);
+        fillCount++;
+        ShaderUtil.checkGLError(gl, TAG, "fill");
+    }
+
+    private void bindTarget(int texture, int size) {
+        gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, pool.getFramebuffer(texture));
+        gl.glViewport(0, 0, size, size);
+    }
+
+    private void drawQuad(int positionAttribute) {
+        gl.glVertexAttribPointer(positionAttribute, 2, Gl.GL_FLOAT, false, 0, quadCoords);
+        gl.glEnableVertexAttribArray(positionAttribute);
+        gl.glDrawArrays(Gl.GL_TRIANGLE_STRIP, 0, 4);
+        gl.glDisableVertexAttribArray(positionAttribute);
+        drawCount++;
+    }
+
+    /** Number of face textures filled */
+    public long getFillCount() {
+        return fillCount;
+    }
+
+    /** Number of draws of all fills */
+    public long getDrawCount() {
+        return drawCount;
+    }
+
+    /** Memory of the pyramid and the resolve texture */
+    public long getAllocatedBytes() {
+        return pool.getAllocatedBytes();
+    }
+
+    /** Deletes the pyramid, which is allocated again by the next fill. Returns the bytes freed. */
+    public long release() {
+        final long bytes = pool.getAllocatedBytes();
+        pool.clear();
+        pyramidSize = 0;
+        return bytes;
+    }
+}
@@ -0,0 +1,326 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Builds the face texture atlases on a dedicated thread. The render thread submits the read-back
+ * camera image and the UV images of the faces through one triple buffer. Each face has a
+ * {@link Target} that accumulates its atlas and from which the render thread picks up finished
+ * atlases, so it never waits for the worker.
+ */
+public final class FaceAtlasWorker {
+    /** Read-back images, filled by the render thread */
+    public static final class Job {
+        private ByteBuffer videoBuffer;
+        private final List<ByteBuffer> uvBuffers = new ArrayList<>();
+        private final List<Target> targets = new ArrayList<>();
+        private int[] atlasSizes = new int[1];
+        private int[] generations = new int[1];
+        private int faceCount;
+        private int width, height;
+        private long sequence;
+        private long submitNanos;
+
+        /**
+         * Prepares the job for images of the given size, allocating only if the size changed,
+         * and removes the faces. The video buffer is rewound.
+         */
+        public void prepare(int width, int height) {
+            final int size = width * height * 4;
+            if (videoBuffer == null || videoBuffer.capacity() != size) {
+                videoBuffer = ByteBuffer.allocateDirect(size);
+                uvBuffers.clear();
+            }
+            videoBuffer.rewind();
+            targets.clear();
+            faceCount = 0;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Adds a face to the job
+         *
+         * @return the rewound buffer for the UV image of the face
+         */
+        public ByteBuffer addFace(Target target, int atlasSize) {
+            if (faceCount == uvBuffers.size()) {
+                uvBuffers.add(ByteBuffer.allocateDirect(videoBuffer.capacity()));
+            }
+            if (faceCount == atlasSizes.length) {
+                atlasSizes = Arrays.copyOf(atlasSizes, faceCount * 2);
+                generations = Arrays.copyOf(generations, faceCount * 2);
+            }
+            targets.add(target);
+            atlasSizes[faceCount] = atlasSize;
+            generations[faceCount] = target.generation;
+            final ByteBuffer uvBuffer = uvBuffers.get(faceCount++);
+            uvBuffer.rewind();
+            return uvBuffer;
+        }
+
+        public int getFaceCount() {
+            return faceCount;
+        }
+
+        public ByteBuffer getVideoBuffer() {
+            return videoBuffer;
+        }
+
+        /** Bytes held by the read-back buffers */
+        public int getBufferBytes() {
+            return videoBuffer == null ? 0 : videoBuffer.capacity() * (1 + uvBuffers.size());
+        }
+
+        /**
+         * Drops the read-back buffers, they are allocated again by the next {@link #prepare}
+         *
+         * @return the bytes released
+         */
+        private int release() {
+            final int bytes = getBufferBytes();
+            videoBuffer = null;
+            uvBuffers.clear();
+            faceCount = 0;
+            targets.clear();
+            return bytes;
+        }
+    }
+
+    /** A finished face atlas, uploaded by the render thread */
+    public static final class Atlas {
+        private ByteBuffer pixels;
+        private int size;
+        private int generation;
+        private long sequence;
+        private long submitNanos;
+        private float coverage;
+
+        /** RGBA pixels, size x size, positioned at zero */
+        public ByteBuffer getPixels() {
+            pixels.rewind();
+            return pixels;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /** Sequence number of the job this atlas was built from */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /** Clock time when the job this atlas was built from was submitted */
+        public long getSubmitNanos() {
+            return submitNanos;
+        }
+
+        /** Fraction of the read-back image covered by the face in the job */
+        public float getCoverage() {
+            return coverage;
+        }
+    }
+
+    /** The atlas of one face, accumulated over jobs */
+    public static final class Target {
+        private final TripleBuffer<Atlas> atlases =
+                new TripleBuffer<>(new Atlas(), new Atlas(), new Atlas());
+        // render thread: incremented to start over from an empty atlas
+        private int generation;
+
+        // owned by the worker thread
+        private byte[] faceBytes;
+        private int faceGeneration;
+
+        /** Render thread: clears the accumulated atlas on the next job, e.g., for a new face */
+        public void reset() {
+            generation++;
+        }
+
+        /**
+         * Render thread: takes the newest finished atlas, if any
+         *
+         * @return the atlas or null if nothing was finished since the previous call
+         */
+        public Atlas pollAtlas() {
+            if (!atlases.consume()) return null;
+            final Atlas atlas = atlases.getReadSlot();
+            // built for the previous face before a reset
+            if (atlas.generation != generation) return null;
+            return atlas;
+        }
+    }
+
+    private final TripleBuffer<Job> jobs = new TripleBuffer<>(new Job(), new Job(), new Job());
+    private final Clock clock;
+
+    private volatile AtlasWarp atlasWarp = AtlasWarp.UNIFORM;
+    private volatile boolean running = true;
+    private volatile boolean releaseRequested;
+    private final AtomicLong releasedBytes = new AtomicLong();
+    private final Thread thread;
+    private long nextSequence = 1;
+    // the sequence of the last job the worker finished, see awaitIdle
+    private final Object processedLock = new Object();
+    private long processedSequence;
+
+    // owned by the worker thread
+    private FaceTextureScatter scatter;
+    private byte[] uvBytes, videoBytes;
+
+    public FaceAtlasWorker(Clock clock) {
+        this.clock = clock;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                workLoop();
+            }
+        }, "FaceAtlasWorker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sets the layout of the atlases built from the next jobs. Accumulated atlases are not
+     * converted, so reset the targets, e.g., by changing the atlas size.
+     */
+    public void setAtlasWarp(AtlasWarp warp) {
+        atlasWarp = warp;
+    }
+
+    /** Render thread: the job to fill before {@link #submit()} */
+    public Job getJob() {
+        return jobs.getWriteSlot();
+    }
+
+    /**
+     * Render thread: hands the filled job to the worker
+     *
+     * @return the sequence number of the job
+     */
+    public long submit() {
+        final Job job = jobs.getWriteSlot();
+        job.sequence = nextSequence++;
+        job.submitNanos = clock.nanoTime();
+        jobs.publish();
+        LockSupport.unpark(thread);
+        return job.sequence;
+    }
+
+    /**
+     * Render thread: drops the read-back buffers of the jobs and the worker's copies of them,
+     * e.g., when no face has been seen for a while. They are allocated again by the next job.
+     * The worker's part is released asynchronously.
+     */
+    public void releaseBuffers() {
+        long bytes = jobs.getWriteSlot().release();
+        final Job idle = jobs.getIdleSlot();
+        if (idle != null) bytes += idle.release();
+        releasedBytes.addAndGet(bytes);
+        releaseRequested = true;
+        LockSupport.unpark(thread);
+    }
+
+    /** Total bytes dropped by {@link #releaseBuffers()} */
+    public long getReleasedBytes() {
+        return releasedBytes.get();
+    }
+
+    /** Number of submitted jobs overwritten by newer ones before the worker got to them */
+    public int getDroppedJobCount() {
+        return jobs.getDroppedCount();
+    }
+
+    /**
+     * Render thread: waits until the worker has finished the last submitted job, e.g., for
+     * deterministic images in the headless benchmark. The app never waits for the worker.
+     */
+    public void awaitIdle() throws InterruptedException {
+        final long submitted = nextSequence - 1;
+        synchronized (processedLock) {
+            while (running && processedSequence < submitted) processedLock.wait();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+        synchronized (processedLock) {
+            processedLock.notifyAll();
+        }
+    }
+
+    private void workLoop() {
+        while (running) {
+            if (releaseRequested) {
+                releaseRequested = false;
+                long bytes = jobs.getReadSlot().release();
+                if (videoBytes != null) bytes += uvBytes.length + videoBytes.length;
+                uvBytes = null;
+                videoBytes = null;
+                scatter = null;
+                releasedBytes.addAndGet(bytes);
+            }
+            if (!jobs.consume()) {
+                LockSupport.park(this);
+                continue;
+            }
+            final Job job = jobs.getReadSlot();
+            process(job);
+            synchronized (processedLock) {
+                processedSequence = job.sequence;
+                processedLock.notifyAll();
+            }
+        }
+    }
+
+    private void process(Job job) {
+        final int size = job.width * job.height * 4;
+        if (videoBytes == null || videoBytes.length != size) {
+            uvBytes = new byte[size];
+            videoBytes = new byte[size];
+        }
+        job.videoBuffer.rewind();
+        job.videoBuffer.get(videoBytes, 0, size);
+
+        final AtlasWarp warp = atlasWarp;
+        for (int i = 0; i < job.faceCount; i++) {
+            final Target target = job.targets.get(i);
+            final int atlasSize = job.atlasSizes[i];
+            if (scatter == null || scatter.getFaceWidth() != atlasSize || scatter.getWarp() != warp) {
+                scatter = new FaceTextureScatter(atlasSize, atlasSize, warp);
+            }
+            final int atlasBytes = atlasSize * atlasSize * 4;
+            if (target.faceBytes == null || target.faceBytes.length != atlasBytes) {
+                target.faceBytes = new byte[atlasBytes];
+            } else if (target.faceGeneration != job.generations[i]) {
+                Arrays.fill(target.faceBytes, (byte) 0);
+            }
+            target.faceGeneration = job.generations[i];
+
+            final ByteBuffer uvBuffer = job.uvBuffers.get(i);
+            uvBuffer.rewind();
+            uvBuffer.get(uvBytes, 0, size);
+            final int covered = scatter.scatter(uvBytes, videoBytes, job.width, job.height, target.faceBytes);
+
+            final Atlas atlas = target.atlases.getWriteSlot();
+            if (atlas.pixels == null || atlas.pixels.capacity() != atlasBytes) {
+                atlas.pixels = ByteBuffer.allocateDirect(atlasBytes);
+            }
+            atlas.pixels.rewind();
+            atlas.pixels.put(target.faceBytes);
+            atlas.size = atlasSize;
+            atlas.generation = target.faceGeneration;
+            atlas.sequence = job.sequence;
+            atlas.submitNanos = job.submitNanos;
+            atlas.coverage = covered / (float) (job.width * job.height);
+            target.atlases.publish();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class FaceGeometry {
+    private static final String TAG = FaceGeometry.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    private static final int COORDS_PER_VERTEX = 3;
+
+    /** The subset of {@link #drawElements(int)} that draws every triangle */
+    public static final int ALL_TRIANGLES = -1;
+
+    /**
+     * The triangles on which a baked mask (see FaceMasks) can be non-zero. They are appended to
+     * the index buffer after the full mesh.
+     */
+    private static final class TriangleSubset {
+        final byte[] maskAlpha;
+        final int maskSize;
+        int firstIndex, indexCount;
+        short[] indices;
+
+        TriangleSubset(byte[] maskAlpha, int maskSize) {
+            this.maskAlpha = maskAlpha;
+            this.maskSize = maskSize;
+        }
+    }
+
+    private final Gl gl;
+
+    // Object vertex buffer variables.
+    private int vertexBufferId;
+    private int verticesBaseAddress;
+    private int texCoordsBaseAddress;
+    private int normalsBaseAddress;
+    private int indexBufferId;
+    private int indexCount;
+    private int vertexBufferBytes;
+    private final List<TriangleSubset> subsets = new ArrayList<>();
+    // the indices in the index buffer, null if the subsets must be computed again
+    private ShortBuffer uploadedTopology;
+    // incremented whenever the attribute offsets change, see FaceVertexArray
+    private int layoutVersion;
+
+    private final FaceMeshLayout layout = new FaceMeshLayout();
+    private Object uploadedFace;
+    private long uploadedTimestamp;
+
+    private boolean objectLoaded = false;
+
+    public FaceGeometry(Gl gl) {
+        this.gl = gl;
+    }
+
+    public void createOnGlThread() {
+        int[] buffers = new int[2];
+        gl.glGenBuffers(2, buffers, 0);
+        vertexBufferId = buffers[0];
+        indexBufferId = buffers[1];
+        // the buffers of a lost context are gone: allocate and upload everything again
+        vertexBufferBytes = 0;
+        layoutVersion++;
+        uploadedFace = null;
+        uploadedTopology = null;
+        objectLoaded = false;
+        ShaderUtil.checkGLError(gl, TAG, "createOnGlThread");
+    }
+
+    /**
+     * Uploads the mesh of the given face. Skipped if the same face was already uploaded from
+     * the same camera frame.
+     *
+     * @param mesh the mesh of the face
+     * @param cameraTimestamp timestamp of the frame the face was obtained from
+     */
+    public <F> void setToFace(F face, FaceMesh<F> mesh, long cameraTimestamp) {
+        if (face.equals(uploadedFace) && cameraTimestamp == uploadedTimestamp) return;
+        uploadedFace = face;
+        uploadedTimestamp = cameraTimestamp;
+
+        // Obtain the data from the OBJ, as direct buffers:
+        FloatBuffer vertices = mesh.getVertices(face);
+        FloatBuffer texCoords = mesh.getTextureCoordinates(face);
+        FloatBuffer normals = mesh.getNormals(face);
+
+        // Convert int indices to shorts for GL ES 2.0 compatibility
+        ShortBuffer indices = mesh.getTriangleIndices(face);
+
+        // Pack all attributes and load them to the vertex buffer with a single upload
+        layout.pack(vertices, texCoords, normals);
+        verticesBaseAddress = layout.getVerticesBaseAddress();
+        texCoordsBaseAddress = layout.getTexCoordsBaseAddress();
+        normalsBaseAddress = layout.getNormalsBaseAddress();
+        final int totalBytes = layout.getTotalBytes();
+
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vertexBufferId);
+        if (totalBytes != vertexBufferBytes) {
+            gl.glBufferData(
+                    Gl.GL_ARRAY_BUFFER, totalBytes, layout.getStagingBuffer(), Gl.GL_DYNAMIC_DRAW);
+            vertexBufferBytes = totalBytes;
+            layoutVersion++;
+        } else {
+            gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, 0, totalBytes, layout.getStagingBuffer());
+        }
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+
+        // The topology of the face mesh does not change between faces and frames: the indices
+        // and the triangle subsets are only uploaded again if it does
+        if (!indices.equals(uploadedTopology)) uploadIndices(indices, texCoords);
+
+        ShaderUtil.checkGLError(gl, TAG, "setToFace");
+
+        objectLoaded = true;
+    }
+
+    private void uploadIndices(ShortBuffer indices, FloatBuffer texCoords) {
+        indexCount = indices.limit();
+        int totalCount = indexCount;
+        final short[][] subsetIndices = new short[subsets.size()][];
+        for (int i = 0; i < subsets.size(); i++) {
+            final TriangleSubset subset = subsets.get(i);
+            subsetIndices[i] = FaceMasks.visibleTriangles(subset.maskAlpha, subset.maskSize, texCoords, indices);
+            subset.firstIndex = totalCount;
+            subset.indexCount = subsetIndices[i].length;
+            subset.indices = subsetIndices[i];
+            totalCount += subset.indexCount;
+            LOG.info(String.format("triangle subset %d: %d of %d triangles",
+                    i, subset.indexCount / 3, indexCount / 3));
+        }
+
+        final ShortBuffer staging = ByteBuffer.allocateDirect(2 * totalCount)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        indices.rewind();
+        staging.put(indices);
+        for (short[] subset : subsetIndices) staging.put(subset);
+        staging.flip();
+
+        gl.glBindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+        gl.glBufferData(
+                Gl.GL_ELEMENT_ARRAY_BUFFER, 2 * totalCount, staging, Gl.GL_STATIC_DRAW);
+        gl.glBindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        indices.rewind();
+        uploadedTopology = ShortBuffer.allocate(indexCount);
+        uploadedTopology.put(indices).flip();
+        indices.rewind();
+    }
+
+    /**
+     * Adds the subset of triangles on which the given baked mask can be non-zero, to be drawn
+     * with {@link #drawElements(int)}. The same mask gives the same subset. It is computed from
+     * the texture coordinates of the first uploaded face.
+     *
+     * @return the subset
+     */
+    public int addTriangleSubset(byte[] maskAlpha, int maskSize) {
+        for (int i = 0; i < subsets.size(); i++) {
+            final TriangleSubset subset = subsets.get(i);
+            if (subset.maskSize == maskSize && Arrays.equals(subset.maskAlpha, maskAlpha)) return i;
+        }
+        subsets.add(new TriangleSubset(maskAlpha, maskSize));
+        uploadedTopology = null;
+        return subsets.size() - 1;
+    }
+
+    /** Number of triangles drawn for the subset, or in the whole mesh for {@link #ALL_TRIANGLES} */
+    public int getTriangleCount(int subset) {
+        if (subset == ALL_TRIANGLES || uploadedTopology == null) return indexCount / 3;
+        return subsets.get(subset).indexCount / 3;
+    }
+
+    /**
+     * The indices drawn for the subset, or of the whole mesh for {@link #ALL_TRIANGLES}. Empty
+     * before the first face is uploaded.
+     */
+    public ShortBuffer getTriangleIndices(int subset) {
+        if (uploadedTopology == null) return ShortBuffer.allocate(0);
+        if (subset == ALL_TRIANGLES) return uploadedTopology.duplicate();
+        return ShortBuffer.wrap(subsets.get(subset).indices);
+    }
+
+    public boolean isReady() {
+        return objectLoaded;
+    }
+
+    public int getLayoutVersion() {
+        return layoutVersion;
+    }
+
+    public void bindGeometryBuffers(int positionAttribute, int texCoordAttribute, int normalAttribute) {
+        if (!objectLoaded) return;
+        final boolean hasNormals = normalAttribute > 0;
+
+        // Set the vertex attributes.
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vertexBufferId);
+
+        gl.glVertexAttribPointer(
+                positionAttribute, COORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, verticesBaseAddress);
+        if (hasNormals) {
+            gl.glVertexAttribPointer(normalAttribute, 3, Gl.GL_FLOAT, false, 0, normalsBaseAddress);
+        }
+        gl.glVertexAttribPointer(
+                texCoordAttribute, 2, Gl.GL_FLOAT, false, 0, texCoordsBaseAddress);
+
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+
+        // Enable vertex arrays
+        gl.glEnableVertexAttribArray(positionAttribute);
+        if (hasNormals) gl.glEnableVertexAttribArray(normalAttribute);
+        gl.glEnableVertexAttribArray(texCoordAttribute);
+
+        gl.glBindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+
+        ShaderUtil.checkGLError(gl, TAG, "bindGeometryBuffers");
+    }
+
+    public void drawElements() {
+        drawElements(ALL_TRIANGLES);
+    }
+
+    /** Draws a subset of {@link #addTriangleSubset}, or all triangles until it is computed */
+    public void drawElements(int subset) {
+        if (subset == ALL_TRIANGLES || uploadedTopology == null) {
+            gl.glDrawElements(Gl.GL_TRIANGLES, indexCount, Gl.GL_UNSIGNED_SHORT, 0);
+        } else {
+            final TriangleSubset triangles = subsets.get(subset);
+            gl.glDrawElements(Gl.GL_TRIANGLES, triangles.indexCount, Gl.GL_UNSIGNED_SHORT,
+                    2 * triangles.firstIndex);
+        }
+        ShaderUtil.checkGLError(gl, TAG, "drawElements");
+    }
+
+    public void unbindGeometryBuffers(int positionAttribute, int texCoordAttribute, int normalAttribute) {
+        final boolean hasNormals = normalAttribute > 0;
+
+        gl.glBindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        // Disable vertex arrays
+        gl.glDisableVertexAttribArray(positionAttribute);
+        if (hasNormals) gl.glDisableVertexAttribArray(normalAttribute);
+        gl.glDisableVertexAttribArray(texCoordAttribute);
+        ShaderUtil.checkGLError(gl, TAG, "unbindGeometryBuffers");
+    }
+}
@@ -0,0 +1,679 @@
+package xyz.osei.creepyarfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Maintains a face texture for each face by mapping the camera image to the face texture
+ * coordinates of the mesh
+ *
+ * @param <F> face identity, see {@link FaceMesh}
+ */
+public class FaceMapper<F> {
+    private static final String TAG = FaceMapper.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    // Shader names.
+    private static final String VERTEX_SHADER_NAME = "shaders/uv.vert";
+    private static final String FRAGMENT_SHADER_NAME = "shaders/uvcapture.frag";
+
+    private static final int DEFAULT_FACE_TEXTURE_SIZE = 256;
+
+    // Motion thresholds below which the previous face texture is reused
+    private static final float REFRESH_TRANSLATION_M = 0.002f;
+    private static final float REFRESH_ROTATION_RAD = (float) Math.toRadians(0.5);
+    private static final float REFRESH_VERTEX_DISPLACEMENT_M = 0.0015f;
+    private static final long MAX_REFRESH_INTERVAL_MS = 500;
+
+    // Face atlases are kept this long for faces that lose tracking
+    private static final long ATLAS_GRACE_PERIOD_MS = 3000;
+    private static final long DEFAULT_ATLAS_BUDGET_BYTES = 8 * 1024 * 1024;
+
+    private final Gl gl;
+    private int program;
+
+    // Shader location: model view projection matrix.
+    //private int modelViewUniform;
+    private int modelViewProjectionUniform;
+
+    // Shader location: object attributes.
+    private int positionAttribute;
+    private int texCoordAttribute;
+
+    // OpenGL ES 3.0 backend, see FaceRenderer
+    private CameraUniforms cameraUniforms;
+    private FaceVertexArray vertexArray;
+    private int modelUniform;
+
+    // Temporary matrices allocated here to reduce number of allocations for each frame.
+    private final float[] modelMatrix = new float[16];
+    private final float[] modelViewMatrix = new float[16];
+    private final float[] modelViewProjectionMatrix = new float[16];
+
+    // The face textures are built on a worker thread from the read-back images
+    private final FaceAtlasWorker atlasWorker = new FaceAtlasWorker(Clock.SYSTEM);
+    private int atlasSize = DEFAULT_FACE_TEXTURE_SIZE;
+    // the size requested by setAtlasSize, atlasSize is smaller with a non-uniform layout
+    private int uniformAtlasSize = DEFAULT_FACE_TEXTURE_SIZE;
+    private AtlasWarp atlasWarp = AtlasWarp.UNIFORM;
+    private long uploadBytes;
+    private long staleFrameCount;
+    private final RollingStats handoffLatencyMillis = new RollingStats(100);
+    private final RollingStats faceCoverage = new RollingStats(100);
+    private long readbackBytes;
+    private long releasedBytes;
+
+    // One face texture per face
+    private final FaceAtlasCache<F, FaceAtlas> atlasCache = new FaceAtlasCache<>(
+            new FaceAtlasCache.Allocator<FaceAtlas>() {
+                @Override
+                public FaceAtlas allocate(int size) {
+                    return allocateAtlas(size);
+                }
+
+                @Override
+                public void reset(FaceAtlas atlas) {
+                    resetAtlas(atlas);
+                }
+
+                @Override
+                public void free(FaceAtlas atlas) {
+                    gl.glDeleteTextures(1, new int[] { atlas.textureId }, 0);
+                }
+
+                @Override
+                public long getBytes(int size) {
+                    // (mipmapped) texture, the accumulated atlas and the worker's triple buffer
+                    final long atlasBytes = 4L * size * size;
+                    final long textureBytes = pushPull != null ? atlasBytes : atlasBytes * 4 / 3;
+                    return textureBytes + atlasBytes + 3 * atlasBytes;
+                }
+            },
+            DEFAULT_ATLAS_BUDGET_BYTES,
+            ATLAS_GRACE_PERIOD_MS,
+            Clock.SYSTEM);
+    private final List<FaceAtlas> capturedAtlases = new ArrayList<>();
+    private FaceAtlasWorker.Job captureJob;
+    private boolean cameraImageCaptured;
+    // zeros for clearing new and pooled face textures, grown as needed
+    private ByteBuffer transparentPixels;
+    private long refreshCount, skipCount;
+    private long totalRefreshIntervalNanos, refreshIntervalCount;
+
+    // Alternative source: the CPU camera image, created on first use
+    private CameraImageAtlasSource<F> cameraImageSource;
+    // Alternative scatter: a compute shader, see setComputeScatter
+    private ComputeFaceScatter computeScatter;
+    // Hole filling instead of mipmaps, see setHoleFilling
+    private FaceAtlasPushPull pushPull;
+
+    // screen size and the (possibly smaller) size of the captured image
+    private int screenWidth, screenHeight;
+    private int width, height;
+    private float captureScale = 1;
+
+    private final FaceGeometry faceGeometry;
+    private final FaceMesh<F> faceMesh;
+    private final float[] faceTranslation = new float[3];
+    private final float[] faceRotation = new float[4];
+
+    public FaceMapper(Gl gl, FaceGeometry geometry, FaceMesh<F> mesh) {
+        this.gl = gl;
+        faceGeometry = geometry;
+        faceMesh = mesh;
+    }
+
+    /**
+     * Selects the OpenGL ES 3.0 backend. Must be called before {@link #createOnGlThread(ShaderUtil)}.
+     */
+    public void setCameraUniforms(CameraUniforms uniforms) {
+        cameraUniforms = uniforms;
+    }
+
+    private boolean isEs3() {
+        return cameraUniforms != null;
+    }
+
+    /**
+     * Scatters the captured images to the face textures in a compute shader instead of on the
+     * worker thread, see {@link ComputeFaceScatter}. Needs OpenGL ES 3.1, falls back to the
+     * worker thread if the context does not support it. Does not apply to
+     * {@link #drawFromCameraImage}. Must be called before {@link #createOnGlThread(ShaderUtil)}.
+     */
+    public void setComputeScatter(ComputeFaceScatter scatter) {
+        computeScatter = scatter;
+    }
+
+    /**
+     * Fills the holes of the face textures with {@link FaceAtlasPushPull} after each update
+     * instead of generating their mipmaps. The face textures are then not mipmapped. Must be
+     * called before {@link #createOnGlThread(ShaderUtil)}.
+     */
+    public void setHoleFilling(FaceAtlasPushPull holeFilling) {
+        pushPull = holeFilling;
+    }
+
+    /** The hole filling of the face textures, null if they are mipmapped */
+    public FaceAtlasPushPull getHoleFilling() {
+        return pushPull;
+    }
+
+    /** True if the face textures are scattered in a compute shader */
+    public boolean isComputeScatter() {
+        return computeScatter != null;
+    }
+
+    public void createOnGlThread(ShaderUtil shaders)
+            throws IOException {
+        final int vertexShader = shaders.loadGLShader(TAG, Gl.GL_VERTEX_SHADER,
+                isEs3() ? ShaderUtil.es3ShaderName(VERTEX_SHADER_NAME) : VERTEX_SHADER_NAME, isEs3());
+        final int fragmentShader = shaders.loadGLShader(TAG, Gl.GL_FRAGMENT_SHADER,
+                FRAGMENT_SHADER_NAME, isEs3());
+
+        program = gl.glCreateProgram();
+        gl.glAttachShader(program, vertexShader);
+        gl.glAttachShader(program, fragmentShader);
+        gl.glLinkProgram(program);
+        gl.glUseProgram(program);
+        ShaderUtil.checkGLError(gl, TAG, "Program creation");
+
+        if (isEs3()) {
+            cameraUniforms.bindProgram(program);
+            modelUniform = gl.glGetUniformLocation(program, "u_Model");
+        } else {
+            modelViewProjectionUniform = gl.glGetUniformLocation(program, "u_ModelViewProjection");
+        }
+
+        positionAttribute = gl.glGetAttribLocation(program, "a_Position");
+        texCoordAttribute = gl.glGetAttribLocation(program, "a_TexCoord");
+
+        if (isEs3()) {
+            vertexArray = new FaceVertexArray(gl, faceGeometry);
+            vertexArray.createOnGlThread(positionAttribute, texCoordAttribute, -1);
+        }
+
+        if (computeScatter != null) {
+            if (computeScatter.isSupported()) {
+                computeScatter.createOnGlThread(shaders);
+            } else {
+                LOG.warning("no OpenGL ES 3.1, scattering the face textures on the worker thread");
+                computeScatter = null;
+            }
+        }
+        if (pushPull != null) {
+            pushPull.createOnGlThread(shaders);
+            if (computeScatter != null) computeScatter.setMipmaps(false);
+        }
+
+        ShaderUtil.checkGLError(gl, TAG, "Program parameters");
+
+        MatrixMath.setIdentity(modelMatrix);
+        ShaderUtil.checkGLError(gl, TAG, "end FaceRenderer.createOnGlThread");
+    }
+
+    public void setDimensions(int w, int h) {
+        screenWidth = w;
+        screenHeight = h;
+        if (computeScatter != null) computeScatter.setScreenSize(w, h);
+        updateCaptureSize();
+    }
+
+    /**
+     * Changes the resolution of the face textures. The previous contents of the textures are lost.
+     */
+    public void setAtlasSize(int size) {
+        uniformAtlasSize = size;
+        updateAtlasSize();
+    }
+
+    /**
+     * Uses a face atlas layout with more texels in some regions, e.g., the eyes and mouth. The
+     * atlas size given to {@link #setAtlasSize(int)} is then the size of a uniform atlas with the
+     * same detail in those regions, and the actual atlas is smaller. The sizes are not powers of
+     * two, which OpenGL ES 2.0 cannot mipmap. The filters must be given the same layout. Call
+     * before the first frame.
+     */
+    public void setAtlasWarp(AtlasWarp warp) {
+        atlasWarp = warp;
+        atlasWorker.setAtlasWarp(warp);
+        updateAtlasSize();
+    }
+
+    private void updateAtlasSize() {
+        final int size = atlasWarp.getAtlasSize(uniformAtlasSize);
+        if (atlasSize == size) return;
+        LOG.info(String.format(
+                "face texture size %dx%d (%d texels, %d bytes per upload), uniform %dx%d (%d texels)",
+                size, size, size * size, 4 * size * size,
+                uniformAtlasSize, uniformAtlasSize, uniformAtlasSize * uniformAtlasSize));
+        atlasSize = size;
+    }
+
+    /** Memory budget for the face textures of all faces, see {@link FaceAtlasCache} */
+    public void setAtlasBudgetBytes(long bytes) {
+        atlasCache.setBudgetBytes(bytes);
+    }
+
+    private FaceAtlas allocateAtlas(int size) {
+        final int[] textures = new int[1];
+        gl.glActiveTexture(Gl.GL_TEXTURE0);
+        if (computeScatter != null) {
+            textures[0] = computeScatter.allocateAtlas(size, pushPull == null);
+            // immutable storage starts out undefined
+            computeScatter.clearAtlas(textures[0]);
+        } else {
+            gl.glGenTextures(1, textures, 0);
+        }
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+
+        if (pushPull != null) {
+            gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR);
+            // the push samples one texel past the edge of odd sizes
+            gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_S, Gl.GL_CLAMP_TO_EDGE);
+            gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_T, Gl.GL_CLAMP_TO_EDGE);
+        } else {
+            gl.glTexParameteri(
+                    Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR_MIPMAP_LINEAR);
+        }
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
+        // the filters sample the face texture before its face is first mapped
+        if (computeScatter == null) clearTexture(size);
+
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        ShaderUtil.checkGLError(gl, TAG, "allocateAtlas");
+
+        return new FaceAtlas(textures[0], size, new FaceMotionGate(
+                REFRESH_TRANSLATION_M,
+                REFRESH_ROTATION_RAD,
+                REFRESH_VERTEX_DISPLACEMENT_M,
+                MAX_REFRESH_INTERVAL_MS,
+                Clock.SYSTEM));
+    }
+
+    /** Clears a pooled atlas before it is given to another face */
+    private void resetAtlas(FaceAtlas atlas) {
+        atlas.workerTarget.reset();
+        atlas.motionGate.invalidate();
+        atlas.lastSubmittedSequence = 0;
+        atlas.uploadedSequence = 0;
+        if (atlas.cameraImagePixels != null) Arrays.fill(atlas.cameraImagePixels, (byte) 0);
+        if (computeScatter != null) {
+            computeScatter.clearAtlas(atlas.textureId);
+            return;
+        }
+
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, atlas.textureId);
+        clearTexture(atlas.size);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        ShaderUtil.checkGLError(gl, TAG, "resetAtlas");
+    }
+
+    /** Sets the bound face texture to transparent, with storage for all its levels */
+    private void clearTexture(int size) {
+        final int bytes = 4 * size * size;
+        if (transparentPixels == null || transparentPixels.capacity() < bytes) {
+            transparentPixels = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        transparentPixels.position(0);
+        gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, Gl.GL_RGBA, size, size, 0, Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, transparentPixels);
+        if (pushPull == null) gl.glGenerateMipmap(Gl.GL_TEXTURE_2D);
+    }
+
+    /**
+     * Sets the resolution of the camera and UV images read back from the GPU relative to
+     * the screen resolution
+     */
+    public void setCaptureScale(float scale) {
+        captureScale = scale;
+        updateCaptureSize();
+    }
+
+    private void updateCaptureSize() {
+        width = Math.max(1, Math.round(screenWidth * captureScale));
+        height = Math.max(1, Math.round(screenHeight * captureScale));
+    }
+
+    /**
+     * Sets the viewport for capturing the camera image. Call before drawing the background for
+     * {@link #draw(Object, float[], float[])}, and call {@link #endCapture()} after the
+     * last face.
+     */
+    public void beginCapture() {
+        gl.glViewport(0, 0, width, height);
+        if (computeScatter == null) {
+            captureJob = atlasWorker.getJob();
+            captureJob.prepare(width, height);
+        }
+        capturedAtlases.clear();
+        cameraImageCaptured = false;
+    }
+
+    /**
+     * True if the captured images cover the whole screen. Otherwise, the camera image was only
+     * drawn to the lower left corner of the screen.
+     */
+    public boolean isFullResolutionCapture() {
+        return width == screenWidth && height == screenHeight;
+    }
+
+    /**
+     * Restores the full screen viewport and hands the captured images to the worker thread
+     */
+    public void endCapture() {
+        gl.glViewport(0, 0, screenWidth, screenHeight);
+        if (captureJob != null && captureJob.getFaceCount() > 0) {
+            final long sequence = atlasWorker.submit();
+            for (int i = 0; i < capturedAtlases.size(); i++) {
+                capturedAtlases.get(i).lastSubmittedSequence = sequence;
+            }
+        }
+        captureJob = null;
+    }
+
+    /** @param poseMatrix the model matrix of the face center, see {@link FaceMesh#getPoseMatrix} */
+    public void updateModelMatrix(float[] poseMatrix) {
+        System.arraycopy(poseMatrix, 0, modelMatrix, 0, 16);
+    }
+
+    /**
+     * Call at the start of each frame. Looks up the face textures of the faces of the frame,
+     * creating transparent ones for new faces, and releases the face textures of faces that have
+     * not been seen for a while.
+     */
+    public void beginFrame(List<F> faces) {
+        atlasCache.beginFrame();
+        for (int i = 0; i < faces.size(); i++) atlasCache.get(faces.get(i), atlasSize);
+        // only after the lookups, which keep the faces of this frame from being evicted
+        atlasCache.trim();
+    }
+
+    /**
+     * Checks if the face moved enough since the last texture refresh to make drawing the
+     * face mapping worthwhile. If this returns false, the previous texture can be reused.
+     * If it returns true, call {@link #refreshed(Object)} once the face is mapped: until
+     * then, the face keeps needing a refresh.
+     */
+    public boolean needsRefresh(F face) {
+        final FaceAtlas atlas = atlasCache.peek(face);
+        if (atlas == null) return false;
+        faceMesh.getTranslation(face, faceTranslation);
+        faceMesh.getRotation(face, faceRotation);
+        if (atlas.motionGate.needsRefresh(faceTranslation, faceRotation, faceMesh.getVertices(face))) return true;
+        atlas.motionGate.skipped();
+        skipCount++;
+        return false;
+    }
+
+    /** Makes the current pose of the face the reference of the next {@link #needsRefresh} */
+    public void refreshed(F face) {
+        final FaceAtlas atlas = atlasCache.peek(face);
+        if (atlas == null) return;
+        faceMesh.getTranslation(face, faceTranslation);
+        faceMesh.getRotation(face, faceRotation);
+        final long interval = atlas.motionGate.refreshed(faceTranslation, faceRotation, faceMesh.getVertices(face));
+        if (interval >= 0) {
+            totalRefreshIntervalNanos += interval;
+            refreshIntervalCount++;
+        }
+        refreshCount++;
+    }
+
+    /** Fraction of refresh checks that reused the previous texture, over all faces */
+    public double getRefreshSkipRate() {
+        final long total = refreshCount + skipCount;
+        return total == 0 ? 0 : skipCount / (double) total;
+    }
+
+    /** Average time between the texture refreshes of a face, over all faces */
+    public double getAverageRefreshIntervalMillis() {
+        return refreshIntervalCount == 0 ? 0 : totalRefreshIntervalNanos * 1e-6 / refreshIntervalCount;
+    }
+
+    public FaceAtlasCache<F, FaceAtlas> getAtlasCache() {
+        return atlasCache;
+    }
+
+    /**
+     * The face texture of the given face, transparent until the face is first mapped. 0 if the
+     * face was not given to {@link #beginFrame(List)}.
+     */
+    public int getFaceTextureId(F face) {
+        final FaceAtlas atlas = atlasCache.peek(face);
+        return atlas == null ? 0 : atlas.textureId;
+    }
+
+    /**
+     * Draws the UV pass of the face and reads it back. The face geometry and model matrix must be
+     * set to the face and {@link #needsRefresh(Object)} must have been called for it.
+     *
+     * The UV image is drawn over the camera image and sets the stencil buffer to 1 where the face
+     * is. Those pixels must be restored from the camera image before drawing the next face.
+     */
+    public void draw(
+            F face,
+            float[] cameraView,
+            float[] cameraPerspective) {
+
+        final FaceAtlas atlas = atlasCache.peek(face);
+        if (!faceGeometry.isReady() || atlas == null) return;
+
+        if (!cameraImageCaptured && computeScatter != null) {
+            computeScatter.captureCamera(width, height);
+            cameraImageCaptured = true;
+        } else if (!cameraImageCaptured) {
+            // the same camera image is used for all faces
+            gl.glReadPixels(0, 0, width, height, Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, captureJob.getVideoBuffer());
+            readbackBytes += 4L * width * height;
+            cameraImageCaptured = true;
+        }
+
+        drawUvImage(cameraView, cameraPerspective);
+
+        if (computeScatter != null) {
+            // the face texture is complete for this frame, no worker involved
+            computeScatter.scatter(width, height, atlas.textureId, atlas.size, atlasWarp);
+            if (pushPull != null) pushPull.fill(atlas.textureId, atlas.size);
+        } else {
+            gl.glReadPixels(0, 0, width, height, Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE,
+                    captureJob.addFace(atlas.workerTarget, atlas.size));
+            readbackBytes += 4L * width * height;
+            capturedAtlases.add(atlas);
+        }
+
+        ShaderUtil.checkGLError(gl, TAG, "After draw");
+    }
+
+    /**
+     * Draws the UV image of the face over the screen and marks the face in the stencil buffer,
+     * the part of {@link #draw(Object, float[], float[])} between the camera image and the
+     * readback. Also used by the headless checks of the face texture scatter. The face geometry
+     * and model matrix must be set to the face.
+     */
+    public void drawUvImage(float[] cameraView, float[] cameraPerspective) {
+        ShaderUtil.checkGLError(gl, TAG, "Before draw");
+
+        gl.glUseProgram(program);
+        ShaderUtil.checkGLError(gl, TAG, "After glUseProgram");
+
+        gl.glCullFace(Gl.GL_FRONT);
+        gl.glEnable(Gl.GL_CULL_FACE);
+
+        if (isEs3()) {
+            vertexArray.bind();
+            gl.glUniformMatrix4fv(modelUniform, 1, false, modelMatrix, 0);
+        } else {
+            // Build the ModelView and ModelViewProjection matrices
+            // for calculating object position and light.
+            MatrixMath.composeModelViewProjection(
+                    cameraView, cameraPerspective, modelMatrix, modelViewMatrix, modelViewProjectionMatrix);
+
+            faceGeometry.bindGeometryBuffers(positionAttribute, texCoordAttribute, -1);
+
+            // Set the ModelViewProjection matrix in the shader.
+            //gl.glUniformMatrix4fv(modelViewUniform, 1, false, modelViewMatrix, 0);
+            gl.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+        }
+
+        ShaderUtil.checkGLError(gl, TAG, "After glBindBuffers");
+
+        // mark the face coverage for restoring the background, see FramePipeline
+        gl.glEnable(Gl.GL_STENCIL_TEST);
+        gl.glStencilFunc(Gl.GL_ALWAYS, 1, 0xff);
+        gl.glStencilOp(Gl.GL_KEEP, Gl.GL_KEEP, Gl.GL_REPLACE);
+
+        faceGeometry.drawElements();
+
+        gl.glDisable(Gl.GL_STENCIL_TEST);
+        gl.glDisable(Gl.GL_CULL_FACE);
+
+        if (isEs3()) {
+            vertexArray.unbind();
+        } else {
+            faceGeometry.unbindGeometryBuffers(positionAttribute, texCoordAttribute, -1);
+        }
+    }
+
+    /**
+     * Updates the face texture directly from the CPU camera image of the frame. An alternative
+     * to {@link #beginCapture()} and {@link #draw(Object, float[], float[])}, which do not
+     * need to be called in this case, and which leave the screen as is.
+     */
+    public void drawFromCameraImage(
+            CameraFrame frame,
+            F face,
+            float[] cameraView,
+            float[] cameraPerspective) {
+        if (cameraImageSource == null) cameraImageSource = new CameraImageAtlasSource<>(faceMesh);
+        final FaceAtlas atlas = atlasCache.peek(face);
+        if (atlas == null) return;
+        if (atlas.cameraImagePixels == null) atlas.cameraImagePixels = new byte[atlas.size * atlas.size * 4];
+
+        MatrixMath.composeModelViewProjection(
+                cameraView, cameraPerspective, modelMatrix, modelViewMatrix, modelViewProjectionMatrix);
+        final ByteBuffer pixels = cameraImageSource.update(
+                frame, face, modelViewProjectionMatrix, atlas.size, atlasWarp, atlas.cameraImagePixels);
+        if (pixels == null) return;
+        uploadBytes += 4L * atlas.size * atlas.size;
+
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, atlas.textureId);
+        gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, Gl.GL_RGBA, atlas.size, atlas.size, 0, Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, pixels);
+        // the gathered texture has no holes to fill
+        if (pushPull == null) gl.glGenerateMipmap(Gl.GL_TEXTURE_2D);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        ShaderUtil.checkGLError(gl, TAG, "drawFromCameraImage");
+    }
+
+    /**
+     * Uploads the newest face textures finished by the worker thread, if any. Call at the start
+     * of each frame. Never waits for the worker.
+     */
+    public void updateFaceTexture() {
+        boolean stale = false;
+        float coverage = 0;
+        for (FaceAtlas faceAtlas : atlasCache.getAtlases()) {
+            final FaceAtlasWorker.Atlas atlas = faceAtlas.workerTarget.pollAtlas();
+            if (atlas != null && atlas.getSize() == faceAtlas.size) {
+                handoffLatencyMillis.add((System.nanoTime() - atlas.getSubmitNanos()) * 1e-6);
+                coverage += atlas.getCoverage();
+                faceAtlas.uploadedSequence = atlas.getSequence();
+                uploadBytes += 4L * atlas.getSize() * atlas.getSize();
+
+                gl.glBindTexture(Gl.GL_TEXTURE_2D, faceAtlas.textureId);
+                gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, Gl.GL_RGBA, atlas.getSize(), atlas.getSize(), 0, Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, atlas.getPixels());
+                if (pushPull == null) gl.glGenerateMipmap(Gl.GL_TEXTURE_2D);
+                gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+                if (pushPull != null) pushPull.fill(faceAtlas.textureId, faceAtlas.size);
+            }
+            // rendering with an older texture than the latest submitted images
+            if (faceAtlas.uploadedSequence < faceAtlas.lastSubmittedSequence) stale = true;
+        }
+        if (stale) staleFrameCount++;
+        if (coverage > 0) faceCoverage.add(coverage);
+    }
+
+    /**
+     * Waits for the worker thread to finish the submitted face textures and uploads them, so
+     * that the next frame is drawn with the face textures of the images captured so far. For
+     * deterministic images in the headless benchmark, the app never waits.
+     */
+    public void awaitFaceTextures() throws InterruptedException {
+        atlasWorker.awaitIdle();
+        updateFaceTexture();
+    }
+
+    /** Total bytes read back from the GPU for the face textures */
+    public long getReadbackBytes() {
+        return readbackBytes;
+    }
+
+    /** Total bytes uploaded to the face textures */
+    public long getUploadBytes() {
+        return uploadBytes;
+    }
+
+    /** Size of the face textures currently allocated for new faces */
+    public int getAtlasSize() {
+        return atlasSize;
+    }
+
+    /** Size of a uniform face texture with the same detail in the focus regions */
+    public int getUniformAtlasSize() {
+        return uniformAtlasSize;
+    }
+
+    /**
+     * Fraction of the screen covered by the faces in the read-back UV images. Not measured with
+     * the compute scatter, which reads nothing back.
+     */
+    public RollingStats getFaceCoverage() {
+        return faceCoverage;
+    }
+
+    /** Number of frames rendered while the worker was still behind the latest read-back */
+    public long getStaleFrameCount() {
+        return staleFrameCount;
+    }
+
+    /** Time from submitting the read-back images to uploading the resulting texture */
+    public RollingStats getHandoffLatencyMillis() {
+        return handoffLatencyMillis;
+    }
+
+    public int getDroppedJobCount() {
+        return atlasWorker.getDroppedJobCount();
+    }
+
+    /**
+     * Drops the buffers only needed while faces are tracked: the read-back images and the
+     * worker's copies of them, the pooled face textures, the hole filling pyramids, and the CPU
+     * camera image path with its threads. They are allocated again when the next face is captured.
+     */
+    public void releaseTransientBuffers() {
+        atlasWorker.releaseBuffers();
+        releasedBytes += atlasCache.releasePool();
+        if (pushPull != null) releasedBytes += pushPull.release();
+        if (cameraImageSource != null) {
+            releasedBytes += cameraImageSource.getBufferBytes();
+            cameraImageSource.release();
+            cameraImageSource = null;
+        }
+    }
+
+    /**
+     * Total bytes dropped by {@link #releaseTransientBuffers()}. The worker's part is counted
+     * once the worker gets to it.
+     */
+    public long getReleasedBytes() {
+        return releasedBytes + atlasWorker.getReleasedBytes();
+    }
+
+    public void release() {
+        atlasWorker.shutdown();
+        if (cameraImageSource != null) cameraImageSource.release();
+    }
+}
@@ -0,0 +1,159 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Alpha masks of the face filters that only depend on the face texture coordinates. They are
+ * baked into small lookup textures once instead of being evaluated on every fragment. The
+ * functions match the analytic versions in 4eyes.frag, largenose.frag and upsidedown.frag.
+ */
+public final class FaceMasks {
+    /** Alpha as a function of the face texture coordinates */
+    public interface MaskFunction {
+        float evaluate(float u, float v);
+    }
+
+    // elliptical fade at the edge of the face
+    private static final float EDGE_LIMIT = 0.9f;
+    private static final float EDGE_FADE_SLOPE = 4.0f;
+    // 4eyes: only the lower part of the face
+    private static final float VERTICAL_MASK_START = 0.525f;
+    private static final float VERTICAL_MASK_SLOPE = 10.0f;
+
+    /**
+     * Default size of the baked masks. The fade ramps are only ~20 texels wide at 256 and bilinear
+     * filtering rounds their corners, which keeps the error under {@link #TOLERANCE}. At 128, it
+     * is about twice that.
+     */
+    public static final int DEFAULT_SIZE = 256;
+    /** Largest acceptable difference to the analytic mask, see {@link #maxError} */
+    public static final float TOLERANCE = 4 / 255f;
+
+    private FaceMasks() {}
+
+    private static float clamp01(float x) {
+        return Math.max(0, Math.min(1, x));
+    }
+
+    public static final MaskFunction EDGE_FADE = new MaskFunction() {
+        @Override
+        public float evaluate(float u, float v) {
+            final float du = u - 0.5f, dv = (v - 0.5f) * 1.5f;
+            final float edgeness = (float) Math.sqrt(du * du + dv * dv) * 2.0f;
+            if (edgeness <= EDGE_LIMIT) return 1;
+            return clamp01(1.0f - (edgeness - EDGE_LIMIT) * EDGE_FADE_SLOPE);
+        }
+    };
+
+    public static final MaskFunction EDGE_FADE_LOWER_FACE = new MaskFunction() {
+        @Override
+        public float evaluate(float u, float v) {
+            return EDGE_FADE.evaluate(u, v) * clamp01((v - VERTICAL_MASK_START) * VERTICAL_MASK_SLOPE);
+        }
+    };
+
+    /**
+     * Evaluates the mask at the texel centers
+     *
+     * @return size x size alpha values, first row at v = 0
+     */
+    public static byte[] bake(MaskFunction mask, int size) {
+        final byte[] alpha = new byte[size * size];
+        for (int y = 0; y < size; y++) {
+            final float v = (y + 0.5f) / size;
+            for (int x = 0; x < size; x++) {
+                final float u = (x + 0.5f) / size;
+                alpha[y * size + x] = (byte) Math.round(clamp01(mask.evaluate(u, v)) * 255);
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Samples a baked mask like GL_LINEAR with GL_CLAMP_TO_EDGE
+     */
+    public static float sampleBilinear(byte[] alpha, int size, float u, float v) {
+        final float x = u * size - 0.5f, y = v * size - 0.5f;
+        final int x0 = (int) Math.floor(x), y0 = (int) Math.floor(y);
+        final float fx = x - x0, fy = y - y0;
+        final float a00 = texel(alpha, size, x0, y0), a10 = texel(alpha, size, x0 + 1, y0);
+        final float a01 = texel(alpha, size, x0, y0 + 1), a11 = texel(alpha, size, x0 + 1, y0 + 1);
+        return (a00 * (1 - fx) + a10 * fx) * (1 - fy) + (a01 * (1 - fx) + a11 * fx) * fy;
+    }
+
+    private static float texel(byte[] alpha, int size, int x, int y) {
+        x = Math.max(0, Math.min(size - 1, x));
+        y = Math.max(0, Math.min(size - 1, y));
+        return (alpha[y * size + x] & 0xff) / 255f;
+    }
+
+    /**
+     * Selects the triangles of a mesh on which the baked mask can be non-zero. The texture
+     * coordinates interpolated over a triangle stay in the bounding box of its corners, and a
+     * bilinear sample is a weighted mean of the four texels around it, so a triangle whose box
+     * (grown by a texel for the interpolation precision) only reaches zero texels is fully
+     * transparent.
+     *
+     * @param texCoords uv pairs per vertex, position is not modified
+     * @param indices triangle indices, position is not modified
+     * @return the indices of the triangles that may be visible, in the original order
+     */
+    public static short[] visibleTriangles(byte[] alpha, int size, FloatBuffer texCoords, ShortBuffer indices) {
+        final short[] visible = new short[indices.limit()];
+        int count = 0;
+        for (int t = 0; t + 2 < indices.limit(); t += 3) {
+            float minU = Float.POSITIVE_INFINITY, minV = Float.POSITIVE_INFINITY;
+            float maxU = Float.NEGATIVE_INFINITY, maxV = Float.NEGATIVE_INFINITY;
+            for (int k = 0; k < 3; k++) {
+                final int vertex = indices.get(t + k) & 0xffff;
+                final float u = texCoords.get(vertex * 2), v = texCoords.get(vertex * 2 + 1);
+                minU = Math.min(minU, u);
+                maxU = Math.max(maxU, u);
+                minV = Math.min(minV, v);
+                maxV = Math.max(maxV, v);
+            }
+            if (anyNonZero(alpha, size, minU, minV, maxU, maxV)) {
+                for (int k = 0; k < 3; k++) visible[count++] = indices.get(t + k);
+            }
+        }
+        return Arrays.copyOf(visible, count);
+    }
+
+    private static boolean anyNonZero(byte[] alpha, int size, float minU, float minV, float maxU, float maxV) {
+        // the texels of the bilinear samples in the box, see sampleBilinear
+        final int x0 = clampTexel((int) Math.floor(minU * size - 0.5f) - 1, size);
+        final int x1 = clampTexel((int) Math.floor(maxU * size - 0.5f) + 2, size);
+        final int y0 = clampTexel((int) Math.floor(minV * size - 0.5f) - 1, size);
+        final int y1 = clampTexel((int) Math.floor(maxV * size - 0.5f) + 2, size);
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                if (alpha[y * size + x] != 0) return true;
+            }
+        }
+        return false;
+    }
+
+    private static int clampTexel(int i, int size) {
+        return Math.max(0, Math.min(size - 1, i));
+    }
+
+    /**
+     * Compares the baked mask to the analytic function on a grid finer than the texels
+     *
+     * @return the largest absolute alpha difference, 0...1
+     */
+    public static float maxError(MaskFunction mask, byte[] alpha, int size, int samplesPerAxis) {
+        float maxError = 0;
+        for (int j = 0; j < samplesPerAxis; j++) {
+            final float v = (j + 0.5f) / samplesPerAxis;
+            for (int i = 0; i < samplesPerAxis; i++) {
+                final float u = (i + 0.5f) / samplesPerAxis;
+                final float error = Math.abs(sampleBilinear(alpha, size, u, v) - clamp01(mask.evaluate(u, v)));
+                maxError = Math.max(maxError, error);
+            }
+        }
+        return maxError;
+    }
+}
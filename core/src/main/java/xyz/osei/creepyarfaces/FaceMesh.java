@@ -0,0 +1,29 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * The mesh and the pose of a tracked face, e.g., ARCore's AugmentedFace. The buffers are read
+ * from their position 0 and may be the face's own.
+ *
+ * @param <F> face identity
+ */
+public interface FaceMesh<F> {
+    FloatBuffer getVertices(F face);
+
+    FloatBuffer getTextureCoordinates(F face);
+
+    FloatBuffer getNormals(F face);
+
+    ShortBuffer getTriangleIndices(F face);
+
+    /** Column-major model matrix of the face center */
+    void getPoseMatrix(F face, float[] matrix);
+
+    /** Translation (x, y, z) of the face center */
+    void getTranslation(F face, float[] translation);
+
+    /** Rotation of the face center as a quaternion (x, y, z, w) */
+    void getRotation(F face, float[] quaternion);
+}
@@ -0,0 +1,71 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Packs the face mesh vertex attributes (positions, texture coordinates, normals) into a single
+ * staging buffer so that they can be uploaded to a vertex buffer object with one call.
+ */
+public final class FaceMeshLayout {
+    private static final int FLOAT_SIZE = 4;
+
+    private FloatBuffer staging;
+    private int verticesBaseAddress;
+    private int texCoordsBaseAddress;
+    private int normalsBaseAddress;
+    private int totalBytes;
+
+    /**
+     * Copies the given attributes to the staging buffer. The positions of the input buffers are
+     * reset to zero. Allocates only if the mesh grew since the previous call.
+     */
+    public void pack(FloatBuffer vertices, FloatBuffer texCoords, FloatBuffer normals) {
+        verticesBaseAddress = 0;
+        texCoordsBaseAddress = verticesBaseAddress + FLOAT_SIZE * vertices.limit();
+        normalsBaseAddress = texCoordsBaseAddress + FLOAT_SIZE * texCoords.limit();
+        totalBytes = normalsBaseAddress + FLOAT_SIZE * normals.limit();
+
+        final int totalFloats = totalBytes / FLOAT_SIZE;
+        if (staging == null || staging.capacity() < totalFloats) {
+            staging = ByteBuffer.allocateDirect(totalBytes)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+        }
+
+        staging.clear();
+        vertices.rewind();
+        staging.put(vertices);
+        texCoords.rewind();
+        staging.put(texCoords);
+        normals.rewind();
+        staging.put(normals);
+        staging.flip();
+
+        vertices.rewind();
+        texCoords.rewind();
+        normals.rewind();
+    }
+
+    /** Packed attributes, positioned at zero with the limit at the end of the data */
+    public FloatBuffer getStagingBuffer() {
+        return staging;
+    }
+
+    public int getVerticesBaseAddress() {
+        return verticesBaseAddress;
+    }
+
+    public int getTexCoordsBaseAddress() {
+        return texCoordsBaseAddress;
+    }
+
+    public int getNormalsBaseAddress() {
+        return normalsBaseAddress;
+    }
+
+    public int getTotalBytes() {
+        return totalBytes;
+    }
+}
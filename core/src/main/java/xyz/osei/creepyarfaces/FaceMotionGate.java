@@ -0,0 +1,156 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Decides whether the face texture needs to be refreshed by comparing the face pose and mesh to
+ * those used for the previous refresh. While the face stays nearly still, the previous texture
+ * is reused, but it is always refreshed at least once per the maximum interval.
+ */
+public final class FaceMotionGate {
+    private final float maxTranslation;
+    private final float maxRotationRadians;
+    private final float maxVertexDisplacement;
+    private final long maxIntervalNanos;
+    private final Clock clock;
+
+    private final float[] lastTranslation = new float[3];
+    private final float[] lastRotation = new float[4];
+    private float[] lastVertices = new float[0];
+    private boolean hasReference = false;
+    private long lastRefreshNanos;
+
+    private long refreshCount;
+    private long skipCount;
+    private long totalRefreshIntervalNanos;
+    private long refreshIntervalCount;
+
+    /**
+     * @param maxTranslation face center movement (meters) that triggers a refresh
+     * @param maxRotationRadians face rotation that triggers a refresh
+     * @param maxVertexDisplacement movement of any mesh vertex relative to the face center
+     *                              (meters) that triggers a refresh, e.g., a change of expression
+     * @param maxIntervalMillis the texture is refreshed at least this often
+     */
+    public FaceMotionGate(
+            float maxTranslation,
+            float maxRotationRadians,
+            float maxVertexDisplacement,
+            long maxIntervalMillis,
+            Clock clock) {
+        this.maxTranslation = maxTranslation;
+        this.maxRotationRadians = maxRotationRadians;
+        this.maxVertexDisplacement = maxVertexDisplacement;
+        this.maxIntervalNanos = maxIntervalMillis * 1000 * 1000;
+        this.clock = clock;
+    }
+
+    /**
+     * Checks if the face moved enough since the last refresh. If it did, the given pose and
+     * vertices become the new reference and the refresh is counted, see {@link #refreshed}.
+     *
+     * @param translation face center translation (x, y, z)
+     * @param rotation face center rotation quaternion (x, y, z, w)
+     * @param vertices mesh vertices, position is not modified
+     * @return true if the face texture should be refreshed
+     */
+    public boolean shouldRefresh(float[] translation, float[] rotation, FloatBuffer vertices) {
+        if (!needsRefresh(translation, rotation, vertices)) {
+            skipped();
+            return false;
+        }
+        refreshed(translation, rotation, vertices);
+        return true;
+    }
+
+    /**
+     * Like {@link #shouldRefresh} without changing the reference or the counts, for callers that
+     * may not refresh the texture after all, e.g., when over the per-frame budget
+     */
+    public boolean needsRefresh(float[] translation, float[] rotation, FloatBuffer vertices) {
+        return !hasReference
+                || clock.nanoTime() - lastRefreshNanos >= maxIntervalNanos
+                || translationChanged(translation)
+                || rotationChanged(rotation)
+                || verticesChanged(vertices);
+    }
+
+    /** Counts a check that reused the previous texture */
+    public void skipped() {
+        skipCount++;
+    }
+
+    /**
+     * Makes the pose and vertices of a refreshed texture the new reference and counts it
+     *
+     * @return nanoseconds since the previous refresh, -1 if there was no reference
+     */
+    public long refreshed(float[] translation, float[] rotation, FloatBuffer vertices) {
+        final long now = clock.nanoTime();
+        long interval = -1;
+        if (hasReference) {
+            interval = now - lastRefreshNanos;
+            totalRefreshIntervalNanos += interval;
+            refreshIntervalCount++;
+        }
+        refreshCount++;
+        lastRefreshNanos = now;
+        hasReference = true;
+        System.arraycopy(translation, 0, lastTranslation, 0, 3);
+        System.arraycopy(rotation, 0, lastRotation, 0, 4);
+        final int n = vertices.limit();
+        if (lastVertices.length != n) lastVertices = new float[n];
+        for (int i = 0; i < n; i++) lastVertices[i] = vertices.get(i);
+        return interval;
+    }
+
+    /** Forces a refresh on the next call, e.g., after the face texture was reallocated */
+    public void invalidate() {
+        hasReference = false;
+    }
+
+    private boolean translationChanged(float[] translation) {
+        final float dx = translation[0] - lastTranslation[0];
+        final float dy = translation[1] - lastTranslation[1];
+        final float dz = translation[2] - lastTranslation[2];
+        return dx*dx + dy*dy + dz*dz > maxTranslation * maxTranslation;
+    }
+
+    private boolean rotationChanged(float[] rotation) {
+        float dot = 0;
+        for (int i = 0; i < 4; i++) dot += rotation[i] * lastRotation[i];
+        final double angle = 2 * Math.acos(Math.min(1.0, Math.abs(dot)));
+        return angle > maxRotationRadians;
+    }
+
+    private boolean verticesChanged(FloatBuffer vertices) {
+        final int n = vertices.limit();
+        if (n != lastVertices.length) return true;
+        final float limit = maxVertexDisplacement * maxVertexDisplacement;
+        for (int i = 0; i + 2 < n; i += 3) {
+            final float dx = vertices.get(i) - lastVertices[i];
+            final float dy = vertices.get(i + 1) - lastVertices[i + 1];
+            final float dz = vertices.get(i + 2) - lastVertices[i + 2];
+            if (dx*dx + dy*dy + dz*dz > limit) return true;
+        }
+        return false;
+    }
+
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    public long getSkipCount() {
+        return skipCount;
+    }
+
+    /** Fraction of checks that reused the previous texture */
+    public double getSkipRate() {
+        final long total = refreshCount + skipCount;
+        return total == 0 ? 0 : skipCount / (double) total;
+    }
+
+    public double getAverageRefreshIntervalMillis() {
+        return refreshIntervalCount == 0 ? 0 : totalRefreshIntervalNanos * 1e-6 / refreshIntervalCount;
+    }
+}
@@ -0,0 +1,513 @@
+package xyz.osei.creepyarfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/** Draws a filter on the face */
+public class FaceRenderer {
+  private static final String TAG = FaceRenderer.class.getSimpleName();
+
+  /**
+   * The filters of the app, in the order they are cycled through, see {@link #create}. The
+   * headless benchmark renders the same filters and names its images after them.
+   */
+  public static final List<String> FILTER_NAMES = Collections.unmodifiableList(Arrays.asList(
+      "4eyes", "upsidedown", "largenose", "unshadedtexture", "shadedtexture"));
+
+  protected final Gl gl;
+  private int program;
+
+  // Shader location: model view projection matrix.
+  protected int modelViewUniform;
+  protected int modelViewProjectionUniform;
+
+  // Shader location: object attributes.
+  protected int positionAttribute;
+  protected int normalAttribute;
+  protected int texCoordAttribute;
+
+  protected int textureUniform;
+
+  // OpenGL ES 3.0 backend: camera matrices come from a uniform buffer, model matrix from u_Model
+  private CameraUniforms cameraUniforms;
+  private FaceVertexArray vertexArray;
+  protected int modelUniform;
+
+  // Temporary matrices allocated here to reduce number of allocations for each frame.
+  protected final float[] modelMatrix = new float[16];
+  protected final float[] modelViewMatrix = new float[16];
+  protected final float[] modelViewProjectionMatrix = new float[16];
+
+  private final FaceGeometry faceGeometry;
+  private final String vertexShaderName;
+  private final String fragmentShaderName;
+
+  protected boolean usesFaceMapper = true;
+  protected boolean usesNormals = false;
+  // drawn to the target of FilterUpsampler instead of the screen
+  private boolean reducedResolution = false;
+  // the triangles that can be visible, see setVisibleRegion
+  private int triangleSubset = FaceGeometry.ALL_TRIANGLES;
+  private boolean triangleSubsets = true;
+
+  public FaceRenderer(Gl gl, FaceGeometry geometry, String vertexShader, String fragmentShader) {
+    this.gl = gl;
+    faceGeometry = geometry;
+    vertexShaderName = vertexShader;
+    fragmentShaderName = fragmentShader;
+  }
+
+  /** Creates the filter with the given name, see {@link #FILTER_NAMES} */
+  public static FaceRenderer create(Gl gl, FaceGeometry geometry, String name) {
+    switch (name) {
+      case "4eyes": return new FaceRenderer4Eyes(gl, geometry);
+      case "upsidedown": return new FaceRendererUpsideDown(gl, geometry);
+      case "largenose": return new FaceRendererLargeNose(gl, geometry);
+      case "unshadedtexture": return new FaceRendererUnshadedTexture(gl, geometry, "textures/grid.png");
+      case "shadedtexture": return new FaceRendererShadedTexture(gl, geometry, "textures/white.png");
+      case "uv": return new FaceRendererUV(gl, geometry);
+      default: throw new IllegalArgumentException("unknown filter " + name);
+    }
+  }
+
+  /**
+   * Creates the masked filter with its analytic fragment shader instead of the baked mask,
+   * which it should match. Null if the filter is not masked.
+   */
+  public static FaceRenderer createAnalytic(Gl gl, FaceGeometry geometry, String name) {
+    switch (name) {
+      case "4eyes":
+        return new FaceRendererAnalytic(gl, geometry, "shaders/4eyes.frag", FaceRenderer4Eyes.OFFSET_Y);
+      case "upsidedown": return new FaceRendererAnalytic(gl, geometry, "shaders/upsidedown.frag", 0);
+      case "largenose": return new FaceRendererAnalytic(gl, geometry, "shaders/largenose.frag", 0);
+      default: return null;
+    }
+  }
+
+  /**
+   * The layout of the face atlas, must match the one given to FaceMapper. Only masked filters
+   * sample the face texture through it, the others ignore it.
+   */
+  public void setAtlasWarp(AtlasWarp warp) {}
+
+  /**
+   * Selects the OpenGL ES 3.0 backend. Must be called before {@link #createOnGlThread(ShaderUtil)}.
+   */
+  public void setCameraUniforms(CameraUniforms uniforms) {
+    cameraUniforms = uniforms;
+  }
+
+  /**
+   * Draws to a reduced resolution target, see {@link FilterUpsampler}. Must be called before
+   * {@link #createOnGlThread(ShaderUtil)}.
+   */
+  public void setReducedResolution(boolean reduced) {
+    reducedResolution = reduced;
+  }
+
+  private boolean isEs3() {
+    return cameraUniforms != null;
+  }
+
+  /**
+   * Creates and initializes OpenGL resources needed for rendering the model.
+   *
+   * @param shaders For loading the shader and below-named model and texture assets.
+   */
+  public void createOnGlThread(ShaderUtil shaders)
+      throws IOException {
+    final List<String> defines = new ArrayList<>();
+    if (usesNormals) defines.add("USE_NORMALS");
+    if (reducedResolution) defines.add("REDUCED_RESOLUTION");
+    addShaderDefines(defines);
+    final String[] variant = defines.toArray(new String[0]);
+
+    final int vertexShader = shaders.loadGLShader(TAG, Gl.GL_VERTEX_SHADER,
+        isEs3() ? ShaderUtil.es3ShaderName(vertexShaderName) : vertexShaderName, isEs3(), variant);
+    final int fragmentShader = shaders.loadGLShader(TAG, Gl.GL_FRAGMENT_SHADER,
+        fragmentShaderName, isEs3(), variant);
+
+    program = gl.glCreateProgram();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    gl.glLinkProgram(program);
+    gl.glUseProgram(program);
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
+
+    if (isEs3()) {
+      cameraUniforms.bindProgram(program);
+      modelUniform = gl.glGetUniformLocation(program, "u_Model");
+    } else {
+      if (usesNormals) modelViewUniform = gl.glGetUniformLocation(program, "u_ModelView");
+      modelViewProjectionUniform = gl.glGetUniformLocation(program, "u_ModelViewProjection");
+    }
+
+    positionAttribute = gl.glGetAttribLocation(program, "a_Position");
+    if (usesNormals) normalAttribute = gl.glGetAttribLocation(program, "a_Normal");
+    else normalAttribute = -1;
+    texCoordAttribute = gl.glGetAttribLocation(program, "a_TexCoord");
+
+    ShaderUtil.checkGLError(gl, TAG, "Program parameters");
+
+    textureUniform = gl.glGetUniformLocation(program, "u_Texture");
+    createFilterInputsOnGlThread(program);
+
+    if (isEs3()) {
+      vertexArray = new FaceVertexArray(gl, faceGeometry);
+      vertexArray.createOnGlThread(positionAttribute, texCoordAttribute, normalAttribute);
+    }
+
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+    MatrixMath.setIdentity(modelMatrix);
+    ShaderUtil.checkGLError(gl, TAG, "end FaceRenderer.createOnGlThread");
+  }
+
+  /** @param poseMatrix the model matrix of the face center, see {@link FaceMesh#getPoseMatrix} */
+  public void updateModelMatrix(float[] poseMatrix) {
+    System.arraycopy(poseMatrix, 0, modelMatrix, 0, 16);
+  }
+
+  /** Moves the model along the y axis of the face, e.g., to draw it higher on the face */
+  protected static void translateAlongY(float[] modelMatrix, float y) {
+    for (int i = 0; i < 3; i++) modelMatrix[12 + i] += modelMatrix[4 + i] * y;
+  }
+
+  public float[] getModelMatrix() {
+    return modelMatrix;
+  }
+
+  public boolean needsFaceMapper() {
+    return usesFaceMapper;
+  }
+
+  public void draw(
+          float[] cameraView,
+          float[] cameraPerspective,
+          int faceTextureId) {
+
+    if (!faceGeometry.isReady()) return;
+
+    ShaderUtil.checkGLError(gl, TAG, "Before draw");
+
+    gl.glClear(Gl.GL_DEPTH_BUFFER_BIT);
+
+    gl.glUseProgram(program);
+    ShaderUtil.checkGLError(gl, TAG, "After glUseProgram");
+
+    gl.glCullFace(Gl.GL_FRONT);
+    gl.glEnable(Gl.GL_CULL_FACE);
+
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, faceTextureId);
+    gl.glUniform1i(textureUniform, 0);
+    bindFilterInputs();
+
+    if (isEs3()) {
+      // attribute layout is in the VAO and the camera matrices in the uniform buffer
+      vertexArray.bind();
+      gl.glUniformMatrix4fv(modelUniform, 1, false, modelMatrix, 0);
+    } else {
+      MatrixMath.composeModelViewProjection(
+          cameraView, cameraPerspective, modelMatrix, modelViewMatrix, modelViewProjectionMatrix);
+
+      faceGeometry.bindGeometryBuffers(positionAttribute, texCoordAttribute, normalAttribute);
+
+      // Set the ModelViewProjection matrix in the shader.
+      if (usesNormals) gl.glUniformMatrix4fv(modelViewUniform, 1, false, modelViewMatrix, 0);
+      gl.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+    }
+
+    ShaderUtil.checkGLError(gl, TAG, "After binding geometry");
+
+    //gl.glDepthMask(false);
+    if (reducedResolution) {
+      // the shader writes the encoded output of filteroutput.glsl as is
+      gl.glDisable(Gl.GL_BLEND);
+    } else {
+      gl.glEnable(Gl.GL_BLEND);
+      // Grid, additive blending function.
+      gl.glBlendFunc(Gl.GL_SRC_ALPHA, Gl.GL_ONE_MINUS_SRC_ALPHA);
+    }
+
+    faceGeometry.drawElements(getDrawnTriangleSubset());
+
+    if (isEs3()) {
+      vertexArray.unbind();
+    } else {
+      faceGeometry.unbindGeometryBuffers(positionAttribute, texCoordAttribute, normalAttribute);
+    }
+
+    gl.glDisable(Gl.GL_BLEND);
+    gl.glDisable(Gl.GL_CULL_FACE);
+    unbindFilterInputs();
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "After draw");
+  }
+
+  /**
+   * Declares the region of the face texture coordinates outside of which the filter is fully
+   * transparent, as a baked mask (see {@link FaceMasks}). Only the triangles that reach into it
+   * are drawn. The skipped ones do not write depth either, which the face mesh, seen from the
+   * front, hardly ever needs.
+   */
+  protected void setVisibleRegion(byte[] maskAlpha, int maskSize) {
+    triangleSubset = faceGeometry.addTriangleSubset(maskAlpha, maskSize);
+  }
+
+  /**
+   * Whether to draw only the triangles of the visible region, the default. Turned off to measure
+   * what drawing the whole mesh costs.
+   */
+  public void setTriangleSubsets(boolean enabled) {
+    triangleSubsets = enabled;
+  }
+
+  private int getDrawnTriangleSubset() {
+    return triangleSubsets ? triangleSubset : FaceGeometry.ALL_TRIANGLES;
+  }
+
+  /** Number of triangles drawn per face, see {@link #setVisibleRegion} */
+  public int getDrawnTriangleCount() {
+    return faceGeometry.getTriangleCount(getDrawnTriangleSubset());
+  }
+
+  /** The indices of the triangles drawn per face, see {@link #setVisibleRegion} */
+  public ShortBuffer getDrawnTriangleIndices() {
+    return faceGeometry.getTriangleIndices(getDrawnTriangleSubset());
+  }
+
+  /** Looks up and creates the additional inputs of the filter program, if any */
+  protected void createFilterInputsOnGlThread(int program) {}
+
+  /** Adds the names defined in the shader variant of the filter, see ShaderPreprocessor */
+  protected void addShaderDefines(List<String> defines) {}
+
+  /** Binds the additional inputs of the filter. The face texture is bound to unit 0. */
+  protected void bindFilterInputs() {}
+
+  protected void unbindFilterInputs() {}
+}
+
+/**
+ * A filter whose alpha mask only depends on the face texture coordinates and whose face texture
+ * lookup is a linear function of them. The mask is baked into an alpha texture at startup and
+ * the lookup is done in the vertex shader, so the fragment shader is two texture fetches and
+ * the mapping to the face atlas layout, see {@link AtlasWarp}. The analytic versions of these
+ * shaders are kept in 4eyes.frag, upsidedown.frag and largenose.frag.
+ */
+class FaceRendererMasked extends FaceRenderer {
+  private static final String TAG = FaceRendererMasked.class.getSimpleName();
+  private static final Logger LOG = Logger.getLogger(TAG);
+
+  private final FaceMasks.MaskFunction mask;
+  private final float[] texCoordWarp;
+  private final int[] maskTexture = new int[1];
+  private int maskUniform;
+  private int texCoordWarpUniform;
+
+  // face atlas layout, only in the ATLAS_WARP variant of masked.frag
+  private boolean atlasWarped;
+  private final float[] atlasWarpStart = new float[AtlasWarp.MAX_SEGMENTS * 2];
+  private final float[] atlasWarpWidth = new float[AtlasWarp.MAX_SEGMENTS * 2];
+  private final float[] atlasWarpSlopeDelta = new float[AtlasWarp.MAX_SEGMENTS * 2];
+  private int atlasWarpStartUniform, atlasWarpWidthUniform, atlasWarpSlopeDeltaUniform;
+
+  /**
+   * @param mask alpha as a function of the face texture coordinates
+   * @param texCoordWarp face texture lookup: scale x, scale y, offset x, offset y
+   */
+  public FaceRendererMasked(
+      Gl gl, FaceGeometry geometry, FaceMasks.MaskFunction mask, float... texCoordWarp) {
+    super(gl, geometry, "shaders/masked.vert", "shaders/masked.frag");
+    this.mask = mask;
+    this.texCoordWarp = texCoordWarp;
+  }
+
+  @Override
+  public void setAtlasWarp(AtlasWarp warp) {
+    atlasWarped = warp != AtlasWarp.UNIFORM;
+    warp.getShaderSegments(atlasWarpStart, atlasWarpWidth, atlasWarpSlopeDelta);
+  }
+
+  @Override
+  protected void addShaderDefines(List<String> defines) {
+    if (atlasWarped) defines.add("ATLAS_WARP");
+  }
+
+  @Override
+  protected void createFilterInputsOnGlThread(int program) {
+    maskUniform = gl.glGetUniformLocation(program, "u_Mask");
+    texCoordWarpUniform = gl.glGetUniformLocation(program, "u_TexCoordWarp");
+    atlasWarpStartUniform = gl.glGetUniformLocation(program, "u_AtlasWarpStart");
+    atlasWarpWidthUniform = gl.glGetUniformLocation(program, "u_AtlasWarpWidth");
+    atlasWarpSlopeDeltaUniform = gl.glGetUniformLocation(program, "u_AtlasWarpSlopeDelta");
+
+    final int size = FaceMasks.DEFAULT_SIZE;
+    final long start = System.nanoTime();
+    final byte[] alpha = FaceMasks.bake(mask, size);
+    final long bakeNanos = System.nanoTime() - start;
+    final float error = FaceMasks.maxError(mask, alpha, size, size * 2);
+    final String message = String.format("baked %dx%d mask in %.1f ms, max error %.1f/255",
+        size, size, bakeNanos * 1e-6, error * 255);
+    if (error > FaceMasks.TOLERANCE) LOG.warning(message + " exceeds the tolerance");
+    else LOG.info(message);
+    setVisibleRegion(alpha, size);
+
+    gl.glGenTextures(1, maskTexture, 0);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, maskTexture[0]);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_S, Gl.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_T, Gl.GL_CLAMP_TO_EDGE);
+    gl.glPixelStorei(Gl.GL_UNPACK_ALIGNMENT, 1);
+    gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, Gl.GL_ALPHA, size, size, 0,
+        Gl.GL_ALPHA, Gl.GL_UNSIGNED_BYTE, ByteBuffer.wrap(alpha));
+    gl.glPixelStorei(Gl.GL_UNPACK_ALIGNMENT, 4);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "Mask texture");
+  }
+
+  @Override
+  protected void bindFilterInputs() {
+    gl.glActiveTexture(Gl.GL_TEXTURE1);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, maskTexture[0]);
+    gl.glUniform1i(maskUniform, 1);
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+    gl.glUniform4fv(texCoordWarpUniform, 1, texCoordWarp, 0);
+    if (atlasWarped) {
+      gl.glUniform2fv(atlasWarpStartUniform, AtlasWarp.MAX_SEGMENTS, atlasWarpStart, 0);
+      gl.glUniform2fv(atlasWarpWidthUniform, AtlasWarp.MAX_SEGMENTS, atlasWarpWidth, 0);
+      gl.glUniform2fv(atlasWarpSlopeDeltaUniform, AtlasWarp.MAX_SEGMENTS, atlasWarpSlopeDelta, 0);
+    }
+  }
+
+  @Override
+  protected void unbindFilterInputs() {
+    gl.glActiveTexture(Gl.GL_TEXTURE1);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+  }
+}
+
+class FaceRenderer4Eyes extends FaceRendererMasked {
+  static final float OFFSET_Y = 0.02f;
+
+  public FaceRenderer4Eyes(Gl gl, FaceGeometry geometry) {
+    super(gl, geometry, FaceMasks.EDGE_FADE_LOWER_FACE, 1, 1, 0, 0);
+  }
+
+  @Override
+  public void updateModelMatrix(float[] poseMatrix) {
+    super.updateModelMatrix(poseMatrix);
+    translateAlongY(modelMatrix, OFFSET_Y);
+  }
+}
+
+class FaceRendererUpsideDown extends FaceRendererMasked {
+  public FaceRendererUpsideDown(Gl gl, FaceGeometry geometry) {
+    // (u, -v) in upsidedown.frag, the same as (u, 1 - v) with the repeating face texture
+    super(gl, geometry, FaceMasks.EDGE_FADE, 1, -1, 0, 1);
+  }
+}
+
+class FaceRendererLargeNose extends FaceRendererMasked {
+  public FaceRendererLargeNose(Gl gl, FaceGeometry geometry) {
+    // (uv - 0.5) * 0.7 + 0.5
+    super(gl, geometry, FaceMasks.EDGE_FADE, 0.7f, 0.7f, 0.15f, 0.15f);
+  }
+}
+
+/**
+ * A masked filter with its analytic fragment shader, e.g., 4eyes.frag, which the baked mask of
+ * {@link FaceRendererMasked} should match
+ */
+class FaceRendererAnalytic extends FaceRenderer {
+  private final float offsetY;
+
+  public FaceRendererAnalytic(Gl gl, FaceGeometry geometry, String fragmentShader, float offsetY) {
+    super(gl, geometry, "shaders/uv.vert", fragmentShader);
+    this.offsetY = offsetY;
+  }
+
+  @Override
+  public void updateModelMatrix(float[] poseMatrix) {
+    super.updateModelMatrix(poseMatrix);
+    translateAlongY(modelMatrix, offsetY);
+  }
+}
+
+class FaceRenderWithTexture extends FaceRenderer {
+  private static final String TAG = FaceRenderWithTexture.class.getSimpleName();
+
+  private final int[] textures = new int[1];
+  final String textureFilename;
+
+  public FaceRenderWithTexture(Gl gl, FaceGeometry geometry, String textureName, String vertexShader, String fragmentShader) {
+    super(gl, geometry, vertexShader, fragmentShader);
+    textureFilename = textureName;
+    usesFaceMapper = false;
+  }
+
+  @Override
+  public void draw(
+          float[] cameraView,
+          float[] cameraPerspective,
+          int faceTextureId) {
+    super.draw(cameraView, cameraPerspective, textures[0]);
+  }
+
+  public void createOnGlThread(ShaderUtil shaders) throws IOException {
+    super.createOnGlThread(shaders);
+    final StartupTimeline.Tracer tracer = shaders.getTracer();
+    StartupTimeline.Phase phase = tracer.begin("decode " + textureFilename);
+    final int[] size = new int[2];
+    final ByteBuffer pixels = shaders.getAssets().decodeImage(textureFilename, size);
+    tracer.end(phase);
+    phase = tracer.begin("upload " + textureFilename);
+
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+    gl.glGenTextures(textures.length, textures, 0);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+
+    gl.glTexParameteri(
+            Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR_MIPMAP_LINEAR);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
+
+    gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, Gl.GL_RGBA, size[0], size[1], 0,
+            Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, pixels);
+    gl.glGenerateMipmap(Gl.GL_TEXTURE_2D);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+    tracer.end(phase);
+
+    ShaderUtil.checkGLError(gl, TAG, "Texture loading");
+  }
+}
+
+class FaceRendererUnshadedTexture extends FaceRenderWithTexture {
+  public FaceRendererUnshadedTexture(Gl gl, FaceGeometry geometry, String textureName) {
+    super(gl, geometry,textureName,"shaders/uv.vert", "shaders/unshadedtexture.frag");
+  }
+}
+
+class FaceRendererShadedTexture extends FaceRenderWithTexture {
+  public FaceRendererShadedTexture(Gl gl, FaceGeometry geometry, String textureName) {
+    super(gl, geometry,textureName,"shaders/object.vert", "shaders/object.frag");
+    usesNormals = true;
+  }
+}
+
+class FaceRendererUV extends FaceRenderer {
+  public FaceRendererUV(Gl gl, FaceGeometry geometry) {
+    super(gl, geometry,"shaders/uv.vert", "shaders/uv.frag");
+    usesFaceMapper = false;
+  }
+}
@@ -0,0 +1,168 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which faces are drawn and face-mapped in a frame. Only tracked faces are processed:
+ * the others are counted as skipped. At most a given number of faces are face-mapped per frame.
+ * The faces that have waited longest since their last mapping go first, larger ones on screen
+ * before smaller ones, so that over budget the remainder is mapped in the following frames in
+ * round-robin order.
+ *
+ * @param <F> face identity
+ */
+public final class FaceScheduler<F> {
+    /** Per-frame properties of a face */
+    public interface FaceInfo<F> {
+        boolean isTracking(F face);
+
+        /** Screen area of the face, in any unit, only used for ordering */
+        float getProjectedArea(F face);
+    }
+
+    private static final class State {
+        long lastMappedFrame = -1;
+        float area;
+        boolean seen;
+    }
+
+    private int maxMappedFaces;
+    private final Map<F, State> states = new HashMap<>();
+    private final List<F> tracked = new ArrayList<>();
+    private final List<F> mappingOrder = new ArrayList<>();
+    private long frame;
+
+    private int processedCount, deferredCount, skippedCount;
+    private long totalProcessed, totalDeferred, totalSkipped;
+
+    private final Comparator<F> byArea = new Comparator<F>() {
+        @Override
+        public int compare(F a, F b) {
+            return Float.compare(states.get(b).area, states.get(a).area);
+        }
+    };
+
+    private final Comparator<F> byWaitThenArea = new Comparator<F>() {
+        @Override
+        public int compare(F a, F b) {
+            final State sa = states.get(a), sb = states.get(b);
+            if (sa.lastMappedFrame != sb.lastMappedFrame) {
+                return sa.lastMappedFrame < sb.lastMappedFrame ? -1 : 1;
+            }
+            return Float.compare(sb.area, sa.area);
+        }
+    };
+
+    /**
+     * @param maxMappedFaces face mappings per frame, at least 1
+     */
+    public FaceScheduler(int maxMappedFaces) {
+        setMaxMappedFaces(maxMappedFaces);
+    }
+
+    public void setMaxMappedFaces(int maxMappedFaces) {
+        if (maxMappedFaces < 1) throw new IllegalArgumentException("budget must be at least 1");
+        this.maxMappedFaces = maxMappedFaces;
+    }
+
+    public int getMaxMappedFaces() {
+        return maxMappedFaces;
+    }
+
+    /** Call once per frame with all the faces known to the tracker */
+    public void update(Iterable<F> faces, FaceInfo<F> info) {
+        // the counts of the previous frame are final now
+        totalProcessed += processedCount;
+        totalDeferred += deferredCount;
+        totalSkipped += skippedCount;
+        frame++;
+        processedCount = deferredCount = skippedCount = 0;
+        tracked.clear();
+
+        for (State state : states.values()) state.seen = false;
+        for (F face : faces) {
+            if (!info.isTracking(face)) {
+                skippedCount++;
+                continue;
+            }
+            State state = states.get(face);
+            if (state == null) {
+                state = new State();
+                states.put(face, state);
+            }
+            state.seen = true;
+            state.area = info.getProjectedArea(face);
+            tracked.add(face);
+        }
+        // faces that are not tracked start over when they come back
+        for (Iterator<State> it = states.values().iterator(); it.hasNext(); ) {
+            if (!it.next().seen) it.remove();
+        }
+
+        Collections.sort(tracked, byArea);
+        mappingOrder.clear();
+        mappingOrder.addAll(tracked);
+        Collections.sort(mappingOrder, byWaitThenArea);
+    }
+
+    /** The tracked faces of the frame, largest first. Draw these. */
+    public List<F> getTrackedFaces() {
+        return tracked;
+    }
+
+    /**
+     * The tracked faces in the order they should be face-mapped. Call {@link #tryMap} for each
+     * face that needs mapping.
+     */
+    public List<F> getMappingOrder() {
+        return mappingOrder;
+    }
+
+    /**
+     * @return true if the face fits in the budget of this frame and should be mapped now, false
+     *  if it is deferred to a later frame
+     */
+    public boolean tryMap(F face) {
+        if (processedCount >= maxMappedFaces) {
+            deferredCount++;
+            return false;
+        }
+        processedCount++;
+        states.get(face).lastMappedFrame = frame;
+        return true;
+    }
+
+    /** Faces mapped in the current frame */
+    public int getProcessedCount() {
+        return processedCount;
+    }
+
+    /** Faces that needed mapping in the current frame but were over budget */
+    public int getDeferredCount() {
+        return deferredCount;
+    }
+
+    /** Faces not tracked in the current frame */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /** Totals over the previous frames, the current one excluded */
+    public long getTotalProcessed() {
+        return totalProcessed;
+    }
+
+    public long getTotalDeferred() {
+        return totalDeferred;
+    }
+
+    public long getTotalSkipped() {
+        return totalSkipped;
+    }
+}
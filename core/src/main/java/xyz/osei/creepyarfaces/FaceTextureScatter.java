@@ -0,0 +1,85 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * Copies camera pixels to the face texture atlas using a rendered UV image: each screen pixel
+ * covered by the face mesh carries its texture coordinates in the red and green channels and
+ * zero alpha. The other pixels are opaque, e.g., the camera image or the clear color. The UVs
+ * are mapped to atlas texels through an {@link AtlasWarp}.
+ */
+public final class FaceTextureScatter {
+    private final int faceWidth;
+    private final int faceHeight;
+    private final AtlasWarp warp;
+
+    // 8-bit UV channel value -> atlas column / row, -1 if outside the atlas
+    private final int[] uToX = new int[256];
+    private final int[] vToY = new int[256];
+
+    public FaceTextureScatter(int faceWidth, int faceHeight) {
+        this(faceWidth, faceHeight, AtlasWarp.UNIFORM);
+    }
+
+    public FaceTextureScatter(int faceWidth, int faceHeight, AtlasWarp warp) {
+        this.faceWidth = faceWidth;
+        this.faceHeight = faceHeight;
+        this.warp = warp;
+        for (int i = 0; i < 256; i++) {
+            uToX[i] = toTexel(warp.mapU(i / 255f), faceWidth);
+            vToY[i] = toTexel(warp.mapV(i / 255f), faceHeight);
+        }
+    }
+
+    private static int toTexel(float coord, int size) {
+        final int texel = (int) (coord * size);
+        return texel < size ? texel : -1;
+    }
+
+    public int getFaceWidth() {
+        return faceWidth;
+    }
+
+    public int getFaceHeight() {
+        return faceHeight;
+    }
+
+    public AtlasWarp getWarp() {
+        return warp;
+    }
+
+    /**
+     * The lookup tables of the scatter, e.g., for running it in a compute shader: the atlas
+     * column of each 8-bit u value, followed by the atlas row of each 8-bit v value, -1 for
+     * values outside the atlas
+     *
+     * @param dest at least 512 elements
+     */
+    public void getLookupTables(int[] dest) {
+        System.arraycopy(uToX, 0, dest, 0, 256);
+        System.arraycopy(vToY, 0, dest, 256, 256);
+    }
+
+    /**
+     * @param uvBytes RGBA UV image of size width x height
+     * @param videoBytes RGBA camera image of size width x height
+     * @param faceBytes RGBA face atlas of size faceWidth x faceHeight, updated in place
+     * @return the number of pixels covered by the face
+     */
+    public int scatter(byte[] uvBytes, byte[] videoBytes, int width, int height, byte[] faceBytes) {
+        final int n = width * height * 4;
+        int covered = 0;
+        for (int srcIdx = 0; srcIdx < n; srcIdx += 4) {
+            // alpha is zero where the face was drawn
+            if (uvBytes[srcIdx + 3] != 0) continue;
+            covered++;
+            final int faceX = uToX[uvBytes[srcIdx] & 0xff];
+            final int faceY = vToY[uvBytes[srcIdx + 1] & 0xff];
+            if (faceX < 0 || faceY < 0) continue;
+            final int idx = (faceY * faceWidth + faceX) * 4;
+            faceBytes[idx] = videoBytes[srcIdx];
+            faceBytes[idx + 1] = videoBytes[srcIdx + 1];
+            faceBytes[idx + 2] = videoBytes[srcIdx + 2];
+            faceBytes[idx + 3] = (byte)255;
+        }
+        return covered;
+    }
+}
@@ -0,0 +1,42 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * OpenGL ES 3.0 vertex array object that records the {@link FaceGeometry} attribute layout for
+ * one program, so that drawing needs a single bind instead of re-specifying the attributes.
+ * The layout is re-recorded if the geometry buffers are reallocated.
+ */
+class FaceVertexArray {
+    private static final String TAG = FaceVertexArray.class.getSimpleName();
+
+    private final Gl gl;
+    private final FaceGeometry faceGeometry;
+    private final int[] vertexArrays = new int[1];
+    private int positionAttribute, texCoordAttribute, normalAttribute;
+    private int recordedLayoutVersion = -1;
+
+    FaceVertexArray(Gl gl, FaceGeometry geometry) {
+        this.gl = gl;
+        faceGeometry = geometry;
+    }
+
+    public void createOnGlThread(int positionAttribute, int texCoordAttribute, int normalAttribute) {
+        this.positionAttribute = positionAttribute;
+        this.texCoordAttribute = texCoordAttribute;
+        this.normalAttribute = normalAttribute;
+        gl.glGenVertexArrays(1, vertexArrays, 0);
+        ShaderUtil.checkGLError(gl, TAG, "createOnGlThread");
+    }
+
+    public void bind() {
+        gl.glBindVertexArray(vertexArrays[0]);
+        final int layoutVersion = faceGeometry.getLayoutVersion();
+        if (layoutVersion != recordedLayoutVersion) {
+            faceGeometry.bindGeometryBuffers(positionAttribute, texCoordAttribute, normalAttribute);
+            recordedLayoutVersion = layoutVersion;
+        }
+    }
+
+    public void unbind() {
+        gl.glBindVertexArray(0);
+    }
+}
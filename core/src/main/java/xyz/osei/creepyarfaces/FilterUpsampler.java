@@ -0,0 +1,177 @@
+package xyz.osei.creepyarfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws the filter at a fraction of the screen resolution and composites it over the camera
+ * image. The face texture has far less detail than the screen, so the filter shaders can run on
+ * fewer fragments. The filters are drawn with their REDUCED_RESOLUTION shader variant (see
+ * filteroutput.glsl) into a transient texture of the frame graph, and upsampled with
+ * upsample.frag, which only uses the texels inside the face so that the silhouette stays sharp
+ * and the empty surroundings do not darken it. The upsampling is scissored to the projected
+ * bounding box of the faces.
+ */
+public class FilterUpsampler {
+    private static final String TAG = FilterUpsampler.class.getSimpleName();
+
+    private static final String VERTEX_SHADER_NAME = "shaders/upsample.vert";
+    private static final String FRAGMENT_SHADER_NAME = "shaders/upsample.frag";
+    private static final float[] QUAD_COORDS = { -1, -1, -1, +1, +1, -1, +1, +1 };
+
+    private final Gl gl;
+    private final float scale;
+
+    private int program, positionAttribute, textureUniform, textureSizeUniform;
+    private final FloatBuffer quadCoords = ByteBuffer.allocateDirect(QUAD_COORDS.length * 4)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    private final float[] clearColor = new float[4];
+
+    private int screenWidth, screenHeight, targetWidth, targetHeight;
+
+    // projected bounds of the faces drawn in this frame, normalized device coordinates
+    private float minX, minY, maxX, maxY;
+    private float[] ndc = new float[0];
+    private final float[] modelViewMatrix = new float[16];
+    private final float[] modelViewProjectionMatrix = new float[16];
+
+    // pixels in the bounding boxes of the faces per frame, where the full resolution filter
+    // would run
+    private final RollingStats boundsPixels;
+
+    /**
+     * @param scale resolution of the filter relative to the screen, in (0, 1)
+     */
+    public FilterUpsampler(Gl gl, float scale, int statsWindow) {
+        if (scale <= 0 || scale >= 1) throw new IllegalArgumentException("scale must be in (0, 1)");
+        this.gl = gl;
+        this.scale = scale;
+        this.boundsPixels = new RollingStats(statsWindow);
+        quadCoords.put(QUAD_COORDS).position(0);
+    }
+
+    public void createOnGlThread(ShaderUtil shaders) throws IOException {
+        final int vertexShader = shaders.loadGLShader(TAG, Gl.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+        final int fragmentShader = shaders.loadGLShader(TAG, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+
+        program = gl.glCreateProgram();
+        gl.glAttachShader(program, vertexShader);
+        gl.glAttachShader(program, fragmentShader);
+        gl.glLinkProgram(program);
+        gl.glUseProgram(program);
+        ShaderUtil.checkGLError(gl, TAG, "Program creation");
+
+        positionAttribute = gl.glGetAttribLocation(program, "a_Position");
+        textureUniform = gl.glGetUniformLocation(program, "u_Texture");
+        textureSizeUniform = gl.glGetUniformLocation(program, "u_TextureSize");
+
+        // restored after clearing the filter target
+        gl.glGetFloatv(Gl.GL_COLOR_CLEAR_VALUE, clearColor, 0);
+        ShaderUtil.checkGLError(gl, TAG, "createOnGlThread");
+    }
+
+    public void setScreenSize(int width, int height) {
+        screenWidth = width;
+        screenHeight = height;
+        targetWidth = Math.max(1, Math.round(width * scale));
+        targetHeight = Math.max(1, Math.round(height * scale));
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    /** The transient texture the filter is drawn to */
+    public RenderGraph.TextureDesc getTargetDesc() {
+        return new RenderGraph.TextureDesc(targetWidth, targetHeight, Gl.GL_RGBA);
+    }
+
+    /**
+     * Binds and clears the filter target. Draw the faces with the REDUCED_RESOLUTION variant of
+     * the filter and without blending, and call {@link #addFace} for each.
+     */
+    public void beginFilter(int framebuffer) {
+        gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, framebuffer);
+        gl.glViewport(0, 0, targetWidth, targetHeight);
+        gl.glClearColor(0, 0, 0, 0);
+        gl.glClear(Gl.GL_COLOR_BUFFER_BIT);
+        gl.glClearColor(clearColor[0], clearColor[1], clearColor[2], clearColor[3]);
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+    }
+
+    /** Extends the upsampled region by the projection of the face mesh */
+    public void addFace(FloatBuffer vertices, float[] viewmtx, float[] projmtx, float[] modelMatrix) {
+        if (ndc.length < vertices.limit() / 3 * 2) ndc = new float[vertices.limit() / 3 * 2];
+        MatrixMath.composeModelViewProjection(
+                viewmtx, projmtx, modelMatrix, modelViewMatrix, modelViewProjectionMatrix);
+        final int n = MeshProjection.projectToNdc(modelViewProjectionMatrix, vertices, ndc);
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, ndc[i * 2]);
+            maxX = Math.max(maxX, ndc[i * 2]);
+            minY = Math.min(minY, ndc[i * 2 + 1]);
+            maxY = Math.max(maxY, ndc[i * 2 + 1]);
+        }
+    }
+
+    /** Restores the screen framebuffer and viewport */
+    public void endFilter() {
+        gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, 0);
+        gl.glViewport(0, 0, screenWidth, screenHeight);
+    }
+
+    /** Blends the filter target over the screen within the bounds of the faces */
+    public void composite(int texture) {
+        if (minX > maxX) {
+            boundsPixels.add(0);
+            return;
+        }
+        // one target texel of margin for the bilinear footprint
+        final float margin = 1 / scale;
+        final int x0 = Math.max(0, (int) Math.floor((minX * 0.5f + 0.5f) * screenWidth - margin));
+        final int y0 = Math.max(0, (int) Math.floor((minY * 0.5f + 0.5f) * screenHeight - margin));
+        final int x1 = Math.min(screenWidth, (int) Math.ceil((maxX * 0.5f + 0.5f) * screenWidth + margin));
+        final int y1 = Math.min(screenHeight, (int) Math.ceil((maxY * 0.5f + 0.5f) * screenHeight + margin));
+        if (x1 <= x0 || y1 <= y0) {
+            boundsPixels.add(0);
+            return;
+        }
+        boundsPixels.add((x1 - x0) * (double) (y1 - y0));
+
+        gl.glEnable(Gl.GL_SCISSOR_TEST);
+        gl.glScissor(x0, y0, x1 - x0, y1 - y0);
+        gl.glDisable(Gl.GL_DEPTH_TEST);
+        gl.glDepthMask(false);
+        gl.glEnable(Gl.GL_BLEND);
+        // premultiplied alpha, see upsample.frag
+        gl.glBlendFunc(Gl.GL_ONE, Gl.GL_ONE_MINUS_SRC_ALPHA);
+
+        gl.glUseProgram(program);
+        gl.glActiveTexture(Gl.GL_TEXTURE0);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, texture);
+        gl.glUniform1i(textureUniform, 0);
+        gl.glUniform2f(textureSizeUniform, targetWidth, targetHeight);
+        gl.glVertexAttribPointer(positionAttribute, 2, Gl.GL_FLOAT, false, 0, quadCoords);
+        gl.glEnableVertexAttribArray(positionAttribute);
+        gl.glDrawArrays(Gl.GL_TRIANGLE_STRIP, 0, 4);
+        gl.glDisableVertexAttribArray(positionAttribute);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+        gl.glDisable(Gl.GL_BLEND);
+        gl.glDepthMask(true);
+        gl.glEnable(Gl.GL_DEPTH_TEST);
+        gl.glDisable(Gl.GL_SCISSOR_TEST);
+        ShaderUtil.checkGLError(gl, TAG, "composite");
+    }
+
+    /**
+     * Pixels per frame in the bounding boxes of the faces: the upper bound of the fragments the
+     * filter shader runs on at full resolution, and the fragments of the upsampling
+     */
+    public RollingStats getBoundsPixels() {
+        return boundsPixels;
+    }
+}
@@ -0,0 +1,424 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * The passes of a frame as a {@link RenderGraph}. A schedule is compiled for each filter so that
+ * the face mapping passes are culled for filters that do not use the face texture. With a
+ * {@link FilterUpsampler}, the filter is drawn to a reduced resolution texture and upsampled to
+ * the screen by a separate pass.
+ *
+ * @param <F> face identity, see {@link FaceMesh}
+ */
+public class FramePipeline<F> {
+    private static final String TAG = FramePipeline.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    private static final int STAGE_STATS_WINDOW = 30;
+
+    // Resources
+    static final String SCREEN = "screen";
+    static final String FACE_ATLAS = "faceAtlas";
+    static final String FACE_ATLAS_JOBS = "faceAtlasJobs";
+    static final String FILTER_TARGET = "filterTarget";
+
+    private final Gl gl;
+    private final BackgroundRenderer backgroundRenderer;
+    private final FaceGeometry faceGeometry;
+    private final FaceMesh<F> faceMesh;
+    private final FaceMapper<F> faceMapper;
+    private final boolean cpuImageFaceMapping;
+    // null if the filter is drawn at full resolution
+    private final FilterUpsampler filterUpsampler;
+
+    /**
+     * CPU time of a pass, including waits for the GPU such as glReadPixels. Culled passes count
+     * as zero.
+     */
+    public static final class TimedPass implements RenderGraph.Pass {
+        private final Gl gl;
+        private final String name;
+        private final RenderGraph.Pass pass;
+        private final RollingStats micros;
+        private long frameNanos;
+        // see setFinishPasses
+        private boolean finish;
+
+        TimedPass(Gl gl, String name, RenderGraph.Pass pass, int statsWindow) {
+            this.gl = gl;
+            this.name = name;
+            this.pass = pass;
+            this.micros = new RollingStats(statsWindow);
+        }
+
+        @Override
+        public void execute(RenderGraph.Resources resources) {
+            if (finish) gl.glFinish();
+            final long start = System.nanoTime();
+            pass.execute(resources);
+            if (finish) gl.glFinish();
+            frameNanos += System.nanoTime() - start;
+        }
+
+        void endFrame() {
+            micros.add(frameNanos * 1e-3);
+            frameNanos = 0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public RollingStats getMicros() {
+            return micros;
+        }
+    }
+
+    private final Map<FaceRenderer, RenderGraph.Schedule> schedules = new HashMap<>();
+    private final RenderTargetPool renderTargets;
+    private final Map<RenderGraph.Schedule, int[]> scheduleTextures = new HashMap<>();
+    private RenderGraph.Schedule idleSchedule;
+    private static final int[] NO_TEXTURES = new int[0];
+
+    // CPU time of FaceRenderer.draw, for comparing the backends
+    private final RollingStats filterDrawMicros;
+    // CPU time of each pass, in the order of the passes
+    private final List<TimedPass> timedPasses;
+    // background restores limited to the faces by the stencil mask vs. full screen
+    private long maskedRestoreCount, fullRestoreCount;
+
+    // Per-frame state used by the passes
+    private CameraFrame frame;
+    private FaceScheduler<F> scheduler;
+    private List<F> faces;
+    private final float[] poseMatrix = new float[16];
+    private FaceRenderer renderer;
+    private float[] viewmtx, projmtx;
+    private boolean updateFaceMapping;
+    // the screen has the camera image except where the stencil is set
+    private boolean stencilRestore;
+
+    private final RenderGraph.Pass faceAtlasUploadPass = new RenderGraph.Pass() {
+        @Override
+        public void execute(RenderGraph.Resources resources) {
+            // Use the newest face texture the worker thread has finished
+            faceMapper.updateFaceTexture();
+        }
+    };
+
+    private final RenderGraph.Pass faceMappingPass = new RenderGraph.Pass() {
+        @Override
+        public void execute(RenderGraph.Resources resources) {
+            if (!updateFaceMapping) return;
+            boolean capturing = false, faceDrawn = false;
+            final List<F> order = scheduler.getMappingOrder();
+            for (int i = 0; i < order.size(); i++) {
+                final F face = order.get(i);
+                faceGeometry.setToFace(face, faceMesh, frame.getTimestamp());
+                if (!faceMapper.needsRefresh(face)) continue;
+                // over the per-frame budget: mapped first in a later frame, still needing a
+                // refresh then
+                if (!scheduler.tryMap(face)) continue;
+                faceMesh.getPoseMatrix(face, poseMatrix);
+                faceMapper.updateModelMatrix(poseMatrix);
+                if (cpuImageFaceMapping) {
+                    faceMapper.drawFromCameraImage(frame, face, viewmtx, projmtx);
+                } else {
+                    if (!capturing) {
+                        // one camera image for all faces
+                        faceMapper.beginCapture();
+                        backgroundRenderer.draw(frame);
+                        capturing = true;
+                    } else if (faceDrawn) {
+                        // the UV image of the previous face must not be read back again
+                        restoreFaceRegions();
+                    }
+                    faceMapper.draw(face, viewmtx, projmtx);
+                    faceDrawn = true;
+                }
+                faceMapper.refreshed(face);
+            }
+            if (capturing) {
+                // a reduced resolution capture leaves most of the screen without the background
+                stencilRestore = faceMapper.isFullResolutionCapture();
+                faceMapper.endCapture();
+            }
+        }
+    };
+
+    private final RenderGraph.Pass backgroundPass = new RenderGraph.Pass() {
+        @Override
+        public void execute(RenderGraph.Resources resources) {
+            if (stencilRestore) {
+                restoreFaceRegions();
+                maskedRestoreCount++;
+            } else {
+                backgroundRenderer.draw(frame);
+                fullRestoreCount++;
+            }
+        }
+    };
+
+    private final RenderGraph.Pass filterPass = new RenderGraph.Pass() {
+        @Override
+        public void execute(RenderGraph.Resources resources) {
+            if (filterUpsampler != null) {
+                filterUpsampler.beginFilter(
+                        renderTargets.getFramebuffer(resources.getTexture(FILTER_TARGET)));
+            }
+            for (int i = 0; i < faces.size(); i++) {
+                final F face = faces.get(i);
+                faceGeometry.setToFace(face, faceMesh, frame.getTimestamp());
+                faceMesh.getPoseMatrix(face, poseMatrix);
+                renderer.updateModelMatrix(poseMatrix);
+                final long drawStart = System.nanoTime();
+                renderer.draw(viewmtx, projmtx, faceMapper.getFaceTextureId(face));
+                filterDrawMicros.add((System.nanoTime() - drawStart) * 1e-3);
+                if (filterUpsampler != null) {
+                    filterUpsampler.addFace(
+                            faceMesh.getVertices(face), viewmtx, projmtx, renderer.getModelMatrix());
+                }
+            }
+            if (filterUpsampler != null) filterUpsampler.endFilter();
+        }
+    };
+
+    private final RenderGraph.Pass filterUpsamplePass = new RenderGraph.Pass() {
+        @Override
+        public void execute(RenderGraph.Resources resources) {
+            filterUpsampler.composite(resources.getTexture(FILTER_TARGET));
+        }
+    };
+
+    /**
+     * Redraws the camera image where the stencil buffer is set (see {@link FaceMapper#draw}) and
+     * clears the stencil there. The fill rate is proportional to the face size.
+     */
+    private void restoreFaceRegions() {
+        gl.glEnable(Gl.GL_STENCIL_TEST);
+        gl.glStencilFunc(Gl.GL_EQUAL, 1, 0xff);
+        gl.glStencilOp(Gl.GL_KEEP, Gl.GL_KEEP, Gl.GL_ZERO);
+        backgroundRenderer.draw(frame);
+        gl.glDisable(Gl.GL_STENCIL_TEST);
+    }
+
+    /**
+     * @param filterUpsampler null to draw the filter at full resolution. Otherwise, the filters
+     *                        must be set to {@link FaceRenderer#setReducedResolution}.
+     */
+    public FramePipeline(Gl gl, BackgroundRenderer backgroundRenderer, FaceGeometry faceGeometry,
+                         FaceMesh<F> faceMesh, FaceMapper<F> faceMapper, boolean cpuImageFaceMapping,
+                         FilterUpsampler filterUpsampler, int statsWindow) {
+        this.gl = gl;
+        this.backgroundRenderer = backgroundRenderer;
+        this.faceGeometry = faceGeometry;
+        this.faceMesh = faceMesh;
+        this.faceMapper = faceMapper;
+        this.cpuImageFaceMapping = cpuImageFaceMapping;
+        this.filterUpsampler = filterUpsampler;
+        this.filterDrawMicros = new RollingStats(statsWindow);
+        this.renderTargets = new RenderTargetPool(gl);
+        timedPasses = Collections.unmodifiableList(Arrays.asList(
+                new TimedPass(gl, "faceAtlasUpload", faceAtlasUploadPass, STAGE_STATS_WINDOW),
+                new TimedPass(gl, "faceMapping", faceMappingPass, STAGE_STATS_WINDOW),
+                new TimedPass(gl, "background", backgroundPass, STAGE_STATS_WINDOW),
+                new TimedPass(gl, "filter", filterPass, STAGE_STATS_WINDOW),
+                new TimedPass(gl, "filterUpsample", filterUpsamplePass, STAGE_STATS_WINDOW)));
+    }
+
+    /**
+     * Waits for the GPU before and after each pass, so that the time of a pass includes the GPU
+     * work it issued. This serializes CPU and GPU: for attributing the frame time to the passes
+     * in the headless benchmark, not for the app.
+     */
+    public void setFinishPasses(boolean finish) {
+        for (int i = 0; i < timedPasses.size(); i++) timedPasses.get(i).finish = finish;
+    }
+
+    /**
+     * Builds the frame graph for the given filter. The passes are declared in the order they
+     * were hand-written before: face mapping (background and its readback, then a UV pass and
+     * readback for each face), background restore and the filter.
+     *
+     * @param computeScatter the face textures are scattered by a compute shader in the mapping
+     *                       pass, see {@link FaceMapper#setComputeScatter}
+     * @param filterTarget the reduced resolution texture the filter is drawn to before the
+     *                     upsample pass, null to draw the filter directly to the screen
+     */
+    static RenderGraph.Schedule compile(
+            FaceRenderer renderer, boolean cpuImageFaceMapping, boolean computeScatter,
+            RenderGraph.TextureDesc filterTarget,
+            RenderGraph.Pass faceAtlasUpload, RenderGraph.Pass faceMapping,
+            RenderGraph.Pass background, RenderGraph.Pass filter,
+            RenderGraph.Pass filterUpsample) {
+
+        final RenderGraph graph = new RenderGraph()
+                .importResource(SCREEN)
+                .importResource(FACE_ATLAS)
+                .importResource(FACE_ATLAS_JOBS);
+
+        graph.addPass("faceAtlasUpload", faceAtlasUpload).read(FACE_ATLAS_JOBS).write(FACE_ATLAS);
+
+        final RenderGraph.PassBuilder mapping = graph.addPass("faceMapping", faceMapping);
+        if (cpuImageFaceMapping) {
+            // uploads the face texture directly
+            mapping.write(FACE_ATLAS);
+        } else if (computeScatter) {
+            // updates the face texture in the same frame, leaves the UV image on the screen
+            mapping.write(FACE_ATLAS).write(SCREEN);
+        } else {
+            // submits jobs to the worker thread, leaves the UV image on the screen
+            mapping.write(FACE_ATLAS_JOBS).write(SCREEN);
+        }
+
+        final RenderGraph.PassBuilder restore = graph.addPass("background", background);
+        if (renderer.needsFaceMapper() && !cpuImageFaceMapping) {
+            // may only redraw where the face mapping marked the stencil, keeping the rest of the
+            // screen it drew
+            restore.read(SCREEN);
+        }
+        restore.write(SCREEN);
+
+        final RenderGraph.PassBuilder filterPass = graph.addPass("filter", filter);
+        if (filterTarget != null) {
+            graph.createTexture(FILTER_TARGET, filterTarget);
+            filterPass.write(FILTER_TARGET);
+            graph.addPass("filterUpsample", filterUpsample)
+                    .read(FILTER_TARGET).read(SCREEN).write(SCREEN);
+        } else {
+            filterPass.read(SCREEN).write(SCREEN);
+        }
+
+        graph.markOutput(SCREEN);
+        if (renderer.needsFaceMapper()) {
+            filterPass.read(FACE_ATLAS);
+            // the jobs are consumed by the upload pass of a later frame
+            if (!cpuImageFaceMapping && !computeScatter) graph.markOutput(FACE_ATLAS_JOBS);
+        }
+
+        return graph.compile();
+    }
+
+    /** The frame graph without faces: only the camera background */
+    static RenderGraph.Schedule compileIdle(RenderGraph.Pass background) {
+        final RenderGraph graph = new RenderGraph().importResource(SCREEN);
+        graph.addPass("background", background).write(SCREEN);
+        graph.markOutput(SCREEN);
+        return graph.compile();
+    }
+
+    /** The frame graph of the filter, compiled on first use */
+    public RenderGraph.Schedule getSchedule(FaceRenderer renderer) {
+        RenderGraph.Schedule schedule = schedules.get(renderer);
+        if (schedule == null) {
+            schedule = compile(renderer, cpuImageFaceMapping, faceMapper.isComputeScatter(),
+                    filterUpsampler != null ? filterUpsampler.getTargetDesc() : null,
+                    timedPasses.get(0), timedPasses.get(1), timedPasses.get(2),
+                    timedPasses.get(3), timedPasses.get(4));
+            LOG.info(renderer.getClass().getSimpleName() + ": " + schedule);
+            schedules.put(renderer, schedule);
+        }
+        return schedule;
+    }
+
+    /**
+     * Renders a frame
+     *
+     * @param scheduler updated for this frame: its tracked faces are drawn and face-mapped
+     *                  within its budget
+     * @param updateFaceMapping false to skip refreshing the face texture on this frame
+     */
+    public void render(CameraFrame frame, FaceScheduler<F> scheduler, FaceRenderer renderer,
+                       float[] viewmtx, float[] projmtx, boolean updateFaceMapping) {
+        this.frame = frame;
+        this.scheduler = scheduler;
+        this.faces = scheduler.getTrackedFaces();
+        this.renderer = renderer;
+        this.viewmtx = viewmtx;
+        this.projmtx = projmtx;
+        this.updateFaceMapping = updateFaceMapping;
+        this.stencilRestore = false;
+
+        faceMapper.beginFrame(faces);
+        final RenderGraph.Schedule schedule = getSchedule(renderer);
+        int[] textures = scheduleTextures.get(schedule);
+        if (textures == null) {
+            textures = renderTargets.getTextures(schedule);
+            scheduleTextures.put(schedule, textures);
+        }
+        schedule.execute(textures);
+        for (int i = 0; i < timedPasses.size(); i++) timedPasses.get(i).endFrame();
+
+        this.frame = null;
+        this.scheduler = null;
+        this.faces = null;
+    }
+
+    /**
+     * Renders a frame without faces, e.g., when none has been tracked for a while. Only the
+     * background pass runs, the face stages are skipped entirely.
+     */
+    public void renderIdle(CameraFrame frame) {
+        this.frame = frame;
+        this.stencilRestore = false;
+        if (idleSchedule == null) {
+            idleSchedule = compileIdle(timedPasses.get(2));
+            LOG.info("idle: " + idleSchedule);
+        }
+        // the idle graph has no transient textures
+        idleSchedule.execute(NO_TEXTURES);
+        for (int i = 0; i < timedPasses.size(); i++) timedPasses.get(i).endFrame();
+        this.frame = null;
+    }
+
+    /**
+     * Deletes the transient textures of the frame graphs, they are allocated again by the next
+     * {@link #render} call
+     *
+     * @return the bytes released
+     */
+    public long releaseRenderTargets() {
+        final long bytes = renderTargets.getAllocatedBytes();
+        scheduleTextures.clear();
+        renderTargets.clear();
+        return bytes;
+    }
+
+    /** Call when the surface size changes */
+    public void onSurfaceChanged(int width, int height) {
+        // the size of the filter target is in the schedules
+        if (filterUpsampler != null) filterUpsampler.setScreenSize(width, height);
+        schedules.clear();
+        scheduleTextures.clear();
+        renderTargets.clear();
+    }
+
+    /** Null if the filter is drawn at full resolution */
+    public FilterUpsampler getFilterUpsampler() {
+        return filterUpsampler;
+    }
+
+    public RollingStats getFilterDrawMicros() {
+        return filterDrawMicros;
+    }
+
+    /** CPU time of the passes, in the order they are declared */
+    public List<TimedPass> getTimedPasses() {
+        return timedPasses;
+    }
+
+    /** Background restores drawn only where the faces were, see {@link #restoreFaceRegions()} */
+    public long getMaskedRestoreCount() {
+        return maskedRestoreCount;
+    }
+
+    /** Background restores drawn over the whole screen */
+    public long getFullRestoreCount() {
+        return fullRestoreCount;
+    }
+}
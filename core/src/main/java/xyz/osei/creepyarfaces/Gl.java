@@ -0,0 +1,159 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES calls of the renderers, with the signatures of Android's GLES20, GLES30 and
+ * GLES31 classes. Implemented by the app on top of those and by the headless module on top of
+ * LWJGL, so that both draw with the same renderer classes. The OpenGL ES 3.x calls may only be
+ * made in a context of that version.
+ */
+public interface Gl {
+    // OpenGL ES 2.0
+    int GL_NO_ERROR = 0x0000;
+    int GL_ZERO = 0x0000;
+    int GL_ONE = 0x0001;
+    int GL_TRIANGLES = 0x0004;
+    int GL_TRIANGLE_STRIP = 0x0005;
+    int GL_DEPTH_BUFFER_BIT = 0x0100;
+    int GL_STENCIL_BUFFER_BIT = 0x0400;
+    int GL_COLOR_BUFFER_BIT = 0x4000;
+    int GL_EQUAL = 0x0202;
+    int GL_ALWAYS = 0x0207;
+    int GL_SRC_ALPHA = 0x0302;
+    int GL_ONE_MINUS_SRC_ALPHA = 0x0303;
+    int GL_DST_ALPHA = 0x0304;
+    int GL_ONE_MINUS_DST_ALPHA = 0x0305;
+    int GL_FRONT = 0x0404;
+    int GL_CULL_FACE = 0x0B44;
+    int GL_DEPTH_TEST = 0x0B71;
+    int GL_STENCIL_TEST = 0x0B90;
+    int GL_VIEWPORT = 0x0BA2;
+    int GL_BLEND = 0x0BE2;
+    int GL_SCISSOR_TEST = 0x0C11;
+    int GL_COLOR_CLEAR_VALUE = 0x0C22;
+    int GL_UNPACK_ALIGNMENT = 0x0CF5;
+    int GL_TEXTURE_2D = 0x0DE1;
+    int GL_UNSIGNED_BYTE = 0x1401;
+    int GL_UNSIGNED_SHORT = 0x1403;
+    int GL_FLOAT = 0x1406;
+    int GL_ALPHA = 0x1906;
+    int GL_RGBA = 0x1908;
+    int GL_KEEP = 0x1E00;
+    int GL_REPLACE = 0x1E01;
+    int GL_NEAREST = 0x2600;
+    int GL_LINEAR = 0x2601;
+    int GL_LINEAR_MIPMAP_LINEAR = 0x2703;
+    int GL_TEXTURE_MAG_FILTER = 0x2800;
+    int GL_TEXTURE_MIN_FILTER = 0x2801;
+    int GL_TEXTURE_WRAP_S = 0x2802;
+    int GL_TEXTURE_WRAP_T = 0x2803;
+    int GL_CLAMP_TO_EDGE = 0x812F;
+    int GL_TEXTURE0 = 0x84C0;
+    int GL_TEXTURE1 = 0x84C1;
+    int GL_ARRAY_BUFFER = 0x8892;
+    int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    int GL_STATIC_DRAW = 0x88E4;
+    int GL_DYNAMIC_DRAW = 0x88E8;
+    int GL_FRAGMENT_SHADER = 0x8B30;
+    int GL_VERTEX_SHADER = 0x8B31;
+    int GL_COMPILE_STATUS = 0x8B81;
+    int GL_LINK_STATUS = 0x8B82;
+    int GL_FRAMEBUFFER = 0x8D40;
+    int GL_FRAMEBUFFER_BINDING = 0x8CA6;
+    int GL_COLOR_ATTACHMENT0 = 0x8CE0;
+
+    // OpenGL ES 3.0
+    int GL_MAJOR_VERSION = 0x821B;
+    int GL_MINOR_VERSION = 0x821C;
+    int GL_RGBA8 = 0x8058;
+    int GL_DYNAMIC_COPY = 0x88EA;
+    int GL_UNIFORM_BUFFER = 0x8A11;
+    int GL_INVALID_INDEX = -1;
+
+    // OpenGL ES 3.1
+    int GL_COMPUTE_SHADER = 0x91B9;
+    int GL_SHADER_STORAGE_BUFFER = 0x90D2;
+    int GL_WRITE_ONLY = 0x88B9;
+    int GL_SHADER_STORAGE_BARRIER_BIT = 0x2000;
+    int GL_TEXTURE_FETCH_BARRIER_BIT = 0x0008;
+    int GL_TEXTURE_UPDATE_BARRIER_BIT = 0x0100;
+
+    // OES_EGL_image_external
+    int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+
+    void glActiveTexture(int texture);
+    void glAttachShader(int program, int shader);
+    void glBindBuffer(int target, int buffer);
+    void glBindFramebuffer(int target, int framebuffer);
+    void glBindTexture(int target, int texture);
+    void glBlendFunc(int sfactor, int dfactor);
+    void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha);
+    void glBufferData(int target, int size, Buffer data, int usage);
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+    void glClear(int mask);
+    void glClearColor(float red, float green, float blue, float alpha);
+    void glCompileShader(int shader);
+    void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height);
+    int glCreateProgram();
+    int glCreateShader(int type);
+    void glCullFace(int mode);
+    void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+    void glDeleteShader(int shader);
+    void glDeleteTextures(int n, int[] textures, int offset);
+    void glDepthMask(boolean flag);
+    void glDisable(int cap);
+    void glDisableVertexAttribArray(int index);
+    void glDrawArrays(int mode, int first, int count);
+    void glDrawElements(int mode, int count, int type, int offset);
+    void glEnable(int cap);
+    void glEnableVertexAttribArray(int index);
+    void glFinish();
+    void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+    void glGenBuffers(int n, int[] buffers, int offset);
+    void glGenerateMipmap(int target);
+    void glGenFramebuffers(int n, int[] framebuffers, int offset);
+    void glGenTextures(int n, int[] textures, int offset);
+    int glGetAttribLocation(int program, String name);
+    int glGetError();
+    void glGetFloatv(int pname, float[] params, int offset);
+    void glGetIntegerv(int pname, int[] params, int offset);
+    String glGetProgramInfoLog(int program);
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+    String glGetShaderInfoLog(int shader);
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+    int glGetUniformLocation(int program, String name);
+    void glLinkProgram(int program);
+    void glPixelStorei(int pname, int param);
+    void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels);
+    void glScissor(int x, int y, int width, int height);
+    void glShaderSource(int shader, String string);
+    void glStencilFunc(int func, int ref, int mask);
+    void glStencilOp(int fail, int zfail, int zpass);
+    void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                      int format, int type, Buffer pixels);
+    void glTexParameteri(int target, int pname, int param);
+    void glUniform1i(int location, int x);
+    void glUniform2f(int location, float x, float y);
+    void glUniform2fv(int location, int count, float[] v, int offset);
+    void glUniform2i(int location, int x, int y);
+    void glUniform4fv(int location, int count, float[] v, int offset);
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+    void glUseProgram(int program);
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer pointer);
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+    void glViewport(int x, int y, int width, int height);
+
+    // OpenGL ES 3.0
+    void glBindBufferBase(int target, int index, int buffer);
+    void glBindVertexArray(int array);
+    void glGenVertexArrays(int n, int[] arrays, int offset);
+    int glGetUniformBlockIndex(int program, String uniformBlockName);
+    void glTexStorage2D(int target, int levels, int internalformat, int width, int height);
+    void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding);
+
+    // OpenGL ES 3.1
+    void glBindImageTexture(int unit, int texture, int level, boolean layered, int layer, int access, int format);
+    void glDispatchCompute(int numGroupsX, int numGroupsY, int numGroupsZ);
+    void glMemoryBarrier(int barriers);
+}
@@ -0,0 +1,151 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * Vertex data of a text and bar overlay, drawn as one triangle list with a glyph atlas texture.
+ * The atlas is a grid of character cells starting from the space character, with one extra cell
+ * after the last character that is filled with opaque white and used for the solid rectangles.
+ * Coordinates are in pixels, origin at the top left. Nothing is allocated after construction.
+ */
+public final class HudMesh {
+    /** x, y, u, v, r, g, b, a */
+    public static final int FLOATS_PER_VERTEX = 8;
+    private static final int VERTICES_PER_QUAD = 6;
+    private static final char FIRST_CHAR = ' ';
+
+    private final float[] vertices;
+    private final int maxQuads;
+    private final int atlasColumns, atlasRows, charCount;
+    private int quadCount;
+    private int droppedQuadCount;
+
+    /**
+     * @param maxQuads characters and rectangles per frame, further ones are dropped
+     * @param atlasColumns columns of character cells in the glyph atlas
+     * @param atlasRows rows of character cells in the glyph atlas
+     */
+    public HudMesh(int maxQuads, int atlasColumns, int atlasRows) {
+        this.maxQuads = maxQuads;
+        this.atlasColumns = atlasColumns;
+        this.atlasRows = atlasRows;
+        // the last cell is the solid one
+        this.charCount = atlasColumns * atlasRows - 1;
+        vertices = new float[maxQuads * VERTICES_PER_QUAD * FLOATS_PER_VERTEX];
+    }
+
+    /** The cell of the glyph atlas where the character is drawn, -1 if not in the atlas */
+    public static int getCell(char c, int atlasColumns, int atlasRows) {
+        final int cell = c - FIRST_CHAR;
+        return cell >= 0 && cell < atlasColumns * atlasRows - 1 ? cell : -1;
+    }
+
+    /** The character drawn in the given cell of the glyph atlas */
+    public static char getChar(int cell) {
+        return (char) (FIRST_CHAR + cell);
+    }
+
+    public void clear() {
+        quadCount = 0;
+    }
+
+    public void addRect(float x0, float y0, float x1, float y1, float r, float g, float b, float a) {
+        // sample the middle of the solid cell so that filtering does not reach its neighbors
+        final float u = (charCount % atlasColumns + 0.5f) / atlasColumns;
+        final float v = (charCount / atlasColumns + 0.5f) / atlasRows;
+        addQuad(x0, y0, x1, y1, u, v, u, v, r, g, b, a);
+    }
+
+    /**
+     * Adds a line of text with a fixed advance. Characters missing from the atlas are skipped.
+     *
+     * @return the x coordinate after the text
+     */
+    public float addText(CharSequence text, float x, float y, float charWidth, float charHeight,
+                         float r, float g, float b, float a) {
+        for (int i = 0; i < text.length(); i++) {
+            final int cell = getCell(text.charAt(i), atlasColumns, atlasRows);
+            // cell 0 is the space, nothing to draw
+            if (cell > 0) {
+                final float u0 = (cell % atlasColumns) / (float) atlasColumns;
+                final float v0 = (cell / atlasColumns) / (float) atlasRows;
+                addQuad(x, y, x + charWidth, y + charHeight,
+                        u0, v0, u0 + 1.0f / atlasColumns, v0 + 1.0f / atlasRows, r, g, b, a);
+            }
+            x += charWidth;
+        }
+        return x;
+    }
+
+    private void addQuad(float x0, float y0, float x1, float y1,
+                         float u0, float v0, float u1, float v1,
+                         float r, float g, float b, float a) {
+        if (quadCount >= maxQuads) {
+            droppedQuadCount++;
+            return;
+        }
+        int i = quadCount * VERTICES_PER_QUAD * FLOATS_PER_VERTEX;
+        i = putVertex(i, x0, y0, u0, v0, r, g, b, a);
+        i = putVertex(i, x0, y1, u0, v1, r, g, b, a);
+        i = putVertex(i, x1, y0, u1, v0, r, g, b, a);
+        i = putVertex(i, x1, y0, u1, v0, r, g, b, a);
+        i = putVertex(i, x0, y1, u0, v1, r, g, b, a);
+        putVertex(i, x1, y1, u1, v1, r, g, b, a);
+        quadCount++;
+    }
+
+    private int putVertex(int i, float x, float y, float u, float v, float r, float g, float b, float a) {
+        vertices[i++] = x;
+        vertices[i++] = y;
+        vertices[i++] = u;
+        vertices[i++] = v;
+        vertices[i++] = r;
+        vertices[i++] = g;
+        vertices[i++] = b;
+        vertices[i++] = a;
+        return i;
+    }
+
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public int getVertexCount() {
+        return quadCount * VERTICES_PER_QUAD;
+    }
+
+    /** Floats used by the quads added since {@link #clear()} */
+    public int getFloatCount() {
+        return getVertexCount() * FLOATS_PER_VERTEX;
+    }
+
+    public int getMaxQuads() {
+        return maxQuads;
+    }
+
+    /** Quads that did not fit, over the lifetime of the mesh */
+    public int getDroppedQuadCount() {
+        return droppedQuadCount;
+    }
+
+    /**
+     * Appends a number with the given number of decimals, like String.format("%.1f") but
+     * without allocating
+     */
+    public static StringBuilder appendFixed(StringBuilder sb, double value, int decimals) {
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        final long scaled = Math.round(value * scale);
+        sb.append(scaled / scale);
+        if (decimals > 0) {
+            sb.append('.');
+            final long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                sb.append((char) ('0' + (fraction / digit) % 10));
+            }
+        }
+        return sb;
+    }
+}
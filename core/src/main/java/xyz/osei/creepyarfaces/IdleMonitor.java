@@ -0,0 +1,61 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * Decides when the app is idle: after a given time without any tracked face. Idle ends on the
+ * first frame that has a tracked face again. Also keeps count of the time spent idle.
+ */
+public final class IdleMonitor {
+    private final long idleAfterNanos;
+    private final Clock clock;
+
+    private long lastFaceNanos;
+    private boolean idle;
+    private long idleStartNanos;
+    private long completedIdleNanos;
+    private int idleCount;
+
+    /**
+     * @param idleAfterMillis time without tracked faces before becoming idle
+     */
+    public IdleMonitor(long idleAfterMillis, Clock clock) {
+        this.idleAfterNanos = idleAfterMillis * 1000 * 1000;
+        this.clock = clock;
+        lastFaceNanos = clock.nanoTime();
+    }
+
+    /**
+     * Call once per frame
+     *
+     * @param faceTracked true if some face is tracked in the frame
+     * @return true if idle in this frame
+     */
+    public boolean update(boolean faceTracked) {
+        final long now = clock.nanoTime();
+        if (faceTracked) {
+            lastFaceNanos = now;
+            if (idle) {
+                idle = false;
+                completedIdleNanos += now - idleStartNanos;
+            }
+        } else if (!idle && now - lastFaceNanos >= idleAfterNanos) {
+            idle = true;
+            idleStartNanos = now;
+            idleCount++;
+        }
+        return idle;
+    }
+
+    public boolean isIdle() {
+        return idle;
+    }
+
+    /** Total time spent idle, including the current idle period */
+    public long getIdleNanos() {
+        return completedIdleNanos + (idle ? clock.nanoTime() - idleStartNanos : 0);
+    }
+
+    /** Number of times the idle state was entered */
+    public int getIdleCount() {
+        return idleCount;
+    }
+}
@@ -0,0 +1,47 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * Column-major 4x4 matrix helpers with the same conventions as android.opengl.Matrix, usable
+ * outside Android.
+ */
+public final class MatrixMath {
+    private MatrixMath() {}
+
+    /** Sets the matrix to the identity, like Matrix.setIdentityM */
+    public static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; i++) m[i] = i % 5 == 0 ? 1 : 0;
+    }
+
+    /**
+     * result = lhs * rhs. The result must not overlap with either of the inputs.
+     */
+    public static void multiplyMM(
+            float[] result, int resultOffset,
+            float[] lhs, int lhsOffset,
+            float[] rhs, int rhsOffset) {
+        for (int col = 0; col < 4; col++) {
+            final int r = rhsOffset + col * 4;
+            final float r0 = rhs[r], r1 = rhs[r + 1], r2 = rhs[r + 2], r3 = rhs[r + 3];
+            for (int row = 0; row < 4; row++) {
+                result[resultOffset + col * 4 + row] =
+                        lhs[lhsOffset + row] * r0 +
+                        lhs[lhsOffset + 4 + row] * r1 +
+                        lhs[lhsOffset + 8 + row] * r2 +
+                        lhs[lhsOffset + 12 + row] * r3;
+            }
+        }
+    }
+
+    /**
+     * Computes modelView = view * model and modelViewProjection = projection * modelView
+     */
+    public static void composeModelViewProjection(
+            float[] cameraView,
+            float[] cameraPerspective,
+            float[] modelMatrix,
+            float[] modelViewMatrix,
+            float[] modelViewProjectionMatrix) {
+        multiplyMM(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
+        multiplyMM(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+    }
+}
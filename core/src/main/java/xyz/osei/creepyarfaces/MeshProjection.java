@@ -0,0 +1,56 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Projects mesh vertices to normalized device coordinates on the CPU
+ */
+public final class MeshProjection {
+    private MeshProjection() {}
+
+    /**
+     * @param modelViewProjection column-major 4x4 matrix
+     * @param vertices xyz triplets, position is not modified
+     * @param ndcOut receives xy pairs in normalized device coordinates, at least
+     *               2 * vertex count elements
+     * @return number of projected vertices
+     */
+    public static int projectToNdc(float[] modelViewProjection, FloatBuffer vertices, float[] ndcOut) {
+        final float[] m = modelViewProjection;
+        final int n = vertices.limit() / 3;
+        for (int i = 0; i < n; i++) {
+            final float x = vertices.get(i * 3), y = vertices.get(i * 3 + 1), z = vertices.get(i * 3 + 2);
+            final float cx = m[0] * x + m[4] * y + m[8] * z + m[12];
+            final float cy = m[1] * x + m[5] * y + m[9] * z + m[13];
+            final float cw = m[3] * x + m[7] * y + m[11] * z + m[15];
+            final float invW = cw != 0 ? 1f / cw : 0f;
+            ndcOut[i * 2] = cx * invW;
+            ndcOut[i * 2 + 1] = cy * invW;
+        }
+        return n;
+    }
+
+    /**
+     * Screen area of the triangles that are clockwise in normalized device coordinates, i.e.,
+     * the ones not culled with glCullFace(GL_FRONT), which is about the number of fragments they
+     * rasterize to when they do not overlap
+     *
+     * @param ndc xy pairs from {@link #projectToNdc}
+     * @param indices triangle indices, position is not modified
+     * @return area in pixels of a width x height viewport
+     */
+    public static double clockwiseArea(float[] ndc, ShortBuffer indices, int width, int height) {
+        double area = 0;
+        for (int t = 0; t + 2 < indices.limit(); t += 3) {
+            final int a = (indices.get(t) & 0xffff) * 2;
+            final int b = (indices.get(t + 1) & 0xffff) * 2;
+            final int c = (indices.get(t + 2) & 0xffff) * 2;
+            final double cross = (ndc[b] - ndc[a]) * (double) (ndc[c + 1] - ndc[a + 1])
+                    - (ndc[c] - ndc[a]) * (double) (ndc[b + 1] - ndc[a + 1]);
+            if (cross < 0) area -= cross * 0.5;
+        }
+        // the viewport maps the 2 x 2 NDC square to width x height pixels
+        return area * width * height / 4;
+    }
+}
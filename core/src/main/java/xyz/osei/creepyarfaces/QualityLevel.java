@@ -0,0 +1,29 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * A set of quality knobs for the face mapping pipeline
+ */
+public final class QualityLevel {
+    /** Width and height of the face texture atlas */
+    public final int atlasSize;
+    /** Resolution of the face mapping readback relative to the screen resolution */
+    public final float captureScale;
+    /** Face mapping is updated on every n-th frame */
+    public final int mappingInterval;
+
+    public QualityLevel(int atlasSize, float captureScale, int mappingInterval) {
+        if (atlasSize <= 0 || captureScale <= 0 || captureScale > 1 || mappingInterval < 1) {
+            throw new IllegalArgumentException("invalid quality level");
+        }
+        this.atlasSize = atlasSize;
+        this.captureScale = captureScale;
+        this.mappingInterval = mappingInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "atlas " + atlasSize + "x" + atlasSize
+                + ", capture scale " + captureScale
+                + ", mapping every " + mappingInterval + " frame(s)";
+    }
+}
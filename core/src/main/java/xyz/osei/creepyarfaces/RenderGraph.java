@@ -0,0 +1,315 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Declarative description of the passes of a frame. Each pass declares the resources it reads
+ * and writes. Compiling the graph culls the passes whose results are not needed for the outputs
+ * and assigns the transient textures to physical textures so that textures whose lifetimes do
+ * not overlap are shared. The graph itself does not touch OpenGL, the passes and the physical
+ * textures are provided by the caller.
+ *
+ * Writes create a new version of a resource: a pass that only writes a resource does not depend
+ * on its previous contents. A pass that modifies a resource must declare it as both read and
+ * written.
+ */
+public final class RenderGraph {
+    /** Work done by a pass */
+    public interface Pass {
+        void execute(Resources resources);
+    }
+
+    /** Physical textures of the transient resources during execution */
+    public interface Resources {
+        int getTexture(String resource);
+    }
+
+    /** Description of a transient texture. Textures with equal descriptions can be aliased. */
+    public static final class TextureDesc {
+        public final int width, height;
+        /** Opaque format identifier, e.g., a GL internal format */
+        public final int format;
+
+        public TextureDesc(int width, int height, int format) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        /** Approximate size in bytes, assuming four bytes per texel */
+        public long getBytes() {
+            return 4L * width * height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TextureDesc)) return false;
+            final TextureDesc other = (TextureDesc) o;
+            return width == other.width && height == other.height && format == other.format;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new int[] { width, height, format });
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + " (format " + format + ")";
+        }
+    }
+
+    public final class PassBuilder {
+        private final PassNode node;
+
+        private PassBuilder(PassNode node) {
+            this.node = node;
+        }
+
+        public PassBuilder read(String resource) {
+            checkDeclared(resource);
+            node.reads.add(resource);
+            return this;
+        }
+
+        public PassBuilder write(String resource) {
+            checkDeclared(resource);
+            node.writes.add(resource);
+            return this;
+        }
+    }
+
+    private static final class PassNode {
+        final String name;
+        final Pass pass;
+        final Set<String> reads = new LinkedHashSet<>();
+        final Set<String> writes = new LinkedHashSet<>();
+
+        PassNode(String name, Pass pass) {
+            this.name = name;
+            this.pass = pass;
+        }
+    }
+
+    private final List<PassNode> passes = new ArrayList<>();
+    private final Set<String> imported = new LinkedHashSet<>();
+    private final Map<String, TextureDesc> transients = new LinkedHashMap<>();
+    private final Set<String> outputs = new LinkedHashSet<>();
+
+    /** Declares a resource owned outside the graph, e.g., the default framebuffer */
+    public RenderGraph importResource(String name) {
+        imported.add(name);
+        return this;
+    }
+
+    /** Declares a texture that only lives within the frame and is allocated by the graph */
+    public RenderGraph createTexture(String name, TextureDesc desc) {
+        transients.put(name, desc);
+        return this;
+    }
+
+    /** Passes are executed in the order they are added */
+    public PassBuilder addPass(String name, Pass pass) {
+        final PassNode node = new PassNode(name, pass);
+        passes.add(node);
+        return new PassBuilder(node);
+    }
+
+    /** Marks a resource whose final version is needed after the frame */
+    public RenderGraph markOutput(String resource) {
+        checkDeclared(resource);
+        outputs.add(resource);
+        return this;
+    }
+
+    private void checkDeclared(String resource) {
+        if (!imported.contains(resource) && !transients.containsKey(resource)) {
+            throw new IllegalArgumentException("undeclared resource " + resource);
+        }
+    }
+
+    public Schedule compile() {
+        final int n = passes.size();
+        // dependencies[i] = passes whose output pass i reads
+        final List<Set<Integer>> dependencies = new ArrayList<>();
+        final Map<String, Integer> lastWriter = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            final PassNode node = passes.get(i);
+            final Set<Integer> deps = new LinkedHashSet<>();
+            for (String r : node.reads) {
+                final Integer writer = lastWriter.get(r);
+                if (writer != null) {
+                    deps.add(writer);
+                } else if (transients.containsKey(r)) {
+                    throw new IllegalStateException(
+                            "pass " + node.name + " reads " + r + " before it is written");
+                }
+            }
+            dependencies.add(deps);
+            for (String w : node.writes) lastWriter.put(w, i);
+        }
+
+        final boolean[] kept = new boolean[n];
+        final List<Integer> stack = new ArrayList<>();
+        for (String output : outputs) {
+            final Integer writer = lastWriter.get(output);
+            if (writer != null) stack.add(writer);
+        }
+        while (!stack.isEmpty()) {
+            final int i = stack.remove(stack.size() - 1);
+            if (kept[i]) continue;
+            kept[i] = true;
+            stack.addAll(dependencies.get(i));
+        }
+
+        final List<PassNode> scheduled = new ArrayList<>();
+        final List<String> culled = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (kept[i]) scheduled.add(passes.get(i));
+            else culled.add(passes.get(i).name);
+        }
+
+        return new Schedule(scheduled, culled, assignPhysicalTextures(scheduled));
+    }
+
+    /**
+     * Greedy interval allocation: each transient texture gets the first physical texture with
+     * the same description that is not in use during its lifetime
+     */
+    private Map<String, Integer> assignPhysicalTextures(List<PassNode> scheduled) {
+        final Map<String, int[]> lifetimes = new LinkedHashMap<>();
+        for (int i = 0; i < scheduled.size(); i++) {
+            final PassNode node = scheduled.get(i);
+            for (String r : node.reads) extendLifetime(lifetimes, r, i);
+            for (String w : node.writes) extendLifetime(lifetimes, w, i);
+        }
+
+        final Map<String, Integer> slots = new LinkedHashMap<>();
+        final List<TextureDesc> slotDescs = new ArrayList<>();
+        final List<Integer> slotFreeAfter = new ArrayList<>();
+        // lifetimes are in order of first use
+        for (Map.Entry<String, int[]> entry : lifetimes.entrySet()) {
+            final TextureDesc desc = transients.get(entry.getKey());
+            final int first = entry.getValue()[0], last = entry.getValue()[1];
+            int slot = -1;
+            for (int s = 0; s < slotDescs.size(); s++) {
+                if (slotDescs.get(s).equals(desc) && slotFreeAfter.get(s) < first) {
+                    slot = s;
+                    break;
+                }
+            }
+            if (slot < 0) {
+                slot = slotDescs.size();
+                slotDescs.add(desc);
+                slotFreeAfter.add(last);
+            } else {
+                slotFreeAfter.set(slot, last);
+            }
+            slots.put(entry.getKey(), slot);
+        }
+        return slots;
+    }
+
+    private void extendLifetime(Map<String, int[]> lifetimes, String resource, int passIndex) {
+        if (!transients.containsKey(resource)) return;
+        final int[] lifetime = lifetimes.get(resource);
+        if (lifetime == null) {
+            lifetimes.put(resource, new int[] { passIndex, passIndex });
+        } else {
+            lifetime[1] = passIndex;
+        }
+    }
+
+    /** Compiled, executable order of passes */
+    public final class Schedule implements Resources {
+        private final List<PassNode> scheduled;
+        private final List<String> culled;
+        private final Map<String, Integer> physicalSlots;
+        private final List<TextureDesc> physicalTextures = new ArrayList<>();
+        private int[] physicalIds;
+
+        private Schedule(List<PassNode> scheduled, List<String> culled, Map<String, Integer> physicalSlots) {
+            this.scheduled = scheduled;
+            this.culled = culled;
+            this.physicalSlots = physicalSlots;
+            for (Map.Entry<String, Integer> entry : physicalSlots.entrySet()) {
+                if (entry.getValue() == physicalTextures.size()) {
+                    physicalTextures.add(transients.get(entry.getKey()));
+                }
+            }
+        }
+
+        public List<String> getPassNames() {
+            final List<String> names = new ArrayList<>();
+            for (PassNode node : scheduled) names.add(node.name);
+            return names;
+        }
+
+        public List<String> getCulledPassNames() {
+            return culled;
+        }
+
+        /** Descriptions of the physical textures the schedule needs, indexed by slot */
+        public List<TextureDesc> getPhysicalTextures() {
+            return physicalTextures;
+        }
+
+        /** Physical texture slot of a transient resource, -1 if unused */
+        public int getPhysicalSlot(String resource) {
+            final Integer slot = physicalSlots.get(resource);
+            return slot == null ? -1 : slot;
+        }
+
+        /** Total size of the physical transient textures */
+        public long getTransientBytes() {
+            long bytes = 0;
+            for (TextureDesc desc : physicalTextures) bytes += desc.getBytes();
+            return bytes;
+        }
+
+        /** Total size of the transient textures if none were aliased */
+        public long getUnaliasedTransientBytes() {
+            long bytes = 0;
+            for (String resource : physicalSlots.keySet()) bytes += transients.get(resource).getBytes();
+            return bytes;
+        }
+
+        /**
+         * Runs the scheduled passes
+         *
+         * @param textureIds the physical textures, indexed like {@link #getPhysicalTextures()}
+         */
+        public void execute(int[] textureIds) {
+            physicalIds = textureIds;
+            for (int i = 0; i < scheduled.size(); i++) scheduled.get(i).pass.execute(this);
+            physicalIds = null;
+        }
+
+        @Override
+        public int getTexture(String resource) {
+            final int slot = getPhysicalSlot(resource);
+            if (slot < 0) throw new IllegalArgumentException("no texture for " + resource);
+            return physicalIds[slot];
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("passes ").append(getPassNames());
+            if (!culled.isEmpty()) sb.append(", culled ").append(culled);
+            if (!physicalSlots.isEmpty()) {
+                sb.append(", textures ").append(physicalSlots)
+                        .append(" (").append(getTransientBytes()).append(" bytes, ")
+                        .append(getUnaliasedTransientBytes()).append(" without aliasing)");
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Physical textures (with framebuffers for rendering into them) for the transient resources of
+ * compiled {@link RenderGraph} schedules. Textures are kept across frames and schedules and
+ * reused whenever the description matches.
+ */
+class RenderTargetPool {
+    private static final String TAG = RenderTargetPool.class.getSimpleName();
+
+    private static final class Target {
+        final RenderGraph.TextureDesc desc;
+        final int texture, framebuffer;
+
+        Target(RenderGraph.TextureDesc desc, int texture, int framebuffer) {
+            this.desc = desc;
+            this.texture = texture;
+            this.framebuffer = framebuffer;
+        }
+    }
+
+    private final Gl gl;
+    private final List<Target> targets = new ArrayList<>();
+
+    RenderTargetPool(Gl gl) {
+        this.gl = gl;
+    }
+
+    /**
+     * Returns the textures for the physical slots of the schedule, allocating missing ones
+     */
+    public int[] getTextures(RenderGraph.Schedule schedule) {
+        final List<RenderGraph.TextureDesc> descs = schedule.getPhysicalTextures();
+        final int[] ids = new int[descs.size()];
+        // targets not yet given to a slot; new targets are never in it
+        final List<Target> free = new ArrayList<>(targets);
+        for (int slot = 0; slot < descs.size(); slot++) {
+            Target match = null;
+            for (Target target : free) {
+                if (target.desc.equals(descs.get(slot))) {
+                    match = target;
+                    break;
+                }
+            }
+            if (match != null) {
+                free.remove(match);
+            } else {
+                match = allocate(descs.get(slot));
+            }
+            ids[slot] = match.texture;
+        }
+        return ids;
+    }
+
+    /**
+     * Returns a texture with the description, allocating it if there is none. For textures
+     * outside of the schedules, which must then use a pool of their own.
+     */
+    public int getTexture(RenderGraph.TextureDesc desc) {
+        for (Target target : targets) {
+            if (target.desc.equals(desc)) return target.texture;
+        }
+        return allocate(desc).texture;
+    }
+
+    /** Framebuffer that renders into the given pool texture */
+    public int getFramebuffer(int texture) {
+        for (Target target : targets) {
+            if (target.texture == texture) return target.framebuffer;
+        }
+        throw new IllegalArgumentException("not a pool texture: " + texture);
+    }
+
+    /** Deletes all textures, e.g., when the surface size changes */
+    public void clear() {
+        for (Target target : targets) {
+            gl.glDeleteFramebuffers(1, new int[] { target.framebuffer }, 0);
+            gl.glDeleteTextures(1, new int[] { target.texture }, 0);
+        }
+        targets.clear();
+    }
+
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Target target : targets) bytes += target.desc.getBytes();
+        return bytes;
+    }
+
+    private Target allocate(RenderGraph.TextureDesc desc) {
+        final int[] ids = new int[1];
+        gl.glGenTextures(1, ids, 0);
+        final int texture = ids[0];
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, texture);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_S, Gl.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_T, Gl.GL_CLAMP_TO_EDGE);
+        gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, desc.format, desc.width, desc.height, 0,
+                desc.format, Gl.GL_UNSIGNED_BYTE, null);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+        gl.glGenFramebuffers(1, ids, 0);
+        final int framebuffer = ids[0];
+        gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, framebuffer);
+        gl.glFramebufferTexture2D(Gl.GL_FRAMEBUFFER, Gl.GL_COLOR_ATTACHMENT0,
+                Gl.GL_TEXTURE_2D, texture, 0);
+        gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, 0);
+        ShaderUtil.checkGLError(gl, TAG, "allocate");
+
+        final Target target = new Target(desc, texture, framebuffer);
+        targets.add(target);
+        return target;
+    }
+}
@@ -0,0 +1,51 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * Fixed-size moving window of samples. Does not allocate after construction.
+ */
+public final class RollingStats {
+    private final double[] samples;
+    private int next;
+    private int count;
+    private double sum;
+
+    public RollingStats(int windowSize) {
+        if (windowSize <= 0) throw new IllegalArgumentException("window size must be positive");
+        samples = new double[windowSize];
+    }
+
+    public void add(double sample) {
+        if (count == samples.length) {
+            sum -= samples[next];
+        } else {
+            count++;
+        }
+        samples[next] = sample;
+        sum += sample;
+        next = (next + 1) % samples.length;
+    }
+
+    public void clear() {
+        next = 0;
+        count = 0;
+        sum = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return count == samples.length;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public double getMax() {
+        double max = 0;
+        for (int i = 0; i < count; i++) max = Math.max(max, samples[i]);
+        return max;
+    }
+}
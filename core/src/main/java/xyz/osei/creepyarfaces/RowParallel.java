@@ -0,0 +1,95 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a task over a range of rows split into bands on a fixed set of threads. The calling
+ * thread processes the first band itself. Does not allocate per run.
+ */
+public final class RowParallel {
+    public interface RowTask {
+        /** Processes rows [rowStart, rowEnd). Called concurrently for disjoint ranges. */
+        void run(int rowStart, int rowEnd);
+    }
+
+    private final Thread[] helpers;
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile RowTask task;
+    private volatile int rows;
+    private volatile Thread caller;
+    private volatile boolean running = true;
+
+    /**
+     * @param threads total number of threads to use, including the calling thread
+     */
+    public RowParallel(int threads) {
+        helpers = new Thread[Math.max(0, threads - 1)];
+        // read here and not by the helpers: the first run may start before they do
+        final int startGeneration = generation.get();
+        for (int i = 0; i < helpers.length; i++) {
+            final int band = i + 1;
+            helpers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    helperLoop(band, startGeneration);
+                }
+            }, "RowParallel-" + band);
+            helpers[i].setDaemon(true);
+            helpers[i].start();
+        }
+    }
+
+    public int getThreadCount() {
+        return helpers.length + 1;
+    }
+
+    /** Runs the task over rows [0, rowCount) and returns when all bands are done */
+    public void run(int rowCount, RowTask rowTask) {
+        if (helpers.length == 0) {
+            rowTask.run(0, rowCount);
+            return;
+        }
+        task = rowTask;
+        rows = rowCount;
+        caller = Thread.currentThread();
+        pending.set(helpers.length);
+        generation.incrementAndGet();
+        for (Thread helper : helpers) LockSupport.unpark(helper);
+
+        runBand(0, rowTask, rowCount);
+
+        while (pending.get() > 0) LockSupport.park(this);
+        task = null;
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Thread helper : helpers) LockSupport.unpark(helper);
+    }
+
+    private void runBand(int band, RowTask rowTask, int rowCount) {
+        final int bands = helpers.length + 1;
+        final int start = (int)((long) rowCount * band / bands);
+        final int end = (int)((long) rowCount * (band + 1) / bands);
+        if (end > start) rowTask.run(start, end);
+    }
+
+    private void helperLoop(int band, int startGeneration) {
+        int seenGeneration = startGeneration;
+        while (running) {
+            final int current = generation.get();
+            if (current == seenGeneration) {
+                LockSupport.park(this);
+                continue;
+            }
+            seenGeneration = current;
+            try {
+                runBand(band, task, rows);
+            } finally {
+                if (pending.decrementAndGet() == 0) LockSupport.unpark(caller);
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package xyz.osei.creepyarfaces;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates shader variants from the shader files. Each file is read once and its
+ * {@code #include "name"} lines are resolved recursively, failing on include cycles. A variant
+ * is a set of defined names: {@code #ifdef}, {@code #ifndef}, {@code #else} and {@code #endif}
+ * on them are evaluated here, so the source given to the driver only has the code of the
+ * variant, and attributes that the remaining code does not use are removed. Other directives,
+ * e.g., {@code #if}, and conditionals on the names reserved for the driver (starting with
+ * {@code GL_} or containing {@code __}, e.g., {@code GL_FRAGMENT_PRECISION_HIGH}) are passed to
+ * the driver as is.
+ */
+public final class ShaderPreprocessor {
+    public interface SourceLoader {
+        String load(String name) throws IOException;
+    }
+
+    private static final Pattern INCLUDE =
+            Pattern.compile("^\\s*#\\s*include\\s+\"([^\"]+)\"\\s*$");
+    private static final Pattern DIRECTIVE = Pattern.compile("^\\s*#\\s*(\\w+)\\s*(\\w*)");
+    // attribute vec3 a_Normal; or, in GLSL ES 3.00 vertex shaders, in vec3 a_Normal;
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "^\\s*(?:attribute|in)\\s+(?:(?:lowp|mediump|highp)\\s+)?\\w+\\s+(\\w+)\\s*;.*$");
+    private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/|//[^\\n]*", Pattern.DOTALL);
+
+    private final SourceLoader loader;
+    // include-resolved file contents
+    private final Map<String, String> resolved = new HashMap<>();
+    private final Map<String, String> variants = new HashMap<>();
+
+    private int loadCount, includeCacheHits, strippedAttributeCount;
+    private long nanos;
+
+    public ShaderPreprocessor(SourceLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * The source of a shader variant, generated on the first call and cached
+     *
+     * @param vertexShader unused attributes are only stripped from vertex shaders
+     * @param defines names defined in the variant, the order does not matter
+     */
+    public synchronized String process(String name, boolean vertexShader, String... defines)
+            throws IOException {
+        final String[] sorted = defines.clone();
+        Arrays.sort(sorted);
+        final String key = name + (vertexShader ? " (vertex)" : "") + " " + Arrays.toString(sorted);
+        String source = variants.get(key);
+        if (source != null) return source;
+
+        final long start = System.nanoTime();
+        source = resolve(name, new ArrayDeque<String>());
+        source = evaluateConditionals(source, new HashSet<>(Arrays.asList(sorted)));
+        if (vertexShader) source = stripUnusedAttributes(source);
+        source = insertDefines(source, sorted);
+        nanos += System.nanoTime() - start;
+
+        variants.put(key, source);
+        return source;
+    }
+
+    private String resolve(String name, Deque<String> stack) throws IOException {
+        if (stack.contains(name)) {
+            final StringBuilder cycle = new StringBuilder();
+            for (Iterator<String> it = stack.descendingIterator(); it.hasNext(); ) {
+                cycle.append(it.next()).append(" -> ");
+            }
+            throw new IOException("include cycle: " + cycle + name);
+        }
+        final String cached = resolved.get(name);
+        if (cached != null) {
+            includeCacheHits++;
+            return cached;
+        }
+
+        stack.push(name);
+        final String raw = loader.load(name);
+        loadCount++;
+        final StringBuilder sb = new StringBuilder();
+        for (String line : raw.split("\n")) {
+            final Matcher include = INCLUDE.matcher(line);
+            if (include.matches()) {
+                sb.append(resolve(include.group(1), stack));
+            } else {
+                sb.append(line).append('\n');
+            }
+        }
+        stack.pop();
+
+        final String source = sb.toString();
+        resolved.put(name, source);
+        return source;
+    }
+
+    // one level of #ifdef / #ifndef / #if nesting
+    private static final class Block {
+        final boolean evaluated;
+        final boolean parentActive;
+        boolean active;
+
+        Block(boolean evaluated, boolean parentActive, boolean active) {
+            this.evaluated = evaluated;
+            this.parentActive = parentActive;
+            this.active = active;
+        }
+    }
+
+    private static String evaluateConditionals(String source, Set<String> defines)
+            throws IOException {
+        final Set<String> defined = new HashSet<>(defines);
+        final Deque<Block> blocks = new ArrayDeque<>();
+        boolean active = true;
+        final StringBuilder sb = new StringBuilder();
+        for (String line : source.split("\n")) {
+            final Matcher directive = DIRECTIVE.matcher(line);
+            final String keyword = directive.find() ? directive.group(1) : "";
+            switch (keyword) {
+                case "ifdef":
+                case "ifndef": {
+                    if (isDriverMacro(directive.group(2))) {
+                        blocks.push(new Block(false, active, active));
+                        break;
+                    }
+                    final boolean condition =
+                            defined.contains(directive.group(2)) == keyword.equals("ifdef");
+                    blocks.push(new Block(true, active, active && condition));
+                    active = active && condition;
+                    continue;
+                }
+                case "if":
+                    blocks.push(new Block(false, active, active));
+                    break;
+                case "elif":
+                case "else":
+                case "endif": {
+                    final Block block = blocks.peek();
+                    if (block == null) throw new IOException("#" + keyword + " without #if");
+                    if (keyword.equals("endif")) {
+                        blocks.pop();
+                        active = block.parentActive;
+                    }
+                    if (block.evaluated) {
+                        if (keyword.equals("elif")) throw new IOException("#elif after #ifdef");
+                        if (keyword.equals("else")) {
+                            block.active = block.parentActive && !block.active;
+                            active = block.active;
+                        }
+                        continue;
+                    }
+                    // the driver's conditional: keep the directive if the enclosing code is kept
+                    if (!block.parentActive) continue;
+                    sb.append(line).append('\n');
+                    continue;
+                }
+                case "define":
+                    if (active) defined.add(directive.group(2));
+                    break;
+                case "undef":
+                    if (active) defined.remove(directive.group(2));
+                    break;
+                default:
+                    break;
+            }
+            if (active) sb.append(line).append('\n');
+        }
+        if (!blocks.isEmpty()) throw new IOException("unterminated #ifdef");
+        return sb.toString();
+    }
+
+    /** Names only the driver knows whether it defines, see GLSL ES 3.4 Preprocessor */
+    private static boolean isDriverMacro(String name) {
+        return name.startsWith("GL_") || name.contains("__");
+    }
+
+    private String stripUnusedAttributes(String source) {
+        final String code = COMMENT.matcher(source).replaceAll(" ");
+        final String[] lines = source.split("\n");
+        final StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            final Matcher attribute = ATTRIBUTE.matcher(line);
+            if (attribute.matches() && countWord(code, attribute.group(1)) == 1) {
+                strippedAttributeCount++;
+                continue;
+            }
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static int countWord(String source, String word) {
+        final Pattern pattern = Pattern.compile("\\b" + Pattern.quote(word) + "\\b");
+        final Matcher matcher = pattern.matcher(source);
+        int count = 0;
+        while (matcher.find()) count++;
+        return count;
+    }
+
+    /** The defines are kept for the driver's own #if directives, after #version if any */
+    private static String insertDefines(String source, String[] defines) {
+        if (defines.length == 0) return source;
+        final StringBuilder sb = new StringBuilder();
+        for (String define : defines) sb.append("#define ").append(define).append('\n');
+        if (ShaderSource.hasVersionDirective(source)) {
+            final int lineEnd = source.indexOf('\n', source.indexOf("#version"));
+            return source.substring(0, lineEnd + 1) + sb + source.substring(lineEnd + 1);
+        }
+        return sb + source;
+    }
+
+    /** Number of distinct variants generated */
+    public synchronized int getVariantCount() {
+        return variants.size();
+    }
+
+    /** Number of files read */
+    public synchronized int getLoadCount() {
+        return loadCount;
+    }
+
+    /** Number of files and includes resolved from the cache instead of read again */
+    public synchronized int getIncludeCacheHits() {
+        return includeCacheHits;
+    }
+
+    public synchronized int getStrippedAttributeCount() {
+        return strippedAttributeCount;
+    }
+
+    /** Total time spent generating variants */
+    public synchronized long getNanos() {
+        return nanos;
+    }
+}
@@ -0,0 +1,56 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shader source transformations
+ */
+public final class ShaderSource {
+    private static final String VERSION_300_ES = "#version 300 es";
+    private static final String FRAGMENT_OUTPUT = "fragColor";
+
+    private static final Pattern ATTRIBUTE = Pattern.compile("\\battribute\\b");
+    private static final Pattern VARYING = Pattern.compile("\\bvarying\\b");
+    private static final Pattern TEXTURE_2D = Pattern.compile("\\btexture2D\\s*\\(");
+    private static final Pattern FRAG_COLOR = Pattern.compile("\\bgl_FragColor\\b");
+    private static final Pattern PRECISION = Pattern.compile("^\\s*precision\\s+\\w+\\s+float\\s*;.*$", Pattern.MULTILINE);
+
+    private ShaderSource() {}
+
+    public static boolean hasVersionDirective(String source) {
+        return source.trim().startsWith("#version");
+    }
+
+    /**
+     * Converts a GLSL ES 1.00 shader to GLSL ES 3.00 so that it can be linked with GLSL ES 3.00
+     * shaders. Sources that already have a #version directive are returned as is.
+     */
+    public static String toGlsl300es(String source, boolean fragmentShader) {
+        if (hasVersionDirective(source)) return source;
+
+        String result = source;
+        if (fragmentShader) {
+            result = VARYING.matcher(result).replaceAll("in");
+            result = FRAG_COLOR.matcher(result).replaceAll(FRAGMENT_OUTPUT);
+        } else {
+            result = ATTRIBUTE.matcher(result).replaceAll("in");
+            result = VARYING.matcher(result).replaceAll("out");
+        }
+        result = TEXTURE_2D.matcher(result).replaceAll("texture(");
+
+        if (fragmentShader) {
+            // the output must be declared after the default precision
+            final String output = "out vec4 " + FRAGMENT_OUTPUT + ";";
+            final Matcher precision = PRECISION.matcher(result);
+            if (precision.find()) {
+                result = result.substring(0, precision.end()) + "\n" + output
+                        + result.substring(precision.end());
+            } else {
+                result = "precision mediump float;\n" + output + "\n" + result;
+            }
+        }
+
+        return VERSION_300_ES + "\n" + result;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * --- Modified by oseiskar, 2019, see Git commit history
+ */
+package xyz.osei.creepyarfaces;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Shader helper functions. One instance per GL context user, which compiles the shaders of the
+ * assets through the given {@link Gl}.
+ */
+public class ShaderUtil {
+  private final Gl gl;
+  private final Assets assets;
+  private final StartupTimeline.Tracer tracer;
+  // Shader variants of the asset files, created on first use
+  private ShaderPreprocessor preprocessor;
+  // Compiled shaders of the current GL context by type and source, see clearCompiledShaders
+  private final Map<String, Integer> compiledShaders = new HashMap<>();
+  private int compileCount, compileReuseCount;
+  private long compileNanos;
+
+  public ShaderUtil(Gl gl, Assets assets, StartupTimeline.Tracer tracer) {
+    this.gl = gl;
+    this.assets = assets;
+    this.tracer = tracer;
+  }
+
+  public Gl getGl() {
+    return gl;
+  }
+
+  public Assets getAssets() {
+    return assets;
+  }
+
+  public StartupTimeline.Tracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * Converts a raw text file, saved as an asset, into an OpenGL ES shader.
+   *
+   * @param type The type of shader we will be creating.
+   * @param filename The filename of the asset file about to be turned into a shader.
+   * @return The shader object handler.
+   */
+  public int loadGLShader(String tag, int type, String filename) throws IOException {
+    return loadGLShader(tag, type, filename, false);
+  }
+
+  /**
+   * Like {@link #loadGLShader(String, int, String)}, but optionally converts GLSL ES 1.00
+   * sources to GLSL ES 3.00 so that they can be linked with the OpenGL ES 3.0 vertex shaders,
+   * and compiles the variant with the given defines, see {@link ShaderPreprocessor}. A variant
+   * that was already compiled in this GL context is reused.
+   *
+   * @param glsl300es Convert to GLSL ES 3.00 unless the file already has a version directive.
+   * @param defines Names defined in the variant, e.g., USE_NORMALS.
+   */
+  public int loadGLShader(
+      String tag, int type, String filename, boolean glsl300es, String... defines)
+      throws IOException {
+    String code = getOrCreatePreprocessor().process(filename, type == Gl.GL_VERTEX_SHADER, defines);
+    if (glsl300es) {
+      code = ShaderSource.toGlsl300es(code, type == Gl.GL_FRAGMENT_SHADER);
+    }
+    final String key = type + "\n" + code;
+    final Integer compiled = compiledShaders.get(key);
+    if (compiled != null) {
+      compileReuseCount++;
+      return compiled;
+    }
+
+    final StartupTimeline.Phase phase = tracer.begin("compile " + filename);
+    final long start = System.nanoTime();
+    int shader = gl.glCreateShader(type);
+    gl.glShaderSource(shader, code);
+    gl.glCompileShader(shader);
+
+    // Get the compilation status.
+    final int[] compileStatus = new int[1];
+    gl.glGetShaderiv(shader, Gl.GL_COMPILE_STATUS, compileStatus, 0);
+    tracer.end(phase);
+
+    // If the compilation failed, delete the shader.
+    if (compileStatus[0] == 0) {
+      Logger.getLogger(tag).severe("Error compiling shader: " + gl.glGetShaderInfoLog(shader));
+      gl.glDeleteShader(shader);
+      shader = 0;
+    }
+
+    if (shader == 0) {
+      throw new RuntimeException("Error creating shader.");
+    }
+
+    compileNanos += System.nanoTime() - start;
+    compileCount++;
+    compiledShaders.put(key, shader);
+    return shader;
+  }
+
+  private synchronized ShaderPreprocessor getOrCreatePreprocessor() {
+    if (preprocessor == null) {
+      preprocessor = new ShaderPreprocessor(new ShaderPreprocessor.SourceLoader() {
+        @Override
+        public String load(String name) throws IOException {
+          return readShaderFile(name);
+        }
+      });
+    }
+    return preprocessor;
+  }
+
+  /**
+   * Forgets the compiled shaders. Call when a new GL context is created, the shaders of the
+   * previous one are gone.
+   */
+  public void clearCompiledShaders() {
+    compiledShaders.clear();
+  }
+
+  /** Shaders compiled, over all GL contexts */
+  public int getCompileCount() {
+    return compileCount;
+  }
+
+  /** Shader loads that reused a compiled shader */
+  public int getCompileReuseCount() {
+    return compileReuseCount;
+  }
+
+  /** Total time spent compiling shaders */
+  public long getCompileNanos() {
+    return compileNanos;
+  }
+
+  /** The preprocessor statistics, null if no shader was loaded */
+  public synchronized ShaderPreprocessor getPreprocessor() {
+    return preprocessor;
+  }
+
+  /**
+   * Returns the name of the OpenGL ES 3.0 version of a shader file, e.g.,
+   * shaders/uv.vert -> shaders/es3/uv.vert
+   */
+  public static String es3ShaderName(String filename) {
+    final int slash = filename.lastIndexOf('/');
+    return filename.substring(0, slash + 1) + "es3/" + filename.substring(slash + 1);
+  }
+
+  /**
+   * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
+   *
+   * @param label Label to report in case of error.
+   * @throws RuntimeException If an OpenGL error is detected.
+   */
+  public static void checkGLError(Gl gl, String tag, String label) {
+    int lastError = Gl.GL_NO_ERROR;
+    // Drain the queue of all errors.
+    int error;
+    while ((error = gl.glGetError()) != Gl.GL_NO_ERROR) {
+      Logger.getLogger(tag).severe(label + ": glError " + error);
+      lastError = error;
+    }
+    if (lastError != Gl.GL_NO_ERROR) {
+      throw new RuntimeException(label + ": glError " + lastError);
+    }
+  }
+
+  /**
+   * Converts a raw shader file into a string. Includes are resolved by {@link ShaderPreprocessor}.
+   *
+   * @param filename The filename of the shader file about to be turned into a shader.
+   * @return The context of the text file, or null in case of error.
+   */
+  private String readShaderFile(String filename) throws IOException {
+    try (InputStream inputStream = assets.open(filename);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+      StringBuilder sb = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        sb.append(line).append("\n");
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package xyz.osei.creepyarfaces;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Named phases and instant marks of the app startup, on any thread, relative to a common origin,
+ * e.g., the process start. Phases on the same thread nest. Written as tab-separated lines, one
+ * per phase or mark in the order they began:
+ * <pre>
+ *   kind   name   thread   depth   start_ms   duration_ms
+ * </pre>
+ * where kind is "phase" or "mark" and the duration of a mark or an unfinished phase is empty.
+ */
+public final class StartupTimeline {
+    /** A phase in progress, see {@link #begin(String)} */
+    public static final class Phase {
+        final String name;
+        final String thread;
+        final int depth;
+        final long startNanos;
+        final boolean mark;
+        long endNanos = -1;
+
+        Phase(String name, String thread, int depth, long startNanos, boolean mark) {
+            this.name = name;
+            this.thread = thread;
+            this.depth = depth;
+            this.startNanos = startNanos;
+            this.mark = mark;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Duration of a finished phase, -1 otherwise */
+        public long getDurationNanos() {
+            return endNanos < 0 ? -1 : endNanos - startNanos;
+        }
+    }
+
+    /** Begins and ends phases, e.g., in a timeline and in the platform's tracing */
+    public interface Tracer {
+        Tracer NONE = new Tracer() {
+            @Override
+            public Phase begin(String name) {
+                return null;
+            }
+
+            @Override
+            public void end(Phase phase) {}
+        };
+
+        Phase begin(String name);
+
+        void end(Phase phase);
+    }
+
+    private final long originNanos;
+    private final Clock clock;
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, Integer> depths = new HashMap<>();
+
+    /**
+     * @param originNanos time zero of the timeline on the clock, e.g., the process start
+     */
+    public StartupTimeline(long originNanos, Clock clock) {
+        this.originNanos = originNanos;
+        this.clock = clock;
+    }
+
+    /** Starts a phase on the current thread. End it with {@link #end(Phase)} on the same thread. */
+    public synchronized Phase begin(String name) {
+        final String thread = Thread.currentThread().getName();
+        final Integer depth = depths.get(thread);
+        final Phase phase = new Phase(name, thread, depth == null ? 0 : depth, clock.nanoTime(), false);
+        depths.put(thread, phase.depth + 1);
+        phases.add(phase);
+        return phase;
+    }
+
+    public synchronized void end(Phase phase) {
+        phase.endNanos = clock.nanoTime();
+        depths.put(phase.thread, phase.depth);
+    }
+
+    /** Records an instant, e.g., the first rendered frame. Only the first mark of a name counts. */
+    public synchronized void mark(String name) {
+        if (hasMark(name)) return;
+        final String thread = Thread.currentThread().getName();
+        final Integer depth = depths.get(thread);
+        phases.add(new Phase(name, thread, depth == null ? 0 : depth, clock.nanoTime(), true));
+    }
+
+    public synchronized boolean hasMark(String name) {
+        for (Phase phase : phases) {
+            if (phase.mark && phase.name.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /** Time of the given mark from the origin, -1 if not marked */
+    public synchronized long getMarkNanos(String name) {
+        for (Phase phase : phases) {
+            if (phase.mark && phase.name.equals(name)) return phase.startNanos - originNanos;
+        }
+        return -1;
+    }
+
+    public synchronized void write(Writer out) throws IOException {
+        out.write("kind\tname\tthread\tdepth\tstart_ms\tduration_ms\n");
+        for (Phase phase : phases) {
+            final long duration = phase.getDurationNanos();
+            out.write(String.format(Locale.ROOT, "%s\t%s\t%s\t%d\t%.3f\t%s\n",
+                    phase.mark ? "mark" : "phase", phase.name, phase.thread, phase.depth,
+                    (phase.startNanos - originNanos) * 1e-6,
+                    phase.mark || duration < 0 ? "" : String.format(Locale.ROOT, "%.3f", duration * 1e-6)));
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,79 @@
+package xyz.osei.creepyarfaces;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free single-producer single-consumer handoff of the latest value. The producer fills
+ * the write slot and publishes it, the consumer picks up the most recently published slot.
+ * Neither side ever waits for the other: if the consumer is slow, older unconsumed values are
+ * overwritten (and counted as dropped).
+ */
+public final class TripleBuffer<T> {
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final Object[] slots;
+    // index of the middle slot, plus the FRESH flag if it has not been consumed yet
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // owned by the producer / consumer thread respectively
+    private int writeIndex = 0;
+    private int readIndex = 2;
+
+    private final AtomicInteger droppedCount = new AtomicInteger();
+
+    public TripleBuffer(T first, T second, T third) {
+        slots = new Object[] { first, second, third };
+    }
+
+    /** Producer: the slot to fill before calling {@link #publish()} */
+    @SuppressWarnings("unchecked")
+    public T getWriteSlot() {
+        return (T) slots[writeIndex];
+    }
+
+    /** Producer: makes the write slot the latest value and takes a new write slot */
+    public void publish() {
+        final int previous = middle.getAndSet(writeIndex | FRESH);
+        if ((previous & FRESH) != 0) droppedCount.incrementAndGet();
+        writeIndex = previous & INDEX_MASK;
+    }
+
+    /**
+     * Producer: the middle slot if the consumer has taken the latest published value, null
+     * otherwise. Neither side touches that slot until the next {@link #publish()}, so the
+     * producer may use it in the meantime, e.g., to release its resources.
+     */
+    @SuppressWarnings("unchecked")
+    public T getIdleSlot() {
+        final int current = middle.get();
+        return (current & FRESH) != 0 ? null : (T) slots[current & INDEX_MASK];
+    }
+
+    /** Consumer: true if a value has been published since the last {@link #consume()} */
+    public boolean hasFresh() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    /**
+     * Consumer: takes the latest published value into the read slot
+     *
+     * @return false if nothing new was published, in which case the read slot is unchanged
+     */
+    public boolean consume() {
+        if (!hasFresh()) return false;
+        final int previous = middle.getAndSet(readIndex);
+        readIndex = previous & INDEX_MASK;
+        return true;
+    }
+
+    /** Consumer: the latest consumed value */
+    @SuppressWarnings("unchecked")
+    public T getReadSlot() {
+        return (T) slots[readIndex];
+    }
+
+    /** Number of published values that were overwritten before they were consumed */
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+}
@@ -0,0 +1,30 @@
+package xyz.osei.creepyarfaces;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Planes of a YUV_420_888 image, e.g., from android.media.Image. The luma plane has a pixel
+ * stride of one, the chroma planes are subsampled by two in both directions and may be
+ * interleaved (pixel stride two).
+ */
+public final class YuvPlanes {
+    public ByteBuffer y, u, v;
+    public int yRowStride;
+    public int uvRowStride;
+    public int uvPixelStride;
+    public int width, height;
+
+    public void set(
+            ByteBuffer y, ByteBuffer u, ByteBuffer v,
+            int yRowStride, int uvRowStride, int uvPixelStride,
+            int width, int height) {
+        this.y = y;
+        this.u = u;
+        this.v = v;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.width = width;
+        this.height = height;
+    }
+}
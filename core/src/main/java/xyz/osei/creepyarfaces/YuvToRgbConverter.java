@@ -0,0 +1,79 @@
+package xyz.osei.creepyarfaces;
+
+/**
+ * Converts the camera image pixels needed for the face atlas from YUV to RGBA. Only texels
+ * covered by the current {@link FaceAtlasGather} result are written, others keep their previous
+ * value. Rows of the atlas are converted in parallel. Allocation-free after construction.
+ */
+public final class YuvToRgbConverter implements RowParallel.RowTask {
+    private final RowParallel rowParallel;
+
+    // inputs and output of the conversion in progress
+    private YuvPlanes planes;
+    private FaceAtlasGather gather;
+    private byte[] atlasRgba;
+
+    public YuvToRgbConverter(RowParallel rowParallel) {
+        this.rowParallel = rowParallel;
+    }
+
+    /**
+     * @param atlasRgba RGBA atlas of the size of the gather maps, updated in place
+     */
+    public void convert(YuvPlanes planes, FaceAtlasGather gather, byte[] atlasRgba) {
+        this.planes = planes;
+        this.gather = gather;
+        this.atlasRgba = atlasRgba;
+        rowParallel.run(gather.getAtlasHeight(), this);
+        this.planes = null;
+        this.gather = null;
+        this.atlasRgba = null;
+    }
+
+    @Override
+    public void run(int rowStart, int rowEnd) {
+        convertRows(planes, gather.getSourceX(), gather.getSourceY(),
+                gather.getAtlasWidth(), rowStart, rowEnd, atlasRgba);
+    }
+
+    /**
+     * Converts atlas rows [rowStart, rowEnd) using nearest-neighbor sampling and full range
+     * BT.601 coefficients, as used by the Android camera YUV_420_888 output.
+     */
+    public static void convertRows(
+            YuvPlanes planes,
+            float[] sourceX, float[] sourceY,
+            int atlasWidth, int rowStart, int rowEnd,
+            byte[] atlasRgba) {
+        final int width = planes.width, height = planes.height;
+        for (int row = rowStart; row < rowEnd; row++) {
+            for (int col = 0; col < atlasWidth; col++) {
+                final int idx = row * atlasWidth + col;
+                final float fx = sourceX[idx];
+                if (fx < 0) continue;
+                final int x = (int) fx, y = (int) sourceY[idx];
+                if (x >= width || y < 0 || y >= height) continue;
+
+                final int lum = planes.y.get(y * planes.yRowStride + x) & 0xff;
+                final int uvIdx = (y >> 1) * planes.uvRowStride + (x >> 1) * planes.uvPixelStride;
+                final int u = (planes.u.get(uvIdx) & 0xff) - 128;
+                final int v = (planes.v.get(uvIdx) & 0xff) - 128;
+
+                // fixed point, coefficients scaled by 1024
+                final int r = lum + ((1436 * v) >> 10);
+                final int g = lum - ((352 * u + 731 * v) >> 10);
+                final int b = lum + ((1815 * u) >> 10);
+
+                final int out = idx * 4;
+                atlasRgba[out] = (byte) clamp(r);
+                atlasRgba[out + 1] = (byte) clamp(g);
+                atlasRgba[out + 2] = (byte) clamp(b);
+                atlasRgba[out + 3] = (byte) 255;
+            }
+        }
+    }
+
+    private static int clamp(int c) {
+        return c < 0 ? 0 : (c > 255 ? 255 : c);
+    }
+}
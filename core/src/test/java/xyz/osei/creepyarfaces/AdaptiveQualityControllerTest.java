@@ -0,0 +1,111 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveQualityControllerTest {
+    private static final double FPS = 30;
+    private static final double CAMERA_FRAME_MILLIS = 1000 / FPS;
+    private static final int WINDOW = 30;
+
+    private static final List<QualityLevel> LEVELS = Arrays.asList(
+            new QualityLevel(1024, 1f, 1),
+            new QualityLevel(512, 0.5f, 1),
+            new QualityLevel(256, 0.5f, 2),
+            new QualityLevel(128, 0.25f, 4));
+
+    /** Runs the controller on frames that take the given milliseconds (plus noise) per level */
+    private static final class Simulation {
+        final FakeClock clock = new FakeClock();
+        final AdaptiveQualityController controller =
+                new AdaptiveQualityController(LEVELS, FPS, WINDOW, clock);
+        final Random random = new Random(1234);
+        final double[] levelMillis;
+        int changes;
+
+        Simulation(double... levelMillis) {
+            this.levelMillis = levelMillis;
+        }
+
+        void run(double seconds) {
+            final int frames = (int) (seconds * FPS);
+            for (int i = 0; i < frames; i++) {
+                final double millis = levelMillis[controller.getLevelIndex()] * (1 + 0.1 * random.nextGaussian());
+                controller.onFrameStart();
+                clock.advanceMillis(millis);
+                if (controller.onFrameEnd()) changes++;
+                // wait for the next camera frame
+                clock.advanceMillis(Math.max(CAMERA_FRAME_MILLIS - millis, 0));
+            }
+        }
+    }
+
+    @Test
+    public void settlesOnTheHighestLevelWithinTheBudget() {
+        final Simulation sim = new Simulation(70, 45, 25, 10);
+        sim.run(20);
+        assertEquals(2, sim.controller.getLevelIndex());
+
+        sim.changes = 0;
+        sim.run(600);
+        assertEquals(2, sim.controller.getLevelIndex());
+        assertEquals(0, sim.changes);
+    }
+
+    @Test
+    public void keepsTheHighestLevelIfItFitsTheBudget() {
+        final Simulation sim = new Simulation(15, 10, 5, 3);
+        sim.run(600);
+        assertEquals(0, sim.controller.getLevelIndex());
+        assertEquals(0, sim.changes);
+    }
+
+    @Test
+    public void raisesTheQualityWhenTheLoadDrops() {
+        final Simulation sim = new Simulation(70, 45, 25, 10);
+        sim.run(20);
+        System.arraycopy(new double[] { 15, 10, 5, 3 }, 0, sim.levelMillis, 0, 4);
+        sim.changes = 0;
+        sim.run(20);
+        assertEquals(0, sim.controller.getLevelIndex());
+        assertEquals(2, sim.changes);
+    }
+
+    @Test
+    public void ignoresFramesThatAreNotEnded() {
+        final FakeClock clock = new FakeClock();
+        final AdaptiveQualityController controller = new AdaptiveQualityController(LEVELS, FPS, WINDOW, clock);
+        // until just after the first cooldown
+        for (int i = 0; i < 60; i++) {
+            // a frame with a new camera image, over the budget
+            controller.onFrameStart();
+            clock.advanceMillis(45);
+            controller.onFrameEnd();
+            // a frame that repeats the camera image and skips most of the work
+            controller.onFrameStart();
+            clock.advanceMillis(2);
+        }
+        assertEquals(1, controller.getLevelIndex());
+        assertEquals(45, controller.getAverageFrameMillisAtLastChange(), 1e-6);
+    }
+
+    @Test
+    public void backsOffFromALevelJustOverTheBudget() {
+        // level 1 is well below the upgrade headroom, but level 0 is over the budget
+        final Simulation sim = new Simulation(38, 15, 10, 5);
+        sim.run(600);
+        // with a fixed two second cooldown, this would be ~300 changes
+        assertTrue("changes: " + sim.changes, sim.changes <= 2 * 14);
+
+        // retries are at most a minute apart after backing off
+        sim.changes = 0;
+        sim.run(300);
+        assertTrue("changes: " + sim.changes, sim.changes <= 2 * 6);
+    }
+}
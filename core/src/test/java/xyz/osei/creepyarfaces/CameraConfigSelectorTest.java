@@ -0,0 +1,90 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CameraConfigSelectorTest {
+    private static final CameraConfigSelector.Candidate LARGE_60 =
+            new CameraConfigSelector.Candidate(1920, 1080, 640, 480, 60, 60);
+    private static final CameraConfigSelector.Candidate LARGE_30 =
+            new CameraConfigSelector.Candidate(1920, 1080, 640, 480, 30, 30);
+    private static final CameraConfigSelector.Candidate MEDIUM_SMALL_IMAGE =
+            new CameraConfigSelector.Candidate(1280, 720, 640, 480, 30, 30);
+    private static final CameraConfigSelector.Candidate MEDIUM_LARGE_IMAGE =
+            new CameraConfigSelector.Candidate(1280, 720, 1280, 720, 30, 30);
+    private static final CameraConfigSelector.Candidate SMALL =
+            new CameraConfigSelector.Candidate(640, 480, 640, 480, 30, 30);
+    private static final CameraConfigSelector.Candidate MEDIUM_15 =
+            new CameraConfigSelector.Candidate(1280, 720, 640, 480, 15, 15);
+
+    private static final List<CameraConfigSelector.Candidate> CANDIDATES = Arrays.asList(
+            LARGE_60, MEDIUM_LARGE_IMAGE, LARGE_30, MEDIUM_15, MEDIUM_SMALL_IMAGE, SMALL);
+
+    @Test
+    public void selectsTheSmallestTextureThatMeetsTheFloor() {
+        final CameraConfigSelector selector = new CameraConfigSelector(720, 480, 30);
+        // SMALL is below the texture floor, MEDIUM_15 below the frame rate floor
+        assertEquals(CANDIDATES.indexOf(MEDIUM_SMALL_IMAGE), selector.select(CANDIDATES));
+    }
+
+    @Test
+    public void prefersTheSmallerImageThenTheLowerFrameRate() {
+        final CameraConfigSelector selector = new CameraConfigSelector(1080, 480, 30);
+        assertEquals(CANDIDATES.indexOf(LARGE_30), selector.select(CANDIDATES));
+        assertEquals(1, new CameraConfigSelector(720, 480, 30)
+                .select(Arrays.asList(MEDIUM_LARGE_IMAGE, MEDIUM_SMALL_IMAGE)));
+    }
+
+    @Test
+    public void selectsTheLargestTextureIfNoneMeetsTheFloor() {
+        final CameraConfigSelector selector = new CameraConfigSelector(2160, 480, 30);
+        assertEquals(CANDIDATES.indexOf(LARGE_60), selector.select(CANDIDATES));
+        assertFalse(selector.meetsFloor(LARGE_60));
+        assertEquals(-1, selector.select(Collections.<CameraConfigSelector.Candidate>emptyList()));
+    }
+
+    @Test
+    public void findsTheSavedConfigByItsKey() {
+        final String saved = MEDIUM_SMALL_IMAGE.getKey();
+        assertEquals(CANDIDATES.indexOf(MEDIUM_SMALL_IMAGE), CameraConfigSelector.find(CANDIDATES, saved));
+        // the same sizes at a different frame rate are a different config
+        assertNotEquals(MEDIUM_SMALL_IMAGE.getKey(), MEDIUM_15.getKey());
+    }
+
+    @Test
+    public void fallsBackToSelectingIfTheSavedConfigIsMissing() {
+        final CameraConfigSelector selector = new CameraConfigSelector(720, 480, 30);
+        final List<CameraConfigSelector.Candidate> updated = Arrays.asList(LARGE_60, SMALL, MEDIUM_LARGE_IMAGE);
+        final String saved = MEDIUM_SMALL_IMAGE.getKey();
+        assertEquals(-1, CameraConfigSelector.find(updated, saved));
+        assertEquals(2, selector.select(updated));
+    }
+
+    @Test
+    public void parsesTheKey() {
+        final CameraConfigSelector.Candidate parsed = CameraConfigSelector.Candidate.fromKey(MEDIUM_15.getKey());
+        assertEquals(MEDIUM_15.getKey(), parsed.getKey());
+        assertEquals(15, parsed.maxFps);
+        assertEquals(1280, parsed.textureWidth);
+        assertNull(CameraConfigSelector.Candidate.fromKey("1280x720"));
+        assertNull(CameraConfigSelector.Candidate.fromKey("99999999999x1/1x1/1-1"));
+    }
+
+    @Test
+    public void theFloorKeyChangesWithTheFloor() {
+        assertEquals(new CameraConfigSelector(720, 480, 30).getFloorKey(),
+                new CameraConfigSelector(720, 480, 30).getFloorKey());
+        assertNotEquals(new CameraConfigSelector(720, 480, 30).getFloorKey(),
+                new CameraConfigSelector(720, 480, 60).getFloorKey());
+        assertTrue(new CameraConfigSelector(720, 480, 30).meetsFloor(MEDIUM_SMALL_IMAGE));
+    }
+}
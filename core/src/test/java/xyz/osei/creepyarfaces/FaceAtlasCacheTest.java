@@ -0,0 +1,109 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FaceAtlasCacheTest {
+    private static final int SIZE = 64;
+
+    /** Atlases are names, every atlas counts 1 byte */
+    private static final class Allocator implements FaceAtlasCache.Allocator<String> {
+        final List<String> freed = new ArrayList<>();
+        int allocated;
+
+        @Override
+        public String allocate(int atlasSize) {
+            return "atlas" + allocated++;
+        }
+
+        @Override
+        public void reset(String atlas) {}
+
+        @Override
+        public void free(String atlas) {
+            freed.add(atlas);
+        }
+
+        @Override
+        public long getBytes(int atlasSize) {
+            return 1;
+        }
+    }
+
+    private final FakeClock clock = new FakeClock();
+    private final Allocator allocator = new Allocator();
+    private final FaceAtlasCache<String, String> cache = new FaceAtlasCache<>(allocator, 2, 1000, clock);
+
+    private void frame(String... faces) {
+        clock.advanceMillis(33);
+        cache.beginFrame();
+        for (String face : faces) cache.get(face, SIZE);
+        cache.trim();
+    }
+
+    @Test
+    public void keepsTheAtlasOfAFace() {
+        frame("a");
+        final String atlas = cache.peek("a");
+        frame("a");
+        assertSame(atlas, cache.peek("a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedFaceNotInTheFrame() {
+        frame("a", "b");
+        frame("b", "a");
+        // over the budget of two: b was used before a
+        frame("a", "c");
+        assertNull(cache.peek("b"));
+        assertNotNull(cache.peek("a"));
+        assertNotNull(cache.peek("c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void doesNotEvictFacesOfTheFrameBeforeTheyAreLookedUp() {
+        frame("a", "b");
+        clock.advanceMillis(33);
+        cache.beginFrame();
+        // a new face in front of the tracked ones, which exceeds the budget until trim()
+        cache.get("c", SIZE);
+        cache.get("a", SIZE);
+        cache.get("b", SIZE);
+        cache.trim();
+        assertNotNull(cache.peek("a"));
+        assertNotNull(cache.peek("b"));
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void peekDoesNotChangeTheEvictionOrder() {
+        frame("a", "b");
+        cache.peek("a");
+        frame("c");
+        // a is still the least recently used one
+        assertNull(cache.peek("a"));
+        assertNotNull(cache.peek("b"));
+    }
+
+    @Test
+    public void reusesExpiredAtlasesForNewFaces() {
+        frame("a");
+        final String atlas = cache.peek("a");
+        clock.advanceMillis(2000);
+        frame("b");
+        assertNull(cache.peek("a"));
+        assertSame(atlas, cache.peek("b"));
+        assertEquals(1, cache.getExpiredCount());
+        assertEquals(1, cache.getPoolReuseCount());
+    }
+}
@@ -0,0 +1,53 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FaceAtlasGatherTest {
+    static final int ATLAS_SIZE = 16;
+
+    // a quad covering the whole face texture, corners in the order (0, 0), (1, 0), (0, 1), (1, 1)
+    static final float[] TEX_COORDS = { 0, 0, 1, 0, 0, 1, 1, 1 };
+    static final short[] INDICES = { 0, 1, 2, 1, 3, 2 };
+    // v points down and NDC y up: both triangles are clockwise, i.e., not culled
+    static final float[] NDC = { -1, 1, 1, 1, -1, -1, 1, -1 };
+    // the quad at (10, 5) ... (50, 35) in the camera image
+    static final float[] IMAGE_PIXELS = { 10, 5, 50, 5, 10, 35, 50, 35 };
+
+    @Test
+    public void interpolatesTheImagePositionOfEveryTexel() {
+        final FaceAtlasGather gather = new FaceAtlasGather(ATLAS_SIZE, ATLAS_SIZE);
+        final int covered = gather.rasterize(TEX_COORDS, NDC, IMAGE_PIXELS, INDICES, INDICES.length);
+        // texels on the shared edge may be counted by both triangles
+        assertTrue(covered >= ATLAS_SIZE * ATLAS_SIZE);
+        for (int y = 0; y < ATLAS_SIZE; y++) {
+            for (int x = 0; x < ATLAS_SIZE; x++) {
+                final int i = y * ATLAS_SIZE + x;
+                final float u = (x + 0.5f) / ATLAS_SIZE, v = (y + 0.5f) / ATLAS_SIZE;
+                assertEquals(10 + u * 40, gather.getSourceX()[i], 1e-3f);
+                assertEquals(5 + v * 30, gather.getSourceY()[i], 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void cullsCounterClockwiseTriangles() {
+        final float[] mirrored = NDC.clone();
+        for (int i = 0; i < mirrored.length; i += 2) mirrored[i] = -mirrored[i];
+        final FaceAtlasGather gather = new FaceAtlasGather(ATLAS_SIZE, ATLAS_SIZE);
+        assertEquals(0, gather.rasterize(TEX_COORDS, mirrored, IMAGE_PIXELS, INDICES, INDICES.length));
+        for (float x : gather.getSourceX()) assertTrue(x < 0);
+    }
+
+    @Test
+    public void clearsThePreviousResult() {
+        final FaceAtlasGather gather = new FaceAtlasGather(ATLAS_SIZE, ATLAS_SIZE);
+        gather.rasterize(TEX_COORDS, NDC, IMAGE_PIXELS, INDICES, INDICES.length);
+        // only the first triangle, the upper left half
+        gather.rasterize(TEX_COORDS, NDC, IMAGE_PIXELS, INDICES, 3);
+        assertTrue(gather.getSourceX()[0] >= 0);
+        assertTrue(gather.getSourceX()[ATLAS_SIZE * ATLAS_SIZE - 1] < 0);
+    }
+}
@@ -0,0 +1,60 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FaceMeshLayoutTest {
+    private static FloatBuffer floats(int count, float first) {
+        final FloatBuffer buffer = FloatBuffer.allocate(count);
+        for (int i = 0; i < count; i++) buffer.put(first + i);
+        // the face mesh buffers are not necessarily rewound
+        return buffer;
+    }
+
+    @Test
+    public void packsTheAttributesBackToBack() {
+        final FaceMeshLayout layout = new FaceMeshLayout();
+        layout.pack(floats(6, 0), floats(4, 100), floats(6, 200));
+
+        assertEquals(0, layout.getVerticesBaseAddress());
+        assertEquals(4 * 6, layout.getTexCoordsBaseAddress());
+        assertEquals(4 * 10, layout.getNormalsBaseAddress());
+        assertEquals(4 * 16, layout.getTotalBytes());
+
+        final FloatBuffer staging = layout.getStagingBuffer();
+        assertEquals(0, staging.position());
+        assertEquals(16, staging.limit());
+        assertEquals(5, staging.get(5), 0);
+        assertEquals(100, staging.get(6), 0);
+        assertEquals(203, staging.get(13), 0);
+    }
+
+    @Test
+    public void rewindsTheInputs() {
+        final FloatBuffer vertices = floats(3, 0), texCoords = floats(2, 0), normals = floats(3, 0);
+        new FaceMeshLayout().pack(vertices, texCoords, normals);
+        assertEquals(0, vertices.position());
+        assertEquals(0, texCoords.position());
+        assertEquals(0, normals.position());
+    }
+
+    @Test
+    public void reusesTheStagingBufferUnlessTheMeshGrows() {
+        final FaceMeshLayout layout = new FaceMeshLayout();
+        layout.pack(floats(6, 0), floats(4, 0), floats(6, 0));
+        final FloatBuffer staging = layout.getStagingBuffer();
+
+        layout.pack(floats(3, 7), floats(2, 0), floats(3, 0));
+        assertSame(staging, layout.getStagingBuffer());
+        assertEquals(8, layout.getStagingBuffer().limit());
+        assertEquals(7, layout.getStagingBuffer().get(0), 0);
+
+        layout.pack(floats(9, 0), floats(6, 0), floats(9, 0));
+        assertEquals(24, layout.getStagingBuffer().limit());
+        assertEquals(4 * 24, layout.getTotalBytes());
+    }
+}
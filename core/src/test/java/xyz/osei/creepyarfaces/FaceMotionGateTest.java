@@ -0,0 +1,58 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FaceMotionGateTest {
+    private static final float[] TRANSLATION = { 0, 0, -0.4f };
+    private static final float[] ROTATION = { 0, 0, 0, 1 };
+    private static final FloatBuffer VERTICES = FloatBuffer.wrap(new float[] { 0.01f, 0.02f, 0.03f, -0.01f, 0, 0.02f });
+
+    private final FakeClock clock = new FakeClock();
+    private final FaceMotionGate gate = new FaceMotionGate(0.005f, 0.05f, 0.002f, 500, clock);
+
+    @Test
+    public void stillFaceIsRefreshedAtTheMaximumInterval() {
+        assertTrue(gate.shouldRefresh(TRANSLATION, ROTATION, VERTICES));
+        clock.advanceMillis(100);
+        assertFalse(gate.shouldRefresh(TRANSLATION, ROTATION, VERTICES));
+        clock.advanceMillis(400);
+        assertTrue(gate.shouldRefresh(TRANSLATION, ROTATION, VERTICES));
+        assertEquals(2, gate.getRefreshCount());
+        assertEquals(1, gate.getSkipCount());
+        assertEquals(500, gate.getAverageRefreshIntervalMillis(), 1e-6);
+    }
+
+    @Test
+    public void movedFaceIsRefreshed() {
+        gate.shouldRefresh(TRANSLATION, ROTATION, VERTICES);
+        clock.advanceMillis(30);
+        assertTrue(gate.shouldRefresh(new float[] { 0.01f, 0, -0.4f }, ROTATION, VERTICES));
+    }
+
+    @Test
+    public void checkingDoesNotConsumeTheRefresh() {
+        // a face deferred over the per-frame budget keeps needing its refresh
+        assertTrue(gate.needsRefresh(TRANSLATION, ROTATION, VERTICES));
+        clock.advanceMillis(30);
+        assertTrue(gate.needsRefresh(TRANSLATION, ROTATION, VERTICES));
+        assertEquals(0, gate.getRefreshCount());
+
+        gate.refreshed(TRANSLATION, ROTATION, VERTICES);
+        clock.advanceMillis(30);
+        assertFalse(gate.needsRefresh(TRANSLATION, ROTATION, VERTICES));
+        assertEquals(1, gate.getRefreshCount());
+    }
+
+    @Test
+    public void invalidateForcesARefresh() {
+        gate.shouldRefresh(TRANSLATION, ROTATION, VERTICES);
+        gate.invalidate();
+        assertTrue(gate.needsRefresh(TRANSLATION, ROTATION, VERTICES));
+    }
+}
@@ -0,0 +1,113 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class FaceSchedulerTest {
+    /** Faces are names, with a fixed area each */
+    private static final class Faces implements FaceScheduler.FaceInfo<String> {
+        final Map<String, Float> areas = new HashMap<>();
+        final Set<String> lost = new HashSet<>();
+
+        @Override
+        public boolean isTracking(String face) {
+            return !lost.contains(face);
+        }
+
+        @Override
+        public float getProjectedArea(String face) {
+            return areas.get(face);
+        }
+    }
+
+    private final Faces faces = new Faces();
+    private final FaceScheduler<String> scheduler = new FaceScheduler<>(1);
+
+    private FaceScheduler<String> withFaces(String... names) {
+        for (int i = 0; i < names.length; i++) faces.areas.put(names[i], 10f - i);
+        return scheduler;
+    }
+
+    /** Runs a frame in which every tracked face needs mapping, returns the mapped ones */
+    private List<String> frame() {
+        scheduler.update(faces.areas.keySet(), faces);
+        final List<String> mapped = new ArrayList<>();
+        for (String face : scheduler.getMappingOrder()) {
+            if (scheduler.tryMap(face)) mapped.add(face);
+        }
+        return mapped;
+    }
+
+    @Test
+    public void ordersTrackedFacesByArea() {
+        withFaces("large", "medium", "small");
+        faces.lost.add("medium");
+        scheduler.update(faces.areas.keySet(), faces);
+        assertEquals(Arrays.asList("large", "small"), scheduler.getTrackedFaces());
+        assertEquals(1, scheduler.getSkippedCount());
+    }
+
+    @Test
+    public void mapsOverBudgetFacesRoundRobin() {
+        withFaces("a", "b", "c");
+        assertEquals(Arrays.asList("a"), frame());
+        assertEquals(Arrays.asList("b"), frame());
+        assertEquals(Arrays.asList("c"), frame());
+        assertEquals(Arrays.asList("a"), frame());
+        assertEquals(2, scheduler.getDeferredCount());
+    }
+
+    @Test
+    public void countsTheTotalsOfThePreviousFrames() {
+        withFaces("a", "b", "c");
+        scheduler.setMaxMappedFaces(2);
+        frame();
+        assertEquals(2, scheduler.getProcessedCount());
+        assertEquals(1, scheduler.getDeferredCount());
+        assertEquals(0, scheduler.getTotalProcessed());
+        assertEquals(0, scheduler.getTotalDeferred());
+        assertEquals(0, scheduler.getTotalSkipped());
+
+        faces.lost.add("b");
+        frame();
+        assertEquals(2, scheduler.getTotalProcessed());
+        assertEquals(1, scheduler.getTotalDeferred());
+        assertEquals(0, scheduler.getTotalSkipped());
+        assertEquals(1, scheduler.getSkippedCount());
+
+        frame();
+        assertEquals(4, scheduler.getTotalProcessed());
+        assertEquals(1, scheduler.getTotalDeferred());
+        assertEquals(1, scheduler.getTotalSkipped());
+
+        faces.lost.clear();
+        frame();
+        assertEquals(6, scheduler.getTotalProcessed());
+        assertEquals(1, scheduler.getTotalDeferred());
+        assertEquals(2, scheduler.getTotalSkipped());
+        assertEquals(0, scheduler.getSkippedCount());
+    }
+
+    @Test
+    public void aFaceThatComesBackStartsOver() {
+        withFaces("a", "b", "c");
+        frame();
+        frame();
+        // b comes back as a new face and goes before a, which was mapped before b
+        faces.lost.add("b");
+        assertEquals(Arrays.asList("c"), frame());
+        faces.lost.clear();
+        assertEquals(Arrays.asList("b"), frame());
+        assertEquals(Arrays.asList("a"), frame());
+        assertEquals(Arrays.asList("c"), frame());
+    }
+}
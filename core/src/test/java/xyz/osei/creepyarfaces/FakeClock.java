@@ -0,0 +1,15 @@
+package xyz.osei.creepyarfaces;
+
+/** A clock that only moves when told to */
+final class FakeClock implements Clock {
+    private long nanos;
+
+    @Override
+    public long nanoTime() {
+        return nanos;
+    }
+
+    void advanceMillis(double millis) {
+        nanos += (long) (millis * 1e6);
+    }
+}
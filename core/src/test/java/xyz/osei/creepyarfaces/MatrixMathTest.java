@@ -0,0 +1,84 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class MatrixMathTest {
+    private static final float[] IDENTITY = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1 };
+
+    private static float[] translation(float x, float y, float z) {
+        final float[] m = IDENTITY.clone();
+        m[12] = x;
+        m[13] = y;
+        m[14] = z;
+        return m;
+    }
+
+    private static float[] scale(float s) {
+        final float[] m = IDENTITY.clone();
+        m[0] = m[5] = m[10] = s;
+        return m;
+    }
+
+    /** The textbook definition, column-major like android.opengl.Matrix */
+    private static float[] reference(float[] lhs, float[] rhs) {
+        final float[] result = new float[16];
+        for (int col = 0; col < 4; col++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) sum += lhs[k * 4 + row] * rhs[col * 4 + k];
+                result[col * 4 + row] = sum;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void multipliesInColumnMajorOrder() {
+        final float[] result = new float[16];
+        // scaling after translating also scales the translation
+        MatrixMath.multiplyMM(result, 0, scale(2), 0, translation(1, 2, 3), 0);
+        final float[] expected = scale(2);
+        expected[12] = 2;
+        expected[13] = 4;
+        expected[14] = 6;
+        assertArrayEquals(expected, result, 0);
+    }
+
+    @Test
+    public void matchesTheReferenceProduct() {
+        final float[] lhs = new float[16], rhs = new float[16];
+        for (int i = 0; i < 16; i++) {
+            lhs[i] = i * 0.5f - 3;
+            rhs[i] = 7 - i * 0.25f;
+        }
+        final float[] result = new float[16];
+        MatrixMath.multiplyMM(result, 0, lhs, 0, rhs, 0);
+        assertArrayEquals(reference(lhs, rhs), result, 1e-5f);
+    }
+
+    @Test
+    public void respectsTheOffsets() {
+        final float[] lhs = new float[20], rhs = new float[24], result = new float[18];
+        System.arraycopy(scale(3), 0, lhs, 4, 16);
+        System.arraycopy(translation(1, 0, 0), 0, rhs, 8, 16);
+        MatrixMath.multiplyMM(result, 2, lhs, 4, rhs, 8);
+        final float[] product = new float[16];
+        System.arraycopy(result, 2, product, 0, 16);
+        assertArrayEquals(reference(scale(3), translation(1, 0, 0)), product, 0);
+    }
+
+    @Test
+    public void composesViewAndProjection() {
+        final float[] model = translation(0, 0, -1), view = translation(0, 0, -2), projection = scale(0.5f);
+        final float[] modelView = new float[16], modelViewProjection = new float[16];
+        MatrixMath.composeModelViewProjection(view, projection, model, modelView, modelViewProjection);
+        assertArrayEquals(translation(0, 0, -3), modelView, 0);
+        assertArrayEquals(reference(projection, translation(0, 0, -3)), modelViewProjection, 0);
+    }
+}
@@ -0,0 +1,174 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class RenderGraphTest {
+    private static final RenderGraph.TextureDesc FULL = new RenderGraph.TextureDesc(64, 32, 1);
+    private static final RenderGraph.TextureDesc HALF = new RenderGraph.TextureDesc(32, 16, 1);
+
+    private final List<String> executed = new ArrayList<>();
+
+    private RenderGraph.Pass pass(final String name) {
+        return new RenderGraph.Pass() {
+            @Override
+            public void execute(RenderGraph.Resources resources) {
+                executed.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void cullsPassesThatDoNotContributeToTheOutputs() {
+        final RenderGraph graph = new RenderGraph()
+                .importResource("screen")
+                .createTexture("camera", FULL)
+                .createTexture("debug", FULL);
+        graph.addPass("camera", pass("camera")).write("camera");
+        graph.addPass("debug", pass("debug")).read("camera").write("debug");
+        graph.addPass("composite", pass("composite")).read("camera").write("screen");
+        graph.markOutput("screen");
+
+        final RenderGraph.Schedule schedule = graph.compile();
+        assertEquals(Arrays.asList("camera", "composite"), schedule.getPassNames());
+        assertEquals(Collections.singletonList("debug"), schedule.getCulledPassNames());
+        assertEquals(-1, schedule.getPhysicalSlot("debug"));
+
+        schedule.execute(new int[schedule.getPhysicalTextures().size()]);
+        assertEquals(Arrays.asList("camera", "composite"), executed);
+    }
+
+    @Test
+    public void cullsPassesWhoseResultIsOverwritten() {
+        final RenderGraph graph = new RenderGraph().importResource("screen");
+        graph.addPass("clear", pass("clear")).write("screen");
+        graph.addPass("draw", pass("draw")).write("screen");
+        graph.markOutput("screen");
+
+        final RenderGraph.Schedule schedule = graph.compile();
+        assertEquals(Collections.singletonList("draw"), schedule.getPassNames());
+        assertEquals(Collections.singletonList("clear"), schedule.getCulledPassNames());
+    }
+
+    @Test
+    public void keepsPassesThatModifyAResource() {
+        final RenderGraph graph = new RenderGraph().importResource("screen");
+        graph.addPass("camera", pass("camera")).write("screen");
+        graph.addPass("overlay", pass("overlay")).read("screen").write("screen");
+        graph.markOutput("screen");
+
+        assertEquals(Arrays.asList("camera", "overlay"), graph.compile().getPassNames());
+    }
+
+    @Test
+    public void keepsThePassUnderAMaskedRestore() {
+        // the frame of a filter without the face texture: only the screen is needed
+        final RenderGraph graph = new RenderGraph()
+                .importResource("screen")
+                .importResource("faceAtlasJobs");
+        graph.addPass("faceMapping", pass("faceMapping")).write("faceAtlasJobs").write("screen");
+        // only redraws where the face mapping marked the stencil
+        graph.addPass("background", pass("background")).read("screen").write("screen");
+        graph.addPass("filter", pass("filter")).read("screen").write("screen");
+        graph.markOutput("screen");
+
+        final RenderGraph.Schedule schedule = graph.compile();
+        assertEquals(Arrays.asList("faceMapping", "background", "filter"), schedule.getPassNames());
+        assertEquals(Collections.<String>emptyList(), schedule.getCulledPassNames());
+    }
+
+    @Test
+    public void cullsThePassUnderAFullRestore() {
+        final RenderGraph graph = new RenderGraph()
+                .importResource("screen")
+                .importResource("faceAtlasJobs");
+        graph.addPass("faceMapping", pass("faceMapping")).write("faceAtlasJobs").write("screen");
+        graph.addPass("background", pass("background")).write("screen");
+        graph.addPass("filter", pass("filter")).read("screen").write("screen");
+        graph.markOutput("screen");
+
+        final RenderGraph.Schedule schedule = graph.compile();
+        assertEquals(Arrays.asList("background", "filter"), schedule.getPassNames());
+        assertEquals(Collections.singletonList("faceMapping"), schedule.getCulledPassNames());
+    }
+
+    @Test
+    public void aliasesTexturesWithDisjointLifetimes() {
+        final RenderGraph graph = new RenderGraph()
+                .importResource("screen")
+                .createTexture("a", FULL)
+                .createTexture("b", FULL)
+                .createTexture("c", FULL);
+        graph.addPass("1", pass("1")).write("a");
+        graph.addPass("2", pass("2")).read("a").write("b");
+        graph.addPass("3", pass("3")).read("b").write("c");
+        graph.addPass("4", pass("4")).read("c").write("screen");
+        graph.markOutput("screen");
+
+        final RenderGraph.Schedule schedule = graph.compile();
+        // a and b overlap in pass 2, b and c in pass 3, but a is free again by pass 3
+        assertEquals(2, schedule.getPhysicalTextures().size());
+        assertEquals(schedule.getPhysicalSlot("a"), schedule.getPhysicalSlot("c"));
+        assertNotEquals(schedule.getPhysicalSlot("a"), schedule.getPhysicalSlot("b"));
+        assertEquals(2 * FULL.getBytes(), schedule.getTransientBytes());
+        assertEquals(3 * FULL.getBytes(), schedule.getUnaliasedTransientBytes());
+    }
+
+    @Test
+    public void doesNotAliasTexturesWithDifferentDescriptions() {
+        final RenderGraph graph = new RenderGraph()
+                .importResource("screen")
+                .createTexture("full", FULL)
+                .createTexture("half", HALF);
+        graph.addPass("1", pass("1")).write("full");
+        graph.addPass("2", pass("2")).read("full").write("screen");
+        graph.addPass("3", pass("3")).read("screen").write("half");
+        graph.addPass("4", pass("4")).read("half").write("screen");
+        graph.markOutput("screen");
+
+        final RenderGraph.Schedule schedule = graph.compile();
+        assertEquals(Arrays.asList(FULL, HALF), schedule.getPhysicalTextures());
+    }
+
+    @Test
+    public void resolvesResourcesToTheirPhysicalTextures() {
+        final RenderGraph graph = new RenderGraph()
+                .importResource("screen")
+                .createTexture("a", FULL)
+                .createTexture("b", FULL);
+        final List<Integer> textures = new ArrayList<>();
+        graph.addPass("1", pass("1")).write("a");
+        graph.addPass("2", new RenderGraph.Pass() {
+            @Override
+            public void execute(RenderGraph.Resources resources) {
+                textures.add(resources.getTexture("a"));
+                textures.add(resources.getTexture("b"));
+            }
+        }).read("a").write("b");
+        graph.addPass("3", pass("3")).read("b").write("screen");
+        graph.markOutput("screen");
+
+        final RenderGraph.Schedule schedule = graph.compile();
+        final int[] ids = { 10, 20 };
+        schedule.execute(ids);
+        assertEquals(Arrays.asList(ids[schedule.getPhysicalSlot("a")], ids[schedule.getPhysicalSlot("b")]),
+                textures);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsReadsBeforeWrites() {
+        final RenderGraph graph = new RenderGraph()
+                .importResource("screen")
+                .createTexture("a", FULL);
+        graph.addPass("1", pass("1")).read("a").write("screen");
+        graph.markOutput("screen");
+        graph.compile();
+    }
+}
@@ -0,0 +1,71 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+
+public class RowParallelTest {
+    private static final int ROWS = 37;
+
+    private static RowParallel.RowTask counting(final AtomicIntegerArray counts) {
+        return new RowParallel.RowTask() {
+            @Override
+            public void run(int rowStart, int rowEnd) {
+                for (int row = rowStart; row < rowEnd; row++) counts.incrementAndGet(row);
+            }
+        };
+    }
+
+    @Test(timeout = 10000)
+    public void runsEveryRowOnceInRepeatedRuns() {
+        final RowParallel parallel = new RowParallel(4);
+        try {
+            final AtomicIntegerArray counts = new AtomicIntegerArray(ROWS);
+            final RowParallel.RowTask task = counting(counts);
+            final int runs = 2000;
+            for (int i = 0; i < runs; i++) parallel.run(ROWS, task);
+            for (int row = 0; row < ROWS; row++) assertEquals("row " + row, runs, counts.get(row));
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void runsRightAfterConstruction() {
+        // the first run may start before the helper threads do
+        for (int i = 0; i < 200; i++) {
+            final RowParallel parallel = new RowParallel(3);
+            try {
+                final AtomicIntegerArray counts = new AtomicIntegerArray(ROWS);
+                parallel.run(ROWS, counting(counts));
+                for (int row = 0; row < ROWS; row++) assertEquals(1, counts.get(row));
+            } finally {
+                parallel.shutdown();
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void moreThreadsThanRows() {
+        final RowParallel parallel = new RowParallel(8);
+        try {
+            final AtomicIntegerArray counts = new AtomicIntegerArray(3);
+            parallel.run(3, counting(counts));
+            parallel.run(0, counting(counts));
+            for (int row = 0; row < 3; row++) assertEquals(1, counts.get(row));
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void singleThreadRunsOnTheCaller() {
+        final RowParallel parallel = new RowParallel(1);
+        assertEquals(1, parallel.getThreadCount());
+        final AtomicIntegerArray counts = new AtomicIntegerArray(ROWS);
+        parallel.run(ROWS, counting(counts));
+        for (int row = 0; row < ROWS; row++) assertEquals(1, counts.get(row));
+    }
+}
@@ -0,0 +1,69 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShaderPreprocessorTest {
+    private final Map<String, String> files = new HashMap<>();
+    private final ShaderPreprocessor preprocessor = new ShaderPreprocessor(new ShaderPreprocessor.SourceLoader() {
+        @Override
+        public String load(String name) throws IOException {
+            final String source = files.get(name);
+            if (source == null) throw new IOException("not found: " + name);
+            return source;
+        }
+    });
+
+    @Test
+    public void evaluatesVariantDefines() throws IOException {
+        files.put("a.frag", "#ifdef A\nfloat a;\n#else\nfloat notA;\n#endif\n#ifndef B\nfloat notB;\n#endif\n");
+        final String source = preprocessor.process("a.frag", false, "A");
+        assertTrue(source.contains("float a;"));
+        assertFalse(source.contains("notA"));
+        assertTrue(source.contains("float notB;"));
+        assertFalse(source.contains("#ifdef"));
+        assertTrue(source.startsWith("#define A\n"));
+    }
+
+    @Test
+    public void leavesDriverMacrosToTheDriver() throws IOException {
+        final String precision = "#ifdef GL_FRAGMENT_PRECISION_HIGH\nprecision highp float;\n#else\n"
+                + "precision mediump float;\n#endif\n";
+        files.put("upsample.frag", precision + "#ifdef A\nfloat a;\n#endif\n");
+        final String source = preprocessor.process("upsample.frag", false);
+        assertEquals(precision, source);
+    }
+
+    @Test
+    public void keepsDriverConditionalsOnlyInActiveCode() throws IOException {
+        files.put("b.frag", "#ifdef A\n#ifdef GL_ES\nfloat es;\n#endif\n#endif\nfloat b;\n");
+        assertEquals("float b;\n", preprocessor.process("b.frag", false));
+        assertEquals("#define A\n#ifdef GL_ES\nfloat es;\n#endif\nfloat b;\n", preprocessor.process("b.frag", false, "A"));
+    }
+
+    @Test
+    public void resolvesIncludesAndStripsUnusedAttributes() throws IOException {
+        files.put("common.glsl", "varying vec2 v_TexCoord;\n");
+        files.put("c.vert", "attribute vec4 a_Position;\nattribute vec3 a_Normal;\n#include \"common.glsl\"\n"
+                + "void main() {\n#ifdef USE_NORMALS\n    v_TexCoord = a_Normal.xy;\n#endif\n    gl_Position = a_Position;\n}\n");
+        final String source = preprocessor.process("c.vert", true);
+        assertTrue(source.contains("varying vec2 v_TexCoord;"));
+        assertFalse(source.contains("a_Normal"));
+        assertTrue(preprocessor.process("c.vert", true, "USE_NORMALS").contains("attribute vec3 a_Normal;"));
+        assertEquals(1, preprocessor.getStrippedAttributeCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnIncludeCycles() throws IOException {
+        files.put("x.glsl", "#include \"y.glsl\"\n");
+        files.put("y.glsl", "#include \"x.glsl\"\n");
+        preprocessor.process("x.glsl", false);
+    }
+}
@@ -0,0 +1,92 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class TripleBufferTest {
+    private static final class Slot {
+        int value;
+    }
+
+    private final TripleBuffer<Slot> buffer = new TripleBuffer<>(new Slot(), new Slot(), new Slot());
+
+    private void publish(int value) {
+        buffer.getWriteSlot().value = value;
+        buffer.publish();
+    }
+
+    @Test
+    public void handsOverThePublishedValue() {
+        assertFalse(buffer.consume());
+        publish(1);
+        assertTrue(buffer.hasFresh());
+        assertTrue(buffer.consume());
+        assertEquals(1, buffer.getReadSlot().value);
+        assertFalse(buffer.hasFresh());
+        assertFalse(buffer.consume());
+        assertEquals(1, buffer.getReadSlot().value);
+    }
+
+    @Test
+    public void keepsOnlyTheLatestValue() {
+        publish(1);
+        publish(2);
+        publish(3);
+        assertTrue(buffer.consume());
+        assertEquals(3, buffer.getReadSlot().value);
+        assertEquals(2, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void neverWritesIntoTheReadSlot() {
+        final Set<Slot> slots = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            publish(i);
+            if (i % 3 == 0) buffer.consume();
+            assertNotSame(buffer.getReadSlot(), buffer.getWriteSlot());
+            slots.add(buffer.getWriteSlot());
+        }
+        assertEquals(3, slots.size());
+    }
+
+    @Test(timeout = 10000)
+    public void consumerSeesIncreasingValuesFromAnotherThread() throws InterruptedException {
+        final int count = 200000;
+        final AtomicBoolean torn = new AtomicBoolean();
+        final AtomicInteger consumed = new AtomicInteger();
+        final TripleBuffer<int[]> pairs = new TripleBuffer<>(new int[2], new int[2], new int[2]);
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= count; i++) {
+                    final int[] slot = pairs.getWriteSlot();
+                    slot[0] = i;
+                    slot[1] = -i;
+                    pairs.publish();
+                }
+            }
+        });
+        producer.start();
+        int last = 0;
+        while (last < count) {
+            if (!pairs.consume()) continue;
+            final int[] slot = pairs.getReadSlot();
+            // the producer never writes the slot being read
+            if (slot[1] != -slot[0] || slot[0] <= last) torn.set(true);
+            last = slot[0];
+            consumed.incrementAndGet();
+        }
+        producer.join();
+        assertFalse(torn.get());
+        assertEquals(count, consumed.get() + pairs.getDroppedCount());
+    }
+}
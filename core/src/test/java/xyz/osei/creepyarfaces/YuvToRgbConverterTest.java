@@ -0,0 +1,96 @@
+package xyz.osei.creepyarfaces;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class YuvToRgbConverterTest {
+    private static final int WIDTH = 64, HEIGHT = 48;
+
+    /**
+     * Synthetic camera image with padded rows and interleaved chroma (pixel stride two) like
+     * NV21, luma x + 3 y and the given chroma everywhere
+     */
+    private static YuvPlanes planes(int u, int v) {
+        final int yRowStride = WIDTH + 8, uvRowStride = WIDTH + 8;
+        final ByteBuffer y = ByteBuffer.allocate(yRowStride * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) y.put(row * yRowStride + col, (byte) (col + 3 * row));
+        }
+        final ByteBuffer vu = ByteBuffer.allocate(uvRowStride * HEIGHT / 2);
+        for (int i = 0; i + 1 < vu.capacity(); i += 2) {
+            vu.put(i, (byte) v);
+            vu.put(i + 1, (byte) u);
+        }
+        vu.position(1);
+        final ByteBuffer uPlane = vu.slice();
+        vu.position(0);
+        final YuvPlanes planes = new YuvPlanes();
+        planes.set(y, uPlane, vu.duplicate(), yRowStride, uvRowStride, 2, WIDTH, HEIGHT);
+        return planes;
+    }
+
+    private static int luma(float sourceX, float sourceY) {
+        return (int) sourceX + 3 * (int) sourceY;
+    }
+
+    @Test
+    public void neutralChromaGivesTheLuma() {
+        final FaceAtlasGather gather = new FaceAtlasGather(FaceAtlasGatherTest.ATLAS_SIZE, FaceAtlasGatherTest.ATLAS_SIZE);
+        gather.rasterize(FaceAtlasGatherTest.TEX_COORDS, FaceAtlasGatherTest.NDC, FaceAtlasGatherTest.IMAGE_PIXELS,
+                FaceAtlasGatherTest.INDICES, FaceAtlasGatherTest.INDICES.length);
+        final byte[] atlas = new byte[gather.getAtlasWidth() * gather.getAtlasHeight() * 4];
+        new YuvToRgbConverter(new RowParallel(1)).convert(planes(128, 128), gather, atlas);
+
+        for (int i = 0; i < atlas.length / 4; i++) {
+            final int lum = luma(gather.getSourceX()[i], gather.getSourceY()[i]);
+            for (int c = 0; c < 3; c++) assertEquals("texel " + i, lum, atlas[i * 4 + c] & 0xff);
+            assertEquals(255, atlas[i * 4 + 3] & 0xff);
+        }
+    }
+
+    @Test
+    public void convertsChromaWithBt601() {
+        final YuvPlanes planes = planes(128, 200);
+        planes.y.put(0, (byte) 100);
+        final byte[] rgba = new byte[4];
+        YuvToRgbConverter.convertRows(planes, new float[] { 0 }, new float[] { 0 }, 1, 0, 1, rgba);
+        // r = y + 1.402 (v - 128), g = y - 0.714 (v - 128), in fixed point
+        assertArrayEquals(new byte[] { (byte) 200, 49, 100, (byte) 255 }, rgba);
+    }
+
+    @Test
+    public void keepsUncoveredTexels() {
+        final byte[] rgba = { 1, 2, 3, 4, 5, 6, 7, 8 };
+        // not covered, and outside of the camera image
+        YuvToRgbConverter.convertRows(planes(128, 128), new float[] { -1, WIDTH }, new float[] { 0, 0 }, 2, 0, 1, rgba);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, rgba);
+    }
+
+    @Test(timeout = 10000)
+    public void parallelConversionMatchesSerial() {
+        final FaceAtlasGather gather = new FaceAtlasGather(96, 96, AtlasWarp.UNIFORM);
+        gather.rasterize(FaceAtlasGatherTest.TEX_COORDS, FaceAtlasGatherTest.NDC, FaceAtlasGatherTest.IMAGE_PIXELS,
+                FaceAtlasGatherTest.INDICES, FaceAtlasGatherTest.INDICES.length);
+        final YuvPlanes planes = planes(90, 170);
+        final byte[] serial = new byte[96 * 96 * 4];
+        YuvToRgbConverter.convertRows(planes, gather.getSourceX(), gather.getSourceY(), 96, 0, 96, serial);
+
+        final RowParallel parallel = new RowParallel(4);
+        try {
+            final YuvToRgbConverter converter = new YuvToRgbConverter(parallel);
+            final byte[] atlas = new byte[serial.length];
+            for (int i = 0; i < 50; i++) {
+                Arrays.fill(atlas, (byte) 0);
+                converter.convert(planes, gather, atlas);
+                assertArrayEquals(serial, atlas);
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package xyz.osei.creepyarfaces.headless;
+
+import org.lwjgl.BufferUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import xyz.osei.creepyarfaces.FaceRenderer;
+
+/**
+ * Applies a filter to a recorded session with the app's frame pipeline ({@link HeadlessScene}),
+ * as fast as the machine allows. A session is a directory of camera frames, frame-000000.png (or
+ * .jpg) and so on, and optionally, per frame, the face mesh frame-000000.obj and the face pose
+ * frame-000000.pose (16 numbers, a column-major model matrix in camera coordinates). Frames without a mesh or a
+ * pose use the previous ones, initially those of {@link HeadlessBenchmark}. The face texture
+ * accumulates over the frames like in the app.
+ *
+ * Decoding, rendering and encoding run on their own threads and overlap. The frames move between
+ * them in a fixed number of slots with preallocated pixel buffers, so the memory use does not
+ * depend on the length of the session, and a slow stage stalls the others instead of queuing up
+ * frames.
+ *
+ * Options:
+ * <pre>
+ *   --input DIR          the session
+ *   --output DIR         filtered frames and batch.json, default: build/reports/batch
+ *   --filter NAME        default: 4eyes
+ *   --format png|jpg     output image format, default: png
+ *   --slots 4            frames in flight
+ *   --encoders 2         encoder threads
+ * </pre>
+ */
+public final class BatchRender {
+    private static final Pattern FRAME_NAME = Pattern.compile("frame-(\\d+)\\.(png|jpe?g)");
+
+    private File inputDir;
+    private File outputDir = new File("build/reports/batch");
+    private String filterName = "4eyes";
+    private String format = "png";
+    private int slotCount = 4;
+    private int encoderCount = 2;
+
+    /** A frame in flight: free -> decoded -> rendered -> free */
+    private static final class Slot {
+        int index;
+        File source;
+        // decoder output, null mesh or pose: same as in the previous frame
+        ByteBuffer camera;
+        int width, height;
+        FaceMeshFixture mesh;
+        float[] pose;
+        // renderer output, bottom row first
+        ByteBuffer rendered;
+    }
+
+    // end of the session, one for each consumer
+    private static final Slot END = new Slot();
+
+    private BlockingQueue<Slot> free, decoded, rendered;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean stopped;
+
+    private final AtomicLong decodeNanos = new AtomicLong(), encodeNanos = new AtomicLong();
+    private long renderNanos;
+    private long peakHeapBytes, peakDirectBytes;
+    private long firstHalfPeakHeapBytes;
+
+    public static void main(String[] args) throws Exception {
+        final BatchRender batch = new BatchRender();
+        batch.parseArgs(args);
+        System.exit(batch.run() ? 0 : 1);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--input": inputDir = new File(args[++i]); break;
+                case "--output": outputDir = new File(args[++i]); break;
+                case "--filter": filterName = args[++i]; break;
+                case "--format": format = args[++i]; break;
+                case "--slots": slotCount = Integer.parseInt(args[++i]); break;
+                case "--encoders": encoderCount = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (inputDir == null) throw new IllegalArgumentException("--input is required");
+        if (!format.equals("png") && !format.equals("jpg")) {
+            throw new IllegalArgumentException("unsupported format " + format);
+        }
+        if (!FaceRenderer.FILTER_NAMES.contains(filterName)) {
+            throw new IllegalArgumentException("unknown filter " + filterName);
+        }
+    }
+
+    private List<File> listFrames() throws IOException {
+        final File[] files = inputDir.listFiles();
+        if (files == null) throw new IOException("cannot list " + inputDir);
+        final List<File> frames = new ArrayList<>();
+        for (File file : files) {
+            if (FRAME_NAME.matcher(file.getName()).matches()) frames.add(file);
+        }
+        Collections.sort(frames, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        if (frames.isEmpty()) throw new IOException("no frame-NNNNNN.png or .jpg files in " + inputDir);
+        return frames;
+    }
+
+    private boolean run() throws Exception {
+        final List<File> frames = listFrames();
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) throw new IOException("cannot create " + outputDir);
+
+        free = new ArrayBlockingQueue<>(slotCount);
+        // room for the end marker(s) in addition to the slots
+        decoded = new ArrayBlockingQueue<>(slotCount + 1);
+        rendered = new ArrayBlockingQueue<>(slotCount + encoderCount);
+        for (int i = 0; i < slotCount; i++) free.add(new Slot());
+
+        final long start = System.nanoTime();
+        final Thread decoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                decodeLoop(frames);
+            }
+        }, "BatchDecoder");
+        decoder.start();
+        final List<Thread> encoders = new ArrayList<>();
+        for (int i = 0; i < encoderCount; i++) {
+            final Thread encoder = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    encodeLoop();
+                }
+            }, "BatchEncoder-" + i);
+            encoder.start();
+            encoders.add(encoder);
+        }
+
+        int renderedCount = 0;
+        try {
+            renderedCount = renderLoop(frames.size());
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            stopped = true;
+            for (int i = 0; i < encoderCount; i++) rendered.put(END);
+        }
+        for (Thread encoder : encoders) encoder.join();
+        // the decoder may be waiting for a slot that is never returned after a failure
+        decoder.interrupt();
+        decoder.join();
+        final double seconds = (System.nanoTime() - start) * 1e-9;
+
+        if (failure.get() != null) {
+            System.err.println("batch render failed after " + renderedCount + " frames");
+            failure.get().printStackTrace();
+            return false;
+        }
+        report(renderedCount, seconds);
+        return true;
+    }
+
+    private void fail(Throwable t) {
+        failure.compareAndSet(null, t);
+        stopped = true;
+    }
+
+    private void decodeLoop(List<File> frames) {
+        try {
+            int[] row = new int[0];
+            for (int i = 0; i < frames.size() && !stopped; i++) {
+                final Slot slot = free.take();
+                final long start = System.nanoTime();
+                final File file = frames.get(i);
+                final BufferedImage image = ImageIO.read(file);
+                if (image == null) throw new IOException("cannot decode " + file);
+                final int w = image.getWidth(), h = image.getHeight();
+                if (slot.camera == null || slot.camera.capacity() < w * h * 4) {
+                    slot.camera = BufferUtils.createByteBuffer(w * h * 4);
+                    slot.rendered = BufferUtils.createByteBuffer(w * h * 4);
+                }
+                if (row.length < w) row = new int[w];
+                GlUtil.toRgba(image, slot.camera, row);
+                slot.index = i;
+                slot.source = file;
+                slot.width = w;
+                slot.height = h;
+                slot.mesh = readMesh(file);
+                slot.pose = readPose(file);
+                decodeNanos.addAndGet(System.nanoTime() - start);
+                decoded.put(slot);
+            }
+        } catch (InterruptedException e) {
+            // stopped after a failure
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            decoded.offer(END);
+        }
+    }
+
+    private static File sibling(File frame, String extension) {
+        final Matcher matcher = FRAME_NAME.matcher(frame.getName());
+        matcher.matches();
+        return new File(frame.getParentFile(), "frame-" + matcher.group(1) + extension);
+    }
+
+    private static FaceMeshFixture readMesh(File frame) throws IOException {
+        final File file = sibling(frame, ".obj");
+        if (!file.exists()) return null;
+        try (InputStream in = new FileInputStream(file)) {
+            return FaceMeshFixture.readObj(in);
+        }
+    }
+
+    private static float[] readPose(File frame) throws IOException {
+        final File file = sibling(frame, ".pose");
+        if (!file.exists()) return null;
+        final float[] pose = new float[16];
+        int n = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (String token : line.trim().split("[\\s,]+")) {
+                    if (token.isEmpty()) continue;
+                    if (n == pose.length) throw new IOException("more than 16 numbers in " + file);
+                    pose[n++] = Float.parseFloat(token);
+                }
+            }
+        }
+        if (n != pose.length) throw new IOException("expected 16 numbers in " + file);
+        return pose;
+    }
+
+    /** @return the number of frames rendered */
+    private int renderLoop(int frameCount) throws Exception {
+        Slot slot = decoded.take();
+        if (slot == END) return 0;
+        final int width = slot.width, height = slot.height;
+        final Runtime runtime = Runtime.getRuntime();
+        final BufferPoolMXBean directPool = findDirectBufferPool();
+
+        int count = 0;
+        try (EglPbufferContext ignored = new EglPbufferContext(width, height)) {
+            final HeadlessScene scene = new HeadlessScene(width, height, false, 1);
+            scene.createOnGlThread(FaceMeshFixture.loadDefault());
+            final FaceRenderer renderer = scene.createFilter(filterName);
+
+            try {
+                while (slot != END && !stopped) {
+                    if (slot.width != width || slot.height != height) {
+                        throw new IOException(slot.source + ": frame size changed from " + width + "x" + height);
+                    }
+                    final long start = System.nanoTime();
+                    if (slot.mesh != null) scene.setFaceMesh(slot.mesh);
+                    if (slot.pose != null) scene.setFacePose(slot.pose);
+                    scene.setCameraImage(slot.camera, width, height);
+                    scene.renderFrame(renderer);
+                    scene.readPixels(slot.rendered);
+                    slot.mesh = null;
+                    renderNanos += System.nanoTime() - start;
+                    rendered.put(slot);
+                    count++;
+
+                    final long heap = runtime.totalMemory() - runtime.freeMemory();
+                    peakHeapBytes = Math.max(peakHeapBytes, heap);
+                    if (count <= frameCount / 2) firstHalfPeakHeapBytes = peakHeapBytes;
+                    if (directPool != null) peakDirectBytes = Math.max(peakDirectBytes, directPool.getMemoryUsed());
+
+                    slot = decoded.take();
+                }
+            } finally {
+                scene.release();
+            }
+        }
+        return count;
+    }
+
+    private static BufferPoolMXBean findDirectBufferPool() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) return pool;
+        }
+        return null;
+    }
+
+    private void encodeLoop() {
+        BufferedImage image = null;
+        int[] row = new int[0];
+        while (true) {
+            final Slot slot;
+            try {
+                slot = rendered.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (slot == END) return;
+            try {
+                // after a failure, only return the slots so that the others do not block
+                if (failure.get() == null) {
+                    final long start = System.nanoTime();
+                    final int w = slot.width, h = slot.height;
+                    if (image == null || image.getWidth() != w || image.getHeight() != h) {
+                        image = new BufferedImage(w, h,
+                                format.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+                        row = new int[w];
+                    }
+                    toImage(slot.rendered, w, h, image, row);
+                    final File file = new File(outputDir, String.format(Locale.ROOT, "frame-%06d.%s", slot.index, format));
+                    if (!ImageIO.write(image, format, file)) throw new IOException("no writer for " + format);
+                    encodeNanos.addAndGet(System.nanoTime() - start);
+                }
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                free.offer(slot);
+            }
+        }
+    }
+
+    /** Like GlUtil.readFramebuffer, into a reused image */
+    private static void toImage(ByteBuffer pixels, int w, int h, BufferedImage image, int[] row) {
+        for (int y = 0; y < h; y++) {
+            final int offset = (h - 1 - y) * w * 4;
+            for (int x = 0; x < w; x++) {
+                final int i = offset + x * 4;
+                // the filters blend into the alpha channel too, the output is opaque
+                row[x] = 0xff000000 | (pixels.get(i) & 0xff) << 16 | (pixels.get(i + 1) & 0xff) << 8
+                        | (pixels.get(i + 2) & 0xff);
+            }
+            image.setRGB(0, y, w, 1, row, 0, w);
+        }
+    }
+
+    private void report(int frames, double seconds) throws IOException {
+        final double fps = frames / seconds;
+        final double decodeMs = decodeNanos.get() * 1e-6 / frames;
+        final double renderMs = renderNanos * 1e-6 / frames;
+        final double encodeMs = encodeNanos.get() * 1e-6 / frames;
+        final long slotBytes = slotBytes();
+        System.out.println(String.format(Locale.ROOT,
+                "%s: %d frames in %.1f s, %.1f fps (decode %.1f ms, render %.1f ms, encode %.1f ms per frame, %d encoders)",
+                filterName, frames, seconds, fps, decodeMs, renderMs, encodeMs, encoderCount));
+        System.out.println(String.format(Locale.ROOT,
+                "  memory: peak heap %.1f MB (%.1f MB in the first half), peak direct %.1f MB, %d slots of %.1f MB",
+                peakHeapBytes / 1e6, firstHalfPeakHeapBytes / 1e6, peakDirectBytes / 1e6,
+                slotCount, slotBytes / 1e6 / slotCount));
+
+        try (PrintWriter json = new PrintWriter(new File(outputDir, "batch.json"), "UTF-8")) {
+            json.println(String.format(Locale.ROOT,
+                    "{\"filter\": \"%s\", \"frames\": %d, \"seconds\": %.3f, \"fps\": %.2f, "
+                            + "\"msPerFrame\": {\"decode\": %.3f, \"render\": %.3f, \"encode\": %.3f}, "
+                            + "\"slots\": %d, \"encoders\": %d, \"slotBytes\": %d, "
+                            + "\"peakHeapBytes\": %d, \"firstHalfPeakHeapBytes\": %d, \"peakDirectBytes\": %d}",
+                    filterName, frames, seconds, fps, decodeMs, renderMs, encodeMs,
+                    slotCount, encoderCount, slotBytes, peakHeapBytes, firstHalfPeakHeapBytes, peakDirectBytes));
+        }
+    }
+
+    private long slotBytes() {
+        long bytes = 0;
+        for (Slot slot : free) {
+            if (slot.camera != null) bytes += slot.camera.capacity() + slot.rendered.capacity();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,32 @@
+package xyz.osei.creepyarfaces.headless;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+
+import xyz.osei.creepyarfaces.Assets;
+
+/** {@link Assets} of the classpath, which includes the app's assets directory */
+final class ClasspathAssets implements Assets {
+    @Override
+    public InputStream open(String name) throws IOException {
+        final InputStream in = ClasspathAssets.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) throw new IOException("resource not found: " + name);
+        return in;
+    }
+
+    @Override
+    public ByteBuffer decodeImage(String name, int[] size) throws IOException {
+        final BufferedImage image;
+        try (InputStream in = open(name)) {
+            image = ImageIO.read(in);
+        }
+        if (image == null) throw new IOException("cannot decode " + name);
+        size[0] = image.getWidth();
+        size[1] = image.getHeight();
+        return GlUtil.toRgba(image);
+    }
+}
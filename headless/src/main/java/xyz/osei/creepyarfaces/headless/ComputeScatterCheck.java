@@ -0,0 +1,255 @@
+package xyz.osei.creepyarfaces.headless;
+
+import org.lwjgl.BufferUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import xyz.osei.creepyarfaces.AtlasWarp;
+import xyz.osei.creepyarfaces.ComputeFaceScatter;
+import xyz.osei.creepyarfaces.FaceTextureScatter;
+
+import static org.lwjgl.opengles.GLES20.*;
+import static org.lwjgl.opengles.GLES31.GL_FRAMEBUFFER_BARRIER_BIT;
+import static org.lwjgl.opengles.GLES31.glMemoryBarrier;
+
+/**
+ * Compares the compute shader face texture scatter ({@link ComputeFaceScatter}, scatter.comp)
+ * to the CPU one ({@link FaceTextureScatter}) on a headless OpenGL ES 3.1 context, e.g., Mesa's
+ * llvmpipe. Both get the same camera and UV images of the face at several poses, the compute
+ * shader copied from the screen like in the app and the CPU one read back, at several atlas
+ * layouts and sizes, and an atlas with random previous contents. The results must be
+ * identical, including the texels several pixels map to and the texels no pixel maps to. Exits
+ * with status 1 if any texel differs or the context has no compute shaders.
+ *
+ * Options:
+ * <pre>
+ *   --width 360 --height 640    surface size
+ *   --mesh FILE.obj             face mesh, default: the procedural fixture
+ *   --repeat 10                 scatters per case for the timing
+ *   --output DIR                compute-scatter.json, default: build/reports/compute-scatter
+ * </pre>
+ */
+public final class ComputeScatterCheck {
+    private static final float FACE_DISTANCE = 0.35f;
+    private static final float[] YAW_DEGREES = { 0, 35, -60 };
+    private static final int[] UNIFORM_ATLAS_SIZES = { 256, 64 };
+    // the layout MainActivity uses
+    private static final AtlasWarp FOCUS_WARP = AtlasWarp.withFocusRegions(
+            0.35f, new float[] { 0.2f, 0.8f }, new float[] { 0.3f, 0.85f });
+
+    private int width = 360, height = 640;
+    private int repeat = 10;
+    private File meshFile;
+    private File outputDir = new File("build/reports/compute-scatter");
+
+    private static final class Result {
+        String warp;
+        float yawDegrees;
+        int atlasSize;
+        int coveredPixels, mappedTexels, conflictTexels, differingTexels;
+        double cpuMillis, gpuMillis;
+    }
+
+    public static void main(String[] args) throws IOException {
+        final ComputeScatterCheck check = new ComputeScatterCheck();
+        check.parseArgs(args);
+        System.exit(check.run() ? 0 : 1);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--width": width = Integer.parseInt(args[++i]); break;
+                case "--height": height = Integer.parseInt(args[++i]); break;
+                case "--mesh": meshFile = new File(args[++i]); break;
+                case "--repeat": repeat = Integer.parseInt(args[++i]); break;
+                case "--output": outputDir = new File(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+    }
+
+    private FaceMeshFixture loadMesh() throws IOException {
+        if (meshFile != null) {
+            try (InputStream in = new FileInputStream(meshFile)) {
+                return FaceMeshFixture.readObj(in);
+            }
+        }
+        return FaceMeshFixture.loadDefault();
+    }
+
+    private boolean run() throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) throw new IOException("cannot create " + outputDir);
+        final FaceMeshFixture mesh = loadMesh();
+        final List<Result> results = new ArrayList<>();
+        final String renderer;
+
+        try (EglPbufferContext ignored = new EglPbufferContext(width, height, 3)) {
+            renderer = glGetString(GL_RENDERER) + ", " + glGetString(GL_VERSION);
+            final HeadlessScene scene = new HeadlessScene(width, height, false, 1);
+            final ComputeFaceScatter gpu = new ComputeFaceScatter(scene.getGl());
+            if (!gpu.isSupported()) {
+                System.err.println("no OpenGL ES 3.1 compute shaders: " + renderer);
+                return false;
+            }
+            scene.createOnGlThread(mesh);
+            final BufferedImage camera = SyntheticCameraImage.create(480, 640);
+            scene.setCameraImage(GlUtil.toRgba(camera), camera.getWidth(), camera.getHeight());
+            gpu.createOnGlThread(scene.getShaders());
+            gpu.setMipmaps(false);
+            gpu.setScreenSize(width, height);
+            final int framebuffer = glGenFramebuffers();
+
+            final ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+            final byte[] video = new byte[width * height * 4], uv = new byte[width * height * 4];
+            for (float yaw : YAW_DEGREES) {
+                scene.setFacePose(facePose(yaw));
+                scene.drawCameraImage();
+                scene.readPixels(pixels);
+                pixels.get(video);
+                gpu.captureCamera(width, height);
+                // stays on the screen for the scatters, which copy it
+                scene.drawUvImage();
+                scene.readPixels(pixels);
+                pixels.get(uv);
+
+                for (AtlasWarp warp : new AtlasWarp[] { AtlasWarp.UNIFORM, FOCUS_WARP }) {
+                    for (int uniformSize : UNIFORM_ATLAS_SIZES) {
+                        final Result result = compare(gpu, framebuffer, video, uv, warp, warp.getAtlasSize(uniformSize));
+                        result.warp = warp == AtlasWarp.UNIFORM ? "uniform" : "focus";
+                        result.yawDegrees = yaw;
+                        results.add(result);
+                    }
+                }
+            }
+            scene.release();
+        }
+
+        boolean passed = true;
+        for (Result result : results) passed &= result.differingTexels == 0;
+        report(renderer, results);
+        return passed;
+    }
+
+    /** Facing the camera, turned around the vertical axis */
+    private static float[] facePose(float yawDegrees) {
+        final float c = (float) Math.cos(Math.toRadians(yawDegrees));
+        final float s = (float) Math.sin(Math.toRadians(yawDegrees));
+        return new float[] {
+                c, 0, -s, 0,
+                0, 1, 0, 0,
+                s, 0, c, 0,
+                0, 0, -FACE_DISTANCE, 1 };
+    }
+
+    private Result compare(ComputeFaceScatter gpu, int framebuffer, byte[] video, byte[] uv, AtlasWarp warp,
+                           int atlasSize) {
+        final Result result = new Result();
+        result.atlasSize = atlasSize;
+        final int atlasBytes = atlasSize * atlasSize * 4;
+
+        // previous contents of the atlas, which the texels no pixel maps to must keep
+        final byte[] initial = new byte[atlasBytes];
+        new Random(atlasSize).nextBytes(initial);
+
+        final FaceTextureScatter cpu = new FaceTextureScatter(atlasSize, atlasSize, warp);
+        final byte[] expected = initial.clone();
+        long nanos = 0;
+        for (int i = 0; i < repeat; i++) {
+            System.arraycopy(initial, 0, expected, 0, atlasBytes);
+            final long start = System.nanoTime();
+            result.coveredPixels = cpu.scatter(uv, video, width, height, expected);
+            nanos += System.nanoTime() - start;
+        }
+        result.cpuMillis = nanos * 1e-6 / repeat;
+        countMappings(cpu, uv, atlasSize, result);
+
+        final ByteBuffer staging = BufferUtils.createByteBuffer(atlasBytes);
+        final int atlas = gpu.allocateAtlas(atlasSize, false);
+        nanos = 0;
+        for (int i = 0; i < repeat; i++) {
+            staging.clear();
+            staging.put(initial).flip();
+            glBindTexture(GL_TEXTURE_2D, atlas);
+            glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, atlasSize, atlasSize, GL_RGBA, GL_UNSIGNED_BYTE, staging);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            glFinish();
+            // includes the copy of the UV image from the screen, like in the app
+            final long start = System.nanoTime();
+            gpu.scatter(width, height, atlas, atlasSize, warp);
+            glFinish();
+            nanos += System.nanoTime() - start;
+        }
+        result.gpuMillis = nanos * 1e-6 / repeat;
+        // the scatter only makes its writes visible to texture fetches
+        glMemoryBarrier(GL_FRAMEBUFFER_BARRIER_BIT);
+        GlUtil.readTexture(framebuffer, atlas, atlasSize, atlasSize, staging);
+        glDeleteTextures(atlas);
+
+        for (int i = 0; i < atlasBytes; i += 4) {
+            for (int c = 0; c < 4; c++) {
+                if (staging.get(i + c) != expected[i + c]) {
+                    result.differingTexels++;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Texels some pixel maps to, and texels several pixels map to, where the order matters */
+    private static void countMappings(FaceTextureScatter cpu, byte[] uv, int atlasSize, Result result) {
+        final int[] lookup = new int[512];
+        cpu.getLookupTables(lookup);
+        final int[] hits = new int[atlasSize * atlasSize];
+        for (int i = 0; i < uv.length; i += 4) {
+            if (uv[i + 3] != 0) continue;
+            final int x = lookup[uv[i] & 0xff], y = lookup[256 + (uv[i + 1] & 0xff)];
+            if (x < 0 || y < 0) continue;
+            hits[y * atlasSize + x]++;
+        }
+        for (int count : hits) {
+            if (count > 0) result.mappedTexels++;
+            if (count > 1) result.conflictTexels++;
+        }
+    }
+
+    private void report(String renderer, List<Result> results) throws IOException {
+        System.out.println("compute scatter vs. CPU scatter on " + renderer);
+        for (Result result : results) {
+            System.out.println(String.format(Locale.ROOT,
+                    "  %-7s %3dx%-3d yaw %4.0f: %s, %d differing texels of %d mapped (%d with several pixels), "
+                            + "CPU %.2f ms, GPU %.2f ms",
+                    result.warp, result.atlasSize, result.atlasSize, result.yawDegrees,
+                    result.differingTexels == 0 ? "ok" : "FAILED", result.differingTexels,
+                    result.mappedTexels, result.conflictTexels, result.cpuMillis, result.gpuMillis));
+        }
+
+        try (PrintWriter json = new PrintWriter(new File(outputDir, "compute-scatter.json"), "UTF-8")) {
+            json.println("{");
+            json.println(String.format(Locale.ROOT, "  \"renderer\": \"%s\", \"width\": %d, \"height\": %d,",
+                    renderer.replace("\"", "'"), width, height));
+            json.println("  \"cases\": [");
+            for (int i = 0; i < results.size(); i++) {
+                final Result result = results.get(i);
+                json.println(String.format(Locale.ROOT,
+                        "    {\"warp\": \"%s\", \"atlasSize\": %d, \"yaw\": %.1f, \"coveredPixels\": %d, \"mappedTexels\": %d, \"conflictTexels\": %d, \"differingTexels\": %d, \"cpuMs\": %.4f, \"gpuMs\": %.4f}%s",
+                        result.warp, result.atlasSize, result.yawDegrees, result.coveredPixels, result.mappedTexels,
+                        result.conflictTexels, result.differingTexels, result.cpuMillis, result.gpuMillis,
+                        i + 1 < results.size() ? "," : ""));
+            }
+            json.println("  ]");
+            json.println("}");
+        }
+    }
+}
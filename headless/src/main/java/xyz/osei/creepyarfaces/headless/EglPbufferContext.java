@@ -0,0 +1,90 @@
+package xyz.osei.creepyarfaces.headless;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.egl.EGL;
+import org.lwjgl.opengles.GLES;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.egl.EGL10.*;
+import static org.lwjgl.egl.EGL12.EGL_RENDERABLE_TYPE;
+import static org.lwjgl.egl.EGL12.eglBindAPI;
+import static org.lwjgl.egl.EGL13.EGL_CONTEXT_CLIENT_VERSION;
+import static org.lwjgl.egl.EGL13.EGL_OPENGL_ES2_BIT;
+import static org.lwjgl.egl.EGL14.EGL_DEFAULT_DISPLAY;
+import static org.lwjgl.egl.EGL14.EGL_OPENGL_ES_API;
+import static org.lwjgl.egl.EGL15.EGL_OPENGL_ES3_BIT;
+
+/**
+ * OpenGL ES 2.0 context on an offscreen pbuffer surface, no window system needed. The surface
+ * config matches the one requested by MainActivity: RGBA8888 with a 16-bit depth buffer and an
+ * 8-bit stencil buffer. A client version of 3 gives the newest OpenGL ES 3.x the driver has.
+ */
+class EglPbufferContext implements AutoCloseable {
+    private final long display, surface, context;
+
+    EglPbufferContext(int width, int height) {
+        this(width, height, 2);
+    }
+
+    EglPbufferContext(int width, int height, int clientVersion) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            display = eglGetDisplay(EGL_DEFAULT_DISPLAY);
+            if (display == EGL_NO_DISPLAY) throw new IllegalStateException("no EGL display");
+
+            final IntBuffer major = stack.mallocInt(1), minor = stack.mallocInt(1);
+            if (!eglInitialize(display, major, minor)) {
+                throw new IllegalStateException("eglInitialize failed: " + eglErrorString());
+            }
+            EGL.createDisplayCapabilities(display, major.get(0), minor.get(0));
+
+            final IntBuffer configAttributes = stack.ints(
+                    EGL_SURFACE_TYPE, EGL_PBUFFER_BIT,
+                    EGL_RENDERABLE_TYPE, clientVersion >= 3 ? EGL_OPENGL_ES3_BIT : EGL_OPENGL_ES2_BIT,
+                    EGL_RED_SIZE, 8,
+                    EGL_GREEN_SIZE, 8,
+                    EGL_BLUE_SIZE, 8,
+                    EGL_ALPHA_SIZE, 8,
+                    EGL_DEPTH_SIZE, 16,
+                    EGL_STENCIL_SIZE, 8,
+                    EGL_NONE);
+            final PointerBuffer configs = stack.mallocPointer(1);
+            final IntBuffer configCount = stack.mallocInt(1);
+            if (!eglChooseConfig(display, configAttributes, configs, configCount)
+                    || configCount.get(0) == 0) {
+                throw new IllegalStateException("no matching EGL config: " + eglErrorString());
+            }
+            final long config = configs.get(0);
+
+            surface = eglCreatePbufferSurface(display, config,
+                    stack.ints(EGL_WIDTH, width, EGL_HEIGHT, height, EGL_NONE));
+            if (surface == EGL_NO_SURFACE) {
+                throw new IllegalStateException("eglCreatePbufferSurface failed: " + eglErrorString());
+            }
+
+            eglBindAPI(EGL_OPENGL_ES_API);
+            context = eglCreateContext(display, config, EGL_NO_CONTEXT,
+                    stack.ints(EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL_NONE));
+            if (context == EGL_NO_CONTEXT) {
+                throw new IllegalStateException("eglCreateContext failed: " + eglErrorString());
+            }
+            if (!eglMakeCurrent(display, surface, surface, context)) {
+                throw new IllegalStateException("eglMakeCurrent failed: " + eglErrorString());
+            }
+            GLES.createCapabilities();
+        }
+    }
+
+    private static String eglErrorString() {
+        return "0x" + Integer.toHexString(eglGetError());
+    }
+
+    @Override
+    public void close() {
+        eglMakeCurrent(display, EGL_NO_SURFACE, EGL_NO_SURFACE, EGL_NO_CONTEXT);
+        eglDestroyContext(display, context);
+        eglDestroySurface(display, surface);
+        eglTerminate(display);
+    }
+}
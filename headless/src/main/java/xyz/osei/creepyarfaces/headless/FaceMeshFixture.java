@@ -0,0 +1,201 @@
+package xyz.osei.creepyarfaces.headless;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Face mesh in the same form as AugmentedFace provides it: per-vertex positions (meters, face
+ * center coordinates), texture coordinates and normals, and triangle indices. Read from an OBJ
+ * file, e.g., a mesh exported from a device, or generated procedurally.
+ */
+final class FaceMeshFixture {
+    final float[] vertices, texCoords, normals;
+    final short[] indices;
+
+    private FaceMeshFixture(float[] vertices, float[] texCoords, float[] normals, short[] indices) {
+        this.vertices = vertices;
+        this.texCoords = texCoords;
+        this.normals = normals;
+        this.indices = indices;
+    }
+
+    int getVertexCount() {
+        return vertices.length / 3;
+    }
+
+    /** The mesh of the fixtures/face.obj resource, or a procedural one if there is none */
+    static FaceMeshFixture loadDefault() throws IOException {
+        try (InputStream in = FaceMeshFixture.class.getClassLoader().getResourceAsStream("fixtures/face.obj")) {
+            if (in == null) return procedural(26, 18);
+            return readObj(in);
+        }
+    }
+
+    /**
+     * Reads a triangulated OBJ file. Vertices with different texture coordinates are split, and
+     * normals are computed from the triangles if the file has none.
+     */
+    static FaceMeshFixture readObj(InputStream in) throws IOException {
+        final List<float[]> positions = new ArrayList<>(), uvs = new ArrayList<>(), objNormals = new ArrayList<>();
+        final Map<String, Integer> vertexIndex = new HashMap<>();
+        final List<String> vertexKeys = new ArrayList<>();
+        final List<Integer> triangles = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] tokens = line.trim().split("\\s+");
+                switch (tokens[0]) {
+                    case "v":
+                        positions.add(parseFloats(tokens, 3));
+                        break;
+                    case "vt":
+                        uvs.add(parseFloats(tokens, 2));
+                        break;
+                    case "vn":
+                        objNormals.add(parseFloats(tokens, 3));
+                        break;
+                    case "f":
+                        if (tokens.length != 4) throw new IOException("only triangles are supported: " + line);
+                        for (int i = 1; i <= 3; i++) {
+                            Integer index = vertexIndex.get(tokens[i]);
+                            if (index == null) {
+                                index = vertexKeys.size();
+                                vertexIndex.put(tokens[i], index);
+                                vertexKeys.add(tokens[i]);
+                            }
+                            triangles.add(index);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        final int n = vertexKeys.size();
+        if (n > Short.MAX_VALUE) throw new IOException("too many vertices for 16-bit indices: " + n);
+        final float[] vertices = new float[n * 3], texCoords = new float[n * 2], normals = new float[n * 3];
+        boolean hasNormals = true;
+        for (int i = 0; i < n; i++) {
+            final String[] refs = vertexKeys.get(i).split("/");
+            System.arraycopy(positions.get(Integer.parseInt(refs[0]) - 1), 0, vertices, i * 3, 3);
+            if (refs.length > 1 && !refs[1].isEmpty()) {
+                System.arraycopy(uvs.get(Integer.parseInt(refs[1]) - 1), 0, texCoords, i * 2, 2);
+            }
+            if (refs.length > 2 && !refs[2].isEmpty()) {
+                System.arraycopy(objNormals.get(Integer.parseInt(refs[2]) - 1), 0, normals, i * 3, 3);
+            } else {
+                hasNormals = false;
+            }
+        }
+        final short[] indices = new short[triangles.size()];
+        for (int i = 0; i < indices.length; i++) indices[i] = (short) (int) triangles.get(i);
+        if (!hasNormals) computeNormals(vertices, indices, normals);
+        return new FaceMeshFixture(vertices, texCoords, normals, indices);
+    }
+
+    private static float[] parseFloats(String[] tokens, int count) {
+        final float[] values = new float[count];
+        for (int i = 0; i < count; i++) values[i] = Float.parseFloat(tokens[i + 1]);
+        return values;
+    }
+
+    /**
+     * A face-like mesh: an elliptical cap with a nose, about the size of a real face, facing +z
+     * like the ARCore face mesh. The texture coordinates map the front view to the unit square,
+     * v pointing down. Triangles are wound clockwise when seen from the front, as in ARCore.
+     */
+    static FaceMeshFixture procedural(int rows, int cols) {
+        final int n = rows * cols;
+        final float[] vertices = new float[n * 3], texCoords = new float[n * 2], normals = new float[n * 3];
+        for (int i = 0; i < rows; i++) {
+            final float sy = 1 - 2f * i / (rows - 1);
+            for (int j = 0; j < cols; j++) {
+                final float sx = 2f * j / (cols - 1) - 1;
+                final int k = i * cols + j;
+                final float cap = (float) Math.sqrt(Math.max(0, 1 - 0.5 * sx * sx - 0.5 * sy * sy));
+                final float nose = (float) Math.exp(-(sx * sx / 0.02 + (sy + 0.1) * (sy + 0.1) / 0.06));
+                vertices[k * 3] = 0.075f * sx;
+                vertices[k * 3 + 1] = 0.1f * sy;
+                vertices[k * 3 + 2] = 0.05f * cap + 0.025f * nose - 0.03f;
+                texCoords[k * 2] = (sx + 1) * 0.5f;
+                texCoords[k * 2 + 1] = (1 - sy) * 0.5f;
+            }
+        }
+        final short[] indices = new short[(rows - 1) * (cols - 1) * 6];
+        int t = 0;
+        for (int i = 0; i + 1 < rows; i++) {
+            for (int j = 0; j + 1 < cols; j++) {
+                final int topLeft = i * cols + j, bottomLeft = topLeft + cols;
+                indices[t++] = (short) topLeft;
+                indices[t++] = (short) (topLeft + 1);
+                indices[t++] = (short) bottomLeft;
+                indices[t++] = (short) (topLeft + 1);
+                indices[t++] = (short) (bottomLeft + 1);
+                indices[t++] = (short) bottomLeft;
+            }
+        }
+        computeNormals(vertices, indices, normals);
+        return new FaceMeshFixture(vertices, texCoords, normals, indices);
+    }
+
+    /** Area-weighted vertex normals, pointing to the side from which the triangles are clockwise */
+    private static void computeNormals(float[] vertices, short[] indices, float[] normals) {
+        Arrays.fill(normals, 0);
+        for (int t = 0; t + 2 < indices.length; t += 3) {
+            final int a = indices[t] * 3, b = indices[t + 1] * 3, c = indices[t + 2] * 3;
+            final float e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1], e1z = vertices[b + 2] - vertices[a + 2];
+            final float e2x = vertices[c] - vertices[a], e2y = vertices[c + 1] - vertices[a + 1], e2z = vertices[c + 2] - vertices[a + 2];
+            // e2 x e1: clockwise winding
+            final float nx = e2y * e1z - e2z * e1y, ny = e2z * e1x - e2x * e1z, nz = e2x * e1y - e2y * e1x;
+            for (int v : new int[] { a, b, c }) {
+                normals[v] += nx;
+                normals[v + 1] += ny;
+                normals[v + 2] += nz;
+            }
+        }
+        for (int v = 0; v < normals.length; v += 3) {
+            final float len = (float) Math.sqrt(normals[v] * normals[v] + normals[v + 1] * normals[v + 1] + normals[v + 2] * normals[v + 2]);
+            if (len > 0) {
+                normals[v] /= len;
+                normals[v + 1] /= len;
+                normals[v + 2] /= len;
+            }
+        }
+    }
+
+    void writeObj(Writer out) {
+        final PrintWriter writer = new PrintWriter(out);
+        writer.println("# face mesh fixture: " + getVertexCount() + " vertices, " + indices.length / 3 + " triangles");
+        for (int i = 0; i < vertices.length; i += 3) {
+            writer.println(String.format(Locale.ROOT, "v %.6f %.6f %.6f", vertices[i], vertices[i + 1], vertices[i + 2]));
+        }
+        for (int i = 0; i < texCoords.length; i += 2) {
+            writer.println(String.format(Locale.ROOT, "vt %.6f %.6f", texCoords[i], texCoords[i + 1]));
+        }
+        for (int i = 0; i < normals.length; i += 3) {
+            writer.println(String.format(Locale.ROOT, "vn %.6f %.6f %.6f", normals[i], normals[i + 1], normals[i + 2]));
+        }
+        for (int t = 0; t < indices.length; t += 3) {
+            writer.print("f");
+            for (int k = 0; k < 3; k++) {
+                final int v = indices[t + k] + 1;
+                writer.print(" " + v + "/" + v + "/" + v);
+            }
+            writer.println();
+        }
+        writer.flush();
+    }
+}
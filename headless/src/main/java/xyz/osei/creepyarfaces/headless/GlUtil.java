@@ -0,0 +1,70 @@
+package xyz.osei.creepyarfaces.headless;
+
+import org.lwjgl.BufferUtils;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengles.GLES20.*;
+
+/** Pixel conversions between images and the GL, for the headless tools */
+final class GlUtil {
+    private GlUtil() {}
+
+    /** RGBA pixels of the image, first row first */
+    static ByteBuffer toRgba(BufferedImage image) {
+        final ByteBuffer pixels = BufferUtils.createByteBuffer(image.getWidth() * image.getHeight() * 4);
+        toRgba(image, pixels, new int[image.getWidth()]);
+        return pixels;
+    }
+
+    /**
+     * Like {@link #toRgba(BufferedImage)}, into the given buffer, which is flipped
+     *
+     * @param row scratch space of at least the image width
+     */
+    static void toRgba(BufferedImage image, ByteBuffer pixels, int[] row) {
+        final int w = image.getWidth(), h = image.getHeight();
+        pixels.clear();
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                final int argb = row[x];
+                pixels.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb).put((byte) (argb >>> 24));
+            }
+        }
+        pixels.flip();
+    }
+
+    /**
+     * Reads level 0 of a 2D texture through a framebuffer, rows in the order of the texture
+     * coordinates (bottom row first in GL terms)
+     *
+     * @param framebuffer a framebuffer object to attach the texture to
+     */
+    static void readTexture(int framebuffer, int texture, int width, int height, ByteBuffer rgba) {
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture, 0);
+        rgba.clear();
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, rgba);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, 0, 0);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    /** Reads the current framebuffer into an image, flipping it to the usual row order */
+    static BufferedImage readFramebuffer(int width, int height, ByteBuffer scratch) {
+        scratch.clear();
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, scratch);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            final int row = (height - 1 - y) * width * 4;
+            for (int x = 0; x < width; x++) {
+                final int i = row + x * 4;
+                final int r = scratch.get(i) & 0xff, g = scratch.get(i + 1) & 0xff,
+                        b = scratch.get(i + 2) & 0xff, a = scratch.get(i + 3) & 0xff;
+                image.setRGB(x, y, (a << 24) | (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+}
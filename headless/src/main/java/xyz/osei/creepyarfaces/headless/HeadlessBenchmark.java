@@ -0,0 +1,427 @@
+package xyz.osei.creepyarfaces.headless;
+
+import org.lwjgl.BufferUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import xyz.osei.creepyarfaces.FaceRenderer;
+import xyz.osei.creepyarfaces.FramePipeline;
+import xyz.osei.creepyarfaces.RenderGraph;
+
+import static org.lwjgl.opengles.GLES20.GL_RENDERER;
+import static org.lwjgl.opengles.GLES20.GL_VERSION;
+import static org.lwjgl.opengles.GLES20.glFinish;
+import static org.lwjgl.opengles.GLES20.glGetString;
+
+/**
+ * Renders each filter with the app's frame pipeline ({@link HeadlessScene}) on a headless EGL
+ * context and reports the milliseconds per frame, overall and per pass. The last frame of each filter is compared to a
+ * golden image, and filters with baked masks are also compared to their analytic shaders. Exits
+ * with status 1 if any comparison fails, so it can be used as a CI check.
+ *
+ * Options:
+ * <pre>
+ *   --width 720 --height 1280   surface size
+ *   --frames 60 --warmup 10     measured and warm-up frames per filter
+ *   --filter NAME               only this filter, can be repeated
+ *   --mesh FILE.obj             face mesh, default: the procedural fixture
+ *   --camera FILE.png           camera image, default: a synthetic image
+ *   --goldens DIR               golden images, default: goldens
+ *   --update-goldens            write the rendered images as the new goldens
+ *   --allow-missing-goldens     pass filters that have no golden image yet
+ *   --threshold 8               per-channel difference tolerated in a pixel
+ *   --max-differing 0.001       fraction of pixels allowed to exceed the threshold
+ *   --output DIR                images and results.json, default: build/reports/headless
+ *   --filter-scale 0.5          also render each filter at this fraction of the resolution and
+ *                               compare the time and image to the full resolution filter
+ *   --all-triangles             draw every triangle of the mesh, also where the mask of the
+ *                               filter is fully transparent
+ *   --compare-backends          also render each filter with the OpenGL ES 2.0 and 3.0 backends
+ *                               in the same OpenGL ES 3 context and compare the CPU time of
+ *                               the filter draw calls and the images
+ * </pre>
+ */
+public final class HeadlessBenchmark {
+    private int width = 720, height = 1280;
+    private int frames = 60, warmup = 10;
+    private final List<String> filterNames = new ArrayList<>();
+    private File meshFile, cameraFile;
+    private File goldenDir = new File("goldens");
+    private File outputDir = new File("build/reports/headless");
+    private boolean updateGoldens, allowMissingGoldens;
+    private int threshold = 8;
+    private double maxDiffering = 0.001;
+    private float filterScale = 1;
+    private boolean triangleSubsets = true;
+    private boolean compareBackends;
+
+    private static final class Result {
+        final String filter;
+        final RenderGraph.Schedule schedule;
+        final double millisPerFrame;
+        final Map<String, Double> stageMillis;
+        float faceCoverage;
+        // drawn by the filter and in the whole mesh, see FaceRenderer.setTriangleSubsets
+        int triangles, meshTriangles;
+        double fragments, meshFragments;
+        String golden = "missing";
+        String analytic = "n/a";
+        // with --filter-scale
+        double reducedMillisPerFrame;
+        Map<String, Double> reducedStageMillis;
+        long upsampledPixels;
+        String reducedDiff;
+        // with --compare-backends, the CPU time of FaceRenderer.draw
+        double es2DrawMicros, es3DrawMicros;
+        double es2MillisPerFrame, es3MillisPerFrame;
+        String backendDiff;
+
+        Result(String filter, RenderGraph.Schedule schedule, double millisPerFrame, Map<String, Double> stageMillis) {
+            this.filter = filter;
+            this.schedule = schedule;
+            this.millisPerFrame = millisPerFrame;
+            this.stageMillis = stageMillis;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final HeadlessBenchmark benchmark = new HeadlessBenchmark();
+        benchmark.parseArgs(args);
+        System.exit(benchmark.run() ? 0 : 1);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--width": width = Integer.parseInt(args[++i]); break;
+                case "--height": height = Integer.parseInt(args[++i]); break;
+                case "--frames": frames = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--filter": filterNames.add(args[++i]); break;
+                case "--mesh": meshFile = new File(args[++i]); break;
+                case "--camera": cameraFile = new File(args[++i]); break;
+                case "--goldens": goldenDir = new File(args[++i]); break;
+                case "--update-goldens": updateGoldens = true; break;
+                case "--allow-missing-goldens": allowMissingGoldens = true; break;
+                case "--threshold": threshold = Integer.parseInt(args[++i]); break;
+                case "--max-differing": maxDiffering = Double.parseDouble(args[++i]); break;
+                case "--output": outputDir = new File(args[++i]); break;
+                case "--filter-scale": filterScale = Float.parseFloat(args[++i]); break;
+                case "--all-triangles": triangleSubsets = false; break;
+                case "--compare-backends": compareBackends = true; break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+    }
+
+    private FaceMeshFixture loadMesh() throws IOException {
+        if (meshFile != null) {
+            try (InputStream in = new FileInputStream(meshFile)) {
+                return FaceMeshFixture.readObj(in);
+            }
+        }
+        return FaceMeshFixture.loadDefault();
+    }
+
+    private boolean run() throws IOException, InterruptedException {
+        final FaceMeshFixture mesh = loadMesh();
+        final BufferedImage cameraImage = cameraFile != null
+                ? ImageIO.read(cameraFile)
+                : SyntheticCameraImage.create(480, 640);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) throw new IOException("cannot create " + outputDir);
+        if (updateGoldens && !goldenDir.isDirectory() && !goldenDir.mkdirs()) {
+            throw new IOException("cannot create " + goldenDir);
+        }
+
+        final List<Result> results = new ArrayList<>();
+        boolean passed = true;
+        final ByteBuffer readback = BufferUtils.createByteBuffer(width * height * 4);
+        final ByteBuffer cameraRgba = GlUtil.toRgba(cameraImage);
+
+        try (EglPbufferContext ignored = new EglPbufferContext(width, height)) {
+            checkGoldenRenderer(glGetString(GL_RENDERER) + ", " + glGetString(GL_VERSION));
+            final HeadlessScene scene = createScene(false, 1, mesh, cameraImage, cameraRgba);
+            final HeadlessScene reducedScene = filterScale < 1
+                    ? createScene(false, filterScale, mesh, cameraImage, cameraRgba) : null;
+            try {
+                for (String name : FaceRenderer.FILTER_NAMES) {
+                    if (!filterNames.isEmpty() && !filterNames.contains(name)) continue;
+                    final FaceRenderer renderer = scene.createFilter(name);
+                    final Result result = new Result(name, scene.getPipeline().getSchedule(renderer),
+                            measure(scene, renderer), getStageMillis(scene, renderer));
+                    if (renderer.needsFaceMapper()) {
+                        result.faceCoverage = (float) scene.getFaceMapper().getFaceCoverage().getMean();
+                    }
+                    result.triangles = renderer.getDrawnTriangleCount();
+                    result.meshTriangles = scene.getMeshTriangleCount();
+                    result.fragments = scene.getFilterFragments(renderer, false);
+                    result.meshFragments = scene.getFilterFragments(renderer, true);
+
+                    // the last frame with all face textures scattered so far, for stable images
+                    scene.awaitFaceTextures();
+                    scene.renderFrame(renderer);
+                    final BufferedImage image = GlUtil.readFramebuffer(width, height, readback);
+                    ImageIO.write(image, "png", new File(outputDir, name + ".png"));
+                    passed &= checkGolden(name, image, result);
+                    passed &= checkAnalytic(scene, name, image, readback, result);
+                    if (reducedScene != null) measureReduced(reducedScene, name, image, readback, result);
+                    results.add(result);
+                }
+            } finally {
+                scene.release();
+                if (reducedScene != null) reducedScene.release();
+            }
+        }
+        if (compareBackends) passed &= compareBackends(mesh, cameraImage, cameraRgba, readback, results);
+
+        report(results);
+        return passed;
+    }
+
+    private HeadlessScene createScene(boolean es3, float scale, FaceMeshFixture mesh, BufferedImage cameraImage,
+                                      ByteBuffer cameraRgba) throws IOException {
+        final HeadlessScene scene = new HeadlessScene(width, height, es3, scale);
+        scene.setTriangleSubsets(triangleSubsets);
+        scene.createOnGlThread(mesh);
+        scene.setCameraImage(cameraRgba, cameraImage.getWidth(), cameraImage.getHeight());
+        return scene;
+    }
+
+    /** Milliseconds per frame after the warm-up frames */
+    private double measure(HeadlessScene scene, FaceRenderer renderer) {
+        for (int i = 0; i < warmup; i++) scene.renderFrame(renderer);
+        glFinish();
+        final long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) scene.renderFrame(renderer);
+        glFinish();
+        return (System.nanoTime() - start) * 1e-6 / frames;
+    }
+
+    /**
+     * Milliseconds per frame of each pass the schedule of the filter runs, with the GPU finished
+     * between the passes, see {@link FramePipeline#setFinishPasses}
+     */
+    private Map<String, Double> getStageMillis(HeadlessScene scene, FaceRenderer renderer) {
+        final FramePipeline<HeadlessFace> pipeline = scene.getPipeline();
+        final List<String> passNames = pipeline.getSchedule(renderer).getPassNames();
+        pipeline.setFinishPasses(true);
+        // fills the stats windows of the passes
+        for (int i = 0; i < Math.max(frames, HeadlessScene.STATS_WINDOW); i++) scene.renderFrame(renderer);
+        pipeline.setFinishPasses(false);
+
+        final Map<String, Double> stageMillis = new LinkedHashMap<>();
+        for (FramePipeline.TimedPass pass : pipeline.getTimedPasses()) {
+            if (passNames.contains(pass.getName())) stageMillis.put(pass.getName(), pass.getMicros().getMean() * 1e-3);
+        }
+        return stageMillis;
+    }
+
+    /**
+     * The goldens are only comparable on the rasterizer they were recorded on, whose name and
+     * version are stored with them
+     */
+    private void checkGoldenRenderer(String renderer) throws IOException {
+        final File file = new File(goldenDir, "renderer.txt");
+        if (updateGoldens) {
+            try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+                out.println(renderer);
+            }
+        } else if (file.exists()) {
+            final String recorded = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            if (!recorded.equals(renderer)) {
+                System.err.println("warning: goldens recorded on " + recorded + ", running on " + renderer);
+            }
+        }
+    }
+
+    private boolean checkGolden(String name, BufferedImage image, Result result) throws IOException {
+        final File golden = new File(goldenDir, name + ".png");
+        if (updateGoldens) {
+            ImageIO.write(image, "png", golden);
+            result.golden = "updated";
+            return true;
+        }
+        if (!golden.exists()) {
+            // record it with --update-goldens
+            result.golden = allowMissingGoldens ? "missing" : "FAILED (missing)";
+            return allowMissingGoldens;
+        }
+        final ImageDiff diff = ImageDiff.compare(ImageIO.read(golden), image, threshold);
+        final boolean ok = diff.differingFraction <= maxDiffering;
+        result.golden = String.format(Locale.ROOT, "%s (max diff %d, %.4f%% of pixels over %d)",
+                ok ? "ok" : "FAILED", diff.maxChannelDifference, diff.differingFraction * 100, threshold);
+        if (!ok) ImageIO.write(diff.visualization, "png", new File(outputDir, name + "-diff.png"));
+        return ok;
+    }
+
+    /**
+     * Renders the analytic version of a masked filter from the same face texture and compares it
+     * to the baked version. Passes for filters without a baked mask.
+     */
+    private boolean checkAnalytic(HeadlessScene scene, String name, BufferedImage baked,
+                                  ByteBuffer readback, Result result) throws IOException, InterruptedException {
+        final FaceRenderer analytic = scene.createAnalyticFilter(name);
+        if (analytic == null) return true;
+        scene.awaitFaceTextures();
+        scene.renderFrame(analytic);
+        final BufferedImage image = GlUtil.readFramebuffer(width, height, readback);
+
+        final ImageDiff diff = ImageDiff.compare(image, baked, threshold);
+        final boolean ok = diff.differingFraction <= maxDiffering;
+        result.analytic = String.format(Locale.ROOT, "%s (max diff %d, %.4f%% of pixels over %d)",
+                ok ? "ok" : "FAILED", diff.maxChannelDifference, diff.differingFraction * 100, threshold);
+        if (!ok) ImageIO.write(diff.visualization, "png", new File(outputDir, name + "-analytic-diff.png"));
+        return ok;
+    }
+
+    /**
+     * Renders the filter at the reduced resolution of --filter-scale and compares it to the full
+     * resolution one. Informative only, the upsampled image is expected to differ.
+     */
+    private void measureReduced(HeadlessScene scene, String name, BufferedImage fullResolution,
+                                ByteBuffer readback, Result result) throws IOException, InterruptedException {
+        final FaceRenderer renderer = scene.createFilter(name);
+        result.reducedMillisPerFrame = measure(scene, renderer);
+        result.reducedStageMillis = getStageMillis(scene, renderer);
+        result.upsampledPixels = Math.round(scene.getUpsampledPixels());
+
+        scene.awaitFaceTextures();
+        scene.renderFrame(renderer);
+        final BufferedImage image = GlUtil.readFramebuffer(width, height, readback);
+        ImageIO.write(image, "png", new File(outputDir, name + "-reduced.png"));
+        final ImageDiff diff = ImageDiff.compare(fullResolution, image, threshold);
+        result.reducedDiff = String.format(Locale.ROOT, "max diff %d, %.4f%% of pixels over %d",
+                diff.maxChannelDifference, diff.differingFraction * 100, threshold);
+    }
+
+    /**
+     * Renders each filter with the OpenGL ES 2.0 backend and the OpenGL ES 3.0 one (vertex array
+     * objects and the camera uniform buffer), in the same OpenGL ES 3 context so that only the
+     * backend differs, and compares the CPU time of the filter draw calls and the images, which
+     * must match
+     */
+    private boolean compareBackends(FaceMeshFixture mesh, BufferedImage cameraImage, ByteBuffer cameraRgba,
+                                    ByteBuffer readback, List<Result> results)
+            throws IOException, InterruptedException {
+        boolean passed = true;
+        try (EglPbufferContext ignored = new EglPbufferContext(width, height, 3)) {
+            final HeadlessScene es2 = createScene(false, 1, mesh, cameraImage, cameraRgba);
+            final HeadlessScene es3 = createScene(true, 1, mesh, cameraImage, cameraRgba);
+            try {
+                for (Result result : results) {
+                    final FaceRenderer es2Renderer = es2.createFilter(result.filter);
+                    final FaceRenderer es3Renderer = es3.createFilter(result.filter);
+                    result.es2MillisPerFrame = measure(es2, es2Renderer);
+                    result.es2DrawMicros = es2.getPipeline().getFilterDrawMicros().getMean();
+                    result.es3MillisPerFrame = measure(es3, es3Renderer);
+                    result.es3DrawMicros = es3.getPipeline().getFilterDrawMicros().getMean();
+
+                    es2.awaitFaceTextures();
+                    es2.renderFrame(es2Renderer);
+                    final BufferedImage es2Image = GlUtil.readFramebuffer(width, height, readback);
+                    es3.awaitFaceTextures();
+                    es3.renderFrame(es3Renderer);
+                    final BufferedImage es3Image = GlUtil.readFramebuffer(width, height, readback);
+                    final ImageDiff diff = ImageDiff.compare(es2Image, es3Image, threshold);
+                    final boolean ok = diff.differingFraction <= maxDiffering;
+                    result.backendDiff = String.format(Locale.ROOT, "%s (max diff %d, %.4f%% of pixels over %d)",
+                            ok ? "ok" : "FAILED", diff.maxChannelDifference, diff.differingFraction * 100, threshold);
+                    if (!ok) {
+                        ImageIO.write(diff.visualization, "png", new File(outputDir, result.filter + "-es3-diff.png"));
+                    }
+                    passed &= ok;
+                }
+            } finally {
+                es2.release();
+                es3.release();
+            }
+        }
+        return passed;
+    }
+
+    private static double stage(Map<String, Double> stageMillis, String name) {
+        final Double millis = stageMillis.get(name);
+        return millis != null ? millis : 0;
+    }
+
+    private void report(List<Result> results) throws IOException {
+        for (Result result : results) {
+            System.out.println(String.format(Locale.ROOT, "%s: %.2f ms/frame, golden %s, analytic %s",
+                    result.filter, result.millisPerFrame, result.golden, result.analytic));
+            System.out.println("  " + result.schedule);
+            if (result.faceCoverage > 0) {
+                System.out.println(String.format(Locale.ROOT,
+                        "  background restore: stencil-masked to %.1f%% of the screen", result.faceCoverage * 100));
+            }
+            if (result.triangles < result.meshTriangles) {
+                System.out.println(String.format(Locale.ROOT,
+                        "  triangle subset: %d of %d triangles (-%.0f%%), %.0fk of %.0fk fragments (-%.0f%%)",
+                        result.triangles, result.meshTriangles, 100.0 * (1 - result.triangles / (double) result.meshTriangles),
+                        result.fragments * 1e-3, result.meshFragments * 1e-3,
+                        result.meshFragments > 0 ? 100.0 * (1 - result.fragments / result.meshFragments) : 0.0));
+            }
+            for (Map.Entry<String, Double> stage : result.stageMillis.entrySet()) {
+                System.out.println(String.format(Locale.ROOT, "  %-18s %8.2f ms", stage.getKey(), stage.getValue()));
+            }
+            if (result.reducedStageMillis != null) {
+                System.out.println(String.format(Locale.ROOT,
+                        "  filter at %.0f%% resolution: %.2f ms/frame, filter %.2f ms + upsample %.2f ms "
+                                + "(%.0fk pixels) vs. %.2f ms at full resolution, %s",
+                        filterScale * 100, result.reducedMillisPerFrame,
+                        stage(result.reducedStageMillis, "filter"), stage(result.reducedStageMillis, "filterUpsample"),
+                        result.upsampledPixels * 1e-3, stage(result.stageMillis, "filter"), result.reducedDiff));
+            }
+            if (result.backendDiff != null) {
+                System.out.println(String.format(Locale.ROOT,
+                        "  filter draw calls: ES 2.0 %.1f us (%.2f ms/frame), ES 3.0 %.1f us (%.2f ms/frame), image %s",
+                        result.es2DrawMicros, result.es2MillisPerFrame, result.es3DrawMicros, result.es3MillisPerFrame,
+                        result.backendDiff));
+            }
+        }
+
+        try (PrintWriter json = new PrintWriter(new File(outputDir, "results.json"), "UTF-8")) {
+            json.println("{");
+            json.println(String.format(Locale.ROOT, "  \"width\": %d, \"height\": %d, \"frames\": %d,", width, height, frames));
+            json.println("  \"filters\": [");
+            for (int i = 0; i < results.size(); i++) {
+                final Result result = results.get(i);
+                final StringBuilder stageJson = new StringBuilder();
+                for (Map.Entry<String, Double> stage : result.stageMillis.entrySet()) {
+                    if (stageJson.length() > 0) stageJson.append(", ");
+                    stageJson.append(String.format(Locale.ROOT, "\"%s\": %.4f", stage.getKey(), stage.getValue()));
+                }
+                final String reducedJson = result.reducedStageMillis == null ? "" : String.format(Locale.ROOT,
+                        ", \"reduced\": {\"scale\": %.3f, \"msPerFrame\": %.4f, \"filter\": %.4f, \"filterUpsample\": %.4f, \"upsampledPixels\": %d, \"diff\": \"%s\"}",
+                        filterScale, result.reducedMillisPerFrame, stage(result.reducedStageMillis, "filter"),
+                        stage(result.reducedStageMillis, "filterUpsample"), result.upsampledPixels, result.reducedDiff);
+                final String backendJson = result.backendDiff == null ? "" : String.format(Locale.ROOT,
+                        ", \"backends\": {\"es2DrawUs\": %.3f, \"es3DrawUs\": %.3f, \"es2MsPerFrame\": %.4f, \"es3MsPerFrame\": %.4f, \"diff\": \"%s\"}",
+                        result.es2DrawMicros, result.es3DrawMicros, result.es2MillisPerFrame, result.es3MillisPerFrame,
+                        result.backendDiff);
+                json.println(String.format(Locale.ROOT,
+                        "    {\"filter\": \"%s\", \"msPerFrame\": %.4f, \"culledPasses\": %d, \"restoreFill\": %.4f, \"triangles\": %d, \"meshTriangles\": %d, \"fragments\": %.0f, \"meshFragments\": %.0f, \"stages\": {%s}, \"golden\": \"%s\", \"analytic\": \"%s\"%s%s}%s",
+                        result.filter, result.millisPerFrame, result.schedule.getCulledPassNames().size(),
+                        result.faceCoverage > 0 ? result.faceCoverage : 1.0, result.triangles, result.meshTriangles,
+                        result.fragments, result.meshFragments, stageJson, result.golden, result.analytic,
+                        reducedJson, backendJson, i + 1 < results.size() ? "," : ""));
+            }
+            json.println("  ]");
+            json.println("}");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package xyz.osei.creepyarfaces.headless;
+
+import java.nio.FloatBuffer;
+
+import xyz.osei.creepyarfaces.CameraFrame;
+import xyz.osei.creepyarfaces.YuvPlanes;
+
+/**
+ * A camera frame of the headless scene, in place of ARCore's Frame. The image is in the 2D
+ * texture of the BackgroundRenderer, stretched over the whole screen, and there is no CPU image.
+ */
+final class HeadlessCameraFrame implements CameraFrame {
+    // image rows are stored top-first, see GlUtil.toRgba
+    private static final float[] QUAD_TEX_COORDS = { 0, 1, 0, 0, 1, 1, 1, 0 };
+    private static final long FRAME_INTERVAL_NANOS = 33_333_333;
+
+    private long timestamp;
+    private boolean displayGeometryChanged = true;
+
+    /**
+     * Advances to the next camera frame. The face mesh is uploaded again in each frame, like in
+     * the app, since it is only skipped for the same face in the same frame.
+     */
+    void nextFrame() {
+        timestamp += FRAME_INTERVAL_NANOS;
+    }
+
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public boolean hasDisplayGeometryChanged() {
+        return displayGeometryChanged;
+    }
+
+    @Override
+    public void transformToTexture(FloatBuffer ndc, FloatBuffer texCoords) {
+        texCoords.clear();
+        texCoords.put(QUAD_TEX_COORDS).flip();
+        displayGeometryChanged = false;
+    }
+
+    @Override
+    public void transformToImagePixels(FloatBuffer ndc, FloatBuffer imagePixels) {
+        throw new UnsupportedOperationException("no CPU camera image");
+    }
+
+    @Override
+    public boolean acquireCameraImage(YuvPlanes planes) {
+        return false;
+    }
+
+    @Override
+    public void releaseCameraImage() {}
+}
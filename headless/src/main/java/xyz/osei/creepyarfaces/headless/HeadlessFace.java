@@ -0,0 +1,118 @@
+package xyz.osei.creepyarfaces.headless;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import xyz.osei.creepyarfaces.FaceMesh;
+import xyz.osei.creepyarfaces.MatrixMath;
+
+/**
+ * A face of the headless scene: a {@link FaceMeshFixture} at a given pose, in place of ARCore's
+ * AugmentedFace. The mesh is copied to direct buffers like the ones AugmentedFace returns.
+ */
+final class HeadlessFace {
+    /** The mesh and pose of the face, for the app's classes */
+    static final FaceMesh<HeadlessFace> MESH = new FaceMesh<HeadlessFace>() {
+        @Override
+        public FloatBuffer getVertices(HeadlessFace face) {
+            return face.vertices;
+        }
+
+        @Override
+        public FloatBuffer getTextureCoordinates(HeadlessFace face) {
+            return face.texCoords;
+        }
+
+        @Override
+        public FloatBuffer getNormals(HeadlessFace face) {
+            return face.normals;
+        }
+
+        @Override
+        public ShortBuffer getTriangleIndices(HeadlessFace face) {
+            return face.indices;
+        }
+
+        @Override
+        public void getPoseMatrix(HeadlessFace face, float[] matrix) {
+            System.arraycopy(face.pose, 0, matrix, 0, 16);
+        }
+
+        @Override
+        public void getTranslation(HeadlessFace face, float[] translation) {
+            System.arraycopy(face.pose, 12, translation, 0, 3);
+        }
+
+        @Override
+        public void getRotation(HeadlessFace face, float[] quaternion) {
+            toQuaternion(face.pose, quaternion);
+        }
+    };
+
+    private FloatBuffer vertices, texCoords, normals;
+    private ShortBuffer indices;
+    private final float[] pose = new float[16];
+
+    HeadlessFace() {
+        MatrixMath.setIdentity(pose);
+    }
+
+    /** Replaces the mesh. Allocates only if the mesh grew. */
+    void setMesh(FaceMeshFixture mesh) {
+        vertices = copy(mesh.vertices, vertices);
+        texCoords = copy(mesh.texCoords, texCoords);
+        normals = copy(mesh.normals, normals);
+        if (indices == null || indices.capacity() < mesh.indices.length) {
+            indices = BufferUtils.createShortBuffer(mesh.indices.length);
+        }
+        indices.clear();
+        indices.put(mesh.indices).flip();
+    }
+
+    private static FloatBuffer copy(float[] values, FloatBuffer buffer) {
+        if (buffer == null || buffer.capacity() < values.length) {
+            buffer = BufferUtils.createFloatBuffer(values.length);
+        }
+        buffer.clear();
+        buffer.put(values).flip();
+        return buffer;
+    }
+
+    /** Sets the pose, a column-major model matrix in camera coordinates without scaling */
+    void setPose(float[] pose) {
+        System.arraycopy(pose, 0, this.pose, 0, 16);
+    }
+
+    /** The rotation of a column-major matrix as a quaternion (x, y, z, w) */
+    static void toQuaternion(float[] m, float[] q) {
+        final float m00 = m[0], m11 = m[5], m22 = m[10];
+        final float trace = m00 + m11 + m22;
+        if (trace > 0) {
+            final float s = (float) Math.sqrt(trace + 1) * 2;
+            q[3] = s / 4;
+            q[0] = (m[6] - m[9]) / s;
+            q[1] = (m[8] - m[2]) / s;
+            q[2] = (m[1] - m[4]) / s;
+        } else if (m00 > m11 && m00 > m22) {
+            final float s = (float) Math.sqrt(1 + m00 - m11 - m22) * 2;
+            q[3] = (m[6] - m[9]) / s;
+            q[0] = s / 4;
+            q[1] = (m[4] + m[1]) / s;
+            q[2] = (m[8] + m[2]) / s;
+        } else if (m11 > m22) {
+            final float s = (float) Math.sqrt(1 + m11 - m00 - m22) * 2;
+            q[3] = (m[8] - m[2]) / s;
+            q[0] = (m[4] + m[1]) / s;
+            q[1] = s / 4;
+            q[2] = (m[9] + m[6]) / s;
+        } else {
+            final float s = (float) Math.sqrt(1 + m22 - m00 - m11) * 2;
+            q[3] = (m[1] - m[4]) / s;
+            q[0] = (m[8] + m[2]) / s;
+            q[1] = (m[9] + m[6]) / s;
+            q[2] = s / 4;
+        }
+    }
+}
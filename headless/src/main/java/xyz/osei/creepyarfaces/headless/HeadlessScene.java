@@ -0,0 +1,299 @@
+package xyz.osei.creepyarfaces.headless;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import xyz.osei.creepyarfaces.BackgroundRenderer;
+import xyz.osei.creepyarfaces.CameraUniforms;
+import xyz.osei.creepyarfaces.FaceAtlasPushPull;
+import xyz.osei.creepyarfaces.FaceGeometry;
+import xyz.osei.creepyarfaces.FaceMapper;
+import xyz.osei.creepyarfaces.FaceRenderer;
+import xyz.osei.creepyarfaces.FaceScheduler;
+import xyz.osei.creepyarfaces.FilterUpsampler;
+import xyz.osei.creepyarfaces.FramePipeline;
+import xyz.osei.creepyarfaces.Gl;
+import xyz.osei.creepyarfaces.MatrixMath;
+import xyz.osei.creepyarfaces.MeshProjection;
+import xyz.osei.creepyarfaces.ShaderUtil;
+import xyz.osei.creepyarfaces.StartupTimeline;
+
+/**
+ * The app's frame pipeline ({@link FramePipeline} with {@link BackgroundRenderer},
+ * {@link FaceMapper} and the {@link FaceRenderer} filters) on the current headless context,
+ * set up like MainActivity. The camera is an image in a regular 2D texture instead of the
+ * external OES texture, and the face is a {@link FaceMeshFixture} at a given pose, by default
+ * facing the camera at {@value #FACE_DISTANCE} m. The face textures are built on the worker
+ * thread like in the app, see {@link #awaitFaceTextures()} for deterministic images. The face
+ * atlas layout is uniform on both backends, so that their images can be compared.
+ */
+final class HeadlessScene {
+    private static final String TAG = HeadlessScene.class.getSimpleName();
+
+    // frames in the stats of the passes
+    static final int STATS_WINDOW = 30;
+    // Face center in camera coordinates (meters)
+    static final float FACE_DISTANCE = 0.35f;
+    private static final float VERTICAL_FOV_DEGREES = 60;
+
+    private final int width, height;
+    private final Gl gl = new LwjglGl();
+    private final ShaderUtil shaders = new ShaderUtil(gl, new ClasspathAssets(), StartupTimeline.Tracer.NONE);
+    private final HeadlessFace face = new HeadlessFace();
+    private final List<HeadlessFace> faces = Collections.singletonList(face);
+    private final HeadlessCameraFrame frame = new HeadlessCameraFrame();
+    private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer(gl);
+    private final FaceGeometry faceGeometry = new FaceGeometry(gl);
+    private final FaceMapper<HeadlessFace> faceMapper = new FaceMapper<>(gl, faceGeometry, HeadlessFace.MESH);
+    // OpenGL ES 3.0 backend, null on OpenGL ES 2.0
+    private final CameraUniforms cameraUniforms;
+    // null if the filter is drawn at full resolution
+    private final FilterUpsampler filterUpsampler;
+    private final FramePipeline<HeadlessFace> pipeline;
+    private boolean triangleSubsets = true;
+    private int cameraWidth, cameraHeight;
+
+    private final FaceScheduler<HeadlessFace> scheduler = new FaceScheduler<>(1);
+    private final FaceScheduler.FaceInfo<HeadlessFace> faceInfo = new FaceScheduler.FaceInfo<HeadlessFace>() {
+        @Override
+        public boolean isTracking(HeadlessFace face) {
+            return true;
+        }
+
+        @Override
+        public float getProjectedArea(HeadlessFace face) {
+            return 1;
+        }
+    };
+
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+    private final float[] poseMatrix = new float[16];
+    private final float[] modelViewMatrix = new float[16];
+    private final float[] modelViewProjectionMatrix = new float[16];
+    private float[] ndc = new float[0];
+
+    /**
+     * @param es3 the OpenGL ES 3.0 backend with vertex array objects and camera uniforms, which
+     *            needs an OpenGL ES 3 context
+     * @param filterScale resolution of the filter relative to the screen, 1 to draw it directly
+     *                    to the screen, see {@link FilterUpsampler}
+     */
+    HeadlessScene(int width, int height, boolean es3, float filterScale) {
+        this.width = width;
+        this.height = height;
+        cameraUniforms = es3 ? new CameraUniforms(gl) : null;
+        filterUpsampler = filterScale < 1 ? new FilterUpsampler(gl, filterScale, STATS_WINDOW) : null;
+        pipeline = new FramePipeline<>(gl, backgroundRenderer, faceGeometry, HeadlessFace.MESH, faceMapper,
+                false, filterUpsampler, STATS_WINDOW);
+        backgroundRenderer.setTexture2D(true);
+        if (cameraUniforms != null) faceMapper.setCameraUniforms(cameraUniforms);
+        faceMapper.setHoleFilling(new FaceAtlasPushPull(gl));
+    }
+
+    /**
+     * Creates the GL objects of the pipeline, like MainActivity.onSurfaceCreated and
+     * onSurfaceChanged. Set the camera image with {@link #setCameraImage} before rendering.
+     */
+    void createOnGlThread(FaceMeshFixture mesh) throws IOException {
+        gl.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
+        backgroundRenderer.createOnGlThread(shaders);
+        faceGeometry.createOnGlThread();
+        if (cameraUniforms != null) cameraUniforms.createOnGlThread();
+        faceMapper.createOnGlThread(shaders);
+        if (filterUpsampler != null) filterUpsampler.createOnGlThread(shaders);
+
+        gl.glViewport(0, 0, width, height);
+        faceMapper.setDimensions(width, height);
+        pipeline.onSurfaceChanged(width, height);
+
+        face.setMesh(mesh);
+        MatrixMath.setIdentity(viewMatrix);
+        perspective(projectionMatrix, VERTICAL_FOV_DEGREES, width / (float) height, 0.1f, 100.0f);
+        final float[] pose = new float[16];
+        MatrixMath.setIdentity(pose);
+        pose[14] = -FACE_DISTANCE;
+        face.setPose(pose);
+        ShaderUtil.checkGLError(gl, TAG, "createOnGlThread");
+    }
+
+    /**
+     * Draws only the triangles on which the mask of the filter can be non-zero, like the app.
+     * Applies to the filters created after this.
+     */
+    void setTriangleSubsets(boolean enabled) {
+        triangleSubsets = enabled;
+    }
+
+    /** Creates the filter with the given name, see {@link FaceRenderer#FILTER_NAMES} */
+    FaceRenderer createFilter(String name) throws IOException {
+        return createOnGlThread(FaceRenderer.create(gl, faceGeometry, name));
+    }
+
+    /** The analytic version of a masked filter, null if the filter is not masked */
+    FaceRenderer createAnalyticFilter(String name) throws IOException {
+        final FaceRenderer renderer = FaceRenderer.createAnalytic(gl, faceGeometry, name);
+        return renderer == null ? null : createOnGlThread(renderer);
+    }
+
+    private FaceRenderer createOnGlThread(FaceRenderer renderer) throws IOException {
+        if (filterUpsampler != null) renderer.setReducedResolution(true);
+        if (cameraUniforms != null) renderer.setCameraUniforms(cameraUniforms);
+        renderer.setTriangleSubsets(triangleSubsets);
+        renderer.createOnGlThread(shaders);
+        return renderer;
+    }
+
+    /**
+     * Replaces the camera image, e.g., with the next frame of a recording
+     *
+     * @param rgba pixels with the first row at the top, see {@link GlUtil#toRgba}
+     */
+    void setCameraImage(ByteBuffer rgba, int imageWidth, int imageHeight) {
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, backgroundRenderer.getTextureId());
+        gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, Gl.GL_RGBA, imageWidth, imageHeight, 0,
+                Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, rgba);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        cameraWidth = imageWidth;
+        cameraHeight = imageHeight;
+        ShaderUtil.checkGLError(gl, TAG, "setCameraImage");
+    }
+
+    /** Replaces the face mesh, see {@link HeadlessFace#setMesh} */
+    void setFaceMesh(FaceMeshFixture mesh) {
+        face.setMesh(mesh);
+    }
+
+    /**
+     * Sets the face pose, a column-major model matrix in camera coordinates (meters, the camera
+     * looking towards -z)
+     */
+    void setFacePose(float[] pose) {
+        face.setPose(pose);
+    }
+
+    /** Renders a frame of the camera image with the given filter, mapping the face as needed */
+    void renderFrame(FaceRenderer renderer) {
+        frame.nextFrame();
+        gl.glClear(Gl.GL_COLOR_BUFFER_BIT | Gl.GL_DEPTH_BUFFER_BIT | Gl.GL_STENCIL_BUFFER_BIT);
+        if (cameraUniforms != null) cameraUniforms.update(viewMatrix, projectionMatrix);
+        scheduler.update(faces, faceInfo);
+        pipeline.render(frame, scheduler, renderer, viewMatrix, projectionMatrix, true);
+        ShaderUtil.checkGLError(gl, TAG, "renderFrame");
+    }
+
+    /**
+     * Waits for the face textures of the frames rendered so far, so that the next frame is drawn
+     * with them
+     */
+    void awaitFaceTextures() throws InterruptedException {
+        faceMapper.awaitFaceTextures();
+    }
+
+    /** Draws the camera image over the screen, like the start of the face mapping pass */
+    void drawCameraImage() {
+        frame.nextFrame();
+        gl.glClear(Gl.GL_COLOR_BUFFER_BIT | Gl.GL_DEPTH_BUFFER_BIT | Gl.GL_STENCIL_BUFFER_BIT);
+        backgroundRenderer.draw(frame);
+    }
+
+    /**
+     * Draws the UV image of the face over the screen, like the face mapping pass after
+     * {@link #drawCameraImage()}, see {@link FaceMapper#drawUvImage}
+     */
+    void drawUvImage() {
+        faceGeometry.setToFace(face, HeadlessFace.MESH, frame.getTimestamp());
+        HeadlessFace.MESH.getPoseMatrix(face, poseMatrix);
+        faceMapper.updateModelMatrix(poseMatrix);
+        if (cameraUniforms != null) cameraUniforms.update(viewMatrix, projectionMatrix);
+        faceMapper.drawUvImage(viewMatrix, projectionMatrix);
+        ShaderUtil.checkGLError(gl, TAG, "drawUvImage");
+    }
+
+    /** Reads the screen, bottom row first */
+    void readPixels(ByteBuffer rgba) {
+        rgba.clear();
+        gl.glReadPixels(0, 0, width, height, Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, rgba);
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getCameraWidth() {
+        return cameraWidth;
+    }
+
+    int getCameraHeight() {
+        return cameraHeight;
+    }
+
+    Gl getGl() {
+        return gl;
+    }
+
+    ShaderUtil getShaders() {
+        return shaders;
+    }
+
+    FramePipeline<HeadlessFace> getPipeline() {
+        return pipeline;
+    }
+
+    FaceMapper<HeadlessFace> getFaceMapper() {
+        return faceMapper;
+    }
+
+    /** Triangles in the whole face mesh, see {@link FaceRenderer#getDrawnTriangleCount()} */
+    int getMeshTriangleCount() {
+        return faceGeometry.getTriangleCount(FaceGeometry.ALL_TRIANGLES);
+    }
+
+    /**
+     * Fragments the filter was drawn on in the last frame at full resolution, from the screen
+     * area of its triangles. With all triangles of the mesh if {@code allTriangles}, which is
+     * what the filter draws without the triangle subsets.
+     */
+    double getFilterFragments(FaceRenderer renderer, boolean allTriangles) {
+        MatrixMath.composeModelViewProjection(viewMatrix, projectionMatrix, renderer.getModelMatrix(),
+                modelViewMatrix, modelViewProjectionMatrix);
+        final int vertexCount = HeadlessFace.MESH.getVertices(face).limit() / 3;
+        if (ndc.length < vertexCount * 2) ndc = new float[vertexCount * 2];
+        MeshProjection.projectToNdc(modelViewProjectionMatrix, HeadlessFace.MESH.getVertices(face), ndc);
+        final ShortBuffer indices = allTriangles
+                ? faceGeometry.getTriangleIndices(FaceGeometry.ALL_TRIANGLES)
+                : renderer.getDrawnTriangleIndices();
+        return MeshProjection.clockwiseArea(ndc, indices, width, height);
+    }
+
+    /**
+     * Pixels in the projected bounds of the face in the upsampling passes, the upper bound of the
+     * fragments the filter shader runs on at full resolution. 0 at full resolution.
+     */
+    double getUpsampledPixels() {
+        return filterUpsampler == null ? 0 : filterUpsampler.getBoundsPixels().getMean();
+    }
+
+    /** Stops the face texture worker thread */
+    void release() {
+        faceMapper.release();
+    }
+
+    /** Like android.opengl.Matrix.perspectiveM */
+    private static void perspective(float[] m, float fovyDegrees, float aspect, float near, float far) {
+        final float f = 1.0f / (float) Math.tan(Math.toRadians(fovyDegrees) / 2.0);
+        java.util.Arrays.fill(m, 0);
+        m[0] = f / aspect;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1;
+        m[14] = 2 * far * near / (near - far);
+    }
+}
@@ -0,0 +1,52 @@
+package xyz.osei.creepyarfaces.headless;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Per-pixel comparison of a rendered image against a golden image. Small differences are
+ * tolerated, since rasterization and filtering details differ between drivers and versions.
+ */
+final class ImageDiff {
+    /** Largest difference of any channel in any pixel */
+    final int maxChannelDifference;
+    /** Fraction of pixels where some channel differs by more than the threshold */
+    final double differingFraction;
+    /** The differing pixels in red over a dimmed copy of the actual image */
+    final BufferedImage visualization;
+
+    private ImageDiff(int maxChannelDifference, double differingFraction, BufferedImage visualization) {
+        this.maxChannelDifference = maxChannelDifference;
+        this.differingFraction = differingFraction;
+        this.visualization = visualization;
+    }
+
+    static ImageDiff compare(BufferedImage expected, BufferedImage actual, int channelThreshold) {
+        if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight()) {
+            throw new IllegalArgumentException("size mismatch: expected "
+                    + expected.getWidth() + "x" + expected.getHeight() + ", got "
+                    + actual.getWidth() + "x" + actual.getHeight());
+        }
+        final int w = actual.getWidth(), h = actual.getHeight();
+        final BufferedImage visualization = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int maxDifference = 0;
+        long differing = 0;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                final int a = expected.getRGB(x, y), b = actual.getRGB(x, y);
+                int pixelDifference = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    pixelDifference = Math.max(pixelDifference,
+                            Math.abs(((a >>> shift) & 0xff) - ((b >>> shift) & 0xff)));
+                }
+                maxDifference = Math.max(maxDifference, pixelDifference);
+                if (pixelDifference > channelThreshold) {
+                    differing++;
+                    visualization.setRGB(x, y, 0xff0000);
+                } else {
+                    visualization.setRGB(x, y, (b >> 2) & 0x3f3f3f);
+                }
+            }
+        }
+        return new ImageDiff(maxDifference, differing / (double) (w * h), visualization);
+    }
+}
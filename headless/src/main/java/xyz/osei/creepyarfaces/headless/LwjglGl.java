@@ -0,0 +1,424 @@
+package xyz.osei.creepyarfaces.headless;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengles.GLES20;
+import org.lwjgl.opengles.GLES30;
+import org.lwjgl.opengles.GLES31;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import xyz.osei.creepyarfaces.Gl;
+
+/**
+ * {@link Gl} on LWJGL's OpenGL ES bindings, so that the headless tools draw with the app's
+ * renderers. Like Android's bindings, uploads also take heap buffers, which are copied to direct
+ * memory first. Buffers the GL keeps a pointer to (vertex attributes) and readback targets must
+ * be direct. Not thread-safe, like the context it is used on.
+ */
+final class LwjglGl implements Gl {
+    // scratch space for the array variants and heap buffer uploads, grown as needed
+    private IntBuffer ints = BufferUtils.createIntBuffer(16);
+    private FloatBuffer floats = BufferUtils.createFloatBuffer(16);
+    private ByteBuffer heapCopy = BufferUtils.createByteBuffer(0);
+
+    private static long address(Buffer buffer) {
+        return buffer == null ? 0 : MemoryUtil.memAddress(buffer);
+    }
+
+    private static long directAddress(Buffer buffer, String what) {
+        if (buffer != null && !buffer.isDirect()) {
+            throw new IllegalArgumentException(what + " must be a direct buffer");
+        }
+        return address(buffer);
+    }
+
+    /** Address of the remaining elements of the buffer, copied to direct memory if needed */
+    private long uploadAddress(Buffer data) {
+        if (data == null || data.isDirect()) return address(data);
+        final int bytes;
+        if (data instanceof ByteBuffer) bytes = data.remaining();
+        else if (data instanceof ShortBuffer) bytes = 2 * data.remaining();
+        else if (data instanceof IntBuffer || data instanceof FloatBuffer) bytes = 4 * data.remaining();
+        else throw new IllegalArgumentException("unsupported buffer " + data.getClass().getName());
+
+        if (heapCopy.capacity() < bytes) heapCopy = BufferUtils.createByteBuffer(bytes);
+        heapCopy.clear();
+        if (data instanceof ByteBuffer) heapCopy.put(((ByteBuffer) data).duplicate());
+        else if (data instanceof ShortBuffer) heapCopy.asShortBuffer().put(((ShortBuffer) data).duplicate());
+        else if (data instanceof IntBuffer) heapCopy.asIntBuffer().put(((IntBuffer) data).duplicate());
+        else heapCopy.asFloatBuffer().put(((FloatBuffer) data).duplicate());
+        return MemoryUtil.memAddress(heapCopy, 0);
+    }
+
+    private IntBuffer ints(int count) {
+        if (ints.capacity() < count) ints = BufferUtils.createIntBuffer(count);
+        ints.clear();
+        return ints;
+    }
+
+    private long floats(float[] values, int offset, int count) {
+        if (floats.capacity() < count) floats = BufferUtils.createFloatBuffer(count);
+        floats.clear();
+        floats.put(values, offset, count).flip();
+        return MemoryUtil.memAddress(floats);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        GLES20.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        GLES20.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        GLES20.glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        GLES20.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        GLES20.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+        GLES20.glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        GLES20.nglBufferData(target, size, uploadAddress(data), usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        GLES20.nglBufferSubData(target, offset, size, uploadAddress(data));
+    }
+
+    @Override
+    public void glClear(int mask) {
+        GLES20.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        GLES20.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        GLES20.glCompileShader(shader);
+    }
+
+    @Override
+    public void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height) {
+        GLES20.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width, height);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return GLES20.glCreateProgram();
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return GLES20.glCreateShader(type);
+    }
+
+    @Override
+    public void glCullFace(int mode) {
+        GLES20.glCullFace(mode);
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        for (int i = 0; i < n; i++) GLES20.glDeleteFramebuffers(framebuffers[offset + i]);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        GLES20.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        for (int i = 0; i < n; i++) GLES20.glDeleteTextures(textures[offset + i]);
+    }
+
+    @Override
+    public void glDepthMask(boolean flag) {
+        GLES20.glDepthMask(flag);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        GLES20.glDisable(cap);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        GLES20.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        GLES20.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        GLES20.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        GLES20.glEnable(cap);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        GLES20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glFinish() {
+        GLES20.glFinish();
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+        GLES20.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        for (int i = 0; i < n; i++) buffers[offset + i] = GLES20.glGenBuffers();
+    }
+
+    @Override
+    public void glGenerateMipmap(int target) {
+        GLES20.glGenerateMipmap(target);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        for (int i = 0; i < n; i++) framebuffers[offset + i] = GLES20.glGenFramebuffers();
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        for (int i = 0; i < n; i++) textures[offset + i] = GLES20.glGenTextures();
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return GLES20.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetError() {
+        return GLES20.glGetError();
+    }
+
+    @Override
+    public void glGetFloatv(int pname, float[] params, int offset) {
+        // room for the largest state the renderers query, e.g., GL_COLOR_CLEAR_VALUE
+        if (floats.capacity() < 16) floats = BufferUtils.createFloatBuffer(16);
+        floats.clear();
+        GLES20.nglGetFloatv(pname, MemoryUtil.memAddress(floats));
+        floats.get(params, offset, Math.min(floats.capacity(), params.length - offset));
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        final IntBuffer values = ints(16);
+        GLES20.nglGetIntegerv(pname, MemoryUtil.memAddress(values));
+        values.get(params, offset, Math.min(values.capacity(), params.length - offset));
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return GLES20.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        params[offset] = GLES20.glGetProgrami(program, pname);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return GLES20.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        params[offset] = GLES20.glGetShaderi(shader, pname);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        GLES20.glLinkProgram(program);
+    }
+
+    @Override
+    public void glPixelStorei(int pname, int param) {
+        GLES20.glPixelStorei(pname, param);
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+        GLES20.nglReadPixels(x, y, width, height, format, type, directAddress(pixels, "glReadPixels target"));
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        GLES20.glScissor(x, y, width, height);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        GLES20.glShaderSource(shader, string);
+    }
+
+    @Override
+    public void glStencilFunc(int func, int ref, int mask) {
+        GLES20.glStencilFunc(func, ref, mask);
+    }
+
+    @Override
+    public void glStencilOp(int fail, int zfail, int zpass) {
+        GLES20.glStencilOp(fail, zfail, zpass);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                             int format, int type, Buffer pixels) {
+        GLES20.nglTexImage2D(target, level, internalformat, width, height, border, format, type,
+                uploadAddress(pixels));
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        GLES20.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        GLES20.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        GLES20.glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void glUniform2fv(int location, int count, float[] v, int offset) {
+        GLES20.nglUniform2fv(location, count, floats(v, offset, 2 * count));
+    }
+
+    @Override
+    public void glUniform2i(int location, int x, int y) {
+        GLES20.glUniform2i(location, x, y);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        GLES20.nglUniform4fv(location, count, floats(v, offset, 4 * count));
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        GLES20.nglUniformMatrix4fv(location, count, transpose, floats(value, offset, 16 * count));
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        GLES20.glUseProgram(program);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer pointer) {
+        GLES20.nglVertexAttribPointer(index, size, type, normalized, stride,
+                directAddress(pointer, "client-side vertex array"));
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        GLES20.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void glBindBufferBase(int target, int index, int buffer) {
+        GLES30.glBindBufferBase(target, index, buffer);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        GLES30.glBindVertexArray(array);
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        for (int i = 0; i < n; i++) arrays[offset + i] = GLES30.glGenVertexArrays();
+    }
+
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+        return GLES30.glGetUniformBlockIndex(program, uniformBlockName);
+    }
+
+    @Override
+    public void glTexStorage2D(int target, int levels, int internalformat, int width, int height) {
+        GLES30.glTexStorage2D(target, levels, internalformat, width, height);
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding) {
+        GLES30.glUniformBlockBinding(program, uniformBlockIndex, uniformBlockBinding);
+    }
+
+    @Override
+    public void glBindImageTexture(int unit, int texture, int level, boolean layered, int layer, int access, int format) {
+        GLES31.glBindImageTexture(unit, texture, level, layered, layer, access, format);
+    }
+
+    @Override
+    public void glDispatchCompute(int numGroupsX, int numGroupsY, int numGroupsZ) {
+        GLES31.glDispatchCompute(numGroupsX, numGroupsY, numGroupsZ);
+    }
+
+    @Override
+    public void glMemoryBarrier(int barriers) {
+        GLES31.glMemoryBarrier(barriers);
+    }
+}
@@ -0,0 +1,304 @@
+package xyz.osei.creepyarfaces.headless;
+
+import org.lwjgl.BufferUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import xyz.osei.creepyarfaces.AtlasWarp;
+import xyz.osei.creepyarfaces.FaceAtlasPushPull;
+import xyz.osei.creepyarfaces.FaceTextureScatter;
+import xyz.osei.creepyarfaces.Gl;
+import xyz.osei.creepyarfaces.ShaderUtil;
+import xyz.osei.creepyarfaces.StartupTimeline;
+
+import static org.lwjgl.opengles.GLES20.*;
+
+/**
+ * Compares the push-pull hole filling of the face textures ({@link FaceAtlasPushPull}) to
+ * the upload-plus-mipmap path it replaces, on a headless OpenGL ES context. The face texture is
+ * scattered on the CPU from the images of the face at several poses, and its footprint, i.e.,
+ * the texels the face really covers, is taken from a scatter of images at twice the resolution.
+ * Reported per case:
+ * <ul>
+ *   <li>the scatter coverage: the fraction of the footprint the scatter covers, which is all a
+ *   magnified mipmapped texture shows, and the mean alpha over the footprint after the fill
+ *   <li>the mean color error in the holes against the twice the resolution scatter, of the fill
+ *   and of the first mipmap level, which is what mipmapping shows there when minified
+ *   <li>milliseconds per upload, upload plus glGenerateMipmap, and upload plus fill
+ * </ul>
+ * Exits with status 1 if the fill changes any covered texel.
+ *
+ * Options:
+ * <pre>
+ *   --width 360 --height 640    surface size
+ *   --mesh FILE.obj             face mesh, default: the procedural fixture
+ *   --repeat 20                 updates per case for the timing
+ *   --output DIR                push-pull.json, default: build/reports/push-pull
+ * </pre>
+ */
+public final class PushPullCheck {
+    private static final float FACE_DISTANCE = 0.35f;
+    private static final float[] YAW_DEGREES = { 0, 35, -60 };
+    private static final int REFERENCE_SCALE = 2;
+    // the layout MainActivity uses
+    private static final AtlasWarp FOCUS_WARP = AtlasWarp.withFocusRegions(
+            0.35f, new float[] { 0.2f, 0.8f }, new float[] { 0.3f, 0.85f });
+    private static final AtlasWarp[] WARPS = { AtlasWarp.UNIFORM, AtlasWarp.UNIFORM, FOCUS_WARP };
+    private static final int[] UNIFORM_ATLAS_SIZES = { 256, 128, 256 };
+
+    private int width = 360, height = 640;
+    private int repeat = 20;
+    private File meshFile;
+    private File outputDir = new File("build/reports/push-pull");
+
+    private static final class Result {
+        String warp;
+        float yawDegrees;
+        int atlasSize, draws;
+        int footprintTexels, coveredTexels, unfilledHoles, changedCoveredTexels;
+        double filledAlpha, fillError, mipmapError;
+        double uploadMillis, mipmapMillis, pushPullMillis;
+    }
+
+    public static void main(String[] args) throws IOException {
+        final PushPullCheck check = new PushPullCheck();
+        check.parseArgs(args);
+        System.exit(check.run() ? 0 : 1);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--width": width = Integer.parseInt(args[++i]); break;
+                case "--height": height = Integer.parseInt(args[++i]); break;
+                case "--mesh": meshFile = new File(args[++i]); break;
+                case "--repeat": repeat = Integer.parseInt(args[++i]); break;
+                case "--output": outputDir = new File(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+    }
+
+    private FaceMeshFixture loadMesh() throws IOException {
+        if (meshFile != null) {
+            try (InputStream in = new FileInputStream(meshFile)) {
+                return FaceMeshFixture.readObj(in);
+            }
+        }
+        return FaceMeshFixture.loadDefault();
+    }
+
+    /** Captures the camera and UV images of the face at each pose, interleaved */
+    private static List<byte[]> captureImages(FaceMeshFixture mesh, int width, int height) throws IOException {
+        final List<byte[]> images = new ArrayList<>();
+        try (EglPbufferContext ignored = new EglPbufferContext(width, height)) {
+            final HeadlessScene scene = new HeadlessScene(width, height, false, 1);
+            scene.createOnGlThread(mesh);
+            final BufferedImage camera = SyntheticCameraImage.create(480, 640);
+            scene.setCameraImage(GlUtil.toRgba(camera), camera.getWidth(), camera.getHeight());
+            final ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+            for (float yaw : YAW_DEGREES) {
+                scene.setFacePose(facePose(yaw));
+                final byte[] video = new byte[width * height * 4], uv = new byte[width * height * 4];
+                scene.drawCameraImage();
+                scene.readPixels(pixels);
+                pixels.get(video);
+                scene.drawUvImage();
+                scene.readPixels(pixels);
+                pixels.get(uv);
+                images.add(video);
+                images.add(uv);
+            }
+            scene.release();
+        }
+        return images;
+    }
+
+    private boolean run() throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) throw new IOException("cannot create " + outputDir);
+        final FaceMeshFixture mesh = loadMesh();
+        final int referenceWidth = width * REFERENCE_SCALE, referenceHeight = height * REFERENCE_SCALE;
+        final List<byte[]> reference = captureImages(mesh, referenceWidth, referenceHeight);
+        final List<byte[]> images = captureImages(mesh, width, height);
+
+        final List<Result> results = new ArrayList<>();
+        final String renderer;
+        // OpenGL ES 3.0 like the app with the focus layout, whose size is not a power of two
+        try (EglPbufferContext ignored = new EglPbufferContext(width, height, 3)) {
+            renderer = glGetString(GL_RENDERER) + ", " + glGetString(GL_VERSION);
+            final Gl gl = new LwjglGl();
+            final FaceAtlasPushPull pushPull = new FaceAtlasPushPull(gl);
+            pushPull.createOnGlThread(new ShaderUtil(gl, new ClasspathAssets(), StartupTimeline.Tracer.NONE));
+            final int framebuffer = glGenFramebuffers();
+            for (int c = 0; c < WARPS.length; c++) {
+                final AtlasWarp warp = WARPS[c];
+                final int size = warp.getAtlasSize(UNIFORM_ATLAS_SIZES[c]);
+                final FaceTextureScatter scatter = new FaceTextureScatter(size, size, warp);
+                for (int i = 0; i < YAW_DEGREES.length; i++) {
+                    final byte[] footprint = new byte[size * size * 4];
+                    scatter.scatter(reference.get(2 * i + 1), reference.get(2 * i), referenceWidth, referenceHeight, footprint);
+                    final byte[] atlas = new byte[size * size * 4];
+                    scatter.scatter(images.get(2 * i + 1), images.get(2 * i), width, height, atlas);
+
+                    final Result result = compare(gl, pushPull, framebuffer, size, atlas, footprint);
+                    result.warp = warp == AtlasWarp.UNIFORM ? "uniform" : "focus";
+                    result.yawDegrees = YAW_DEGREES[i];
+                    results.add(result);
+                }
+            }
+        }
+
+        boolean passed = true;
+        for (Result result : results) passed &= result.changedCoveredTexels == 0;
+        report(renderer, results);
+        return passed;
+    }
+
+    /** Facing the camera, turned around the vertical axis */
+    private static float[] facePose(float yawDegrees) {
+        final float c = (float) Math.cos(Math.toRadians(yawDegrees));
+        final float s = (float) Math.sin(Math.toRadians(yawDegrees));
+        return new float[] {
+                c, 0, -s, 0,
+                0, 1, 0, 0,
+                s, 0, c, 0,
+                0, 0, -FACE_DISTANCE, 1 };
+    }
+
+    private Result compare(Gl gl, FaceAtlasPushPull pushPull, int framebuffer, int size, byte[] atlas,
+                           byte[] footprint) {
+        final Result result = new Result();
+        result.atlasSize = size;
+        final ByteBuffer pixels = BufferUtils.createByteBuffer(atlas.length);
+        pixels.put(atlas).flip();
+
+        final int mipmapped = createTexture(size, GL_LINEAR_MIPMAP_LINEAR);
+        final int filled = createTexture(size, GL_LINEAR);
+        result.uploadMillis = time(gl, mipmapped, size, pixels, null, false);
+        result.mipmapMillis = time(gl, mipmapped, size, pixels, null, true);
+        final long draws = pushPull.getDrawCount(), fills = pushPull.getFillCount();
+        result.pushPullMillis = time(gl, filled, size, pixels, pushPull, false);
+        result.draws = (int) ((pushPull.getDrawCount() - draws) / (pushPull.getFillCount() - fills));
+
+        final ByteBuffer readBack = BufferUtils.createByteBuffer(atlas.length);
+        GlUtil.readTexture(framebuffer, filled, size, size, readBack);
+        glDeleteTextures(mipmapped);
+        glDeleteTextures(filled);
+
+        long filledAlpha = 0, holes = 0;
+        double fillError = 0, mipmapError = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final int i = (y * size + x) * 4;
+                final boolean covered = atlas[i + 3] == (byte) 255;
+                if (covered) {
+                    for (int c = 0; c < 4; c++) {
+                        if (readBack.get(i + c) != atlas[i + c]) {
+                            result.changedCoveredTexels++;
+                            break;
+                        }
+                    }
+                }
+                if (footprint[i + 3] != (byte) 255) continue;
+                result.footprintTexels++;
+                filledAlpha += readBack.get(i + 3) & 0xff;
+                if (covered) {
+                    result.coveredTexels++;
+                    continue;
+                }
+                holes++;
+                if (readBack.get(i + 3) == 0) result.unfilledHoles++;
+                for (int c = 0; c < 3; c++) {
+                    final int expected = footprint[i + c] & 0xff;
+                    fillError += Math.abs((readBack.get(i + c) & 0xff) - expected);
+                    mipmapError += Math.abs(firstMipmapLevel(atlas, size, x, y, c) - expected);
+                }
+            }
+        }
+        result.filledAlpha = result.footprintTexels == 0 ? 0 : filledAlpha / 255.0 / result.footprintTexels;
+        result.fillError = holes == 0 ? 0 : fillError / (3.0 * holes);
+        result.mipmapError = holes == 0 ? 0 : mipmapError / (3.0 * holes);
+        return result;
+    }
+
+    /** A face texture like FaceMapper allocates it, with the given minification filter */
+    private static int createTexture(int size, int minFilter) {
+        final int texture = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, texture);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, minFilter);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, size, size, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        return texture;
+    }
+
+    /** The 2x2 box filter of glGenerateMipmap at the texel, holes included */
+    private static double firstMipmapLevel(byte[] atlas, int size, int x, int y, int channel) {
+        final int x0 = x & ~1, y0 = y & ~1;
+        final int x1 = Math.min(x0 + 1, size - 1), y1 = Math.min(y0 + 1, size - 1);
+        return ((atlas[(y0 * size + x0) * 4 + channel] & 0xff) + (atlas[(y0 * size + x1) * 4 + channel] & 0xff)
+                + (atlas[(y1 * size + x0) * 4 + channel] & 0xff) + (atlas[(y1 * size + x1) * 4 + channel] & 0xff)) / 4.0;
+    }
+
+    /** Milliseconds per upload of the face texture, followed by the fill or the mipmaps if given */
+    private double time(Gl gl, int texture, int size, ByteBuffer pixels, FaceAtlasPushPull pushPull,
+                        boolean mipmap) {
+        long nanos = 0;
+        for (int i = 0; i < repeat; i++) {
+            glFinish();
+            final long start = System.nanoTime();
+            glBindTexture(GL_TEXTURE_2D, texture);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, size, size, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+            if (mipmap) glGenerateMipmap(GL_TEXTURE_2D);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            if (pushPull != null) pushPull.fill(texture, size);
+            glFinish();
+            nanos += System.nanoTime() - start;
+        }
+        ShaderUtil.checkGLError(gl, "PushPullCheck", "time");
+        return nanos * 1e-6 / repeat;
+    }
+
+    private void report(String renderer, List<Result> results) throws IOException {
+        System.out.println("push-pull hole filling vs. mipmaps on " + renderer);
+        for (Result result : results) {
+            System.out.println(String.format(Locale.ROOT,
+                    "  %-7s %3dx%-3d yaw %4.0f: %s, scatter covers %.1f%% of %d texels, filled alpha %.1f%% (%d holes unfilled), "
+                            + "hole error fill %.1f / mipmap %.1f, upload %.3f ms, +mipmap %.3f ms, +push-pull %.3f ms (%d draws)",
+                    result.warp, result.atlasSize, result.atlasSize, result.yawDegrees,
+                    result.changedCoveredTexels == 0 ? "ok" : "FAILED (" + result.changedCoveredTexels + " covered texels changed)",
+                    100.0 * result.coveredTexels / Math.max(1, result.footprintTexels), result.footprintTexels,
+                    100 * result.filledAlpha, result.unfilledHoles, result.fillError, result.mipmapError,
+                    result.uploadMillis, result.mipmapMillis, result.pushPullMillis, result.draws));
+        }
+
+        try (PrintWriter json = new PrintWriter(new File(outputDir, "push-pull.json"), "UTF-8")) {
+            json.println("{");
+            json.println(String.format(Locale.ROOT, "  \"renderer\": \"%s\", \"width\": %d, \"height\": %d, \"referenceScale\": %d,",
+                    renderer.replace("\"", "'"), width, height, REFERENCE_SCALE));
+            json.println("  \"cases\": [");
+            for (int i = 0; i < results.size(); i++) {
+                final Result result = results.get(i);
+                json.println(String.format(Locale.ROOT,
+                        "    {\"warp\": \"%s\", \"atlasSize\": %d, \"yaw\": %.1f, \"footprintTexels\": %d, \"coveredTexels\": %d, \"filledAlpha\": %.4f, \"unfilledHoles\": %d, \"changedCoveredTexels\": %d, \"fillError\": %.3f, \"mipmapError\": %.3f, \"uploadMs\": %.4f, \"mipmapMs\": %.4f, \"pushPullMs\": %.4f, \"draws\": %d}%s",
+                        result.warp, result.atlasSize, result.yawDegrees, result.footprintTexels, result.coveredTexels,
+                        result.filledAlpha, result.unfilledHoles, result.changedCoveredTexels, result.fillError,
+                        result.mipmapError, result.uploadMillis, result.mipmapMillis, result.pushPullMillis, result.draws,
+                        i + 1 < results.size() ? "," : ""));
+            }
+            json.println("  ]");
+            json.println("}");
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package xyz.osei.creepyarfaces.headless;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cold start benchmark of the app on a device connected with adb. Each launch force-stops the
+ * app, starts it with {@code am start -W} and waits until the startup timeline the app writes
+ * (see StartupTrace and {@link xyz.osei.creepyarfaces.StartupTimeline}) has the given mark,
+ * e.g., the first frame with a face filter, which needs a face in front of the camera. Prints
+ * and writes the mean, variance, standard deviation, minimum and maximum of each phase duration
+ * and mark time over the launches. Phases with the same name in one launch, e.g., the compiles
+ * of several variants of a shader, are summed.
+ *
+ * Options:
+ * <pre>
+ *   --launches 10                   number of cold starts
+ *   --until firstFilteredFrame      mark to wait for, firstDrawFrame needs no face
+ *   --timeout 30                    seconds to wait for the mark
+ *   --package NAME                  default: xyz.osei.creepyarfaces.helloar
+ *   --adb PATH                      default: adb
+ *   --output DIR                    startup.json, default: build/reports/startup
+ * </pre>
+ */
+public final class StartupBenchmark {
+    private static final String ACTIVITY = "xyz.osei.creepyarfaces.MainActivity";
+    private static final String TIMELINE_FILE_NAME = "startup-timeline.tsv";
+    private static final String LAUNCH_TIME = "am start TotalTime";
+    private static final long POLL_INTERVAL_MILLIS = 500;
+
+    private int launches = 10;
+    private String until = "firstFilteredFrame";
+    private int timeoutSeconds = 30;
+    private String packageName = "xyz.osei.creepyarfaces.helloar";
+    private String adb = "adb";
+    private File outputDir = new File("build/reports/startup");
+
+    /** Durations of the phases and times of the marks in milliseconds, one value per launch */
+    private static final class Series {
+        final String kind;
+        final List<Double> values = new ArrayList<>();
+
+        Series(String kind) {
+            this.kind = kind;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double value : values) sum += value;
+            return sum / values.size();
+        }
+
+        /** Sample variance, 0 for a single launch */
+        double variance() {
+            if (values.size() < 2) return 0;
+            final double mean = mean();
+            double sum = 0;
+            for (double value : values) sum += (value - mean) * (value - mean);
+            return sum / (values.size() - 1);
+        }
+
+        double min() {
+            double min = Double.POSITIVE_INFINITY;
+            for (double value : values) min = Math.min(min, value);
+            return min;
+        }
+
+        double max() {
+            double max = Double.NEGATIVE_INFINITY;
+            for (double value : values) max = Math.max(max, value);
+            return max;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final StartupBenchmark benchmark = new StartupBenchmark();
+        benchmark.parseArgs(args);
+        System.exit(benchmark.run() ? 0 : 1);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--launches": launches = Integer.parseInt(args[++i]); break;
+                case "--until": until = args[++i]; break;
+                case "--timeout": timeoutSeconds = Integer.parseInt(args[++i]); break;
+                case "--package": packageName = args[++i]; break;
+                case "--adb": adb = args[++i]; break;
+                case "--output": outputDir = new File(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+    }
+
+    private boolean run() throws IOException, InterruptedException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) throw new IOException("cannot create " + outputDir);
+        final Map<String, Series> series = new LinkedHashMap<>();
+        int failed = 0;
+        for (int launch = 0; launch < launches; launch++) {
+            final Map<String, Double> values = launch();
+            if (values == null) {
+                System.err.println("launch " + (launch + 1) + ": no " + until + " mark in " + timeoutSeconds + " s");
+                failed++;
+                continue;
+            }
+            System.out.println(String.format(Locale.ROOT, "launch %d: %s at %.1f ms",
+                    launch + 1, until, values.get("mark\t" + until)));
+            for (Map.Entry<String, Double> entry : values.entrySet()) {
+                final String[] kindAndName = entry.getKey().split("\t", 2);
+                Series s = series.get(kindAndName[1]);
+                if (s == null) {
+                    s = new Series(kindAndName[0]);
+                    series.put(kindAndName[1], s);
+                }
+                s.values.add(entry.getValue());
+            }
+        }
+        adb("shell", "am", "force-stop", packageName);
+        report(series, failed);
+        return failed == 0;
+    }
+
+    /**
+     * One cold start. Returns the phase durations and mark times by kind and name, separated by
+     * a tab, or null if the mark did not appear in time.
+     */
+    private Map<String, Double> launch() throws IOException, InterruptedException {
+        adb("shell", "am", "force-stop", packageName);
+        adb("shell", "rm", "-f", "/sdcard/Android/data/" + packageName + "/files/" + TIMELINE_FILE_NAME);
+        final String started = adb("shell", "am", "start", "-W", "-n", packageName + "/" + ACTIVITY);
+
+        final long deadline = System.currentTimeMillis() + timeoutSeconds * 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+            final String timeline = adb("exec-out", "cat",
+                    "/sdcard/Android/data/" + packageName + "/files/" + TIMELINE_FILE_NAME);
+            final Map<String, Double> values = parseTimeline(timeline);
+            if (values.containsKey("mark\t" + until)) {
+                final Double launchTime = parseTotalTime(started);
+                if (launchTime != null) values.put("launch\t" + LAUNCH_TIME, launchTime);
+                return values;
+            }
+        }
+        return null;
+    }
+
+    /** See StartupTimeline.write. Marks are keyed "mark\tNAME" and phases "phase\tNAME". */
+    private static Map<String, Double> parseTimeline(String timeline) {
+        final Map<String, Double> values = new LinkedHashMap<>();
+        for (String line : timeline.split("\n")) {
+            final String[] columns = line.split("\t", -1);
+            if (columns.length < 6 || !(columns[0].equals("phase") || columns[0].equals("mark"))) continue;
+            final boolean mark = columns[0].equals("mark");
+            final String value = mark ? columns[4] : columns[5];
+            // unfinished phase
+            if (value.isEmpty()) continue;
+            final String key = columns[0] + "\t" + columns[1];
+            final Double previous = values.get(key);
+            final double ms = Double.parseDouble(value);
+            values.put(key, previous == null || mark ? ms : previous + ms);
+        }
+        return values;
+    }
+
+    private static Double parseTotalTime(String amStartOutput) {
+        for (String line : amStartOutput.split("\n")) {
+            line = line.trim();
+            if (line.startsWith("TotalTime:")) return Double.valueOf(line.substring("TotalTime:".length()).trim());
+        }
+        return null;
+    }
+
+    private String adb(String... args) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(adb);
+        command.addAll(Arrays.asList(args));
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            final byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) output.write(buffer, 0, n);
+        }
+        process.waitFor();
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void report(Map<String, Series> series, int failed) throws IOException {
+        System.out.println(String.format(Locale.ROOT, "startup of %s, %d launches (%d failed)",
+                packageName, launches, failed));
+        System.out.println(String.format(Locale.ROOT, "  %-48s %5s %10s %10s %10s %10s %10s",
+                "phase / mark (ms)", "n", "mean", "variance", "stddev", "min", "max"));
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            final Series s = entry.getValue();
+            System.out.println(String.format(Locale.ROOT, "  %-48s %5d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                    (s.kind.equals("mark") ? "@" : "") + entry.getKey(), s.values.size(),
+                    s.mean(), s.variance(), Math.sqrt(s.variance()), s.min(), s.max()));
+        }
+
+        try (PrintWriter json = new PrintWriter(new File(outputDir, "startup.json"), "UTF-8")) {
+            json.println("{");
+            json.println(String.format(Locale.ROOT, "  \"package\": \"%s\", \"until\": \"%s\", \"launches\": %d, \"failed\": %d,",
+                    packageName, until, launches, failed));
+            json.println("  \"phases\": [");
+            int i = 0;
+            for (Map.Entry<String, Series> entry : series.entrySet()) {
+                final Series s = entry.getValue();
+                json.println(String.format(Locale.ROOT,
+                        "    {\"name\": \"%s\", \"kind\": \"%s\", \"n\": %d, \"meanMs\": %.3f, \"varianceMs2\": %.3f, \"stddevMs\": %.3f, \"minMs\": %.3f, \"maxMs\": %.3f}%s",
+                        entry.getKey().replace("\"", "'"), s.kind, s.values.size(), s.mean(), s.variance(),
+                        Math.sqrt(s.variance()), s.min(), s.max(), ++i < series.size() ? "," : ""));
+            }
+            json.println("  ]");
+            json.println("}");
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package xyz.osei.creepyarfaces.headless;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Deterministic stand-in for a camera frame: a face-like shape with distinct features on a
+ * gradient background, so that the face texture filters have something to move around
+ */
+final class SyntheticCameraImage {
+    private SyntheticCameraImage() {}
+
+    static BufferedImage create(int width, int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = image.createGraphics();
+        // no antialiasing, which may differ between Java versions
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setPaint(new GradientPaint(0, 0, new Color(40, 70, 110), 0, height, new Color(150, 170, 120)));
+        g.fillRect(0, 0, width, height);
+
+        final int cx = width / 2, cy = height / 2;
+        final int faceW = width * 2 / 5, faceH = height * 2 / 5;
+        g.setColor(new Color(224, 172, 135));
+        g.fillOval(cx - faceW / 2, cy - faceH / 2, faceW, faceH);
+
+        // eyes, nose and mouth
+        final int eyeW = faceW / 6, eyeH = faceH / 12;
+        g.setColor(Color.WHITE);
+        g.fillOval(cx - faceW / 4 - eyeW / 2, cy - faceH / 8 - eyeH / 2, eyeW, eyeH);
+        g.fillOval(cx + faceW / 4 - eyeW / 2, cy - faceH / 8 - eyeH / 2, eyeW, eyeH);
+        g.setColor(new Color(60, 90, 40));
+        g.fillOval(cx - faceW / 4 - eyeH / 2, cy - faceH / 8 - eyeH / 2, eyeH, eyeH);
+        g.fillOval(cx + faceW / 4 - eyeH / 2, cy - faceH / 8 - eyeH / 2, eyeH, eyeH);
+        g.setColor(new Color(190, 130, 100));
+        g.fillRect(cx - faceW / 24, cy - faceH / 16, faceW / 12, faceH / 6);
+        g.setColor(new Color(170, 40, 50));
+        g.fillRect(cx - faceW / 6, cy + faceH / 5, faceW / 3, faceH / 20);
+
+        g.dispose();
+        return image;
+    }
+}